@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of creating the new {@link ProcessIO} from the current one on each sample, via
+ * {@link ProcessIO#updateCurrentValues}.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessIOBenchmark {
+
+    private ProcessIO processIO;
+    private CurrentProcessIO currentProcessIO;
+    private long millis;
+
+    @Setup
+    public void setUp() {
+        processIO = new ProcessIO(1000,1024,2048,2000,4096,8192);
+        currentProcessIO = new CurrentProcessIO(3000,8192,16384,32768,65536,100,200,0);
+    }
+
+    @Benchmark
+    public ProcessIO updateCurrentValuesFromReadAndWriteBytes() {
+        return processIO.updateCurrentValues(++millis,8192,16384);
+    }
+
+    @Benchmark
+    public ProcessIO updateCurrentValuesFromAllCounters() {
+        return processIO.updateCurrentValues(++millis,8192,16384,32768,65536,100,200,0);
+    }
+
+    @Benchmark
+    public ProcessIO updateCurrentValuesFromCurrentProcessIO() {
+        return processIO.updateCurrentValues(currentProcessIO);
+    }
+}
@@ -0,0 +1,259 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.domain.ThroughputPercentiles;
+import org.greencheek.processio.service.usage.ExponentiallyWeightedProcessIOUsage;
+import org.openjdk.jmh.annotations.*;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures the cost of each of the {@link ProcessIOUsageMXBean} getters of the {@link ProcessIOUsageHolder}, as
+ * called by a jmx client polling the bean; and of {@link ProcessIOUsageHolder#setProcessIO(CurrentProcessIO)}, as
+ * called on each sample.
+ * </p>
+ * <p>
+ * {@link #mbeanServerProcessIOAttribute()} reads the ProcessIO attribute through the MBeanServer, which includes the
+ * cost of converting the ProcessIO to the open type CompositeData that is sent to the client.
+ * {@link #mbeanServerSnapshotAttribute()} reads every counter and rate in one call, whose CompositeData is cached
+ * until the next sample.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcessIOUsageHolderBenchmark {
+
+    private ProcessIOUsageHolder holder;
+    // The counters of the next sample given to setProcessIO, advanced on each call so that every call is a new sample
+    private long sampleMillis;
+    private long readBytes;
+    private long writeBytes;
+    private MBeanServer server;
+    private ObjectName name;
+
+    @Setup
+    public void setUp() throws Exception {
+        holder = new ProcessIOUsageHolder(0,new ExponentiallyWeightedProcessIOUsage());
+        holder.setProcessIO(new CurrentProcessIO(1000,1024,2048,4096,8192,10,20,0));
+        holder.setProcessIO(new CurrentProcessIO(301000,18790563840L,2250752000L,49820184,79916,142929,265,16384));
+        sampleMillis = 301000;
+        readBytes = 18790563840L;
+        writeBytes = 2250752000L;
+
+        server = ManagementFactory.getPlatformMBeanServer();
+        name = new ObjectName("org.greencheek.benchmark:type=processiousage");
+        server.registerMBean(holder,name);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        server.unregisterMBean(name);
+    }
+
+    /**
+     * Records a sample a second after the previous one, so that the moving averages, history, histograms and
+     * thresholds are all updated, as on each tick of the scheduler.  The CurrentProcessIO created per call is the
+     * one a reader creates per sample.
+     */
+    @Benchmark
+    public void setProcessIO() {
+        sampleMillis += 1000;
+        readBytes += 667 * 1024;
+        writeBytes += 33 * 1024;
+        holder.setProcessIO(new CurrentProcessIO(sampleMillis,readBytes,writeBytes,59820184,89916,152929,275,16384));
+    }
+
+    @Benchmark
+    public Object mbeanServerProcessIOAttribute() throws Exception {
+        return server.getAttribute(name,"ProcessIO");
+    }
+
+    @Benchmark
+    public ProcessIO processIO() {
+        return holder.getProcessIO();
+    }
+
+    @Benchmark
+    public Object mbeanServerSnapshotAttribute() throws Exception {
+        return server.getAttribute(name,"Snapshot");
+    }
+
+    @Benchmark
+    public long sampleSequence() {
+        return holder.getSampleSequence();
+    }
+
+    @Benchmark
+    public double sampleTimeKbPerSecondReadIO() {
+        return holder.getSampleTimeKbPerSecondReadIO();
+    }
+
+    @Benchmark
+    public double sampleTimeKbPerSecondWriteIO() {
+        return holder.getSampleTimeKbPerSecondWriteIO();
+    }
+
+    @Benchmark
+    public double sampleTimeMbPerSecondReadIO() {
+        return holder.getSampleTimeMbPerSecondReadIO();
+    }
+
+    @Benchmark
+    public double sampleTimeMbPerSecondWriteIO() {
+        return holder.getSampleTimeMbPerSecondWriteIO();
+    }
+
+    @Benchmark
+    public double accumulatedKbPerSecondReadIO() {
+        return holder.getAccumulatedKbPerSecondReadIO();
+    }
+
+    @Benchmark
+    public double accumulatedKbPerSecondWriteIO() {
+        return holder.getAccumulatedKbPerSecondWriteIO();
+    }
+
+    @Benchmark
+    public double accumulatedMbPerSecondReadIO() {
+        return holder.getAccumulatedMbPerSecondReadIO();
+    }
+
+    @Benchmark
+    public double accumulatedMbPerSecondWriteIO() {
+        return holder.getAccumulatedMbPerSecondWriteIO();
+    }
+
+    @Benchmark
+    public double sampleTimeKbPerSecondReadChars() {
+        return holder.getSampleTimeKbPerSecondReadChars();
+    }
+
+    @Benchmark
+    public double sampleTimeKbPerSecondWriteChars() {
+        return holder.getSampleTimeKbPerSecondWriteChars();
+    }
+
+    @Benchmark
+    public double sampleTimeReadSyscallsPerSecond() {
+        return holder.getSampleTimeReadSyscallsPerSecond();
+    }
+
+    @Benchmark
+    public double sampleTimeWriteSyscallsPerSecond() {
+        return holder.getSampleTimeWriteSyscallsPerSecond();
+    }
+
+    @Benchmark
+    public double sampleTimeKbPerSecondCancelledWriteIO() {
+        return holder.getSampleTimeKbPerSecondCancelledWriteIO();
+    }
+
+    @Benchmark
+    public double sampleTimeBytesPerReadSyscall() {
+        return holder.getSampleTimeBytesPerReadSyscall();
+    }
+
+    @Benchmark
+    public double sampleTimeBytesPerWriteSyscall() {
+        return holder.getSampleTimeBytesPerWriteSyscall();
+    }
+
+    @Benchmark
+    public double accumulatedKbPerSecondReadChars() {
+        return holder.getAccumulatedKbPerSecondReadChars();
+    }
+
+    @Benchmark
+    public double accumulatedKbPerSecondWriteChars() {
+        return holder.getAccumulatedKbPerSecondWriteChars();
+    }
+
+    @Benchmark
+    public double accumulatedReadSyscallsPerSecond() {
+        return holder.getAccumulatedReadSyscallsPerSecond();
+    }
+
+    @Benchmark
+    public double accumulatedWriteSyscallsPerSecond() {
+        return holder.getAccumulatedWriteSyscallsPerSecond();
+    }
+
+    @Benchmark
+    public double accumulatedKbPerSecondCancelledWriteIO() {
+        return holder.getAccumulatedKbPerSecondCancelledWriteIO();
+    }
+
+    @Benchmark
+    public double accumulatedBytesPerReadSyscall() {
+        return holder.getAccumulatedBytesPerReadSyscall();
+    }
+
+    @Benchmark
+    public double accumulatedBytesPerWriteSyscall() {
+        return holder.getAccumulatedBytesPerWriteSyscall();
+    }
+
+    @Benchmark
+    public long[] historyWindowsInMillis() {
+        return holder.getHistoryWindowsInMillis();
+    }
+
+    @Benchmark
+    public double[] windowedKbPerSecondReadIO() {
+        return holder.getWindowedKbPerSecondReadIO();
+    }
+
+    @Benchmark
+    public double[] windowedKbPerSecondWriteIO() {
+        return holder.getWindowedKbPerSecondWriteIO();
+    }
+
+    @Benchmark
+    public long[] smoothingTimeConstantsInMillis() {
+        return holder.getSmoothingTimeConstantsInMillis();
+    }
+
+    @Benchmark
+    public double[] smoothedKbPerSecondReadIO() {
+        return holder.getSmoothedKbPerSecondReadIO();
+    }
+
+    @Benchmark
+    public double[] smoothedKbPerSecondWriteIO() {
+        return holder.getSmoothedKbPerSecondWriteIO();
+    }
+
+    @Benchmark
+    public ThroughputPercentiles readThroughputPercentiles() {
+        return holder.getReadThroughputPercentiles();
+    }
+
+    @Benchmark
+    public ThroughputPercentiles writeThroughputPercentiles() {
+        return holder.getWriteThroughputPercentiles();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * <p>
+ * Measures the cost of a single sample of the process io, as taken on each tick of the scheduler, for both the
+ * {@link FileSystemProcIOProcessIOReader} and the {@link FileChannelProcIOProcessIOReader}.
+ * </p>
+ * <p>
+ * The "proc" source reads the real /proc/self/io file, which includes the cost of the kernel generating the
+ * file's content.  The "fixture" source reads a copy of the test resource testIO.txt from the temp directory,
+ * which measures the cost of the reading and parsing alone.
+ * </p>
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class ProcIOReaderBenchmark {
+
+    private static final String FIXTURE = "rchar: 49820184\n" +
+                                          "wchar: 79916\n" +
+                                          "syscr: 142929\n" +
+                                          "syscw: 265\n" +
+                                          "read_bytes: 18790563840\n" +
+                                          "write_bytes: 2250752000\n" +
+                                          "cancelled_write_bytes: 16384\n";
+
+    @Param({"proc", "fixture"})
+    public String source;
+
+    private File fixture;
+    private FileSystemProcIOProcessIOReader fileSystemReader;
+    private FileChannelProcIOProcessIOReader fileChannelReader;
+
+    @Setup
+    public void setUp() throws IOException {
+        File location;
+        if("proc".equals(source)) {
+            location = new File("/proc/self/io");
+        } else {
+            fixture = File.createTempFile("processio","io");
+            FileOutputStream out = new FileOutputStream(fixture);
+            try {
+                out.write(FIXTURE.getBytes("UTF-8"));
+            } finally {
+                out.close();
+            }
+            location = fixture;
+        }
+
+        fileSystemReader = new FileSystemProcIOProcessIOReader(location);
+        fileChannelReader = new FileChannelProcIOProcessIOReader(location);
+    }
+
+    @TearDown
+    public void tearDown() {
+        fileChannelReader.close();
+        if(fixture!=null) fixture.delete();
+    }
+
+    @Benchmark
+    public CurrentProcessIO fileSystemReader() {
+        return fileSystemReader.getCurrentProcessIO();
+    }
+
+    @Benchmark
+    public CurrentProcessIO fileChannelReader() {
+        return fileChannelReader.getCurrentProcessIO();
+    }
+}
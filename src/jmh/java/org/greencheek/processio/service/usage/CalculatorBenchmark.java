@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.usage;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the cost of the kb per second calculations, {@link PrimitiveBasedDifferenceInKBPerSecondCalculator} and
+ * {@link PrimitiveBasedAccumulatedAverageKBPerSecondCalculator}.  The byte counts are state fields, so that the
+ * calculations are not constant folded.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CalculatorBenchmark {
+
+    private final DifferenceInKBPerSecondCalculator differenceCalculator = new PrimitiveBasedDifferenceInKBPerSecondCalculator();
+    private final AccumulatedAverageKbPerSecondCalculator accumulatedCalculator = new PrimitiveBasedAccumulatedAverageKBPerSecondCalculator();
+
+    private long previousMillis = 1000;
+    private long previousBytes = 18790563840L;
+    private long currentMillis = 301000;
+    private long currentBytes = 18990563840L;
+
+    @Benchmark
+    public double differenceInKbPerSecond() {
+        return differenceCalculator.getDifferenceInKbPerSecond(previousMillis,previousBytes,currentMillis,currentBytes);
+    }
+
+    @Benchmark
+    public double accumulatedKbPerSecond() {
+        return accumulatedCalculator.getKbPerSecond(previousMillis,currentMillis,currentBytes);
+    }
+}
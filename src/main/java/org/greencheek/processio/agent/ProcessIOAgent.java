@@ -15,20 +15,60 @@
  */
 package org.greencheek.processio.agent;
 
-import org.greencheek.processio.service.usage.BasicProcessIOUsage;
+import org.greencheek.processio.domain.ProcessIOHistory;
+import org.greencheek.processio.domain.jmx.AdaptiveSamplingHolder;
+import org.greencheek.processio.domain.jmx.CallSiteIOHolder;
+import org.greencheek.processio.domain.jmx.CgroupIOUsageHolder;
+import org.greencheek.processio.domain.jmx.DiskStatsHolder;
+import org.greencheek.processio.domain.jmx.FileIOUsageHolder;
+import org.greencheek.processio.domain.jmx.IOWaitHolder;
+import org.greencheek.processio.domain.jmx.NetworkIOUsageHolder;
+import org.greencheek.processio.domain.jmx.PageFaultHolder;
+import org.greencheek.processio.domain.jmx.PersistenceSinksHolder;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+import org.greencheek.processio.domain.jmx.ThreadIOUsageHolder;
+import org.greencheek.processio.service.io.ProcTaskThreadIOReader;
+import org.greencheek.processio.service.persistence.jmx.MXBeanRegistration;
+import org.greencheek.processio.service.usage.ExponentiallyWeightedProcessIOUsage;
 import org.greencheek.processio.service.pid.JMXJVMProcessIdObtainer;
 import org.greencheek.processio.service.pid.JVMProcessIdObtainer;
 import org.greencheek.processio.service.usage.ProcessIOUsage;
+import org.greencheek.processio.service.io.CallSiteIOInstrumentation;
+import org.greencheek.processio.service.io.CallSiteIORecorder;
+import org.greencheek.processio.service.io.CgroupIOStatReader;
+import org.greencheek.processio.service.io.DiskStatsReader;
+import org.greencheek.processio.service.io.FileChannelProcIOProcessIOReader;
 import org.greencheek.processio.service.io.FileSystemProcIOProcessIOReader;
+import org.greencheek.processio.service.io.IOWaitReader;
+import org.greencheek.processio.service.io.NetworkIOReader;
+import org.greencheek.processio.service.io.OpenFileIOReader;
+import org.greencheek.processio.service.io.PageFaultReader;
 import org.greencheek.processio.service.io.ProcessIOReader;
+import org.greencheek.processio.service.io.ProcessTreeProcIOProcessIOReader;
+import org.greencheek.processio.service.io.ReusableProcFileBuffer;
 import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.greencheek.processio.service.persistence.AsyncFanOutProcessIOUsagePersistence;
+import org.greencheek.processio.service.persistence.CompositeProcessIOUsagePersistence;
+import org.greencheek.processio.service.persistence.OverflowPolicy;
 import org.greencheek.processio.service.persistence.jmx.ProcessIOUsagePersistenceViaJmx;
+import org.greencheek.processio.service.persistence.mmap.ProcessIOUsagePersistenceViaMappedFile;
+import org.greencheek.processio.service.persistence.prometheus.ProcessIOUsagePersistenceViaPrometheus;
+import org.greencheek.processio.service.persistence.statsd.ProcessIOUsagePersistenceViaStatsD;
+import org.greencheek.processio.service.persistence.timeseries.ProcessIOUsagePersistenceViaSegmentLog;
+import org.greencheek.processio.service.scheduler.AdaptiveSamplingInterval;
+import org.greencheek.processio.service.scheduler.BurstCapture;
+import org.greencheek.processio.service.scheduler.ProcessIOReaderSampler;
 import org.greencheek.processio.service.scheduler.ProcessIOScheduler;
+import org.greencheek.processio.service.scheduler.SamplingProcessIOScheduler;
 import org.greencheek.processio.service.scheduler.ScheduledExecutorServiceProcessIOScheduler;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.File;
 import java.lang.instrument.Instrumentation;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -49,6 +89,83 @@ import java.util.regex.Pattern;
  *     <li>frequency : The frequency of the io collection in millis</li>
  *     <li>jmxbeanname : The name of the bean to register in jmx</li>
  *     <li>jmxdomainname : Then name of the domain under which to register the bean in jmx</li>
+ *     <li>reader : How the /proc/PID/io file is read.  "channel" keeps the file open and parses it without creating
+ *                  garbage ({@link FileChannelProcIOProcessIOReader}).  The default re-opens the file on each
+ *                  sample ({@link FileSystemProcIOProcessIOReader})</li>
+ *     <li>threads : Enables the sampling of the io of each thread (/proc/PID/task/TID/io).  The value is the number of
+ *                   top threads to return from the bean registered under jmxdomainname:type={@value #THREAD_JMX_BEAN_NAME}</li>
+ *     <li>threadfds : The maximum number of the per thread /proc files that are kept open between samples (default
+ *                     {@value ReusableProcFileBuffer#DEFAULT_MAX_OPEN_CHANNELS}).  Each is a file descriptor of the
+ *                     jvm, counted against its open file limit (ulimit -n); the files of threads beyond the maximum
+ *                     are opened and closed on each sample instead.  0 keeps none open</li>
+ *     <li>children : When "true" the io of the processes started by the jvm (and their descendants) is added to the
+ *                    io of the jvm ({@link ProcessTreeProcIOProcessIOReader}).  The io of the descendants alone is
+ *                    registered under jmxdomainname:type={@value #CHILD_JMX_BEAN_NAME}</li>
+ *     <li>cgroup : When "true" the block io of the jvm's cgroup v2 (i.e. its container) is also sampled, from its io.stat
+ *                  file ({@link CgroupIOStatReader}).  The cgroup's io is registered under
+ *                  jmxdomainname:type={@value #CGROUP_JMX_BEAN_NAME}, and the io and limits of each device under
+ *                  jmxdomainname:type={@value #CGROUP_DEVICES_JMX_BEAN_NAME}</li>
+ *     <li>diskstats : When "true" /proc/diskstats is also sampled on each tick ({@link DiskStatsReader}), giving the
+ *                     utilisation, await, queue depth and iops of each block device, and the process's share of the
+ *                     device's bytes.  Registered under jmxdomainname:type={@value #DISKSTATS_JMX_BEAN_NAME}</li>
+ *     <li>pagefaults : When "true" the minor and major page faults of the jvm are also sampled from /proc/PID/stat
+ *                      ({@link PageFaultReader}), next to the read rate of the same tick.  Registered under
+ *                      jmxdomainname:type={@value #PAGEFAULT_JMX_BEAN_NAME}</li>
+ *     <li>smaps : When "true", and pagefaults is enabled, the resident and file backed memory of the jvm is also read
+ *                 from /proc/PID/smaps_rollup</li>
+ *     <li>iowait : When "true" the millis per second the jvm's threads spent waiting for block io are also sampled from
+ *                  the delayacct_blkio_ticks of /proc/PID/stat ({@link IOWaitReader}), next to the read and write
+ *                  rates.  Registered under jmxdomainname:type={@value #IOWAIT_JMX_BEAN_NAME}.  When threads is
+ *                  set, the io wait of each thread is also read.  Requires delay accounting to be enabled in the
+ *                  kernel</li>
+ *     <li>callsites : When "true" the io methods of the jdk (file channels, file streams, RandomAccessFile and the
+ *                     socket streams) are rewritten so that the bytes of their calls are attributed to the call sites
+ *                     that make them ({@link CallSiteIOInstrumentation}).  The top call sites by bytes are registered
+ *                     under jmxdomainname:type={@value #CALLSITE_JMX_BEAN_NAME}</li>
+ *     <li>callsitesample : 1 in this many io calls is attributed to its call site
+ *                          (default {@value CallSiteIORecorder#DEFAULT_SAMPLE_EVERY_CALLS})</li>
+ *     <li>files : Enables the sampling of the position of each open file descriptor (/proc/PID/fdinfo/FD), as an
+ *                 approximate throughput of each open file ({@link OpenFileIOReader}).  The value is the number of
+ *                 top files to return from the bean registered under jmxdomainname:type={@value #FILE_JMX_BEAN_NAME}</li>
+ *     <li>network : When "true", the bytes, packets and drops of each network interface, and the tcp retransmits, are
+ *                   sampled from /proc/PID/net/dev and /proc/PID/net/snmp ({@link NetworkIOReader}), and registered
+ *                   under jmxdomainname:type={@value #NETWORK_JMX_BEAN_NAME}</li>
+ *     <li>windows : The windows, in seconds and separated by ':', over which the windowed read and write rates are
+ *                   calculated.  Defaults to 60:300:900 (1, 5 and 15 minutes)</li>
+ *     <li>adaptive : The minimum and maximum interval, in millis and separated by ':' (i.e. 100:60000), between which
+ *                    the sampling interval is adapted to the io of the jvm ({@link AdaptiveSamplingInterval}).  When
+ *                    given, frequency is ignored.  The chosen interval is registered under
+ *                    jmxdomainname:type={@value #ADAPTIVE_JMX_BEAN_NAME}</li>
+ *     <li>mappedfile : A directory in which the latest sample and rates are also written to a memory mapped file,
+ *                      named &lt;pid&gt;.processio, that can be read by other processes without jmx
+ *                      ({@link ProcessIOUsagePersistenceViaMappedFile})</li>
+ *     <li>segmentlog : A directory in which each sample is also appended to a compact binary log, kept in hourly
+ *                      segments for two days ({@link ProcessIOUsagePersistenceViaSegmentLog})</li>
+ *     <li>prometheus : The port, or host:port, on which to serve the counters and rates of the bean in the prometheus
+ *                      text format, at /metrics ({@link ProcessIOUsagePersistenceViaPrometheus})</li>
+ *     <li>statsd : The host:port of a StatsD collector to which the counters and rates of the bean are pushed, as udp
+ *                  datagrams, on each sample ({@link ProcessIOUsagePersistenceViaStatsD})</li>
+ *     <li>statsdprefix : The prefix of the StatsD metric names, defaults to {@value ProcessIOUsagePersistenceViaStatsD#DEFAULT_PREFIX}</li>
+ *     <li>statsdtags : DogStatsD tags, separated by ;, added to each StatsD metric (i.e. service:web;env:prod)</li>
+ *     <li>sinkpolicy : What the mappedfile, segmentlog, prometheus and statsd persistence do with a sample when they
+ *                      have fallen behind: dropoldest (the default) or coalesce.  These persist the samples on their own
+ *                      threads ({@link AsyncFanOutProcessIOUsagePersistence}), so never delay the sampling.  Their lag
+ *                      and drop counts are registered under jmxdomainname:type={@value #SINKS_JMX_BEAN_NAME}</li>
+ *     <li>sinkqueue : The number of samples each of these persistence can fall behind before samples are dropped,
+ *                     defaults to {@value AsyncFanOutProcessIOUsagePersistence#DEFAULT_QUEUE_CAPACITY}</li>
+ *     <li>readthreshold : The read KB per second above which the bean sends a jmx notification (see
+ *                         {@link org.greencheek.processio.domain.jmx.ProcessIOUsageHolder}).  Can be changed at runtime</li>
+ *     <li>writethreshold : The write KB per second above which the bean sends a jmx notification.  Can be changed at
+ *                          runtime</li>
+ *     <li>thresholdduration : How long, in millis, the rate must stay above a threshold before the notification is
+ *                             sent.  Can be changed at runtime</li>
+ *     <li>burst : Enables the burstCapture operations of the bean, that capture the io counters at a high frequency
+ *                 for a short time ({@link BurstCapture}).  The value is the most samples a capture can hold, which are
+ *                 allocated at startup (i.e. 3000 for 30 seconds at 10ms).  A capture always reads the jvm's own
+ *                 /proc/PID/io, so does not include the io of its child processes when children is enabled</li>
+ *     <li>burstdir : The directory that the writeBurstCapture operation of the bean writes captures to.  The operation
+ *                    takes a file name, and rejects names that resolve to anywhere other than directly within this
+ *                    directory.  Without it, captures can only be read from the burstCapture attribute</li>
  * </ul>
  * </p>
  * <p>
@@ -66,11 +183,53 @@ public class ProcessIOAgent {
     private static final Pattern FREQUENCY_OPTION = Pattern.compile(".*frequency=(\\d+).*");
     private static final Pattern JMX_BEAN_NAME = Pattern.compile(".*jmxbeanname=(\\w+).*");
     private static final Pattern JMX_DOMAIN_NAME = Pattern.compile(".*jmxdomainname=([\\w\\.]+).*");
+    private static final Pattern READER_OPTION = Pattern.compile(".*reader=(\\w+).*");
+    private static final String CHANNEL_READER = "channel";
+    private static final Pattern THREADS_OPTION = Pattern.compile(".*threads=(\\d+).*");
+    private static final Pattern THREAD_FDS_OPTION = Pattern.compile(".*threadfds=(\\d+).*");
+    public static final String THREAD_JMX_BEAN_NAME = "threadiousage";
+    private static final Pattern CHILDREN_OPTION = Pattern.compile(".*children=(\\w+).*");
+    public static final String CHILD_JMX_BEAN_NAME = "childprocessiousage";
+    private static final Pattern CGROUP_OPTION = Pattern.compile(".*cgroup=(\\w+).*");
+    public static final String CGROUP_JMX_BEAN_NAME = "cgroupiousage";
+    public static final String CGROUP_DEVICES_JMX_BEAN_NAME = "cgroupdevices";
+    private static final Pattern DISKSTATS_OPTION = Pattern.compile(".*diskstats=(\\w+).*");
+    public static final String DISKSTATS_JMX_BEAN_NAME = "diskstats";
+    private static final Pattern PAGEFAULTS_OPTION = Pattern.compile(".*pagefaults=(\\w+).*");
+    private static final Pattern SMAPS_OPTION = Pattern.compile(".*smaps=(\\w+).*");
+    public static final String PAGEFAULT_JMX_BEAN_NAME = "pagefaults";
+    private static final Pattern IOWAIT_OPTION = Pattern.compile(".*iowait=(\\w+).*");
+    public static final String IOWAIT_JMX_BEAN_NAME = "iowait";
+    private static final Pattern CALLSITES_OPTION = Pattern.compile(".*callsites=(\\w+).*");
+    private static final Pattern CALLSITE_SAMPLE_OPTION = Pattern.compile(".*callsitesample=(\\d+).*");
+    public static final String CALLSITE_JMX_BEAN_NAME = "callsiteio";
+    private static final Pattern FILES_OPTION = Pattern.compile(".*files=(\\d+).*");
+    public static final String FILE_JMX_BEAN_NAME = "fileiousage";
+    private static final Pattern NETWORK_OPTION = Pattern.compile(".*network=(\\w+).*");
+    public static final String NETWORK_JMX_BEAN_NAME = "networkiousage";
+    private static final Pattern WINDOWS_OPTION = Pattern.compile(".*windows=([\\d:]+).*");
+    private static final Pattern ADAPTIVE_OPTION = Pattern.compile(".*adaptive=(\\d+):(\\d+).*");
+    public static final String ADAPTIVE_JMX_BEAN_NAME = "samplinginterval";
+    private static final Pattern MAPPED_FILE_OPTION = Pattern.compile(".*mappedfile=([^,]+).*");
+    private static final Pattern SEGMENT_LOG_OPTION = Pattern.compile(".*segmentlog=([^,]+).*");
+    private static final Pattern PROMETHEUS_OPTION = Pattern.compile(".*prometheus=(?:([\\w\\.\\-]+):)?(\\d+).*");
+    private static final Pattern STATSD_OPTION = Pattern.compile(".*statsd=([\\w\\.\\-]+):(\\d+).*");
+    private static final Pattern STATSD_PREFIX_OPTION = Pattern.compile(".*statsdprefix=([\\w\\.\\-]+).*");
+    private static final Pattern STATSD_TAGS_OPTION = Pattern.compile(".*statsdtags=([^,]+).*");
+    private static final Pattern SINK_POLICY_OPTION = Pattern.compile(".*sinkpolicy=(\\w+).*");
+    private static final String COALESCE_POLICY = "coalesce";
+    private static final Pattern SINK_QUEUE_OPTION = Pattern.compile(".*sinkqueue=(\\d+).*");
+    public static final String SINKS_JMX_BEAN_NAME = "persistencesinks";
+    private static final Pattern READ_THRESHOLD_OPTION = Pattern.compile(".*readthreshold=(\\d+(?:\\.\\d+)?).*");
+    private static final Pattern WRITE_THRESHOLD_OPTION = Pattern.compile(".*writethreshold=(\\d+(?:\\.\\d+)?).*");
+    private static final Pattern THRESHOLD_DURATION_OPTION = Pattern.compile(".*thresholdduration=(\\d+).*");
+    private static final Pattern BURST_OPTION = Pattern.compile(".*burst=(\\d+).*");
+    private static final Pattern BURST_DIRECTORY_OPTION = Pattern.compile(".*burstdir=([^,]+).*");
     private static final long DEFAULT_SCHEDULING_FREQUENCY = ProcessIOScheduler.DEFAULT_FREQUENCY_IN_MILLIS;
     private static final JVMProcessIdObtainer pidParser = new JMXJVMProcessIdObtainer();
-    private static final ProcessIOReader processIOReader;
-    private static volatile ProcessIOScheduler scheduler;
-    private static final ProcessIOUsage calculator = new BasicProcessIOUsage();
+    private static volatile ProcessIOReader processIOReader;
+    private static volatile SamplingProcessIOScheduler scheduler;
+    private static final ProcessIOUsage calculator = new ExponentiallyWeightedProcessIOUsage();
     private static volatile ProcessIOUsagePersistence persistence;
 
 	private static final int CURRENT_JVM_PID;
@@ -94,7 +253,34 @@ public class ProcessIOAgent {
             log.error("Unabled to Determine pid for current jvm process to agent has no effect");
         } else {
             String beanName = null;
-            String domainName = null;
+            String domainName = ProcessIOUsagePersistenceViaJmx.DEFAULT_JMX_DOMAIN_NAME;
+            int topThreads = 0;
+            int maxOpenThreadFiles = ReusableProcFileBuffer.DEFAULT_MAX_OPEN_CHANNELS;
+            boolean includeChildren = false;
+            boolean includeCgroup = false;
+            boolean includeDiskStats = false;
+            boolean includePageFaults = false;
+            boolean includeSmaps = false;
+            boolean includeIOWait = false;
+            boolean includeCallSites = false;
+            int callSiteSampleEvery = CallSiteIORecorder.DEFAULT_SAMPLE_EVERY_CALLS;
+            int topFiles = 0;
+            boolean includeNetwork = false;
+            long[] windowsInMillis = ProcessIOHistory.DEFAULT_WINDOWS_IN_MILLIS;
+            AdaptiveSamplingInterval adaptiveInterval = null;
+            List<ProcessIOUsagePersistence> additionalPersistence = new ArrayList<ProcessIOUsagePersistence>();
+            InetSocketAddress prometheusAddress = null;
+            InetSocketAddress statsdAddress = null;
+            String statsdPrefix = ProcessIOUsagePersistenceViaStatsD.DEFAULT_PREFIX;
+            String statsdTags = null;
+            OverflowPolicy sinkPolicy = OverflowPolicy.DROP_OLDEST;
+            int sinkQueueCapacity = AsyncFanOutProcessIOUsagePersistence.DEFAULT_QUEUE_CAPACITY;
+            double readThreshold = 0;
+            double writeThreshold = 0;
+            long thresholdDuration = -1;
+            int burstCapacity = 0;
+            File burstDirectory = null;
+            ProcessIOUsagePersistenceViaJmx jmxPersistence;
 
             long frequencyOfScheduler = DEFAULT_SCHEDULING_FREQUENCY;
             if(arglist!=null && arglist.trim().length()>0) {
@@ -114,22 +300,317 @@ public class ProcessIOAgent {
                 m = JMX_DOMAIN_NAME.matcher(arglist);
                 if(m.matches()) domainName = m.group(1);
 
+                m = THREADS_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        topThreads = Integer.parseInt(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = THREAD_FDS_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        maxOpenThreadFiles = Integer.parseInt(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = CHILDREN_OPTION.matcher(arglist);
+                if(m.matches()) includeChildren = Boolean.parseBoolean(m.group(1));
+
+                m = CGROUP_OPTION.matcher(arglist);
+                if(m.matches()) includeCgroup = Boolean.parseBoolean(m.group(1));
+
+                m = DISKSTATS_OPTION.matcher(arglist);
+                if(m.matches()) includeDiskStats = Boolean.parseBoolean(m.group(1));
+
+                m = PAGEFAULTS_OPTION.matcher(arglist);
+                if(m.matches()) includePageFaults = Boolean.parseBoolean(m.group(1));
+
+                m = SMAPS_OPTION.matcher(arglist);
+                if(m.matches()) includeSmaps = Boolean.parseBoolean(m.group(1));
+
+                m = IOWAIT_OPTION.matcher(arglist);
+                if(m.matches()) includeIOWait = Boolean.parseBoolean(m.group(1));
+
+                m = CALLSITES_OPTION.matcher(arglist);
+                if(m.matches()) includeCallSites = Boolean.parseBoolean(m.group(1));
+
+                m = CALLSITE_SAMPLE_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        callSiteSampleEvery = Integer.parseInt(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = FILES_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        topFiles = Integer.parseInt(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = NETWORK_OPTION.matcher(arglist);
+                if(m.matches()) includeNetwork = Boolean.parseBoolean(m.group(1));
+
+                m = WINDOWS_OPTION.matcher(arglist);
+                if(m.matches()) windowsInMillis = parseWindows(m.group(1),windowsInMillis);
+
+                m = ADAPTIVE_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        adaptiveInterval = new AdaptiveSamplingInterval(Long.parseLong(m.group(1)),Long.parseLong(m.group(2)));
+                    } catch(NumberFormatException e) {
+                    } catch(IllegalArgumentException e) {
+                        log.warn("Ignoring adaptive option: {}",e.getMessage());
+                    }
+                }
+
+                m = MAPPED_FILE_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    additionalPersistence.add(new ProcessIOUsagePersistenceViaMappedFile(new File(m.group(1).trim()),
+                            CURRENT_JVM_PID,new ExponentiallyWeightedProcessIOUsage()));
+                }
+
+                m = SEGMENT_LOG_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    additionalPersistence.add(new ProcessIOUsagePersistenceViaSegmentLog(new File(m.group(1).trim())));
+                }
+
+                m = PROMETHEUS_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        int port = Integer.parseInt(m.group(2));
+                        prometheusAddress = m.group(1)==null ? new InetSocketAddress(port) : new InetSocketAddress(m.group(1),port);
+                    } catch(NumberFormatException e) {
+                    } catch(IllegalArgumentException e) {
+                        log.warn("Ignoring prometheus option: {}",e.getMessage());
+                    }
+                }
+
+                m = STATSD_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        statsdAddress = new InetSocketAddress(m.group(1),Integer.parseInt(m.group(2)));
+                    } catch(NumberFormatException e) {
+                    } catch(IllegalArgumentException e) {
+                        log.warn("Ignoring statsd option: {}",e.getMessage());
+                    }
+                }
+
+                m = STATSD_PREFIX_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    statsdPrefix = m.group(1);
+                }
+
+                m = STATSD_TAGS_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    statsdTags = m.group(1).trim().replace(';',',');
+                }
+
+                m = SINK_POLICY_OPTION.matcher(arglist);
+                if(m.matches() && COALESCE_POLICY.equals(m.group(1))) {
+                    sinkPolicy = OverflowPolicy.COALESCE_LATEST;
+                }
+
+                m = SINK_QUEUE_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        sinkQueueCapacity = Integer.parseInt(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = READ_THRESHOLD_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    readThreshold = Double.parseDouble(m.group(1));
+                }
+
+                m = WRITE_THRESHOLD_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    writeThreshold = Double.parseDouble(m.group(1));
+                }
+
+                m = THRESHOLD_DURATION_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        thresholdDuration = Long.parseLong(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = BURST_OPTION.matcher(arglist);
+                if(m.matches()) {
+                    try {
+                        burstCapacity = Integer.parseInt(m.group(1));
+                    } catch(NumberFormatException e) {}
+                }
+
+                m = BURST_DIRECTORY_OPTION.matcher(arglist);
+                if(m.matches()) burstDirectory = new File(m.group(1).trim());
+
+                m = READER_OPTION.matcher(arglist);
+                if(m.matches() && CHANNEL_READER.equals(m.group(1))) {
+                    processIOReader = new FileChannelProcIOProcessIOReader(CURRENT_JVM_PID);
+                }
+
                 if(beanName == null || beanName.trim().length()==0) beanName = ProcessIOUsagePersistenceViaJmx.DEFAULT_JMX_BEAN_NAME;
                 if(domainName == null || domainName.trim().length()==0) domainName = ProcessIOUsagePersistenceViaJmx.DEFAULT_JMX_DOMAIN_NAME;
-                persistence = new ProcessIOUsagePersistenceViaJmx(calculator,domainName,beanName);
+                // the history holds enough samples for the windows at the shortest interval
+                long shortestInterval = adaptiveInterval==null ? frequencyOfScheduler : adaptiveInterval.getMinIntervalMillis();
+                jmxPersistence = new ProcessIOUsagePersistenceViaJmx(calculator,
+                        new ProcessIOHistory(windowsInMillis,shortestInterval),domainName,beanName);
+            } else {
+                jmxPersistence = new ProcessIOUsagePersistenceViaJmx(calculator);
+            }
+            persistence = jmxPersistence;
+
+            ProcessIOUsageMXBean holder = jmxPersistence.getProcessIOUsageHolder();
+            if(readThreshold>0) holder.setReadThresholdKbPerSecond(readThreshold);
+            if(writeThreshold>0) holder.setWriteThresholdKbPerSecond(writeThreshold);
+            if(thresholdDuration>=0) holder.setThresholdMinimumDurationMillis(thresholdDuration);
+
+            if(prometheusAddress!=null) {
+                // renders the holder, so is persisted to after the jmx persistence has updated it
+                additionalPersistence.add(new ProcessIOUsagePersistenceViaPrometheus(jmxPersistence.getProcessIOUsageHolder(),prometheusAddress));
+            }
+
+            if(statsdAddress!=null) {
+                // sends the holder's values, so is persisted to after the jmx persistence has updated it
+                additionalPersistence.add(new ProcessIOUsagePersistenceViaStatsD(jmxPersistence.getProcessIOUsageHolder(),statsdAddress,
+                        statsdPrefix,statsdTags,ProcessIOUsagePersistenceViaStatsD.DEFAULT_MAX_PACKET_SIZE));
+            }
+
+            AsyncFanOutProcessIOUsagePersistence sinks = null;
+            if(!additionalPersistence.isEmpty()) {
+                // the holder is updated on the scheduler's thread, the other persistence on their own threads
+                sinks = new AsyncFanOutProcessIOUsagePersistence(sinkPolicy,sinkQueueCapacity,
+                        additionalPersistence.toArray(new ProcessIOUsagePersistence[additionalPersistence.size()]));
+                persistence = new CompositeProcessIOUsagePersistence(persistence,sinks);
+            }
+
+            persistence.init();
+
+            if(sinks!=null) {
+                MXBeanRegistration.register(new PersistenceSinksHolder(sinks),domainName,SINKS_JMX_BEAN_NAME);
+            }
+
+            if(includeChildren) {
+                processIOReader = new ProcessTreeProcIOProcessIOReader(processIOReader,CURRENT_JVM_PID,
+                        new ProcessIOUsagePersistenceViaJmx(new ExponentiallyWeightedProcessIOUsage(),domainName,CHILD_JMX_BEAN_NAME));
+            }
+
+            ScheduledExecutorServiceProcessIOScheduler executorScheduler;
+            if(adaptiveInterval==null) {
+                executorScheduler = new ScheduledExecutorServiceProcessIOScheduler(processIOReader,persistence);
             } else {
-                persistence = new ProcessIOUsagePersistenceViaJmx(calculator);
+                executorScheduler = new ScheduledExecutorServiceProcessIOScheduler(processIOReader,persistence,adaptiveInterval);
+                MXBeanRegistration.register(new AdaptiveSamplingHolder(adaptiveInterval),domainName,ADAPTIVE_JMX_BEAN_NAME);
+            }
+            scheduler = executorScheduler;
+
+            if(topThreads>0) {
+                ProcTaskThreadIOReader threadIOReader = new ProcTaskThreadIOReader(CURRENT_JVM_PID,includeIOWait,maxOpenThreadFiles);
+                scheduler.addSampler(threadIOReader);
+                MXBeanRegistration.register(new ThreadIOUsageHolder(threadIOReader,topThreads),domainName,THREAD_JMX_BEAN_NAME);
+            }
+
+            if(includeCallSites) {
+                CallSiteIOInstrumentation callSites = CallSiteIOInstrumentation.install(inst,callSiteSampleEvery);
+                if(callSites!=null) {
+                    MXBeanRegistration.register(new CallSiteIOHolder(callSites),domainName,CALLSITE_JMX_BEAN_NAME);
+                }
+            }
+
+            if(topFiles>0) {
+                OpenFileIOReader fileIOReader = new OpenFileIOReader(CURRENT_JVM_PID);
+                scheduler.addSampler(fileIOReader);
+                MXBeanRegistration.register(new FileIOUsageHolder(fileIOReader,topFiles),domainName,FILE_JMX_BEAN_NAME);
+            }
+
+            if(includeNetwork) {
+                NetworkIOReader networkReader = new NetworkIOReader(CURRENT_JVM_PID);
+                scheduler.addSampler(networkReader);
+                MXBeanRegistration.register(new NetworkIOUsageHolder(networkReader),domainName,NETWORK_JMX_BEAN_NAME);
+            }
+
+            if(includeCgroup) {
+                CgroupIOStatReader cgroupReader = new CgroupIOStatReader();
+                if(cgroupReader.getCgroupDirectory()==null) {
+                    log.warn("Unable to find the cgroup v2 directory of the jvm, cgroup io will not be sampled");
+                } else {
+                    scheduler.addSampler(new ProcessIOReaderSampler(cgroupReader,
+                            new ProcessIOUsagePersistenceViaJmx(new ExponentiallyWeightedProcessIOUsage(),domainName,CGROUP_JMX_BEAN_NAME)));
+                    MXBeanRegistration.register(new CgroupIOUsageHolder(cgroupReader),domainName,CGROUP_DEVICES_JMX_BEAN_NAME);
+                }
             }
 
+            if(includeDiskStats) {
+                // run after the process io is read, so the process share is of the same tick
+                DiskStatsReader diskStatsReader = new DiskStatsReader(holder);
+                scheduler.addSampler(diskStatsReader);
+                MXBeanRegistration.register(new DiskStatsHolder(diskStatsReader),domainName,DISKSTATS_JMX_BEAN_NAME);
+            }
+
+            if(includePageFaults) {
+                PageFaultReader pageFaultReader = new PageFaultReader(CURRENT_JVM_PID,holder,includeSmaps);
+                scheduler.addSampler(pageFaultReader);
+                MXBeanRegistration.register(new PageFaultHolder(pageFaultReader),domainName,PAGEFAULT_JMX_BEAN_NAME);
+            }
 
-            scheduler = new ScheduledExecutorServiceProcessIOScheduler(processIOReader,persistence);
+            if(includeIOWait) {
+                IOWaitReader ioWaitReader = new IOWaitReader(CURRENT_JVM_PID,holder);
+                scheduler.addSampler(ioWaitReader);
+                IOWaitHolder ioWaitHolder = new IOWaitHolder(ioWaitReader);
+                if(!ioWaitHolder.isDelayAccountingEnabled()) {
+                    log.warn("Delay accounting is disabled in the kernel (sysctl kernel.task_delayacct=0), io wait will be 0");
+                }
+                MXBeanRegistration.register(ioWaitHolder,domainName,IOWAIT_JMX_BEAN_NAME);
+            }
+
+            if(burstCapacity>0) {
+                // always the jvm's own counters, walking the process tree at the burst frequency would cost too much
+                BurstCapture burstCapture = new BurstCapture(new FileChannelProcIOProcessIOReader(CURRENT_JVM_PID),burstCapacity);
+                if(includeChildren) {
+                    log.warn("Burst captures read only the jvm's own /proc/{}/io, not the io of its child processes that the {} bean includes",
+                            CURRENT_JVM_PID,beanName);
+                }
+                burstCapture.setScheduler(executorScheduler);
+                jmxPersistence.getProcessIOUsageHolder().setBurstCapture(burstCapture);
+                if(burstDirectory!=null && !jmxPersistence.getProcessIOUsageHolder().setBurstCaptureDirectory(burstDirectory)) {
+                    log.warn("The burst capture directory {} does not exist, captures cannot be written to files",burstDirectory);
+                }
+            }
 
             scheduler.start(frequencyOfScheduler);
 
 
-            log.info("ProcessIOAgent Running, io will be obtain every {}ms",frequencyOfScheduler);
+            if(adaptiveInterval==null) {
+                log.info("ProcessIOAgent Running, io will be obtain every {}ms",frequencyOfScheduler);
+            } else {
+                log.info("ProcessIOAgent Running, io will be obtain every {}ms to {}ms",
+                        adaptiveInterval.getMinIntervalMillis(),adaptiveInterval.getMaxIntervalMillis());
+            }
         }
     }
+
+    /**
+     * Parses the ':' separated windows, in seconds, returning them in millis.  If none are valid the
+     * given defaults are returned.
+     */
+    private static long[] parseWindows(String windows, long[] defaults) {
+        String[] seconds = windows.split(":");
+        long[] millis = new long[seconds.length];
+        int parsed = 0;
+        for(String second : seconds) {
+            try {
+                long value = Long.parseLong(second);
+                if(value>0) millis[parsed++] = value*1000;
+            } catch(NumberFormatException e) {}
+        }
+        if(parsed==0) return defaults;
+
+        long[] result = new long[parsed];
+        System.arraycopy(millis,0,result,0,parsed);
+        return result;
+    }
     
     
 
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.io.File;
+
+/**
+ * <p>
+ * The operations of a high frequency capture of the io counters, that the
+ * {@link org.greencheek.processio.domain.jmx.ProcessIOUsageHolder}'s burst capture operations delegate to.  So that
+ * the holder does not depend on the scheduler that runs the capture
+ * (see {@link org.greencheek.processio.service.scheduler.BurstCapture}).
+ * </p>
+ */
+public interface BurstCaptureOperations {
+
+    /**
+     * Starts a capture, replacing the samples of the previous one.
+     *
+     * @param intervalMillis The interval between the samples of the capture
+     * @param durationMillis How long to capture for
+     * @return false if the capture could not be started, i.e. one is already running
+     */
+    boolean start(long intervalMillis, long durationMillis);
+
+    /**
+     * Returns true while a capture is running
+     */
+    boolean isRunning();
+
+    /**
+     * Returns the samples of the current, or last, capture
+     */
+    long[] getCapture();
+
+    /**
+     * Writes the samples of the current, or last, capture to the given file
+     *
+     * @return false if the file could not be written
+     */
+    boolean writeTo(File file);
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * The io bytes attributed to a call site (the class and method of the first frame, outside of the jdk, on the stack of
+ * a call to an io method of the jdk) since the given time.  The attribution is sampled: 1 in N io calls is attributed,
+ * with its bytes multiplied by N, so the bytes are an estimate that converges as the calls of the call site increase.
+ * </p>
+ */
+public class CallSiteIO {
+
+    private final String callSite;
+    private final long bytes;
+    private final long samples;
+    private final double percentOfAttributedBytes;
+    private final long sinceMillis;
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the CallSiteIO object.
+     *
+     * @param callSite The call site, as class.method
+     * @param bytes The read and write bytes attributed to the call site
+     * @param samples The number of io calls of the call site that were attributed
+     * @param percentOfAttributedBytes The call site's bytes as a percentage of the bytes attributed to all call sites
+     * @param sinceMillis The time from which the bytes have been attributed
+     */
+    @ConstructorProperties({"callSite","bytes","samples","percentOfAttributedBytes","sinceMillis"})
+    public CallSiteIO(String callSite, long bytes, long samples, double percentOfAttributedBytes, long sinceMillis) {
+        this.callSite = callSite;
+        this.bytes = bytes;
+        this.samples = samples;
+        this.percentOfAttributedBytes = percentOfAttributedBytes;
+        this.sinceMillis = sinceMillis;
+    }
+
+    /**
+     * Returns the call site, as class.method (i.e. com.example.store.SegmentWriter.flush)
+     */
+    public String getCallSite() {
+        return callSite;
+    }
+
+    /**
+     * Returns the read and write bytes attributed to the call site
+     */
+    public long getBytes() {
+        return bytes;
+    }
+
+    /**
+     * Returns the number of io calls of the call site that were attributed
+     */
+    public long getSamples() {
+        return samples;
+    }
+
+    /**
+     * Returns the call site's bytes as a percentage, 0 to 100, of the bytes attributed to all call sites
+     */
+    public double getPercentOfAttributedBytes() {
+        return percentOfAttributedBytes;
+    }
+
+    /**
+     * Returns the time, in millis, from which the bytes have been attributed
+     */
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+}
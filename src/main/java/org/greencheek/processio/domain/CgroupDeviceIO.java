@@ -0,0 +1,165 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * The io the jvm's cgroup has performed on a single block device, as read from the cgroup v2 io.stat file, along
+ * with the rates between the last two samples and the device's limits from the io.max file.  A limit of
+ * {@link #NO_LIMIT} means the device is not limited.
+ * </p>
+ * <p>
+ * The limit utilisation is the highest fraction of any of the limits (read or write bytes or ios per second) used by
+ * the rates between the last two samples, i.e. 0.9 means the cgroup is within 10% of being throttled on the device.
+ * </p>
+ */
+public class CgroupDeviceIO {
+
+    public static final long NO_LIMIT = 0;
+
+    private final String device;
+    private final long readBytes;
+    private final long writeBytes;
+    private final long readIos;
+    private final long writeIos;
+    private final long discardBytes;
+    private final double sampleTimeKbPerSecondReadIO;
+    private final double sampleTimeKbPerSecondWriteIO;
+    private final double sampleTimeReadIosPerSecond;
+    private final double sampleTimeWriteIosPerSecond;
+    private final long readBytesPerSecondLimit;
+    private final long writeBytesPerSecondLimit;
+    private final long readIosPerSecondLimit;
+    private final long writeIosPerSecondLimit;
+    private final double limitUtilisation;
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the CgroupDeviceIO object.
+     *
+     * @param device The device, as major:minor
+     * @param readBytes The rbytes the cgroup has read from the device
+     * @param writeBytes The wbytes the cgroup has written to the device
+     * @param readIos The rios the cgroup has performed on the device
+     * @param writeIos The wios the cgroup has performed on the device
+     * @param discardBytes The dbytes the cgroup has discarded on the device
+     * @param sampleTimeKbPerSecondReadIO The read KB per second between the last two samples
+     * @param sampleTimeKbPerSecondWriteIO The write KB per second between the last two samples
+     * @param sampleTimeReadIosPerSecond The read ios per second between the last two samples
+     * @param sampleTimeWriteIosPerSecond The write ios per second between the last two samples
+     * @param readBytesPerSecondLimit The rbps limit, or {@link #NO_LIMIT}
+     * @param writeBytesPerSecondLimit The wbps limit, or {@link #NO_LIMIT}
+     * @param readIosPerSecondLimit The riops limit, or {@link #NO_LIMIT}
+     * @param writeIosPerSecondLimit The wiops limit, or {@link #NO_LIMIT}
+     * @param limitUtilisation The highest fraction of a limit used between the last two samples
+     */
+    @ConstructorProperties({"device","readBytes","writeBytes","readIos","writeIos","discardBytes",
+                            "sampleTimeKbPerSecondReadIO","sampleTimeKbPerSecondWriteIO",
+                            "sampleTimeReadIosPerSecond","sampleTimeWriteIosPerSecond",
+                            "readBytesPerSecondLimit","writeBytesPerSecondLimit",
+                            "readIosPerSecondLimit","writeIosPerSecondLimit","limitUtilisation"})
+    public CgroupDeviceIO(String device, long readBytes, long writeBytes, long readIos, long writeIos,
+                          long discardBytes,
+                          double sampleTimeKbPerSecondReadIO, double sampleTimeKbPerSecondWriteIO,
+                          double sampleTimeReadIosPerSecond, double sampleTimeWriteIosPerSecond,
+                          long readBytesPerSecondLimit, long writeBytesPerSecondLimit,
+                          long readIosPerSecondLimit, long writeIosPerSecondLimit,
+                          double limitUtilisation) {
+        this.device = device;
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+        this.readIos = readIos;
+        this.writeIos = writeIos;
+        this.discardBytes = discardBytes;
+        this.sampleTimeKbPerSecondReadIO = sampleTimeKbPerSecondReadIO;
+        this.sampleTimeKbPerSecondWriteIO = sampleTimeKbPerSecondWriteIO;
+        this.sampleTimeReadIosPerSecond = sampleTimeReadIosPerSecond;
+        this.sampleTimeWriteIosPerSecond = sampleTimeWriteIosPerSecond;
+        this.readBytesPerSecondLimit = readBytesPerSecondLimit;
+        this.writeBytesPerSecondLimit = writeBytesPerSecondLimit;
+        this.readIosPerSecondLimit = readIosPerSecondLimit;
+        this.writeIosPerSecondLimit = writeIosPerSecondLimit;
+        this.limitUtilisation = limitUtilisation;
+    }
+
+    /**
+     * Returns the device, as major:minor (i.e. 8:0)
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getWriteBytes() {
+        return writeBytes;
+    }
+
+    public long getReadIos() {
+        return readIos;
+    }
+
+    public long getWriteIos() {
+        return writeIos;
+    }
+
+    public long getDiscardBytes() {
+        return discardBytes;
+    }
+
+    public double getSampleTimeKbPerSecondReadIO() {
+        return sampleTimeKbPerSecondReadIO;
+    }
+
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return sampleTimeKbPerSecondWriteIO;
+    }
+
+    public double getSampleTimeReadIosPerSecond() {
+        return sampleTimeReadIosPerSecond;
+    }
+
+    public double getSampleTimeWriteIosPerSecond() {
+        return sampleTimeWriteIosPerSecond;
+    }
+
+    public long getReadBytesPerSecondLimit() {
+        return readBytesPerSecondLimit;
+    }
+
+    public long getWriteBytesPerSecondLimit() {
+        return writeBytesPerSecondLimit;
+    }
+
+    public long getReadIosPerSecondLimit() {
+        return readIosPerSecondLimit;
+    }
+
+    public long getWriteIosPerSecondLimit() {
+        return writeIosPerSecondLimit;
+    }
+
+    /**
+     * Returns the highest fraction of any of the device's limits used between the last two samples, or 0 if the
+     * device is not limited
+     */
+    public double getLimitUtilisation() {
+        return limitUtilisation;
+    }
+}
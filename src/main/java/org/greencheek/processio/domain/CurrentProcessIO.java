@@ -18,7 +18,9 @@ package org.greencheek.processio.domain;
 /**
  * Stores the current io that has been recorded for the given process.
  * Stores the time the io numbers were obtained, the amount of read io the process has done,
- * and the amount of write io.
+ * and the amount of write io.  Along with the other counters found in /proc/PID/io: the number of bytes
+ * the process has asked to be read or written (rchar and wchar, which includes io served from the page cache),
+ * the number of read and write syscalls (syscr and syscw), and the cancelled_write_bytes.
  * <p>
  * User: dominictootell
  * Date: 22/04/2012
@@ -30,11 +32,38 @@ public class CurrentProcessIO {
     private final long currentSampleTimeInMillis;
     private final long currentReadBytes;
     private final long currentWriteBytes;
+    private final long currentReadChars;
+    private final long currentWriteChars;
+    private final long currentReadSyscalls;
+    private final long currentWriteSyscalls;
+    private final long currentCancelledWriteBytes;
 
     public CurrentProcessIO(long millis,long readBytes, long writeBytes) {
+       this(millis,readBytes,writeBytes,0,0,0,0,0);
+    }
+
+    /**
+     * @param millis The time the io values were read
+     * @param readBytes read_bytes: bytes the process caused to be fetched from the storage layer
+     * @param writeBytes write_bytes: bytes the process caused to be sent to the storage layer
+     * @param readChars rchar: bytes the process asked to be read, including those served from the page cache
+     * @param writeChars wchar: bytes the process asked to be written
+     * @param readSyscalls syscr: the number of read syscalls
+     * @param writeSyscalls syscw: the number of write syscalls
+     * @param cancelledWriteBytes cancelled_write_bytes: bytes that were written, but later truncated before reaching storage
+     */
+    public CurrentProcessIO(long millis,long readBytes, long writeBytes,
+                            long readChars, long writeChars,
+                            long readSyscalls, long writeSyscalls,
+                            long cancelledWriteBytes) {
        currentSampleTimeInMillis = millis;
        currentReadBytes = readBytes;
        currentWriteBytes = writeBytes;
+       currentReadChars = readChars;
+       currentWriteChars = writeChars;
+       currentReadSyscalls = readSyscalls;
+       currentWriteSyscalls = writeSyscalls;
+       currentCancelledWriteBytes = cancelledWriteBytes;
     }
 
     /**
@@ -60,4 +89,47 @@ public class CurrentProcessIO {
     public long getCurrentWriteBytes() {
         return currentWriteBytes;
     }
+
+    /**
+     * Returns the number of bytes the process has asked to be read (rchar), including reads served from the page cache,
+     * as captured at {@link #getCurrentSampleTimeInMillis()}
+     * @return
+     */
+    public long getCurrentReadChars() {
+        return currentReadChars;
+    }
+
+    /**
+     * Returns the number of bytes the process has asked to be written (wchar),
+     * as captured at {@link #getCurrentSampleTimeInMillis()}
+     * @return
+     */
+    public long getCurrentWriteChars() {
+        return currentWriteChars;
+    }
+
+    /**
+     * Returns the number of read syscalls (syscr) the process has made, as captured at {@link #getCurrentSampleTimeInMillis()}
+     * @return
+     */
+    public long getCurrentReadSyscalls() {
+        return currentReadSyscalls;
+    }
+
+    /**
+     * Returns the number of write syscalls (syscw) the process has made, as captured at {@link #getCurrentSampleTimeInMillis()}
+     * @return
+     */
+    public long getCurrentWriteSyscalls() {
+        return currentWriteSyscalls;
+    }
+
+    /**
+     * Returns the number of written bytes that never reached the storage layer, due to truncation (cancelled_write_bytes),
+     * as captured at {@link #getCurrentSampleTimeInMillis()}
+     * @return
+     */
+    public long getCurrentCancelledWriteBytes() {
+        return currentCancelledWriteBytes;
+    }
 }
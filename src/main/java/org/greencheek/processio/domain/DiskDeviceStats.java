@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * How busy a single block device is, as read from /proc/diskstats, over the interval between the last two samples:
+ * <ul>
+ *     <li>utilisation: the percentage of the interval the device had io in flight</li>
+ *     <li>await: the average millis each completed read or write took, including the time queued</li>
+ *     <li>queue depth: the average number of ios in flight over the interval</li>
+ *     <li>the read and write ios, and KB, per second</li>
+ * </ul>
+ * </p>
+ * <p>
+ * The process share is the process's read and write bytes per second (from /proc/PID/io), as a fraction of the
+ * device's, over the same interval.  /proc/PID/io does not say which device the process's io went to, so the share
+ * is the fraction of the device's io the process would account for if all of its io went to the device; it is capped
+ * at 1.  A device at 100% utilisation with a share near 1 is being saturated by the jvm; with a share near 0, by
+ * something else.
+ * </p>
+ */
+public class DiskDeviceStats {
+
+    private final String device;
+    private final String name;
+    private final long readsCompleted;
+    private final long writesCompleted;
+    private final long readBytes;
+    private final long writeBytes;
+    private final long iosInProgress;
+    private final double utilisationPercent;
+    private final double averageAwaitMillis;
+    private final double averageQueueDepth;
+    private final double readIosPerSecond;
+    private final double writeIosPerSecond;
+    private final double sampleTimeKbPerSecondReadIO;
+    private final double sampleTimeKbPerSecondWriteIO;
+    private final double processShare;
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the DiskDeviceStats object.
+     *
+     * @param device The device, as major:minor
+     * @param name The device's name, i.e. sda or nvme0n1
+     * @param readsCompleted The reads completed on the device
+     * @param writesCompleted The writes completed on the device
+     * @param readBytes The bytes read from the device
+     * @param writeBytes The bytes written to the device
+     * @param iosInProgress The ios in flight when the device was last sampled
+     * @param utilisationPercent The percentage of the interval the device had io in flight
+     * @param averageAwaitMillis The average millis taken by each read or write completed in the interval
+     * @param averageQueueDepth The average number of ios in flight over the interval
+     * @param readIosPerSecond The reads completed per second
+     * @param writeIosPerSecond The writes completed per second
+     * @param sampleTimeKbPerSecondReadIO The KB read per second
+     * @param sampleTimeKbPerSecondWriteIO The KB written per second
+     * @param processShare The process's bytes per second as a fraction of the device's, between 0 and 1
+     */
+    @ConstructorProperties({"device","name","readsCompleted","writesCompleted","readBytes","writeBytes",
+                            "iosInProgress","utilisationPercent","averageAwaitMillis","averageQueueDepth",
+                            "readIosPerSecond","writeIosPerSecond",
+                            "sampleTimeKbPerSecondReadIO","sampleTimeKbPerSecondWriteIO","processShare"})
+    public DiskDeviceStats(String device, String name, long readsCompleted, long writesCompleted,
+                           long readBytes, long writeBytes, long iosInProgress,
+                           double utilisationPercent, double averageAwaitMillis, double averageQueueDepth,
+                           double readIosPerSecond, double writeIosPerSecond,
+                           double sampleTimeKbPerSecondReadIO, double sampleTimeKbPerSecondWriteIO,
+                           double processShare) {
+        this.device = device;
+        this.name = name;
+        this.readsCompleted = readsCompleted;
+        this.writesCompleted = writesCompleted;
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+        this.iosInProgress = iosInProgress;
+        this.utilisationPercent = utilisationPercent;
+        this.averageAwaitMillis = averageAwaitMillis;
+        this.averageQueueDepth = averageQueueDepth;
+        this.readIosPerSecond = readIosPerSecond;
+        this.writeIosPerSecond = writeIosPerSecond;
+        this.sampleTimeKbPerSecondReadIO = sampleTimeKbPerSecondReadIO;
+        this.sampleTimeKbPerSecondWriteIO = sampleTimeKbPerSecondWriteIO;
+        this.processShare = processShare;
+    }
+
+    /**
+     * Returns the device, as major:minor (i.e. 8:0)
+     */
+    public String getDevice() {
+        return device;
+    }
+
+    /**
+     * Returns the device's name, i.e. sda
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getReadsCompleted() {
+        return readsCompleted;
+    }
+
+    public long getWritesCompleted() {
+        return writesCompleted;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getWriteBytes() {
+        return writeBytes;
+    }
+
+    public long getIosInProgress() {
+        return iosInProgress;
+    }
+
+    /**
+     * Returns the percentage, 0 to 100, of the interval between the last two samples the device had io in flight
+     */
+    public double getUtilisationPercent() {
+        return utilisationPercent;
+    }
+
+    /**
+     * Returns the average millis taken, including queueing, by each read or write completed between the last two samples
+     */
+    public double getAverageAwaitMillis() {
+        return averageAwaitMillis;
+    }
+
+    /**
+     * Returns the average number of ios in flight between the last two samples
+     */
+    public double getAverageQueueDepth() {
+        return averageQueueDepth;
+    }
+
+    public double getReadIosPerSecond() {
+        return readIosPerSecond;
+    }
+
+    public double getWriteIosPerSecond() {
+        return writeIosPerSecond;
+    }
+
+    public double getSampleTimeKbPerSecondReadIO() {
+        return sampleTimeKbPerSecondReadIO;
+    }
+
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return sampleTimeKbPerSecondWriteIO;
+    }
+
+    /**
+     * Returns the process's read and write bytes per second as a fraction, 0 to 1, of the device's
+     */
+    public double getProcessShare() {
+        return processShare;
+    }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * The approximate throughput of a single file the process has open, from how far the file descriptor's position (the
+ * pos of /proc/PID/fdinfo/FD) moved between the last two samples.  The position only moves for read() and write()
+ * calls, so the io of positional reads and writes (FileChannel.read(buffer,position)) and of memory mapped files is
+ * not seen; and a seek is counted as io.  Whether the io was a read or a write follows from the access mode the
+ * file was opened with.
+ * </p>
+ */
+public class FileIO {
+
+    private final int fileDescriptor;
+    private final String path;
+    private final long inode;
+    private final String accessMode;
+    private final long position;
+    private final long bytesMoved;
+    private final double sampleTimeKbPerSecond;
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the FileIO object.
+     *
+     * @param fileDescriptor The file descriptor
+     * @param path The path of the file
+     * @param inode The file's inode, or 0 if the kernel does not report it
+     * @param accessMode The mode the file was opened with: "r", "w" or "rw"
+     * @param position The file descriptor's current position
+     * @param bytesMoved The bytes the position has moved forward since the file descriptor was first seen
+     * @param sampleTimeKbPerSecond The KB per second the position moved between the last two samples
+     */
+    @ConstructorProperties({"fileDescriptor","path","inode","accessMode","position","bytesMoved","sampleTimeKbPerSecond"})
+    public FileIO(int fileDescriptor, String path, long inode, String accessMode,
+                  long position, long bytesMoved, double sampleTimeKbPerSecond) {
+        this.fileDescriptor = fileDescriptor;
+        this.path = path;
+        this.inode = inode;
+        this.accessMode = accessMode;
+        this.position = position;
+        this.bytesMoved = bytesMoved;
+        this.sampleTimeKbPerSecond = sampleTimeKbPerSecond;
+    }
+
+    public int getFileDescriptor() {
+        return fileDescriptor;
+    }
+
+    /**
+     * Returns the path of the file, as linked from /proc/PID/fd/FD
+     */
+    public String getPath() {
+        return path;
+    }
+
+    /**
+     * Returns the file's inode, or 0 if the kernel does not report it in fdinfo
+     */
+    public long getInode() {
+        return inode;
+    }
+
+    /**
+     * Returns the mode the file was opened with: "r", "w" or "rw"
+     */
+    public String getAccessMode() {
+        return accessMode;
+    }
+
+    public long getPosition() {
+        return position;
+    }
+
+    /**
+     * Returns the bytes the position has moved forward since the file descriptor was first seen
+     */
+    public long getBytesMoved() {
+        return bytesMoved;
+    }
+
+    /**
+     * Returns the KB per second the position moved forward between the last two samples
+     */
+    public double getSampleTimeKbPerSecond() {
+        return sampleTimeKbPerSecond;
+    }
+}
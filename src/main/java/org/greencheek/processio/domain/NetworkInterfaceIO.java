@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * The bytes, packets and drops received and transmitted by a single network interface, as read from /proc/PID/net/dev,
+ * along with the rates between the last two samples.  The counters are those of the interface in the process's
+ * network namespace; so in a container they are the container's, and otherwise the host's.
+ * </p>
+ */
+public class NetworkInterfaceIO {
+
+    private final String name;
+    private final long receivedBytes;
+    private final long transmittedBytes;
+    private final long receivedPackets;
+    private final long transmittedPackets;
+    private final long receivedDrops;
+    private final long transmittedDrops;
+    private final double sampleTimeKbPerSecondReceived;
+    private final double sampleTimeKbPerSecondTransmitted;
+    private final double sampleTimeReceivedPacketsPerSecond;
+    private final double sampleTimeTransmittedPacketsPerSecond;
+    private final double sampleTimeReceivedDropsPerSecond;
+    private final double sampleTimeTransmittedDropsPerSecond;
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the NetworkInterfaceIO object.
+     *
+     * @param name The name of the interface, i.e. eth0
+     * @param receivedBytes The bytes received
+     * @param transmittedBytes The bytes transmitted
+     * @param receivedPackets The packets received
+     * @param transmittedPackets The packets transmitted
+     * @param receivedDrops The received packets dropped
+     * @param transmittedDrops The transmitted packets dropped
+     * @param sampleTimeKbPerSecondReceived The KB received per second between the last two samples
+     * @param sampleTimeKbPerSecondTransmitted The KB transmitted per second between the last two samples
+     * @param sampleTimeReceivedPacketsPerSecond The packets received per second between the last two samples
+     * @param sampleTimeTransmittedPacketsPerSecond The packets transmitted per second between the last two samples
+     * @param sampleTimeReceivedDropsPerSecond The received packets dropped per second between the last two samples
+     * @param sampleTimeTransmittedDropsPerSecond The transmitted packets dropped per second between the last two samples
+     */
+    @ConstructorProperties({"name","receivedBytes","transmittedBytes","receivedPackets","transmittedPackets",
+                            "receivedDrops","transmittedDrops",
+                            "sampleTimeKbPerSecondReceived","sampleTimeKbPerSecondTransmitted",
+                            "sampleTimeReceivedPacketsPerSecond","sampleTimeTransmittedPacketsPerSecond",
+                            "sampleTimeReceivedDropsPerSecond","sampleTimeTransmittedDropsPerSecond"})
+    public NetworkInterfaceIO(String name, long receivedBytes, long transmittedBytes,
+                              long receivedPackets, long transmittedPackets,
+                              long receivedDrops, long transmittedDrops,
+                              double sampleTimeKbPerSecondReceived, double sampleTimeKbPerSecondTransmitted,
+                              double sampleTimeReceivedPacketsPerSecond, double sampleTimeTransmittedPacketsPerSecond,
+                              double sampleTimeReceivedDropsPerSecond, double sampleTimeTransmittedDropsPerSecond) {
+        this.name = name;
+        this.receivedBytes = receivedBytes;
+        this.transmittedBytes = transmittedBytes;
+        this.receivedPackets = receivedPackets;
+        this.transmittedPackets = transmittedPackets;
+        this.receivedDrops = receivedDrops;
+        this.transmittedDrops = transmittedDrops;
+        this.sampleTimeKbPerSecondReceived = sampleTimeKbPerSecondReceived;
+        this.sampleTimeKbPerSecondTransmitted = sampleTimeKbPerSecondTransmitted;
+        this.sampleTimeReceivedPacketsPerSecond = sampleTimeReceivedPacketsPerSecond;
+        this.sampleTimeTransmittedPacketsPerSecond = sampleTimeTransmittedPacketsPerSecond;
+        this.sampleTimeReceivedDropsPerSecond = sampleTimeReceivedDropsPerSecond;
+        this.sampleTimeTransmittedDropsPerSecond = sampleTimeTransmittedDropsPerSecond;
+    }
+
+    /**
+     * Returns the name of the interface, i.e. eth0
+     */
+    public String getName() {
+        return name;
+    }
+
+    public long getReceivedBytes() {
+        return receivedBytes;
+    }
+
+    public long getTransmittedBytes() {
+        return transmittedBytes;
+    }
+
+    public long getReceivedPackets() {
+        return receivedPackets;
+    }
+
+    public long getTransmittedPackets() {
+        return transmittedPackets;
+    }
+
+    public long getReceivedDrops() {
+        return receivedDrops;
+    }
+
+    public long getTransmittedDrops() {
+        return transmittedDrops;
+    }
+
+    public double getSampleTimeKbPerSecondReceived() {
+        return sampleTimeKbPerSecondReceived;
+    }
+
+    public double getSampleTimeKbPerSecondTransmitted() {
+        return sampleTimeKbPerSecondTransmitted;
+    }
+
+    public double getSampleTimeReceivedPacketsPerSecond() {
+        return sampleTimeReceivedPacketsPerSecond;
+    }
+
+    public double getSampleTimeTransmittedPacketsPerSecond() {
+        return sampleTimeTransmittedPacketsPerSecond;
+    }
+
+    public double getSampleTimeReceivedDropsPerSecond() {
+        return sampleTimeReceivedDropsPerSecond;
+    }
+
+    public double getSampleTimeTransmittedDropsPerSecond() {
+        return sampleTimeTransmittedDropsPerSecond;
+    }
+}
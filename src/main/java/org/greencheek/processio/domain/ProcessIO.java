@@ -38,6 +38,18 @@ public class ProcessIO {
     private final long currentSampleReadBytes;
     private final long currentSampleWriteBytes;
 
+    private final long previousSampleReadChars;
+    private final long previousSampleWriteChars;
+    private final long previousSampleReadSyscalls;
+    private final long previousSampleWriteSyscalls;
+    private final long previousSampleCancelledWriteBytes;
+
+    private final long currentSampleReadChars;
+    private final long currentSampleWriteChars;
+    private final long currentSampleReadSyscalls;
+    private final long currentSampleWriteSyscalls;
+    private final long currentSampleCancelledWriteBytes;
+
     public ProcessIO() {
         this(0,0,0,0,0,0);
     }
@@ -62,13 +74,71 @@ public class ProcessIO {
                      long currentSampleMillis,
                      long currentSampleReadBytes,
                      long currentSampleWriteBytes) {
+        this(previousSampleMills,previousSampleReadBytes,previousSampleWriteBytes,
+             currentSampleMillis,currentSampleReadBytes,currentSampleWriteBytes,
+             0,0,0,0,0,
+             0,0,0,0,0);
+    }
+
+    /**
+     * Creates a ProcessIO object holding the previous and current values of all the counters in /proc/PID/io.
+     * As with the other constructor the @ConstructorProperties allows a JMX MXBean to reconstruct the object.
+     *
+     * @param previousSampleMills The previous time in millis the IO values for the process were read
+     * @param previousSampleReadBytes The amount of IO the process had performed previously, at the previous time stamp
+     * @param previousSampleWriteBytes The amount of IO the process had performed previously, at the previous time stamp
+     * @param currentSampleMillis  The most recent time in millis the IO values for the process were read
+     * @param currentSampleReadBytes The amount of read IO the process has performed from the most recent sample of it's io usage
+     * @param currentSampleWriteBytes The amount of write IO the process had performed from the most recent sample of it's io usage
+     * @param previousSampleReadChars The rchar value at the previous time stamp
+     * @param previousSampleWriteChars The wchar value at the previous time stamp
+     * @param previousSampleReadSyscalls The syscr value at the previous time stamp
+     * @param previousSampleWriteSyscalls The syscw value at the previous time stamp
+     * @param previousSampleCancelledWriteBytes The cancelled_write_bytes value at the previous time stamp
+     * @param currentSampleReadChars The rchar value at the current time stamp
+     * @param currentSampleWriteChars The wchar value at the current time stamp
+     * @param currentSampleReadSyscalls The syscr value at the current time stamp
+     * @param currentSampleWriteSyscalls The syscw value at the current time stamp
+     * @param currentSampleCancelledWriteBytes The cancelled_write_bytes value at the current time stamp
+     */
+    @ConstructorProperties({"previousSampleMs","previousSampleReadBytes","previousSampleWriteBytes",
+                            "currentSampleMs","currentSampleReadBytes","currentSampleWriteBytes",
+                            "previousSampleReadChars","previousSampleWriteChars","previousSampleReadSyscalls",
+                            "previousSampleWriteSyscalls","previousSampleCancelledWriteBytes",
+                            "currentSampleReadChars","currentSampleWriteChars","currentSampleReadSyscalls",
+                            "currentSampleWriteSyscalls","currentSampleCancelledWriteBytes"})
+    public ProcessIO(long previousSampleMills,
+                     long previousSampleReadBytes,
+                     long previousSampleWriteBytes,
+                     long currentSampleMillis,
+                     long currentSampleReadBytes,
+                     long currentSampleWriteBytes,
+                     long previousSampleReadChars,
+                     long previousSampleWriteChars,
+                     long previousSampleReadSyscalls,
+                     long previousSampleWriteSyscalls,
+                     long previousSampleCancelledWriteBytes,
+                     long currentSampleReadChars,
+                     long currentSampleWriteChars,
+                     long currentSampleReadSyscalls,
+                     long currentSampleWriteSyscalls,
+                     long currentSampleCancelledWriteBytes) {
         this.previousSampleMs = previousSampleMills;
         this.previousSampleReadBytes = previousSampleReadBytes;
         this.previousSampleWriteBytes = previousSampleWriteBytes;
         this.currentSampleMs = currentSampleMillis;
         this.currentSampleReadBytes = currentSampleReadBytes;
         this.currentSampleWriteBytes = currentSampleWriteBytes;
-
+        this.previousSampleReadChars = previousSampleReadChars;
+        this.previousSampleWriteChars = previousSampleWriteChars;
+        this.previousSampleReadSyscalls = previousSampleReadSyscalls;
+        this.previousSampleWriteSyscalls = previousSampleWriteSyscalls;
+        this.previousSampleCancelledWriteBytes = previousSampleCancelledWriteBytes;
+        this.currentSampleReadChars = currentSampleReadChars;
+        this.currentSampleWriteChars = currentSampleWriteChars;
+        this.currentSampleReadSyscalls = currentSampleReadSyscalls;
+        this.currentSampleWriteSyscalls = currentSampleWriteSyscalls;
+        this.currentSampleCancelledWriteBytes = currentSampleCancelledWriteBytes;
     }
 
     /**
@@ -81,7 +151,10 @@ public class ProcessIO {
      */
     public ProcessIO updateCurrentValues(CurrentProcessIO currentIO) {
         return updateCurrentValues(currentIO.getCurrentSampleTimeInMillis(),currentIO.getCurrentReadBytes(),
-                                   currentIO.getCurrentWriteBytes());
+                                   currentIO.getCurrentWriteBytes(),
+                                   currentIO.getCurrentReadChars(),currentIO.getCurrentWriteChars(),
+                                   currentIO.getCurrentReadSyscalls(),currentIO.getCurrentWriteSyscalls(),
+                                   currentIO.getCurrentCancelledWriteBytes());
     }
 
     /**
@@ -101,9 +174,36 @@ public class ProcessIO {
     public ProcessIO updateCurrentValues(long currentSampleMillis,
                                          long currentSampleReadBytes,
                                          long currentSampleWriteBytes) {
+        return updateCurrentValues(currentSampleMillis,currentSampleReadBytes,currentSampleWriteBytes,
+                                   getCurrentSampleReadChars(),getCurrentSampleWriteChars(),
+                                   getCurrentSampleReadSyscalls(),getCurrentSampleWriteSyscalls(),
+                                   getCurrentSampleCancelledWriteBytes());
+    }
+
+    /**
+     * As with {@link #updateCurrentValues(long, long, long)}, but also moves the current rchar, wchar, syscr, syscw
+     * and cancelled_write_bytes values to be the previous values, and sets the given values as the current.
+     *
+     * @return A new ProcessIO object that is build from the current objects current io values, which will be set as the
+     *         previous io, and it's current values taken from the given parameters
+     */
+    public ProcessIO updateCurrentValues(long currentSampleMillis,
+                                         long currentSampleReadBytes,
+                                         long currentSampleWriteBytes,
+                                         long currentSampleReadChars,
+                                         long currentSampleWriteChars,
+                                         long currentSampleReadSyscalls,
+                                         long currentSampleWriteSyscalls,
+                                         long currentSampleCancelledWriteBytes) {
         if(currentSampleReadBytes == Long.MIN_VALUE && currentSampleWriteBytes == Long.MIN_VALUE) return this;
         return new ProcessIO(this.getCurrentSampleMs(), this.getCurrentSampleReadBytes(), this.getCurrentSampleWriteBytes(),
-                             currentSampleMillis,currentSampleReadBytes,currentSampleWriteBytes);
+                             currentSampleMillis,currentSampleReadBytes,currentSampleWriteBytes,
+                             this.getCurrentSampleReadChars(),this.getCurrentSampleWriteChars(),
+                             this.getCurrentSampleReadSyscalls(),this.getCurrentSampleWriteSyscalls(),
+                             this.getCurrentSampleCancelledWriteBytes(),
+                             currentSampleReadChars,currentSampleWriteChars,
+                             currentSampleReadSyscalls,currentSampleWriteSyscalls,
+                             currentSampleCancelledWriteBytes);
     }
 
     /**
@@ -169,4 +269,74 @@ public class ProcessIO {
     public long getDifferenceInReadBytes() {
         return getCurrentSampleReadBytes() - getPreviousSampleReadBytes();
     }
+
+    /**
+     * Returns the number of bytes the process had asked to be read (rchar) at the previous sample
+     */
+    public long getPreviousSampleReadChars() {
+        return previousSampleReadChars;
+    }
+
+    /**
+     * Returns the number of bytes the process had asked to be written (wchar) at the previous sample
+     */
+    public long getPreviousSampleWriteChars() {
+        return previousSampleWriteChars;
+    }
+
+    /**
+     * Returns the number of read syscalls (syscr) the process had made at the previous sample
+     */
+    public long getPreviousSampleReadSyscalls() {
+        return previousSampleReadSyscalls;
+    }
+
+    /**
+     * Returns the number of write syscalls (syscw) the process had made at the previous sample
+     */
+    public long getPreviousSampleWriteSyscalls() {
+        return previousSampleWriteSyscalls;
+    }
+
+    /**
+     * Returns the cancelled_write_bytes of the process at the previous sample
+     */
+    public long getPreviousSampleCancelledWriteBytes() {
+        return previousSampleCancelledWriteBytes;
+    }
+
+    /**
+     * Returns the number of bytes the process has asked to be read (rchar), that were last sampled
+     */
+    public long getCurrentSampleReadChars() {
+        return currentSampleReadChars;
+    }
+
+    /**
+     * Returns the number of bytes the process has asked to be written (wchar), that were last sampled
+     */
+    public long getCurrentSampleWriteChars() {
+        return currentSampleWriteChars;
+    }
+
+    /**
+     * Returns the number of read syscalls (syscr) the process has made, that were last sampled
+     */
+    public long getCurrentSampleReadSyscalls() {
+        return currentSampleReadSyscalls;
+    }
+
+    /**
+     * Returns the number of write syscalls (syscw) the process has made, that were last sampled
+     */
+    public long getCurrentSampleWriteSyscalls() {
+        return currentSampleWriteSyscalls;
+    }
+
+    /**
+     * Returns the cancelled_write_bytes of the process, that were last sampled
+     */
+    public long getCurrentSampleCancelledWriteBytes() {
+        return currentSampleCancelledWriteBytes;
+    }
 }
@@ -0,0 +1,216 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import org.greencheek.processio.service.usage.DifferenceInKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+
+/**
+ * <p>
+ * Stores a fixed number of the most recent samples of the process's read_bytes and write_bytes, in primitive ring
+ * buffers, from which the read and write KB per second over a number of time windows (i.e. the last 1, 5 and 15
+ * minutes) are calculated.  Unlike the rate between the last two samples, the windowed rates are not dominated by a
+ * single noisy sample; and unlike the rate since the jvm started, they are not flattened by the jvm's lifetime.
+ * </p>
+ * <p>
+ * As the counters in /proc/PID/io are accumulative, the io performed in a window is the difference between the most
+ * recent sample and the sample taken at the start of the window.  For each window the position of the sample at
+ * the start of the window is held, and moved forward as samples are added; so that a rate is calculated from two
+ * samples without searching the history.  The sample used for the start of a window is the most recent sample taken
+ * at, or before, the start of the window.  If the history does not go back as far as the window (i.e. the jvm has
+ * only just started, or the history is too small for the sample frequency) the oldest sample is used.
+ * </p>
+ * <p>
+ * No objects are created when samples are added, or rates calculated.  Methods are synchronized, as samples are
+ * added by the scheduler thread and rates are read by jmx clients.
+ * </p>
+ */
+public class ProcessIOHistory {
+
+    /**
+     * 1, 5 and 15 minutes
+     */
+    public static final long[] DEFAULT_WINDOWS_IN_MILLIS = new long[] { 60000, 300000, 900000 };
+
+    /**
+     * The sample frequency the default history is sized for (that of the default scheduler)
+     */
+    public static final long DEFAULT_SAMPLE_FREQUENCY_IN_MILLIS = 60000;
+
+    private final long[] windowsInMillis;
+    private final long[] windowStarts;
+    private final int capacity;
+
+    private final long[] sampleMillis;
+    private final long[] readBytes;
+    private final long[] writeBytes;
+
+    private final DifferenceInKBPerSecondCalculator calculator;
+
+    // The number of samples that have been added, the most recent is at (samples-1) % capacity
+    private long samples;
+
+    /**
+     * Creates a history for the default 1, 5 and 15 minute windows, sized for the default sample frequency
+     */
+    public ProcessIOHistory() {
+        this(DEFAULT_WINDOWS_IN_MILLIS,DEFAULT_SAMPLE_FREQUENCY_IN_MILLIS);
+    }
+
+    /**
+     * Creates a history for the given windows, large enough to hold the samples of the largest window when
+     * sampled at the given frequency.
+     *
+     * @param windowsInMillis The windows, in millis, over which rates are calculated
+     * @param sampleFrequencyInMillis The frequency at which samples are added
+     */
+    public ProcessIOHistory(long[] windowsInMillis, long sampleFrequencyInMillis) {
+        this(windowsInMillis,capacityFor(windowsInMillis,sampleFrequencyInMillis),
+             new PrimitiveBasedDifferenceInKBPerSecondCalculator());
+    }
+
+    /**
+     * @param windowsInMillis The windows, in millis, over which rates are calculated
+     * @param capacity The number of samples to hold
+     * @param calculator Used to calculate the KB per second between two samples
+     */
+    public ProcessIOHistory(long[] windowsInMillis, int capacity, DifferenceInKBPerSecondCalculator calculator) {
+        if(capacity<2) throw new IllegalArgumentException("history must hold at least 2 samples: " + capacity);
+        this.windowsInMillis = windowsInMillis.clone();
+        this.windowStarts = new long[windowsInMillis.length];
+        this.capacity = capacity;
+        this.sampleMillis = new long[capacity];
+        this.readBytes = new long[capacity];
+        this.writeBytes = new long[capacity];
+        this.calculator = calculator;
+    }
+
+    /**
+     * Returns the number of samples needed to cover the largest of the given windows, at the given frequency
+     */
+    public static int capacityFor(long[] windowsInMillis, long sampleFrequencyInMillis) {
+        long largest = 0;
+        for(long window : windowsInMillis) {
+            largest = Math.max(largest,window);
+        }
+        // plus one for the sample at the start of the window, and one for a late sample
+        long capacity = largest / Math.max(1,sampleFrequencyInMillis) + 2;
+        return (int)Math.min(Integer.MAX_VALUE,capacity);
+    }
+
+    /**
+     * Adds a sample to the history.  Samples that are not later than the most recent sample, or that were not
+     * readable, are ignored.
+     */
+    public synchronized void add(CurrentProcessIO io) {
+        add(io.getCurrentSampleTimeInMillis(),io.getCurrentReadBytes(),io.getCurrentWriteBytes());
+    }
+
+    /**
+     * Adds a sample to the history.  Samples that are not later than the most recent sample, or that were not
+     * readable, are ignored.
+     *
+     * @param millis The time the sample was taken
+     * @param read The read_bytes of the process at the time
+     * @param write The write_bytes of the process at the time
+     */
+    public synchronized void add(long millis, long read, long write) {
+        if(read==Long.MIN_VALUE && write==Long.MIN_VALUE) return;
+        if(samples>0 && millis<=sampleMillis[index(samples-1)]) return;
+
+        int i = index(samples);
+        sampleMillis[i] = millis;
+        readBytes[i] = read;
+        writeBytes[i] = write;
+        samples++;
+
+        long oldest = oldestSample();
+        for(int w=0;w<windowsInMillis.length;w++) {
+            long windowStartMillis = millis - windowsInMillis[w];
+            long start = Math.max(windowStarts[w],oldest);
+            while(start+1<samples && sampleMillis[index(start+1)]<=windowStartMillis) {
+                start++;
+            }
+            windowStarts[w] = start;
+        }
+    }
+
+    /**
+     * Returns the read KB per second over the given window
+     *
+     * @param window The index of the window, in the windows given on construction
+     */
+    public synchronized double getKbPerSecondReadIO(int window) {
+        if(samples<2) return 0.0;
+        int start = index(windowStarts[window]);
+        int end = index(samples-1);
+        return calculator.getDifferenceInKbPerSecond(sampleMillis[start],readBytes[start],sampleMillis[end],readBytes[end]);
+    }
+
+    /**
+     * Returns the write KB per second over the given window
+     *
+     * @param window The index of the window, in the windows given on construction
+     */
+    public synchronized double getKbPerSecondWriteIO(int window) {
+        if(samples<2) return 0.0;
+        int start = index(windowStarts[window]);
+        int end = index(samples-1);
+        return calculator.getDifferenceInKbPerSecond(sampleMillis[start],writeBytes[start],sampleMillis[end],writeBytes[end]);
+    }
+
+    /**
+     * Returns the time, in millis, actually covered by the given window: which is less than the window if the
+     * history does not yet go back as far as the window
+     */
+    public synchronized long getCoveredMillis(int window) {
+        if(samples<2) return 0;
+        return sampleMillis[index(samples-1)] - sampleMillis[index(windowStarts[window])];
+    }
+
+    /**
+     * Returns a copy of the windows, in millis, over which the rates are calculated
+     */
+    public long[] getWindowsInMillis() {
+        return windowsInMillis.clone();
+    }
+
+    public int getNumberOfWindows() {
+        return windowsInMillis.length;
+    }
+
+    /**
+     * Returns the maximum number of samples held
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the number of samples currently held
+     */
+    public synchronized int size() {
+        return (int)Math.min(samples,capacity);
+    }
+
+    private long oldestSample() {
+        return Math.max(0,samples-capacity);
+    }
+
+    private int index(long sample) {
+        return (int)(sample % capacity);
+    }
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+/**
+ * <p>
+ * Decides, from the rate of each sample, when a rate (i.e. the write KB per second) has crossed above a threshold,
+ * and when it has dropped back below it, so that a notification can be sent rather than the rate being polled.
+ * </p>
+ * <p>
+ * To stop a rate that hovers around the threshold sending a stream of notifications:
+ * <ul>
+ *     <li>Hysteresis: once exceeded, the rate must drop below the threshold less the hysteresis fraction (i.e. 10%
+ *         below the threshold) to be cleared</li>
+ *     <li>Minimum duration: the rate must stay above the threshold (or below the clear level) for at least this
+ *         long before it is exceeded (or cleared).  A sample on the other side restarts the duration</li>
+ *     <li>Rate limit: a crossing is not reported until at least the minimum interval has passed since the previous
+ *         crossing was reported.  The crossing is held, rather than lost, so it is reported once the interval has
+ *         passed if the rate is still on the other side</li>
+ * </ul>
+ * A threshold of 0 or less disables the threshold, clearing it without reporting a crossing.
+ * </p>
+ * <p>
+ * {@link #update(long, double)} is called by a single thread (i.e. the scheduler's); the settings may be changed,
+ * and the state read, by any thread.
+ * </p>
+ */
+public class RateThreshold {
+
+    public static final double DEFAULT_HYSTERESIS = 0.1;
+    public static final long DEFAULT_MINIMUM_DURATION_MILLIS = 0;
+    public static final long DEFAULT_MINIMUM_INTERVAL_MILLIS = 10000;
+
+    /**
+     * The result of an update, whether the threshold has been crossed
+     */
+    public enum Crossing { NONE, EXCEEDED, CLEARED }
+
+    private volatile double threshold;
+    private volatile double hysteresis = DEFAULT_HYSTERESIS;
+    private volatile long minimumDurationMillis = DEFAULT_MINIMUM_DURATION_MILLIS;
+    private volatile long minimumIntervalMillis = DEFAULT_MINIMUM_INTERVAL_MILLIS;
+
+    private volatile boolean exceeded;
+    private volatile long lastCrossingMillis = Long.MIN_VALUE;
+    // when the rate first went to the other side of the threshold, or Long.MIN_VALUE if it is not
+    private long crossingSinceMillis = Long.MIN_VALUE;
+
+    /**
+     * Updates the state with the rate of a sample.
+     *
+     * @param millis The time of the sample
+     * @param rate The rate of the sample
+     * @return Whether the threshold should be reported as exceeded, or cleared, by this sample
+     */
+    public Crossing update(long millis, double rate) {
+        double currentThreshold = threshold;
+        if(currentThreshold<=0 || Double.isNaN(rate)) {
+            if(currentThreshold<=0) exceeded = false;
+            crossingSinceMillis = Long.MIN_VALUE;
+            return Crossing.NONE;
+        }
+
+        boolean crossing = exceeded ? rate < currentThreshold * (1.0 - hysteresis) : rate > currentThreshold;
+        if(!crossing) {
+            crossingSinceMillis = Long.MIN_VALUE;
+            return Crossing.NONE;
+        }
+        if(crossingSinceMillis==Long.MIN_VALUE) crossingSinceMillis = millis;
+
+        if(millis - crossingSinceMillis < minimumDurationMillis) return Crossing.NONE;
+        if(lastCrossingMillis!=Long.MIN_VALUE && millis - lastCrossingMillis < minimumIntervalMillis) return Crossing.NONE;
+
+        exceeded = !exceeded;
+        lastCrossingMillis = millis;
+        crossingSinceMillis = Long.MIN_VALUE;
+        return exceeded ? Crossing.EXCEEDED : Crossing.CLEARED;
+    }
+
+    /**
+     * Returns true if the rate has been reported as exceeding the threshold, and not since cleared
+     */
+    public boolean isExceeded() {
+        return exceeded;
+    }
+
+    /**
+     * Returns the threshold, 0 if disabled
+     */
+    public double getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(double threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Returns the fraction below the threshold the rate must drop to for it to be cleared
+     */
+    public double getHysteresis() {
+        return hysteresis;
+    }
+
+    public void setHysteresis(double hysteresis) {
+        this.hysteresis = Math.max(0.0,Math.min(1.0,hysteresis));
+    }
+
+    /**
+     * Returns how long, in millis, the rate must be on the other side of the threshold before it is crossed
+     */
+    public long getMinimumDurationMillis() {
+        return minimumDurationMillis;
+    }
+
+    public void setMinimumDurationMillis(long minimumDurationMillis) {
+        this.minimumDurationMillis = Math.max(0,minimumDurationMillis);
+    }
+
+    /**
+     * Returns the least time, in millis, between two crossings being reported
+     */
+    public long getMinimumIntervalMillis() {
+        return minimumIntervalMillis;
+    }
+
+    public void setMinimumIntervalMillis(long minimumIntervalMillis) {
+        this.minimumIntervalMillis = Math.max(0,minimumIntervalMillis);
+    }
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * <p>
+ * Holds the previous and current samples of a process's io, as held by a {@link ProcessIO}, in primitive fields that
+ * are overwritten by each sample; rather than a new immutable ProcessIO being created and swapped in for each sample.
+ * </p>
+ * <p>
+ * The fields are guarded by a sequence lock (the optimistic read mode of a {@link StampedLock}).  The single writer
+ * takes the write lock, which changes the lock's stamp, shifts the current values to be the previous values and
+ * writes the new current values.  Readers copy the fields without taking a lock, and then check that the stamp has not
+ * changed; if it has (a sample was written during the copy) they copy the fields again under the read lock.  A reader
+ * therefore always sees the previous and current values of the same sample, never a mix of two samples, and does not
+ * block the writer, or other readers, in the common case.  Recording a sample allocates nothing.
+ * </p>
+ * <p>
+ * Each sample recorded increments the sequence returned by {@link #getSequence()}, so a client that reads several
+ * values in separate calls can tell whether a sample was recorded in between.
+ * </p>
+ */
+public class SequencedProcessIO {
+
+    private static final int SEQUENCE = 0;
+    private static final int CURRENT_SAMPLE_MS = 1;
+    private static final int CURRENT_SAMPLE_READ_BYTES = 2;
+    private static final int CURRENT_SAMPLE_WRITE_BYTES = 3;
+
+    private final StampedLock lock = new StampedLock();
+
+    private long sequence;
+
+    private long previousSampleMs;
+    private long previousSampleReadBytes;
+    private long previousSampleWriteBytes;
+    private long previousSampleReadChars;
+    private long previousSampleWriteChars;
+    private long previousSampleReadSyscalls;
+    private long previousSampleWriteSyscalls;
+    private long previousSampleCancelledWriteBytes;
+
+    private long currentSampleMs;
+    private long currentSampleReadBytes;
+    private long currentSampleWriteBytes;
+    private long currentSampleReadChars;
+    private long currentSampleWriteChars;
+    private long currentSampleReadSyscalls;
+    private long currentSampleWriteSyscalls;
+    private long currentSampleCancelledWriteBytes;
+
+    /**
+     * Moves the current values to be the previous values, and sets the values of the given io as the current values.
+     * As with {@link ProcessIO#updateCurrentValues(CurrentProcessIO)} io whose read and write bytes are both
+     * Long.MIN_VALUE (i.e. the io could not be read) is ignored.
+     * <p>
+     * There must be a single writer, i.e. the scheduler's thread.
+     * </p>
+     *
+     * @param io The current io that has been recorded for the process
+     * @return false if the io was ignored
+     */
+    public boolean update(CurrentProcessIO io) {
+        if(io.getCurrentReadBytes() == Long.MIN_VALUE && io.getCurrentWriteBytes() == Long.MIN_VALUE) return false;
+
+        long stamp = lock.writeLock();
+        try {
+            previousSampleMs = currentSampleMs;
+            previousSampleReadBytes = currentSampleReadBytes;
+            previousSampleWriteBytes = currentSampleWriteBytes;
+            previousSampleReadChars = currentSampleReadChars;
+            previousSampleWriteChars = currentSampleWriteChars;
+            previousSampleReadSyscalls = currentSampleReadSyscalls;
+            previousSampleWriteSyscalls = currentSampleWriteSyscalls;
+            previousSampleCancelledWriteBytes = currentSampleCancelledWriteBytes;
+
+            currentSampleMs = io.getCurrentSampleTimeInMillis();
+            currentSampleReadBytes = io.getCurrentReadBytes();
+            currentSampleWriteBytes = io.getCurrentWriteBytes();
+            currentSampleReadChars = io.getCurrentReadChars();
+            currentSampleWriteChars = io.getCurrentWriteChars();
+            currentSampleReadSyscalls = io.getCurrentReadSyscalls();
+            currentSampleWriteSyscalls = io.getCurrentWriteSyscalls();
+            currentSampleCancelledWriteBytes = io.getCurrentCancelledWriteBytes();
+            sequence++;
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+        return true;
+    }
+
+    /**
+     * Returns a ProcessIO holding the previous and current values of the same sample
+     */
+    public ProcessIO get() {
+        long stamp = lock.tryOptimisticRead();
+        ProcessIO io = copy();
+        if(lock.validate(stamp)) return io;
+
+        stamp = lock.readLock();
+        try {
+            return copy();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private ProcessIO copy() {
+        return new ProcessIO(previousSampleMs,previousSampleReadBytes,previousSampleWriteBytes,
+                             currentSampleMs,currentSampleReadBytes,currentSampleWriteBytes,
+                             previousSampleReadChars,previousSampleWriteChars,
+                             previousSampleReadSyscalls,previousSampleWriteSyscalls,
+                             previousSampleCancelledWriteBytes,
+                             currentSampleReadChars,currentSampleWriteChars,
+                             currentSampleReadSyscalls,currentSampleWriteSyscalls,
+                             currentSampleCancelledWriteBytes);
+    }
+
+    /**
+     * Returns the number of samples that have been recorded
+     */
+    public long getSequence() {
+        long stamp = lock.tryOptimisticRead();
+        long value = sequence;
+        if(lock.validate(stamp)) return value;
+        return readLocked(SEQUENCE);
+    }
+
+    /**
+     * Returns the time in millis of the current sample
+     */
+    public long getCurrentSampleMs() {
+        long stamp = lock.tryOptimisticRead();
+        long value = currentSampleMs;
+        if(lock.validate(stamp)) return value;
+        return readLocked(CURRENT_SAMPLE_MS);
+    }
+
+    /**
+     * Returns the read bytes of the current sample
+     */
+    public long getCurrentSampleReadBytes() {
+        long stamp = lock.tryOptimisticRead();
+        long value = currentSampleReadBytes;
+        if(lock.validate(stamp)) return value;
+        return readLocked(CURRENT_SAMPLE_READ_BYTES);
+    }
+
+    /**
+     * Returns the write bytes of the current sample
+     */
+    public long getCurrentSampleWriteBytes() {
+        long stamp = lock.tryOptimisticRead();
+        long value = currentSampleWriteBytes;
+        if(lock.validate(stamp)) return value;
+        return readLocked(CURRENT_SAMPLE_WRITE_BYTES);
+    }
+
+    private long readLocked(int field) {
+        long stamp = lock.readLock();
+        try {
+            switch(field) {
+                case CURRENT_SAMPLE_MS : return currentSampleMs;
+                case CURRENT_SAMPLE_READ_BYTES : return currentSampleReadBytes;
+                case CURRENT_SAMPLE_WRITE_BYTES : return currentSampleWriteBytes;
+                default : return sequence;
+            }
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+}
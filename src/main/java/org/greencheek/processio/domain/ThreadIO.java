@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * Represents the io that a single thread of the process has performed, as read from /proc/PID/task/TID/io.
+ * Along with the thread's accumulated read_bytes and write_bytes, it holds the rate of read and write io
+ * that the thread performed between the last two samples; and, if the thread's io wait is being sampled, the millis
+ * per second the thread spent waiting for block io (from the delayacct_blkio_ticks of /proc/PID/task/TID/stat).
+ * </p>
+ * <p>
+ * The linux thread id (TID) is mapped to a java thread by name.  If the thread could not be mapped to a single
+ * java thread the {@link #getJavaThreadId()} is {@link #UNKNOWN_JAVA_THREAD_ID}, and the name is that of the
+ * native thread (from /proc/PID/task/TID/comm), which the kernel truncates to 15 characters.
+ * </p>
+ */
+public class ThreadIO {
+
+    public static final long UNKNOWN_JAVA_THREAD_ID = -1;
+
+    private final int nativeThreadId;
+    private final long javaThreadId;
+    private final String threadName;
+    private final long readBytes;
+    private final long writeBytes;
+    private final double sampleTimeKbPerSecondReadIO;
+    private final double sampleTimeKbPerSecondWriteIO;
+    private final double sampleTimeIOWaitMillisPerSecond;
+
+    /**
+     * Creates the io of a thread whose io wait is not sampled
+     */
+    public ThreadIO(int nativeThreadId, long javaThreadId, String threadName,
+                    long readBytes, long writeBytes,
+                    double sampleTimeKbPerSecondReadIO, double sampleTimeKbPerSecondWriteIO) {
+        this(nativeThreadId,javaThreadId,threadName,readBytes,writeBytes,
+             sampleTimeKbPerSecondReadIO,sampleTimeKbPerSecondWriteIO,0.0);
+    }
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the ThreadIO object.
+     *
+     * @param nativeThreadId The linux thread id (TID)
+     * @param javaThreadId The id of the java thread, or {@link #UNKNOWN_JAVA_THREAD_ID}
+     * @param threadName The name of the thread
+     * @param readBytes The read_bytes the thread has performed
+     * @param writeBytes The write_bytes the thread has performed
+     * @param sampleTimeKbPerSecondReadIO The read io, in KB per second, between the last two samples
+     * @param sampleTimeKbPerSecondWriteIO The write io, in KB per second, between the last two samples
+     * @param sampleTimeIOWaitMillisPerSecond The millis per second spent waiting for block io between the last two
+     *                                        samples, or 0 if not sampled
+     */
+    @ConstructorProperties({"nativeThreadId","javaThreadId","threadName","readBytes","writeBytes",
+                            "sampleTimeKbPerSecondReadIO","sampleTimeKbPerSecondWriteIO",
+                            "sampleTimeIOWaitMillisPerSecond"})
+    public ThreadIO(int nativeThreadId, long javaThreadId, String threadName,
+                    long readBytes, long writeBytes,
+                    double sampleTimeKbPerSecondReadIO, double sampleTimeKbPerSecondWriteIO,
+                    double sampleTimeIOWaitMillisPerSecond) {
+        this.nativeThreadId = nativeThreadId;
+        this.javaThreadId = javaThreadId;
+        this.threadName = threadName;
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+        this.sampleTimeKbPerSecondReadIO = sampleTimeKbPerSecondReadIO;
+        this.sampleTimeKbPerSecondWriteIO = sampleTimeKbPerSecondWriteIO;
+        this.sampleTimeIOWaitMillisPerSecond = sampleTimeIOWaitMillisPerSecond;
+    }
+
+    /**
+     * Returns the linux thread id (TID) of the thread
+     */
+    public int getNativeThreadId() {
+        return nativeThreadId;
+    }
+
+    /**
+     * Returns the java thread id of the thread, or {@link #UNKNOWN_JAVA_THREAD_ID} if the thread could not be
+     * matched to a java thread
+     */
+    public long getJavaThreadId() {
+        return javaThreadId;
+    }
+
+    /**
+     * Returns the name of the thread
+     */
+    public String getThreadName() {
+        return threadName;
+    }
+
+    /**
+     * Returns the number of bytes the thread has caused to be read from the storage layer
+     */
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    /**
+     * Returns the number of bytes the thread has caused to be written to the storage layer
+     */
+    public long getWriteBytes() {
+        return writeBytes;
+    }
+
+    /**
+     * Returns the read io, in KB per second, that the thread performed between the last two samples
+     */
+    public double getSampleTimeKbPerSecondReadIO() {
+        return sampleTimeKbPerSecondReadIO;
+    }
+
+    /**
+     * Returns the write io, in KB per second, that the thread performed between the last two samples
+     */
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return sampleTimeKbPerSecondWriteIO;
+    }
+
+    /**
+     * Returns the millis per second the thread spent waiting for block io between the last two samples, or 0 if the
+     * thread's io wait is not sampled
+     */
+    public double getSampleTimeIOWaitMillisPerSecond() {
+        return sampleTimeIOWaitMillisPerSecond;
+    }
+}
@@ -0,0 +1,145 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * <p>
+ * A fixed size histogram of the throughput (in bytes per second) of each sample interval, from which percentiles
+ * (i.e. the p99 write rate) are returned.  A mean rate hides short bursts of io; the percentiles do not.
+ * </p>
+ * <p>
+ * As in an HDR histogram, values are counted in log-linear buckets: each power of two range of values is split
+ * into {@value #SUB_BUCKETS} equally sized buckets, so that a value is reported with a relative error of at most
+ * 1/{@value #SUB_BUCKETS} (about 3%) whatever its magnitude.  Values below {@value #SUB_BUCKETS} are counted
+ * exactly.  Values above {@link #HIGHEST_TRACKABLE_VALUE} are counted in the highest bucket.  The largest value
+ * recorded is also held exactly.
+ * </p>
+ * <p>
+ * Recording is lock free and allocation free: a value is counted with an atomic increment of its bucket.  Reading
+ * the percentiles scans the buckets; a value recorded during the scan may or may not be included.
+ * </p>
+ */
+public class ThroughputHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+
+    /**
+     * The number of buckets each power of two range of values is split into
+     */
+    public static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private static final int HIGHEST_BIT = 44;
+
+    /**
+     * Values above this (2^45 - 1 bytes, just under 32TB, per second) are counted in the highest bucket
+     */
+    public static final long HIGHEST_TRACKABLE_VALUE = (1L << (HIGHEST_BIT+1)) - 1;
+
+    private static final int BUCKETS = SUB_BUCKETS + (HIGHEST_BIT - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * Counts the given value.  Negative values are ignored.
+     *
+     * @param value The value, i.e. the bytes per second of a sample interval
+     */
+    public void record(long value) {
+        if(value<0) return;
+        counts.incrementAndGet(bucketFor(value));
+
+        long currentMax = max.get();
+        while(value>currentMax) {
+            if(max.compareAndSet(currentMax,value)) break;
+            currentMax = max.get();
+        }
+    }
+
+    /**
+     * Returns the value at the given percentile, as the highest value that would be counted in the same bucket (but no
+     * higher than the largest value recorded).  Returns 0 if no values have been recorded.
+     *
+     * @param percentile The percentile, between 0 and 100 (i.e. 99.9)
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = getTotalCount();
+        if(total==0) return 0;
+
+        long target = (long)Math.ceil((Math.min(100.0,percentile) / 100.0) * total);
+        if(target<1) target = 1;
+
+        long currentMax = max.get();
+        long count = 0;
+        for(int i=0;i<BUCKETS;i++) {
+            count += counts.get(i);
+            if(count>=target) {
+                return Math.min(highestValueIn(i),currentMax);
+            }
+        }
+        return currentMax;
+    }
+
+    /**
+     * Returns the largest value recorded, or 0 if no values have been recorded
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Returns the number of values recorded
+     */
+    public long getTotalCount() {
+        long total = 0;
+        for(int i=0;i<BUCKETS;i++) {
+            total += counts.get(i);
+        }
+        return total;
+    }
+
+    /**
+     * Clears the recorded values.  A value recorded during the reset may or may not be cleared.
+     */
+    public void reset() {
+        for(int i=0;i<BUCKETS;i++) {
+            counts.set(i,0);
+        }
+        max.set(0);
+    }
+
+    static int bucketFor(long value) {
+        if(value<SUB_BUCKETS) return (int)value;
+        if(value>HIGHEST_TRACKABLE_VALUE) value = HIGHEST_TRACKABLE_VALUE;
+
+        int highestBit = 63 - Long.numberOfLeadingZeros(value);
+        int shift = highestBit - SUB_BUCKET_BITS;
+        int subBucket = (int)(value >>> shift) - SUB_BUCKETS;
+        return SUB_BUCKETS + shift*SUB_BUCKETS + subBucket;
+    }
+
+    static long highestValueIn(int bucket) {
+        if(bucket<SUB_BUCKETS) return bucket;
+
+        int shift = (bucket - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (bucket - SUB_BUCKETS) % SUB_BUCKETS;
+        long lowest = ((long)(SUB_BUCKETS + subBucket)) << shift;
+        return lowest + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import java.beans.ConstructorProperties;
+
+/**
+ * <p>
+ * The percentiles, in KB per second, of the throughput of the sample intervals recorded in a
+ * {@link ThroughputHistogram} since the given time.
+ * </p>
+ */
+public class ThroughputPercentiles {
+
+    private final long sinceMillis;
+    private final long sampleCount;
+    private final double p50KbPerSecond;
+    private final double p90KbPerSecond;
+    private final double p99KbPerSecond;
+    private final double p999KbPerSecond;
+    private final double maxKbPerSecond;
+
+    /**
+     * The @ConstructorProperties allow a JMX MXBean to reconstruct the ThroughputPercentiles object.
+     *
+     * @param sinceMillis The time from which the sample intervals have been recorded
+     * @param sampleCount The number of sample intervals recorded
+     * @param p50KbPerSecond The median KB per second
+     * @param p90KbPerSecond The 90th percentile KB per second
+     * @param p99KbPerSecond The 99th percentile KB per second
+     * @param p999KbPerSecond The 99.9th percentile KB per second
+     * @param maxKbPerSecond The highest KB per second
+     */
+    @ConstructorProperties({"sinceMillis","sampleCount","p50KbPerSecond","p90KbPerSecond","p99KbPerSecond",
+                            "p999KbPerSecond","maxKbPerSecond"})
+    public ThroughputPercentiles(long sinceMillis, long sampleCount,
+                                 double p50KbPerSecond, double p90KbPerSecond, double p99KbPerSecond,
+                                 double p999KbPerSecond, double maxKbPerSecond) {
+        this.sinceMillis = sinceMillis;
+        this.sampleCount = sampleCount;
+        this.p50KbPerSecond = p50KbPerSecond;
+        this.p90KbPerSecond = p90KbPerSecond;
+        this.p99KbPerSecond = p99KbPerSecond;
+        this.p999KbPerSecond = p999KbPerSecond;
+        this.maxKbPerSecond = maxKbPerSecond;
+    }
+
+    /**
+     * Creates the percentiles from the given histogram of bytes per second
+     */
+    public static ThroughputPercentiles from(ThroughputHistogram histogram, long sinceMillis) {
+        return new ThroughputPercentiles(sinceMillis,histogram.getTotalCount(),
+                                         kb(histogram.getValueAtPercentile(50.0)),
+                                         kb(histogram.getValueAtPercentile(90.0)),
+                                         kb(histogram.getValueAtPercentile(99.0)),
+                                         kb(histogram.getValueAtPercentile(99.9)),
+                                         kb(histogram.getMax()));
+    }
+
+    private static double kb(long bytes) {
+        return bytes / 1024.0;
+    }
+
+    /**
+     * Returns the time, in millis, from which the sample intervals have been recorded
+     */
+    public long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    /**
+     * Returns the number of sample intervals recorded
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public double getP50KbPerSecond() {
+        return p50KbPerSecond;
+    }
+
+    public double getP90KbPerSecond() {
+        return p90KbPerSecond;
+    }
+
+    public double getP99KbPerSecond() {
+        return p99KbPerSecond;
+    }
+
+    public double getP999KbPerSecond() {
+        return p999KbPerSecond;
+    }
+
+    public double getMaxKbPerSecond() {
+        return maxKbPerSecond;
+    }
+}
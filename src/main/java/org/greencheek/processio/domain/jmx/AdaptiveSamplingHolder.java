@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.service.scheduler.AdaptiveSamplingInterval;
+
+/**
+ * <p>
+ * MXBean object that returns the interval chosen by an {@link AdaptiveSamplingInterval}.
+ * </p>
+ */
+public class AdaptiveSamplingHolder implements AdaptiveSamplingMXBean {
+
+    private final AdaptiveSamplingInterval interval;
+
+    public AdaptiveSamplingHolder(AdaptiveSamplingInterval interval) {
+        this.interval = interval;
+    }
+
+    @Override
+    public long getCurrentIntervalMillis() {
+        return interval.getIntervalMillis();
+    }
+
+    @Override
+    public long getMinIntervalMillis() {
+        return interval.getMinIntervalMillis();
+    }
+
+    @Override
+    public long getMaxIntervalMillis() {
+        return interval.getMaxIntervalMillis();
+    }
+
+    @Override
+    public String getLastChangeReason() {
+        return interval.getLastChangeReason();
+    }
+
+    @Override
+    public long getLastChangeMillis() {
+        return interval.getLastChangeMillis();
+    }
+
+    @Override
+    public long getIntervalChangeCount() {
+        return interval.getIntervalChanges();
+    }
+
+    @Override
+    public double getLastKbPerSecond() {
+        return interval.getLastKbPerSecond();
+    }
+}
@@ -0,0 +1,60 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+/**
+ * <p>
+ * MXBean that returns the interval chosen by the adaptive sampling of the scheduler, and why it was last changed,
+ * so that it can be seen how often the process io is being sampled.
+ * </p>
+ */
+public interface AdaptiveSamplingMXBean {
+
+    /**
+     * The interval, in millis, until the next sample
+     */
+    public long getCurrentIntervalMillis();
+
+    /**
+     * The shortest interval, in millis, between samples
+     */
+    public long getMinIntervalMillis();
+
+    /**
+     * The longest interval, in millis, between samples
+     */
+    public long getMaxIntervalMillis();
+
+    /**
+     * Why the interval was last changed, i.e. the rate was above the busy threshold
+     */
+    public String getLastChangeReason();
+
+    /**
+     * The time, in millis, the interval was last changed
+     */
+    public long getLastChangeMillis();
+
+    /**
+     * The number of times the interval has been changed
+     */
+    public long getIntervalChangeCount();
+
+    /**
+     * The combined read and write KB per second between the last two samples
+     */
+    public double getLastKbPerSecond();
+}
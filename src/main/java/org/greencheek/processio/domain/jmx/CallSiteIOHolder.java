@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.CallSiteIO;
+import org.greencheek.processio.service.io.CallSiteIOInstrumentation;
+
+/**
+ * <p>
+ * MXBean object that returns the call sites the io of the process is attributed to by the {@link CallSiteIOInstrumentation}.
+ * </p>
+ */
+public class CallSiteIOHolder implements CallSiteIOMXBean {
+
+    public static final int DEFAULT_TOP_CALL_SITES_LIMIT = 20;
+
+    private final CallSiteIOInstrumentation instrumentation;
+    private volatile int topCallSitesLimit;
+
+    public CallSiteIOHolder(CallSiteIOInstrumentation instrumentation) {
+        this(instrumentation,DEFAULT_TOP_CALL_SITES_LIMIT);
+    }
+
+    public CallSiteIOHolder(CallSiteIOInstrumentation instrumentation, int topCallSitesLimit) {
+        this.instrumentation = instrumentation;
+        this.topCallSitesLimit = topCallSitesLimit;
+    }
+
+    @Override
+    public CallSiteIO[] getTopCallSites() {
+        return instrumentation.getTopCallSites(topCallSitesLimit);
+    }
+
+    @Override
+    public int getTopCallSitesLimit() {
+        return topCallSitesLimit;
+    }
+
+    @Override
+    public void setTopCallSitesLimit(int limit) {
+        this.topCallSitesLimit = limit;
+    }
+
+    @Override
+    public int getCallSiteCount() {
+        return instrumentation.getCallSiteCount();
+    }
+
+    @Override
+    public int getSampleEveryCalls() {
+        return instrumentation.getSampleEveryCalls();
+    }
+
+    @Override
+    public void reset() {
+        instrumentation.reset();
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.CallSiteIO;
+
+/**
+ * <p>
+ * MXBean that returns the call sites (the class and method outside of the jdk) that the io of the jvm process is
+ * attributed to, so that it can be seen which code paths produce the io of the process.
+ * </p>
+ */
+public interface CallSiteIOMXBean {
+
+    /**
+     * Returns the call sites with the most bytes attributed to them since the last reset.  The number of call sites
+     * returned is at most {@link #getTopCallSitesLimit()}.
+     */
+    public CallSiteIO[] getTopCallSites();
+
+    /**
+     * The maximum number of call sites returned by {@link #getTopCallSites()}
+     */
+    public int getTopCallSitesLimit();
+
+    /**
+     * Sets the maximum number of call sites returned by {@link #getTopCallSites()}
+     */
+    public void setTopCallSitesLimit(int limit);
+
+    /**
+     * The number of call sites that have had bytes attributed to them since the last reset
+     */
+    public int getCallSiteCount();
+
+    /**
+     * 1 in this many io calls is attributed to its call site, with its bytes multiplied by this
+     */
+    public int getSampleEveryCalls();
+
+    /**
+     * Clears the bytes attributed to every call site
+     */
+    public void reset();
+}
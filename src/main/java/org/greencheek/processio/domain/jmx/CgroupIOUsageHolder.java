@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.CgroupDeviceIO;
+import org.greencheek.processio.service.io.CgroupIOStatReader;
+
+import java.io.File;
+
+/**
+ * <p>
+ * MXBean object that returns the per device io of the jvm's cgroup, as read by a {@link CgroupIOStatReader}.
+ * </p>
+ */
+public class CgroupIOUsageHolder implements CgroupIOUsageMXBean {
+
+    private final CgroupIOStatReader reader;
+
+    public CgroupIOUsageHolder(CgroupIOStatReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public String getCgroupDirectory() {
+        File directory = reader.getCgroupDirectory();
+        return directory==null ? null : directory.getAbsolutePath();
+    }
+
+    @Override
+    public CgroupDeviceIO[] getDevices() {
+        return reader.getDevices();
+    }
+
+    @Override
+    public double getHighestLimitUtilisation() {
+        return reader.getHighestLimitUtilisation();
+    }
+}
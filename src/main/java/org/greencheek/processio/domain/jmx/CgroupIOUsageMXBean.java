@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.CgroupDeviceIO;
+
+/**
+ * <p>
+ * MXBean that returns the block io of the jvm's cgroup on each device, and how close it is to the cgroup's io
+ * limits; as it is the cgroup's io, rather than the process's, that a container is throttled on.
+ * </p>
+ */
+public interface CgroupIOUsageMXBean {
+
+    /**
+     * The cgroup's directory, i.e. /sys/fs/cgroup/kubepods.slice/..., or null if it was not found
+     */
+    public String getCgroupDirectory();
+
+    /**
+     * The io, rates between the last two samples, and limits, of each device
+     */
+    public CgroupDeviceIO[] getDevices();
+
+    /**
+     * The highest fraction of any io limit, on any device, used between the last two samples; i.e. 0.9 means the
+     * cgroup is within 10% of being throttled.  0 if there are no limits.
+     */
+    public double getHighestLimitUtilisation();
+}
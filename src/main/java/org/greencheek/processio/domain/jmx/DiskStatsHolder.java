@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.DiskDeviceStats;
+import org.greencheek.processio.service.io.DiskStatsReader;
+
+/**
+ * <p>
+ * MXBean object that returns how busy each block device is, as read by a {@link DiskStatsReader}.
+ * </p>
+ */
+public class DiskStatsHolder implements DiskStatsMXBean {
+
+    private final DiskStatsReader reader;
+
+    public DiskStatsHolder(DiskStatsReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public DiskDeviceStats[] getDevices() {
+        return reader.getDevices();
+    }
+
+    @Override
+    public double getHighestUtilisationPercent() {
+        return reader.getHighestUtilisationPercent();
+    }
+}
@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.DiskDeviceStats;
+
+/**
+ * <p>
+ * MXBean that returns how busy each block device is, alongside the process's share of the device's io; so that a
+ * spike in the process's write rate can be correlated with the device being saturated.
+ * </p>
+ */
+public interface DiskStatsMXBean {
+
+    /**
+     * The utilisation, await, queue depth, rates and the process's share, of each device between the last two samples
+     */
+    public DiskDeviceStats[] getDevices();
+
+    /**
+     * The highest utilisation percent, of any device, between the last two samples
+     */
+    public double getHighestUtilisationPercent();
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.FileIO;
+import org.greencheek.processio.service.io.OpenFileIOReader;
+
+/**
+ * <p>
+ * MXBean object that returns the files being read or written the fastest, as sampled by an {@link OpenFileIOReader}.
+ * </p>
+ */
+public class FileIOUsageHolder implements FileIOUsageMXBean {
+
+    public static final int DEFAULT_TOP_FILES_LIMIT = 10;
+
+    private final OpenFileIOReader reader;
+    private volatile int topFilesLimit;
+
+    public FileIOUsageHolder(OpenFileIOReader reader) {
+        this(reader,DEFAULT_TOP_FILES_LIMIT);
+    }
+
+    public FileIOUsageHolder(OpenFileIOReader reader, int topFilesLimit) {
+        this.reader = reader;
+        this.topFilesLimit = topFilesLimit;
+    }
+
+    @Override
+    public FileIO[] getTopFiles() {
+        return reader.getTopFiles(topFilesLimit);
+    }
+
+    @Override
+    public int getTopFilesLimit() {
+        return topFilesLimit;
+    }
+
+    @Override
+    public void setTopFilesLimit(int limit) {
+        this.topFilesLimit = limit;
+    }
+
+    @Override
+    public int getTrackedFileDescriptorCount() {
+        return reader.getTrackedFileDescriptorCount();
+    }
+}
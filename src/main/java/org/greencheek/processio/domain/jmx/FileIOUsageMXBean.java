@@ -0,0 +1,50 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.FileIO;
+
+/**
+ * <p>
+ * MXBean that returns the files the jvm process is reading or writing the fastest, so that it can be seen which
+ * files (i.e. segment files, a write ahead log, or log files) are responsible for the io of the process.
+ * </p>
+ */
+public interface FileIOUsageMXBean {
+
+    /**
+     * Returns the top files, ordered by the KB per second their position moved between the last two samples.
+     * The number of files returned is at most {@link #getTopFilesLimit()}.
+     *
+     * @return The files being read or written the fastest
+     */
+    public FileIO[] getTopFiles();
+
+    /**
+     * The maximum number of files returned by {@link #getTopFiles()}
+     */
+    public int getTopFilesLimit();
+
+    /**
+     * Sets the maximum number of files returned by {@link #getTopFiles()}
+     */
+    public void setTopFilesLimit(int limit);
+
+    /**
+     * The number of file descriptors, of files or otherwise, that were seen at the last sample
+     */
+    public int getTrackedFileDescriptorCount();
+}
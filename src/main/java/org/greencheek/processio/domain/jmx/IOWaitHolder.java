@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.service.io.IOWaitReader;
+
+/**
+ * <p>
+ * MXBean object that returns the io wait of the process, as read by an {@link IOWaitReader}.
+ * </p>
+ */
+public class IOWaitHolder implements IOWaitMXBean {
+
+    private final IOWaitReader reader;
+
+    public IOWaitHolder(IOWaitReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public boolean isDelayAccountingEnabled() {
+        return reader.isDelayAccountingEnabled();
+    }
+
+    @Override
+    public long getIOWaitTicks() {
+        return reader.getIOWaitTicks();
+    }
+
+    @Override
+    public double getSampleTimeIOWaitMillisPerSecond() {
+        return reader.getSampleTimeIOWaitMillisPerSecond();
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondReadIO() {
+        return reader.getSampleTimeKbPerSecondReadIO();
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return reader.getSampleTimeKbPerSecondWriteIO();
+    }
+}
@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+/**
+ * <p>
+ * MXBean that returns how long the process's threads stalled waiting for block io, next to its read and write
+ * rates; as the bytes per second do not say how long the process waited for them.
+ * </p>
+ */
+public interface IOWaitMXBean {
+
+    /**
+     * Whether the kernel is counting the time spent waiting for block io (the kernel.task_delayacct sysctl).  When
+     * false the io wait is always 0.
+     */
+    public boolean isDelayAccountingEnabled();
+
+    /**
+     * The clock ticks (of 1/100th of a second) the process has spent waiting for block io
+     */
+    public long getIOWaitTicks();
+
+    /**
+     * The millis per second the process's threads spent waiting for block io between the last two samples; i.e. 1000
+     * means that, on average, one thread was stalled on the disk
+     */
+    public double getSampleTimeIOWaitMillisPerSecond();
+
+    /**
+     * The read KB per second of the process on the same sample
+     */
+    public double getSampleTimeKbPerSecondReadIO();
+
+    /**
+     * The write KB per second of the process on the same sample
+     */
+    public double getSampleTimeKbPerSecondWriteIO();
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.NetworkInterfaceIO;
+import org.greencheek.processio.service.io.NetworkIOReader;
+
+/**
+ * <p>
+ * MXBean object that returns the network io of each interface, as read by a {@link NetworkIOReader}.
+ * </p>
+ */
+public class NetworkIOUsageHolder implements NetworkIOUsageMXBean {
+
+    private final NetworkIOReader reader;
+
+    public NetworkIOUsageHolder(NetworkIOReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public NetworkInterfaceIO[] getInterfaces() {
+        return reader.getInterfaces();
+    }
+
+    @Override
+    public double getTotalKbPerSecondReceived() {
+        return reader.getTotalKbPerSecondReceived();
+    }
+
+    @Override
+    public double getTotalKbPerSecondTransmitted() {
+        return reader.getTotalKbPerSecondTransmitted();
+    }
+
+    @Override
+    public long getTcpRetransmittedSegments() {
+        return reader.getTcpRetransmittedSegments();
+    }
+
+    @Override
+    public double getTcpRetransmittedSegmentsPerSecond() {
+        return reader.getTcpRetransmittedSegmentsPerSecond();
+    }
+
+    @Override
+    public double getTcpRetransmitPercent() {
+        return reader.getTcpRetransmitPercent();
+    }
+}
@@ -0,0 +1,57 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.NetworkInterfaceIO;
+
+/**
+ * <p>
+ * MXBean that returns the bytes, packets and drops received and transmitted on each network interface, and the tcp
+ * segments retransmitted; so that a saturated or lossy network can be seen alongside the process's disk io.
+ * </p>
+ */
+public interface NetworkIOUsageMXBean {
+
+    /**
+     * The counters and rates of each interface between the last two samples
+     */
+    public NetworkInterfaceIO[] getInterfaces();
+
+    /**
+     * The KB received per second, between the last two samples, over every interface but the loopback
+     */
+    public double getTotalKbPerSecondReceived();
+
+    /**
+     * The KB transmitted per second, between the last two samples, over every interface but the loopback
+     */
+    public double getTotalKbPerSecondTransmitted();
+
+    /**
+     * The number of tcp segments retransmitted
+     */
+    public long getTcpRetransmittedSegments();
+
+    /**
+     * The tcp segments retransmitted per second between the last two samples
+     */
+    public double getTcpRetransmittedSegmentsPerSecond();
+
+    /**
+     * The percentage of the tcp segments sent between the last two samples that were retransmissions
+     */
+    public double getTcpRetransmitPercent();
+}
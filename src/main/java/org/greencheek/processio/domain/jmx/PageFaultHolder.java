@@ -0,0 +1,67 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.service.io.PageFaultReader;
+
+/**
+ * <p>
+ * MXBean object that returns the page faults of the process, as read by a {@link PageFaultReader}.
+ * </p>
+ */
+public class PageFaultHolder implements PageFaultMXBean {
+
+    private final PageFaultReader reader;
+
+    public PageFaultHolder(PageFaultReader reader) {
+        this.reader = reader;
+    }
+
+    @Override
+    public long getMinorFaults() {
+        return reader.getMinorFaults();
+    }
+
+    @Override
+    public long getMajorFaults() {
+        return reader.getMajorFaults();
+    }
+
+    @Override
+    public double getSampleTimeMinorFaultsPerSecond() {
+        return reader.getSampleTimeMinorFaultsPerSecond();
+    }
+
+    @Override
+    public double getSampleTimeMajorFaultsPerSecond() {
+        return reader.getSampleTimeMajorFaultsPerSecond();
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondReadIO() {
+        return reader.getSampleTimeKbPerSecondReadIO();
+    }
+
+    @Override
+    public long getResidentKb() {
+        return reader.getResidentKb();
+    }
+
+    @Override
+    public long getFileBackedResidentKb() {
+        return reader.getFileBackedResidentKb();
+    }
+}
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+/**
+ * <p>
+ * MXBean that returns the page faults of the process next to its read rate; as the reads of memory mapped files
+ * are page faults, which only partly show up in the read bytes of the process.
+ * </p>
+ */
+public interface PageFaultMXBean {
+
+    /**
+     * The minor faults of the process, that were satisfied without waiting for the disk
+     */
+    public long getMinorFaults();
+
+    /**
+     * The major faults of the process, that waited for a page to be read from the disk
+     */
+    public long getMajorFaults();
+
+    /**
+     * The minor faults per second between the last two samples
+     */
+    public double getSampleTimeMinorFaultsPerSecond();
+
+    /**
+     * The major faults per second between the last two samples.  A high rate next to a low read rate means the
+     * process is thrashing the page cache.
+     */
+    public double getSampleTimeMajorFaultsPerSecond();
+
+    /**
+     * The read KB per second of the process on the same sample
+     */
+    public double getSampleTimeKbPerSecondReadIO();
+
+    /**
+     * The resident set size in KB, or 0 if smaps_rollup is not read
+     */
+    public long getResidentKb();
+
+    /**
+     * The resident KB that is file backed (i.e. mapped files), or 0 if smaps_rollup is not read
+     */
+    public long getFileBackedResidentKb();
+}
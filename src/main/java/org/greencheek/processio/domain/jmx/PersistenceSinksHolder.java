@@ -0,0 +1,77 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.service.persistence.AsyncFanOutProcessIOUsagePersistence;
+
+/**
+ * <p>
+ * MXBean object that returns the lag and drop counts of the sinks of an {@link AsyncFanOutProcessIOUsagePersistence}.
+ * </p>
+ */
+public class PersistenceSinksHolder implements PersistenceSinksMXBean {
+
+    private final AsyncFanOutProcessIOUsagePersistence persistence;
+
+    public PersistenceSinksHolder(AsyncFanOutProcessIOUsagePersistence persistence) {
+        this.persistence = persistence;
+    }
+
+    @Override
+    public String[] getSinkNames() {
+        return persistence.getSinkNames();
+    }
+
+    @Override
+    public String[] getSinkOverflowPolicies() {
+        return persistence.getSinkOverflowPolicies();
+    }
+
+    @Override
+    public long[] getQueueCapacities() {
+        return persistence.getQueueCapacities();
+    }
+
+    @Override
+    public long[] getQueuedSamples() {
+        return persistence.getQueuedSamples();
+    }
+
+    @Override
+    public long[] getDroppedSamples() {
+        return persistence.getDroppedSamples();
+    }
+
+    @Override
+    public long[] getPersistedSamples() {
+        return persistence.getPersistedSamples();
+    }
+
+    @Override
+    public long[] getFailedSamples() {
+        return persistence.getFailedSamples();
+    }
+
+    @Override
+    public long[] getLastLagMillis() {
+        return persistence.getLastLagMillis();
+    }
+
+    @Override
+    public long[] getMaxLagMillis() {
+        return persistence.getMaxLagMillis();
+    }
+}
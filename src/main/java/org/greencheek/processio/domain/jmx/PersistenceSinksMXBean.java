@@ -0,0 +1,70 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+/**
+ * <p>
+ * MXBean that returns, for each sink the samples are persisted to asynchronously, how far behind the sink is and
+ * how many samples it has dropped.  The values at the same index of each array are for the same sink.
+ * </p>
+ */
+public interface PersistenceSinksMXBean {
+
+    /**
+     * The name of each sink
+     */
+    public String[] getSinkNames();
+
+    /**
+     * What each sink does with a sample when it has fallen behind (DROP_OLDEST or COALESCE_LATEST)
+     */
+    public String[] getSinkOverflowPolicies();
+
+    /**
+     * The maximum number of samples that can wait to be persisted by each sink
+     */
+    public long[] getQueueCapacities();
+
+    /**
+     * The number of samples waiting to be persisted by each sink
+     */
+    public long[] getQueuedSamples();
+
+    /**
+     * The number of samples each sink has dropped because it had fallen behind
+     */
+    public long[] getDroppedSamples();
+
+    /**
+     * The number of samples each sink has persisted
+     */
+    public long[] getPersistedSamples();
+
+    /**
+     * The number of samples each sink failed to persist
+     */
+    public long[] getFailedSamples();
+
+    /**
+     * The time, in millis, from the last sample each sink persisted being read to it being persisted
+     */
+    public long[] getLastLagMillis();
+
+    /**
+     * The largest time, in millis, from a sample being read to it being persisted by each sink
+     */
+    public long[] getMaxLagMillis();
+}
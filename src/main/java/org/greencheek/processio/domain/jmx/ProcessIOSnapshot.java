@@ -0,0 +1,435 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.service.usage.ProcessIOUsage;
+
+import javax.management.openmbean.CompositeData;
+import javax.management.openmbean.CompositeDataSupport;
+import javax.management.openmbean.CompositeDataView;
+import javax.management.openmbean.CompositeType;
+import javax.management.openmbean.OpenDataException;
+
+/**
+ * <p>
+ * Every counter of a single sample, and every rate calculated from it, as returned by
+ * {@link ProcessIOUsageMXBean#getSnapshot()}; so that a client can read them all in one call, and know they are all
+ * from the same sample.
+ * </p>
+ * <p>
+ * The snapshot is a {@link CompositeDataView}: the MXBean framework asks it for its CompositeData, rather than
+ * converting it from its getters on every call.  The CompositeData is built on the first request and kept, so as the
+ * holder keeps the snapshot until the next sample, the conversion is done once per sample however many clients
+ * read it.  A client's MXBean proxy recreates the snapshot via {@link #from(CompositeData)}.
+ * </p>
+ */
+public class ProcessIOSnapshot implements CompositeDataView {
+
+    // The names of the items, as the MXBean framework names them from the getters
+    private static final String[] ITEMS = {
+            "sampleSequence", "startMillis", "previousSampleMs",
+            "currentSampleMs", "previousSampleReadBytes", "previousSampleWriteBytes",
+            "previousSampleReadChars", "previousSampleWriteChars", "previousSampleReadSyscalls",
+            "previousSampleWriteSyscalls", "previousSampleCancelledWriteBytes", "currentSampleReadBytes",
+            "currentSampleWriteBytes", "currentSampleReadChars", "currentSampleWriteChars",
+            "currentSampleReadSyscalls", "currentSampleWriteSyscalls", "currentSampleCancelledWriteBytes",
+            "sampleTimeKbPerSecondReadIO", "sampleTimeKbPerSecondWriteIO", "sampleTimeMbPerSecondReadIO",
+            "sampleTimeMbPerSecondWriteIO", "accumulatedKbPerSecondReadIO", "accumulatedKbPerSecondWriteIO",
+            "accumulatedMbPerSecondReadIO", "accumulatedMbPerSecondWriteIO", "sampleTimeKbPerSecondReadChars",
+            "sampleTimeKbPerSecondWriteChars", "sampleTimeReadSyscallsPerSecond", "sampleTimeWriteSyscallsPerSecond",
+            "sampleTimeKbPerSecondCancelledWriteIO", "sampleTimeBytesPerReadSyscall", "sampleTimeBytesPerWriteSyscall",
+            "accumulatedKbPerSecondReadChars", "accumulatedKbPerSecondWriteChars", "accumulatedReadSyscallsPerSecond",
+            "accumulatedWriteSyscallsPerSecond", "accumulatedKbPerSecondCancelledWriteIO", "accumulatedBytesPerReadSyscall",
+            "accumulatedBytesPerWriteSyscall", "smoothingTimeConstantsInMillis", "smoothedKbPerSecondReadIO",
+            "smoothedKbPerSecondWriteIO"
+    };
+
+    private final long sampleSequence;
+    private final long startMillis;
+    private final long previousSampleMs;
+    private final long currentSampleMs;
+    private final long previousSampleReadBytes;
+    private final long previousSampleWriteBytes;
+    private final long previousSampleReadChars;
+    private final long previousSampleWriteChars;
+    private final long previousSampleReadSyscalls;
+    private final long previousSampleWriteSyscalls;
+    private final long previousSampleCancelledWriteBytes;
+    private final long currentSampleReadBytes;
+    private final long currentSampleWriteBytes;
+    private final long currentSampleReadChars;
+    private final long currentSampleWriteChars;
+    private final long currentSampleReadSyscalls;
+    private final long currentSampleWriteSyscalls;
+    private final long currentSampleCancelledWriteBytes;
+    private final double sampleTimeKbPerSecondReadIO;
+    private final double sampleTimeKbPerSecondWriteIO;
+    private final double sampleTimeMbPerSecondReadIO;
+    private final double sampleTimeMbPerSecondWriteIO;
+    private final double accumulatedKbPerSecondReadIO;
+    private final double accumulatedKbPerSecondWriteIO;
+    private final double accumulatedMbPerSecondReadIO;
+    private final double accumulatedMbPerSecondWriteIO;
+    private final double sampleTimeKbPerSecondReadChars;
+    private final double sampleTimeKbPerSecondWriteChars;
+    private final double sampleTimeReadSyscallsPerSecond;
+    private final double sampleTimeWriteSyscallsPerSecond;
+    private final double sampleTimeKbPerSecondCancelledWriteIO;
+    private final double sampleTimeBytesPerReadSyscall;
+    private final double sampleTimeBytesPerWriteSyscall;
+    private final double accumulatedKbPerSecondReadChars;
+    private final double accumulatedKbPerSecondWriteChars;
+    private final double accumulatedReadSyscallsPerSecond;
+    private final double accumulatedWriteSyscallsPerSecond;
+    private final double accumulatedKbPerSecondCancelledWriteIO;
+    private final double accumulatedBytesPerReadSyscall;
+    private final double accumulatedBytesPerWriteSyscall;
+    private final long[] smoothingTimeConstantsInMillis;
+    private final double[] smoothedKbPerSecondReadIO;
+    private final double[] smoothedKbPerSecondWriteIO;
+
+    private volatile CompositeData compositeData;
+
+    /**
+     * Creates the snapshot of the given sample
+     *
+     * @param sequence The sequence number of the sample
+     * @param startMillis The time the accumulated rates are calculated from
+     * @param io The previous and current values of the sample
+     * @param usage Calculates the rates from the sample
+     * @param smoothedKbPerSecondReadIO The smoothed read rates once the sample was recorded, which the snapshot keeps
+     * @param smoothedKbPerSecondWriteIO The smoothed write rates once the sample was recorded, which the snapshot keeps
+     */
+    public ProcessIOSnapshot(long sequence, long startMillis, ProcessIO io, ProcessIOUsage usage,
+                             double[] smoothedKbPerSecondReadIO, double[] smoothedKbPerSecondWriteIO) {
+        this.sampleSequence = sequence;
+        this.startMillis = startMillis;
+        this.previousSampleMs = io.getPreviousSampleMs();
+        this.currentSampleMs = io.getCurrentSampleMs();
+        this.previousSampleReadBytes = io.getPreviousSampleReadBytes();
+        this.previousSampleWriteBytes = io.getPreviousSampleWriteBytes();
+        this.previousSampleReadChars = io.getPreviousSampleReadChars();
+        this.previousSampleWriteChars = io.getPreviousSampleWriteChars();
+        this.previousSampleReadSyscalls = io.getPreviousSampleReadSyscalls();
+        this.previousSampleWriteSyscalls = io.getPreviousSampleWriteSyscalls();
+        this.previousSampleCancelledWriteBytes = io.getPreviousSampleCancelledWriteBytes();
+        this.currentSampleReadBytes = io.getCurrentSampleReadBytes();
+        this.currentSampleWriteBytes = io.getCurrentSampleWriteBytes();
+        this.currentSampleReadChars = io.getCurrentSampleReadChars();
+        this.currentSampleWriteChars = io.getCurrentSampleWriteChars();
+        this.currentSampleReadSyscalls = io.getCurrentSampleReadSyscalls();
+        this.currentSampleWriteSyscalls = io.getCurrentSampleWriteSyscalls();
+        this.currentSampleCancelledWriteBytes = io.getCurrentSampleCancelledWriteBytes();
+        this.sampleTimeKbPerSecondReadIO = usage.getSampleTimeKbPerSecondReadIO(io);
+        this.sampleTimeKbPerSecondWriteIO = usage.getSampleTimeKbPerSecondWriteIO(io);
+        this.sampleTimeMbPerSecondReadIO = usage.getSampleTimeMbPerSecondReadIO(io);
+        this.sampleTimeMbPerSecondWriteIO = usage.getSampleTimeMbPerSecondWriteIO(io);
+        this.accumulatedKbPerSecondReadIO = usage.getAccumulatedKbPerSecondReadIO(startMillis,io);
+        this.accumulatedKbPerSecondWriteIO = usage.getAccumulatedKbPerSecondWriteIO(startMillis,io);
+        this.accumulatedMbPerSecondReadIO = usage.getAccumulatedMbPerSecondReadIO(startMillis,io);
+        this.accumulatedMbPerSecondWriteIO = usage.getAccumulatedMbPerSecondWriteIO(startMillis,io);
+        this.sampleTimeKbPerSecondReadChars = usage.getSampleTimeKbPerSecondReadChars(io);
+        this.sampleTimeKbPerSecondWriteChars = usage.getSampleTimeKbPerSecondWriteChars(io);
+        this.sampleTimeReadSyscallsPerSecond = usage.getSampleTimeReadSyscallsPerSecond(io);
+        this.sampleTimeWriteSyscallsPerSecond = usage.getSampleTimeWriteSyscallsPerSecond(io);
+        this.sampleTimeKbPerSecondCancelledWriteIO = usage.getSampleTimeKbPerSecondCancelledWriteIO(io);
+        this.sampleTimeBytesPerReadSyscall = usage.getSampleTimeBytesPerReadSyscall(io);
+        this.sampleTimeBytesPerWriteSyscall = usage.getSampleTimeBytesPerWriteSyscall(io);
+        this.accumulatedKbPerSecondReadChars = usage.getAccumulatedKbPerSecondReadChars(startMillis,io);
+        this.accumulatedKbPerSecondWriteChars = usage.getAccumulatedKbPerSecondWriteChars(startMillis,io);
+        this.accumulatedReadSyscallsPerSecond = usage.getAccumulatedReadSyscallsPerSecond(startMillis,io);
+        this.accumulatedWriteSyscallsPerSecond = usage.getAccumulatedWriteSyscallsPerSecond(startMillis,io);
+        this.accumulatedKbPerSecondCancelledWriteIO = usage.getAccumulatedKbPerSecondCancelledWriteIO(startMillis,io);
+        this.accumulatedBytesPerReadSyscall = usage.getAccumulatedBytesPerReadSyscall(io);
+        this.accumulatedBytesPerWriteSyscall = usage.getAccumulatedBytesPerWriteSyscall(io);
+        this.smoothingTimeConstantsInMillis = usage.getSmoothingTimeConstantsInMillis();
+        this.smoothedKbPerSecondReadIO = smoothedKbPerSecondReadIO;
+        this.smoothedKbPerSecondWriteIO = smoothedKbPerSecondWriteIO;
+    }
+
+    private ProcessIOSnapshot(CompositeData data) {
+        this.sampleSequence = (Long)data.get("sampleSequence");
+        this.startMillis = (Long)data.get("startMillis");
+        this.previousSampleMs = (Long)data.get("previousSampleMs");
+        this.currentSampleMs = (Long)data.get("currentSampleMs");
+        this.previousSampleReadBytes = (Long)data.get("previousSampleReadBytes");
+        this.previousSampleWriteBytes = (Long)data.get("previousSampleWriteBytes");
+        this.previousSampleReadChars = (Long)data.get("previousSampleReadChars");
+        this.previousSampleWriteChars = (Long)data.get("previousSampleWriteChars");
+        this.previousSampleReadSyscalls = (Long)data.get("previousSampleReadSyscalls");
+        this.previousSampleWriteSyscalls = (Long)data.get("previousSampleWriteSyscalls");
+        this.previousSampleCancelledWriteBytes = (Long)data.get("previousSampleCancelledWriteBytes");
+        this.currentSampleReadBytes = (Long)data.get("currentSampleReadBytes");
+        this.currentSampleWriteBytes = (Long)data.get("currentSampleWriteBytes");
+        this.currentSampleReadChars = (Long)data.get("currentSampleReadChars");
+        this.currentSampleWriteChars = (Long)data.get("currentSampleWriteChars");
+        this.currentSampleReadSyscalls = (Long)data.get("currentSampleReadSyscalls");
+        this.currentSampleWriteSyscalls = (Long)data.get("currentSampleWriteSyscalls");
+        this.currentSampleCancelledWriteBytes = (Long)data.get("currentSampleCancelledWriteBytes");
+        this.sampleTimeKbPerSecondReadIO = (Double)data.get("sampleTimeKbPerSecondReadIO");
+        this.sampleTimeKbPerSecondWriteIO = (Double)data.get("sampleTimeKbPerSecondWriteIO");
+        this.sampleTimeMbPerSecondReadIO = (Double)data.get("sampleTimeMbPerSecondReadIO");
+        this.sampleTimeMbPerSecondWriteIO = (Double)data.get("sampleTimeMbPerSecondWriteIO");
+        this.accumulatedKbPerSecondReadIO = (Double)data.get("accumulatedKbPerSecondReadIO");
+        this.accumulatedKbPerSecondWriteIO = (Double)data.get("accumulatedKbPerSecondWriteIO");
+        this.accumulatedMbPerSecondReadIO = (Double)data.get("accumulatedMbPerSecondReadIO");
+        this.accumulatedMbPerSecondWriteIO = (Double)data.get("accumulatedMbPerSecondWriteIO");
+        this.sampleTimeKbPerSecondReadChars = (Double)data.get("sampleTimeKbPerSecondReadChars");
+        this.sampleTimeKbPerSecondWriteChars = (Double)data.get("sampleTimeKbPerSecondWriteChars");
+        this.sampleTimeReadSyscallsPerSecond = (Double)data.get("sampleTimeReadSyscallsPerSecond");
+        this.sampleTimeWriteSyscallsPerSecond = (Double)data.get("sampleTimeWriteSyscallsPerSecond");
+        this.sampleTimeKbPerSecondCancelledWriteIO = (Double)data.get("sampleTimeKbPerSecondCancelledWriteIO");
+        this.sampleTimeBytesPerReadSyscall = (Double)data.get("sampleTimeBytesPerReadSyscall");
+        this.sampleTimeBytesPerWriteSyscall = (Double)data.get("sampleTimeBytesPerWriteSyscall");
+        this.accumulatedKbPerSecondReadChars = (Double)data.get("accumulatedKbPerSecondReadChars");
+        this.accumulatedKbPerSecondWriteChars = (Double)data.get("accumulatedKbPerSecondWriteChars");
+        this.accumulatedReadSyscallsPerSecond = (Double)data.get("accumulatedReadSyscallsPerSecond");
+        this.accumulatedWriteSyscallsPerSecond = (Double)data.get("accumulatedWriteSyscallsPerSecond");
+        this.accumulatedKbPerSecondCancelledWriteIO = (Double)data.get("accumulatedKbPerSecondCancelledWriteIO");
+        this.accumulatedBytesPerReadSyscall = (Double)data.get("accumulatedBytesPerReadSyscall");
+        this.accumulatedBytesPerWriteSyscall = (Double)data.get("accumulatedBytesPerWriteSyscall");
+        this.smoothingTimeConstantsInMillis = (long[])data.get("smoothingTimeConstantsInMillis");
+        this.smoothedKbPerSecondReadIO = (double[])data.get("smoothedKbPerSecondReadIO");
+        this.smoothedKbPerSecondWriteIO = (double[])data.get("smoothedKbPerSecondWriteIO");
+        this.compositeData = data;
+    }
+
+    /**
+     * Recreates the snapshot from its CompositeData, i.e. for a client's MXBean proxy
+     */
+    public static ProcessIOSnapshot from(CompositeData data) {
+        return new ProcessIOSnapshot(data);
+    }
+
+    /**
+     * Returns the CompositeData of the snapshot, which is built on the first call
+     */
+    @Override
+    public CompositeData toCompositeData(CompositeType type) {
+        CompositeData data = compositeData;
+        if(data!=null && data.getCompositeType().equals(type)) return data;
+
+        Object[] values = {
+                sampleSequence, startMillis, previousSampleMs, currentSampleMs,
+                previousSampleReadBytes, previousSampleWriteBytes, previousSampleReadChars, previousSampleWriteChars,
+                previousSampleReadSyscalls, previousSampleWriteSyscalls, previousSampleCancelledWriteBytes, currentSampleReadBytes,
+                currentSampleWriteBytes, currentSampleReadChars, currentSampleWriteChars, currentSampleReadSyscalls,
+                currentSampleWriteSyscalls, currentSampleCancelledWriteBytes, sampleTimeKbPerSecondReadIO, sampleTimeKbPerSecondWriteIO,
+                sampleTimeMbPerSecondReadIO, sampleTimeMbPerSecondWriteIO, accumulatedKbPerSecondReadIO, accumulatedKbPerSecondWriteIO,
+                accumulatedMbPerSecondReadIO, accumulatedMbPerSecondWriteIO, sampleTimeKbPerSecondReadChars, sampleTimeKbPerSecondWriteChars,
+                sampleTimeReadSyscallsPerSecond, sampleTimeWriteSyscallsPerSecond, sampleTimeKbPerSecondCancelledWriteIO, sampleTimeBytesPerReadSyscall,
+                sampleTimeBytesPerWriteSyscall, accumulatedKbPerSecondReadChars, accumulatedKbPerSecondWriteChars, accumulatedReadSyscallsPerSecond,
+                accumulatedWriteSyscallsPerSecond, accumulatedKbPerSecondCancelledWriteIO, accumulatedBytesPerReadSyscall, accumulatedBytesPerWriteSyscall,
+                smoothingTimeConstantsInMillis, smoothedKbPerSecondReadIO, smoothedKbPerSecondWriteIO
+        };
+        try {
+            data = new CompositeDataSupport(type,ITEMS,values);
+        } catch (OpenDataException e) {
+            throw new IllegalArgumentException("Unable to create snapshot of type: " + type,e);
+        }
+        compositeData = data;
+        return data;
+    }
+
+    /**
+     * Returns the sequence number of the sample
+     */
+    public long getSampleSequence() {
+        return sampleSequence;
+    }
+
+    /**
+     * Returns the time, in millis, the accumulated rates are calculated from
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    public long getPreviousSampleMs() {
+        return previousSampleMs;
+    }
+
+    public long getCurrentSampleMs() {
+        return currentSampleMs;
+    }
+
+    public long getPreviousSampleReadBytes() {
+        return previousSampleReadBytes;
+    }
+
+    public long getPreviousSampleWriteBytes() {
+        return previousSampleWriteBytes;
+    }
+
+    public long getPreviousSampleReadChars() {
+        return previousSampleReadChars;
+    }
+
+    public long getPreviousSampleWriteChars() {
+        return previousSampleWriteChars;
+    }
+
+    public long getPreviousSampleReadSyscalls() {
+        return previousSampleReadSyscalls;
+    }
+
+    public long getPreviousSampleWriteSyscalls() {
+        return previousSampleWriteSyscalls;
+    }
+
+    public long getPreviousSampleCancelledWriteBytes() {
+        return previousSampleCancelledWriteBytes;
+    }
+
+    public long getCurrentSampleReadBytes() {
+        return currentSampleReadBytes;
+    }
+
+    public long getCurrentSampleWriteBytes() {
+        return currentSampleWriteBytes;
+    }
+
+    public long getCurrentSampleReadChars() {
+        return currentSampleReadChars;
+    }
+
+    public long getCurrentSampleWriteChars() {
+        return currentSampleWriteChars;
+    }
+
+    public long getCurrentSampleReadSyscalls() {
+        return currentSampleReadSyscalls;
+    }
+
+    public long getCurrentSampleWriteSyscalls() {
+        return currentSampleWriteSyscalls;
+    }
+
+    public long getCurrentSampleCancelledWriteBytes() {
+        return currentSampleCancelledWriteBytes;
+    }
+
+    public double getSampleTimeKbPerSecondReadIO() {
+        return sampleTimeKbPerSecondReadIO;
+    }
+
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return sampleTimeKbPerSecondWriteIO;
+    }
+
+    public double getSampleTimeMbPerSecondReadIO() {
+        return sampleTimeMbPerSecondReadIO;
+    }
+
+    public double getSampleTimeMbPerSecondWriteIO() {
+        return sampleTimeMbPerSecondWriteIO;
+    }
+
+    public double getAccumulatedKbPerSecondReadIO() {
+        return accumulatedKbPerSecondReadIO;
+    }
+
+    public double getAccumulatedKbPerSecondWriteIO() {
+        return accumulatedKbPerSecondWriteIO;
+    }
+
+    public double getAccumulatedMbPerSecondReadIO() {
+        return accumulatedMbPerSecondReadIO;
+    }
+
+    public double getAccumulatedMbPerSecondWriteIO() {
+        return accumulatedMbPerSecondWriteIO;
+    }
+
+    public double getSampleTimeKbPerSecondReadChars() {
+        return sampleTimeKbPerSecondReadChars;
+    }
+
+    public double getSampleTimeKbPerSecondWriteChars() {
+        return sampleTimeKbPerSecondWriteChars;
+    }
+
+    public double getSampleTimeReadSyscallsPerSecond() {
+        return sampleTimeReadSyscallsPerSecond;
+    }
+
+    public double getSampleTimeWriteSyscallsPerSecond() {
+        return sampleTimeWriteSyscallsPerSecond;
+    }
+
+    public double getSampleTimeKbPerSecondCancelledWriteIO() {
+        return sampleTimeKbPerSecondCancelledWriteIO;
+    }
+
+    public double getSampleTimeBytesPerReadSyscall() {
+        return sampleTimeBytesPerReadSyscall;
+    }
+
+    public double getSampleTimeBytesPerWriteSyscall() {
+        return sampleTimeBytesPerWriteSyscall;
+    }
+
+    public double getAccumulatedKbPerSecondReadChars() {
+        return accumulatedKbPerSecondReadChars;
+    }
+
+    public double getAccumulatedKbPerSecondWriteChars() {
+        return accumulatedKbPerSecondWriteChars;
+    }
+
+    public double getAccumulatedReadSyscallsPerSecond() {
+        return accumulatedReadSyscallsPerSecond;
+    }
+
+    public double getAccumulatedWriteSyscallsPerSecond() {
+        return accumulatedWriteSyscallsPerSecond;
+    }
+
+    public double getAccumulatedKbPerSecondCancelledWriteIO() {
+        return accumulatedKbPerSecondCancelledWriteIO;
+    }
+
+    public double getAccumulatedBytesPerReadSyscall() {
+        return accumulatedBytesPerReadSyscall;
+    }
+
+    public double getAccumulatedBytesPerWriteSyscall() {
+        return accumulatedBytesPerWriteSyscall;
+    }
+
+    /**
+     * Returns the time constants of the smoothed rates, in the order of {@link #getSmoothedKbPerSecondReadIO()}
+     * and {@link #getSmoothedKbPerSecondWriteIO()}
+     */
+    public long[] getSmoothingTimeConstantsInMillis() {
+        return smoothingTimeConstantsInMillis.clone();
+    }
+
+    /**
+     * Returns the smoothed read KB per second, one per time constant, as they were once the sample was recorded
+     */
+    public double[] getSmoothedKbPerSecondReadIO() {
+        return smoothedKbPerSecondReadIO.clone();
+    }
+
+    /**
+     * Returns the smoothed write KB per second, one per time constant, as they were once the sample was recorded
+     */
+    public double[] getSmoothedKbPerSecondWriteIO() {
+        return smoothedKbPerSecondWriteIO.clone();
+    }
+}
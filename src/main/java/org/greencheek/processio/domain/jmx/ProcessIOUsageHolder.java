@@ -15,12 +15,25 @@
  */
 package org.greencheek.processio.domain.jmx;
 
+import org.greencheek.processio.domain.BurstCaptureOperations;
 import org.greencheek.processio.domain.CurrentProcessIO;
 import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.domain.ProcessIOHistory;
+import org.greencheek.processio.domain.RateThreshold;
+import org.greencheek.processio.domain.SequencedProcessIO;
+import org.greencheek.processio.domain.ThroughputHistogram;
+import org.greencheek.processio.domain.ThroughputPercentiles;
 import org.greencheek.processio.service.usage.BasicProcessIOUsage;
+import org.greencheek.processio.service.usage.DifferenceInKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
 import org.greencheek.processio.service.usage.ProcessIOUsage;
 
-import java.util.concurrent.atomic.AtomicReference;
+import javax.management.MBeanNotificationInfo;
+import javax.management.Notification;
+import javax.management.NotificationBroadcasterSupport;
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * <p>
@@ -37,17 +50,57 @@ import java.util.concurrent.atomic.AtomicReference;
  * or since the created on this holder object.
  * </p>
  * <p>
+ * Each sample is also added to a {@link ProcessIOHistory}, from which the read and write rates over a number of
+ * windows (by default the last 1, 5 and 15 minutes) are returned.  The read and write throughput of each sample
+ * interval is counted in a {@link ThroughputHistogram}, from which the percentiles since the last reset are returned.
+ * </p>
+ * <p>
  * This implementation is used as a mechanism to obtain the ProcessIO object from the MBeanServer
  * in an atomic unit, so that obtaining the amount of read io performed by the jvm can be obtain from
  * the MBeanServer in the same atomic unit as when the amount of write i/o is read.
  * </p>
  * <p>
+ * The samples are held in a {@link SequencedProcessIO}, so that recording a sample does not create a new ProcessIO,
+ * and each getter calculates its value from the previous and current values of a single sample.  Separate getters
+ * may see different samples; {@link #getSampleSequence()} can be read before and after them to detect this.
+ * {@link #getSnapshot()} returns every counter and rate of a single sample in one call, including the smoothed rates
+ * as they were once it was recorded.  The snapshot, and its
+ * CompositeData, are built by the first call after each sample, and the same instances returned to every other call
+ * until the next sample.
+ * </p>
+ * <p>
+ * The holder is a notification emitter.  When a read or write KB per second threshold is set, the rate of each sample
+ * is checked against it by a {@link RateThreshold}, and a notification of type {@value #READ_THRESHOLD_EXCEEDED},
+ * {@value #READ_THRESHOLD_CLEARED}, {@value #WRITE_THRESHOLD_EXCEEDED} or {@value #WRITE_THRESHOLD_CLEARED} is sent
+ * when it is crossed; so that clients can subscribe rather than poll the rates.  The notification's user data is the
+ * rate.  The notifications are sent on the thread recording the sample, so local listeners must not block;
+ * remote listeners are buffered by the jmx connector.
+ * </p>
+ * <p>
+ * When a {@link BurstCaptureOperations} (i.e. a {@link org.greencheek.processio.service.scheduler.BurstCapture}) is
+ * set, the burst capture operations delegate to it.  Otherwise they do nothing.  As any jmx client could otherwise
+ * overwrite any file the jvm can write, {@link #writeBurstCapture(String)} only writes files directly within the
+ * directory given to {@link #setBurstCaptureDirectory(File)}, and does nothing if none is given.
+ * </p>
+ * <p>
  * User: dominictootell
  * Date: 22/04/2012
  * Time: 15:54
  * </p>
  */
-public class ProcessIOUsageHolder implements ProcessIOUsageMXBean {
+public class ProcessIOUsageHolder extends NotificationBroadcasterSupport implements ProcessIOUsageMXBean {
+
+    public static final String READ_THRESHOLD_EXCEEDED = "processio.threshold.read.exceeded";
+    public static final String READ_THRESHOLD_CLEARED = "processio.threshold.read.cleared";
+    public static final String WRITE_THRESHOLD_EXCEEDED = "processio.threshold.write.exceeded";
+    public static final String WRITE_THRESHOLD_CLEARED = "processio.threshold.write.cleared";
+
+    private static final MBeanNotificationInfo[] NOTIFICATIONS = {
+            new MBeanNotificationInfo(new String[] { READ_THRESHOLD_EXCEEDED, READ_THRESHOLD_CLEARED,
+                                                     WRITE_THRESHOLD_EXCEEDED, WRITE_THRESHOLD_CLEARED },
+                                      Notification.class.getName(),
+                                      "The read or write KB per second has crossed its threshold")
+    };
 
     // Used to indicate the start of the jvm
     private final long startMillis;
@@ -56,9 +109,41 @@ public class ProcessIOUsageHolder implements ProcessIOUsageMXBean {
     // calculations based on the values stored in the ProcessIO object.
     private final ProcessIOUsage usage;
 
-    // The reference to the ProcessIO object, that is updated periodically with new
+    // The previous and current samples of the process io, that are updated periodically with new
     // values from the currently read/sampled read/write io for the process.
-    private final AtomicReference<ProcessIO> processIORef = new AtomicReference<ProcessIO>();
+    private final SequencedProcessIO processIO = new SequencedProcessIO();
+
+    // The read and write KB per second of the latest sample, calculated once per sample, from the sample's primitives,
+    // rather than per call; as they are read on every tick by the samplers that report them next to their own values.
+    // The MB per second getters are derived from the same values, so that both describe the same sample.
+    private final DifferenceInKBPerSecondCalculator sampleTimeCalculator = new PrimitiveBasedDifferenceInKBPerSecondCalculator();
+    private volatile double sampleTimeKbPerSecondReadIO;
+    private volatile double sampleTimeKbPerSecondWriteIO;
+
+    // The recent samples, from which the windowed rates are calculated
+    private final ProcessIOHistory history;
+
+    // The bytes per second of each sample interval, since the percentilesSinceMillis
+    private final ThroughputHistogram readHistogram = new ThroughputHistogram();
+    private final ThroughputHistogram writeHistogram = new ThroughputHistogram();
+    private volatile long percentilesSinceMillis;
+
+    // The thresholds of the read and write KB per second of each sample, which are disabled until set
+    private final RateThreshold readThreshold = new RateThreshold();
+    private final RateThreshold writeThreshold = new RateThreshold();
+    private final AtomicLong notificationSequence = new AtomicLong();
+
+    // The snapshot of the latest sample, built when first requested
+    private volatile ProcessIOSnapshot snapshot;
+
+    // The sequence of the sample the smoothed rates were last updated with
+    private volatile long smoothedSequence;
+
+    // The high frequency capture started by startBurstCapture, null if not enabled
+    private volatile BurstCaptureOperations burstCapture;
+
+    // The canonical directory writeBurstCapture writes to, null if writing is not enabled
+    private volatile File burstCaptureDirectory;
 
     public ProcessIOUsageHolder() {
         this(System.currentTimeMillis(),new BasicProcessIOUsage());
@@ -69,34 +154,71 @@ public class ProcessIOUsageHolder implements ProcessIOUsageMXBean {
     }
 
     public ProcessIOUsageHolder(long initialisationMillis,ProcessIOUsage usage) {
+        this(initialisationMillis,usage,new ProcessIOHistory());
+    }
+
+    public ProcessIOUsageHolder(long initialisationMillis,ProcessIOUsage usage, ProcessIOHistory history) {
+        super(NOTIFICATIONS);
         this.usage = usage;
-        processIORef.set(new ProcessIO());
         this.startMillis = initialisationMillis;
+        this.history = history;
+        this.percentilesSinceMillis = initialisationMillis;
     }
 
     @Override
     public ProcessIO getProcessIO() {
-        return processIORef.get();
+        return processIO.get();
+    }
+
+    @Override
+    public long getSampleSequence() {
+        return processIO.getSequence();
+    }
+
+    @Override
+    public ProcessIOSnapshot getSnapshot() {
+        ProcessIOSnapshot cached = snapshot;
+        long sequence = processIO.getSequence();
+        if(cached!=null && cached.getSampleSequence()==sequence) return cached;
+
+        ProcessIO io;
+        double[] smoothedRead;
+        double[] smoothedWrite;
+        while(true) {
+            sequence = processIO.getSequence();
+            // the smoothed rates are updated after the sample's sequence, so are only of the sample once they
+            // have been marked as such; and none of it is of the sample if another was recorded whilst reading
+            if(smoothedSequence==sequence) {
+                io = processIO.get();
+                smoothedRead = usage.getSmoothedKbPerSecondReadIO();
+                smoothedWrite = usage.getSmoothedKbPerSecondWriteIO();
+                if(processIO.getSequence()==sequence && smoothedSequence==sequence) break;
+            }
+            Thread.yield();
+        }
+        ProcessIOSnapshot created = new ProcessIOSnapshot(sequence,startMillis,io,usage,smoothedRead,smoothedWrite);
+        snapshot = created;
+        return created;
     }
 
     @Override
     public double getSampleTimeKbPerSecondReadIO() {
-        return usage.getSampleTimeKbPerSecondReadIO(getProcessIO());
+        return sampleTimeKbPerSecondReadIO;
     }
 
     @Override
     public double getSampleTimeKbPerSecondWriteIO() {
-        return usage.getSampleTimeKbPerSecondWriteIO(getProcessIO());
+        return sampleTimeKbPerSecondWriteIO;
     }
 
     @Override
     public double getSampleTimeMbPerSecondReadIO() {
-        return usage.getSampleTimeMbPerSecondReadIO(getProcessIO());
+        return sampleTimeKbPerSecondReadIO / 1024;
     }
 
     @Override
     public double getSampleTimeMbPerSecondWriteIO() {
-        return usage.getSampleTimeMbPerSecondWriteIO(getProcessIO());
+        return sampleTimeKbPerSecondWriteIO / 1024;
     }
 
     @Override
@@ -119,16 +241,336 @@ public class ProcessIOUsageHolder implements ProcessIOUsageMXBean {
         return usage.getAccumulatedMbPerSecondWriteIO(startMillis, getProcessIO());
     }
 
+    @Override
+    public double getSampleTimeKbPerSecondReadChars() {
+        return usage.getSampleTimeKbPerSecondReadChars(getProcessIO());
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondWriteChars() {
+        return usage.getSampleTimeKbPerSecondWriteChars(getProcessIO());
+    }
+
+    @Override
+    public double getSampleTimeReadSyscallsPerSecond() {
+        return usage.getSampleTimeReadSyscallsPerSecond(getProcessIO());
+    }
+
+    @Override
+    public double getSampleTimeWriteSyscallsPerSecond() {
+        return usage.getSampleTimeWriteSyscallsPerSecond(getProcessIO());
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondCancelledWriteIO() {
+        return usage.getSampleTimeKbPerSecondCancelledWriteIO(getProcessIO());
+    }
+
+    @Override
+    public double getSampleTimeBytesPerReadSyscall() {
+        return usage.getSampleTimeBytesPerReadSyscall(getProcessIO());
+    }
+
+    @Override
+    public double getSampleTimeBytesPerWriteSyscall() {
+        return usage.getSampleTimeBytesPerWriteSyscall(getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedKbPerSecondReadChars() {
+        return usage.getAccumulatedKbPerSecondReadChars(startMillis, getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedKbPerSecondWriteChars() {
+        return usage.getAccumulatedKbPerSecondWriteChars(startMillis, getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedReadSyscallsPerSecond() {
+        return usage.getAccumulatedReadSyscallsPerSecond(startMillis, getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedWriteSyscallsPerSecond() {
+        return usage.getAccumulatedWriteSyscallsPerSecond(startMillis, getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedKbPerSecondCancelledWriteIO() {
+        return usage.getAccumulatedKbPerSecondCancelledWriteIO(startMillis, getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedBytesPerReadSyscall() {
+        return usage.getAccumulatedBytesPerReadSyscall(getProcessIO());
+    }
+
+    @Override
+    public double getAccumulatedBytesPerWriteSyscall() {
+        return usage.getAccumulatedBytesPerWriteSyscall(getProcessIO());
+    }
+
+    @Override
+    public long[] getHistoryWindowsInMillis() {
+        return history.getWindowsInMillis();
+    }
+
+    @Override
+    public double[] getWindowedKbPerSecondReadIO() {
+        double[] rates = new double[history.getNumberOfWindows()];
+        for(int i=0;i<rates.length;i++) {
+            rates[i] = history.getKbPerSecondReadIO(i);
+        }
+        return rates;
+    }
+
+    @Override
+    public double[] getWindowedKbPerSecondWriteIO() {
+        double[] rates = new double[history.getNumberOfWindows()];
+        for(int i=0;i<rates.length;i++) {
+            rates[i] = history.getKbPerSecondWriteIO(i);
+        }
+        return rates;
+    }
+
+    @Override
+    public long[] getSmoothingTimeConstantsInMillis() {
+        return usage.getSmoothingTimeConstantsInMillis();
+    }
+
+    @Override
+    public double[] getSmoothedKbPerSecondReadIO() {
+        return usage.getSmoothedKbPerSecondReadIO();
+    }
+
+    @Override
+    public double[] getSmoothedKbPerSecondWriteIO() {
+        return usage.getSmoothedKbPerSecondWriteIO();
+    }
+
+    @Override
+    public ThroughputPercentiles getReadThroughputPercentiles() {
+        return ThroughputPercentiles.from(readHistogram,percentilesSinceMillis);
+    }
+
+    @Override
+    public ThroughputPercentiles getWriteThroughputPercentiles() {
+        return ThroughputPercentiles.from(writeHistogram,percentilesSinceMillis);
+    }
+
+    @Override
+    public void resetThroughputPercentiles() {
+        percentilesSinceMillis = System.currentTimeMillis();
+        readHistogram.reset();
+        writeHistogram.reset();
+    }
+
+    @Override
+    public double getReadThresholdKbPerSecond() {
+        return readThreshold.getThreshold();
+    }
+
+    @Override
+    public void setReadThresholdKbPerSecond(double kbPerSecond) {
+        readThreshold.setThreshold(kbPerSecond);
+    }
+
+    @Override
+    public double getWriteThresholdKbPerSecond() {
+        return writeThreshold.getThreshold();
+    }
+
+    @Override
+    public void setWriteThresholdKbPerSecond(double kbPerSecond) {
+        writeThreshold.setThreshold(kbPerSecond);
+    }
+
+    @Override
+    public double getThresholdHysteresis() {
+        return writeThreshold.getHysteresis();
+    }
+
+    @Override
+    public void setThresholdHysteresis(double hysteresis) {
+        readThreshold.setHysteresis(hysteresis);
+        writeThreshold.setHysteresis(hysteresis);
+    }
+
+    @Override
+    public long getThresholdMinimumDurationMillis() {
+        return writeThreshold.getMinimumDurationMillis();
+    }
+
+    @Override
+    public void setThresholdMinimumDurationMillis(long millis) {
+        readThreshold.setMinimumDurationMillis(millis);
+        writeThreshold.setMinimumDurationMillis(millis);
+    }
+
+    @Override
+    public long getThresholdNotificationIntervalMillis() {
+        return writeThreshold.getMinimumIntervalMillis();
+    }
+
+    @Override
+    public void setThresholdNotificationIntervalMillis(long millis) {
+        readThreshold.setMinimumIntervalMillis(millis);
+        writeThreshold.setMinimumIntervalMillis(millis);
+    }
+
+    @Override
+    public boolean isReadThresholdExceeded() {
+        return readThreshold.isExceeded();
+    }
+
+    @Override
+    public boolean isWriteThresholdExceeded() {
+        return writeThreshold.isExceeded();
+    }
+
     /**
-     * Updates the ProcessIO object reference to contain a new reference to a ProcessIO object
-     * that has been populated with new read and write io information from the given CurrentProcessIO object.
+     * Sets the capture that the burst capture operations delegate to
+     */
+    public void setBurstCapture(BurstCaptureOperations burstCapture) {
+        this.burstCapture = burstCapture;
+    }
+
+    @Override
+    public boolean startBurstCapture(long intervalMillis, long durationMillis) {
+        BurstCaptureOperations capture = burstCapture;
+        return capture!=null && capture.start(intervalMillis,durationMillis);
+    }
+
+    @Override
+    public boolean isBurstCaptureRunning() {
+        BurstCaptureOperations capture = burstCapture;
+        return capture!=null && capture.isRunning();
+    }
+
+    @Override
+    public long[] getBurstCapture() {
+        BurstCaptureOperations capture = burstCapture;
+        return capture==null ? new long[0] : capture.getCapture();
+    }
+
+    /**
+     * Sets the directory that {@link #writeBurstCapture(String)} writes to
+     *
+     * @param directory The directory, or null to disable the writing of captures
+     * @return false if the directory does not exist
+     */
+    public boolean setBurstCaptureDirectory(File directory) {
+        if(directory==null) {
+            burstCaptureDirectory = null;
+            return true;
+        }
+        try {
+            File canonical = directory.getCanonicalFile();
+            if(!canonical.isDirectory()) return false;
+            burstCaptureDirectory = canonical;
+            return true;
+        } catch(IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public boolean writeBurstCapture(String fileName) {
+        BurstCaptureOperations capture = burstCapture;
+        File directory = burstCaptureDirectory;
+        if(capture==null || directory==null || fileName==null) return false;
+
+        File file = burstCaptureFile(directory,fileName.trim());
+        return file!=null && capture.writeTo(file);
+    }
+
+    /**
+     * Returns the named file within the directory, or null if the name resolves (through .. or a link) to anywhere
+     * other than directly within the directory
+     */
+    private static File burstCaptureFile(File directory, String fileName) {
+        if(fileName.length()==0) return null;
+        try {
+            File file = new File(directory,fileName).getCanonicalFile();
+            return directory.equals(file.getParentFile()) ? file : null;
+        } catch(IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Updates the previous and current samples with the new read and write io information from the given
+     * CurrentProcessIO object.  Must only be called by a single thread, i.e. the scheduler's.
      *
      * @param io The current amount of io that has been obtained for the process.
      */
     public void setProcessIO(CurrentProcessIO io) {
-        ProcessIO previousIO = getProcessIO();
-        ProcessIO updatedIO = previousIO.updateCurrentValues(io);
-        processIORef.set(updatedIO);
+        long previousMillis = processIO.getCurrentSampleMs();
+        long previousReadBytes = processIO.getCurrentSampleReadBytes();
+        long previousWriteBytes = processIO.getCurrentSampleWriteBytes();
+        if(!processIO.update(io)) return;
+
+        long currentMillis = io.getCurrentSampleTimeInMillis();
+        long currentReadBytes = io.getCurrentReadBytes();
+        long currentWriteBytes = io.getCurrentWriteBytes();
+        usage.update(previousMillis,previousReadBytes,previousWriteBytes,currentMillis,currentReadBytes,currentWriteBytes);
+        sampleTimeKbPerSecondReadIO = sampleTimeKbPerSecond(previousMillis,previousReadBytes,currentMillis,currentReadBytes);
+        sampleTimeKbPerSecondWriteIO = sampleTimeKbPerSecond(previousMillis,previousWriteBytes,currentMillis,currentWriteBytes);
+        smoothedSequence = processIO.getSequence();
+        history.add(io);
+        recordThroughput(previousMillis,currentMillis,currentReadBytes-previousReadBytes,currentWriteBytes-previousWriteBytes);
+        checkThresholds(previousMillis,currentMillis,currentReadBytes-previousReadBytes,currentWriteBytes-previousWriteBytes);
+    }
+
+    /**
+     * Returns the KB per second between the previous and current samples; 0 if the counter has not increased, as
+     * {@link BasicProcessIOUsage} does
+     */
+    private double sampleTimeKbPerSecond(long previousMillis, long previousBytes, long currentMillis, long currentBytes) {
+        if(currentBytes <= previousBytes) return 0.0;
+        return sampleTimeCalculator.getDifferenceInKbPerSecond(previousMillis,previousBytes,currentMillis,currentBytes);
+    }
+
+    /**
+     * Checks the read and write KB per second between the previous and current samples against the thresholds,
+     * sending a notification for each threshold crossed
+     */
+    private void checkThresholds(long previousMillis, long currentMillis, long readBytes, long writeBytes) {
+        long elapsedMillis = currentMillis - previousMillis;
+        if(previousMillis<=0 || elapsedMillis<=0 || readBytes<0 || writeBytes<0) return;
+
+        double seconds = elapsedMillis / 1000.0;
+        double readKbPerSecond = (readBytes / 1024.0) / seconds;
+        double writeKbPerSecond = (writeBytes / 1024.0) / seconds;
+        notify(readThreshold.update(currentMillis,readKbPerSecond),READ_THRESHOLD_EXCEEDED,READ_THRESHOLD_CLEARED,
+               "read",readKbPerSecond,readThreshold,currentMillis);
+        notify(writeThreshold.update(currentMillis,writeKbPerSecond),WRITE_THRESHOLD_EXCEEDED,WRITE_THRESHOLD_CLEARED,
+               "write",writeKbPerSecond,writeThreshold,currentMillis);
+    }
+
+    private void notify(RateThreshold.Crossing crossing, String exceededType, String clearedType, String direction,
+                        double kbPerSecond, RateThreshold threshold, long millis) {
+        if(crossing==RateThreshold.Crossing.NONE) return;
+
+        boolean exceeded = crossing==RateThreshold.Crossing.EXCEEDED;
+        String message = String.format("%s rate %.1f KB/s has %s the threshold %.1f KB/s",direction,kbPerSecond,
+                                       exceeded ? "exceeded" : "dropped below",threshold.getThreshold());
+        Notification notification = new Notification(exceeded ? exceededType : clearedType,this,
+                                                      notificationSequence.incrementAndGet(),millis,message);
+        notification.setUserData(kbPerSecond);
+        sendNotification(notification);
+    }
+
+    /**
+     * Records the read and write bytes per second between the previous and current samples in the histograms
+     */
+    private void recordThroughput(long previousMillis, long currentMillis, long readBytes, long writeBytes) {
+        long elapsedMillis = currentMillis - previousMillis;
+        if(previousMillis<=0 || elapsedMillis<=0) return;
+
+        if(readBytes>=0) readHistogram.record(readBytes * 1000 / elapsedMillis);
+        if(writeBytes>=0) writeHistogram.record(writeBytes * 1000 / elapsedMillis);
     }
 
 
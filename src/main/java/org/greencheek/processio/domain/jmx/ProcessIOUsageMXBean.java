@@ -16,6 +16,7 @@
 package org.greencheek.processio.domain.jmx;
 
 import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.domain.ThroughputPercentiles;
 
 /**
  * <p>
@@ -32,6 +33,18 @@ import org.greencheek.processio.domain.ProcessIO;
  * <ul>
  *     <li>The amount of KB or MB per second that has occurred since that last time the process IO was read</li>
  *     <li>The amoutn of KB or MB, per second, that the process has resulted in.</li>
+ *     <li>The same sample and accumulated rates for the other /proc/PID/io counters: rchar, wchar,
+ *         syscr, syscw and cancelled_write_bytes.  Along with the average bytes per read and write syscall</li>
+ *     <li>The amount of KB per second over each of a number of recent windows (i.e. the last 1, 5 and 15 minutes)</li>
+ *     <li>The amount of KB per second as exponentially weighted moving averages, if the
+ *         {@link org.greencheek.processio.service.usage.ProcessIOUsage} smooths the rates</li>
+ *     <li>The p50, p90, p99, p99.9 and max read and write KB per second of the sample intervals, since the
+ *         percentiles were last reset</li>
+ *     <li>A snapshot of all the counters and rates of a single sample</li>
+ *     <li>The read and write KB per second thresholds, which can be set at runtime, above which a notification is
+ *         sent (see {@link ProcessIOUsageHolder})</li>
+ *     <li>An operation to capture the io counters at a high frequency for a short time, i.e. during an incident
+ *         (see {@link org.greencheek.processio.service.scheduler.BurstCapture})</li>
  * </ul>
  *
  * </p>
@@ -44,6 +57,20 @@ import org.greencheek.processio.domain.ProcessIO;
 public interface ProcessIOUsageMXBean {
     ProcessIO getProcessIO();
 
+    /**
+     * The number of samples that have been recorded.  As each attribute is calculated from the sample current at the
+     * time it is read, a client that reads several attributes can read this before and after them, and re-read
+     * them if it has changed, to be sure they were all calculated from the same sample.
+     */
+    long getSampleSequence();
+
+    /**
+     * Every counter of the latest sample, and every rate calculated from it, in a single call.  Unlike reading the
+     * attributes separately, the values are all from the same sample, whose sequence is the sampleSequence item.  The
+     * same CompositeData is returned to every call until the next sample.
+     */
+    ProcessIOSnapshot getSnapshot();
+
     /**
      * The amount of read I/O that the jvm process has resulted in, since the last time the IO values were sampled for
      * the given project.
@@ -113,4 +140,265 @@ public interface ProcessIOUsageMXBean {
      */
     public double getAccumulatedMbPerSecondWriteIO();
 
+    /**
+     * The amount of logical read I/O (rchar) that the jvm process has requested since the last time the IO values were sampled,
+     * including reads served from the page cache.  Compare with {@link #getSampleTimeKbPerSecondReadIO()} to see how much
+     * of the read io reached the storage layer.
+     *
+     * @return The amount of rchar io, in KB per second, since the last sample
+     */
+    public double getSampleTimeKbPerSecondReadChars();
+
+    /**
+     * The amount of logical write I/O (wchar) that the jvm process has requested since the last time the IO values were sampled.
+     *
+     * @return The amount of wchar io, in KB per second, since the last sample
+     */
+    public double getSampleTimeKbPerSecondWriteChars();
+
+    /**
+     * The number of read syscalls (syscr) per second since the last time the IO values were sampled.
+     *
+     * @return read syscalls per second, since the last sample
+     */
+    public double getSampleTimeReadSyscallsPerSecond();
+
+    /**
+     * The number of write syscalls (syscw) per second since the last time the IO values were sampled.
+     *
+     * @return write syscalls per second, since the last sample
+     */
+    public double getSampleTimeWriteSyscallsPerSecond();
+
+    /**
+     * The amount of written io that was cancelled (cancelled_write_bytes) before reaching the storage layer, since
+     * the last time the IO values were sampled.
+     *
+     * @return The amount of cancelled write io, in KB per second, since the last sample
+     */
+    public double getSampleTimeKbPerSecondCancelledWriteIO();
+
+    /**
+     * The average number of bytes requested per read syscall since the last time the IO values were sampled.
+     *
+     * @return average bytes per read syscall, since the last sample
+     */
+    public double getSampleTimeBytesPerReadSyscall();
+
+    /**
+     * The average number of bytes requested per write syscall since the last time the IO values were sampled.
+     * A low value alongside a high write syscall rate indicates a storm of tiny writes.
+     *
+     * @return average bytes per write syscall, since the last sample
+     */
+    public double getSampleTimeBytesPerWriteSyscall();
+
+    /**
+     * The amount of logical read I/O (rchar) that the jvm process has requested since the start of the jvm (or when the
+     * counters were initially measured).  The amount is measured in kb per second.
+     *
+     * @return The amount of rchar io that was occurred throughout the lifetime of the jvm
+     */
+    public double getAccumulatedKbPerSecondReadChars();
+
+    /**
+     * The amount of logical write I/O (wchar) that the jvm process has requested since the start of the jvm (or when the
+     * counters were initially measured).  The amount is measured in kb per second.
+     *
+     * @return The amount of wchar io that was occurred throughout the lifetime of the jvm
+     */
+    public double getAccumulatedKbPerSecondWriteChars();
+
+    /**
+     * The number of read syscalls per second since the start of the jvm (or when the counters were initially measured).
+     *
+     * @return read syscalls per second throughout the lifetime of the jvm
+     */
+    public double getAccumulatedReadSyscallsPerSecond();
+
+    /**
+     * The number of write syscalls per second since the start of the jvm (or when the counters were initially measured).
+     *
+     * @return write syscalls per second throughout the lifetime of the jvm
+     */
+    public double getAccumulatedWriteSyscallsPerSecond();
+
+    /**
+     * The amount of cancelled write io since the start of the jvm (or when the counters were initially measured).
+     * The amount is measured in kb per second.
+     *
+     * @return The amount of cancelled write io throughout the lifetime of the jvm
+     */
+    public double getAccumulatedKbPerSecondCancelledWriteIO();
+
+    /**
+     * The average number of bytes requested per read syscall over the lifetime of the jvm process.
+     *
+     * @return average bytes per read syscall
+     */
+    public double getAccumulatedBytesPerReadSyscall();
+
+    /**
+     * The average number of bytes requested per write syscall over the lifetime of the jvm process.
+     *
+     * @return average bytes per write syscall
+     */
+    public double getAccumulatedBytesPerWriteSyscall();
+
+
+    /**
+     * The windows, in millis, over which the windowed rates are calculated; by default 1, 5 and 15 minutes.
+     *
+     * @return The windows in millis, in the order of the values returned by {@link #getWindowedKbPerSecondReadIO()}
+     *         and {@link #getWindowedKbPerSecondWriteIO()}
+     */
+    public long[] getHistoryWindowsInMillis();
+
+    /**
+     * The amount of read I/O, in KB per second, that the jvm process has performed over each of the windows
+     * returned by {@link #getHistoryWindowsInMillis()}.  If the samples do not yet cover a window, the rate is
+     * over the time that the samples do cover.
+     *
+     * @return The read KB per second for each window
+     */
+    public double[] getWindowedKbPerSecondReadIO();
+
+    /**
+     * The amount of write I/O, in KB per second, that the jvm process has performed over each of the windows
+     * returned by {@link #getHistoryWindowsInMillis()}.  If the samples do not yet cover a window, the rate is
+     * over the time that the samples do cover.
+     *
+     * @return The write KB per second for each window
+     */
+    public double[] getWindowedKbPerSecondWriteIO();
+
+    /**
+     * The time constants, in millis, of the smoothed (exponentially weighted moving average) rates.  Empty if the
+     * rates are not smoothed.
+     *
+     * @return The time constants in millis, in the order of the values returned by
+     *         {@link #getSmoothedKbPerSecondReadIO()} and {@link #getSmoothedKbPerSecondWriteIO()}
+     */
+    public long[] getSmoothingTimeConstantsInMillis();
+
+    /**
+     * The read I/O of the jvm process, in KB per second, as a moving average for each of the time constants
+     * returned by {@link #getSmoothingTimeConstantsInMillis()}; in the manner of the load average.
+     *
+     * @return The smoothed read KB per second for each time constant
+     */
+    public double[] getSmoothedKbPerSecondReadIO();
+
+    /**
+     * The write I/O of the jvm process, in KB per second, as a moving average for each of the time constants
+     * returned by {@link #getSmoothingTimeConstantsInMillis()}; in the manner of the load average.
+     *
+     * @return The smoothed write KB per second for each time constant
+     */
+    public double[] getSmoothedKbPerSecondWriteIO();
+
+    /**
+     * The percentiles of the read KB per second of each sample interval, since the agent started or the percentiles
+     * were reset by {@link #resetThroughputPercentiles()}.  Unlike the averages, these show short bursts of io.
+     *
+     * @return The p50, p90, p99, p99.9 and max read KB per second
+     */
+    public ThroughputPercentiles getReadThroughputPercentiles();
+
+    /**
+     * The percentiles of the write KB per second of each sample interval, since the agent started or the percentiles
+     * were reset by {@link #resetThroughputPercentiles()}.  Unlike the averages, these show short bursts of io.
+     *
+     * @return The p50, p90, p99, p99.9 and max write KB per second
+     */
+    public ThroughputPercentiles getWriteThroughputPercentiles();
+
+    /**
+     * Clears the recorded read and write throughput, so that the percentiles are calculated from the sample intervals
+     * after this call.
+     */
+    public void resetThroughputPercentiles();
+
+    /**
+     * The read KB per second of a sample above which a {@link ProcessIOUsageHolder#READ_THRESHOLD_EXCEEDED}
+     * notification is sent, and below which (less the hysteresis) a
+     * {@link ProcessIOUsageHolder#READ_THRESHOLD_CLEARED} notification is then sent.  0 disables the threshold.
+     */
+    public double getReadThresholdKbPerSecond();
+
+    public void setReadThresholdKbPerSecond(double kbPerSecond);
+
+    /**
+     * The write KB per second of a sample above which a {@link ProcessIOUsageHolder#WRITE_THRESHOLD_EXCEEDED}
+     * notification is sent, and below which (less the hysteresis) a
+     * {@link ProcessIOUsageHolder#WRITE_THRESHOLD_CLEARED} notification is then sent.  0 disables the threshold.
+     */
+    public double getWriteThresholdKbPerSecond();
+
+    public void setWriteThresholdKbPerSecond(double kbPerSecond);
+
+    /**
+     * The fraction below a threshold (i.e. 0.1 for 10%) the rate must drop to before the threshold is cleared
+     */
+    public double getThresholdHysteresis();
+
+    public void setThresholdHysteresis(double hysteresis);
+
+    /**
+     * How long, in millis, the rate must stay above a threshold (or below it, less the hysteresis) before a
+     * notification is sent
+     */
+    public long getThresholdMinimumDurationMillis();
+
+    public void setThresholdMinimumDurationMillis(long millis);
+
+    /**
+     * The least time, in millis, between two notifications for the same threshold
+     */
+    public long getThresholdNotificationIntervalMillis();
+
+    public void setThresholdNotificationIntervalMillis(long millis);
+
+    /**
+     * True if the read threshold has been exceeded, and not since cleared
+     */
+    public boolean isReadThresholdExceeded();
+
+    /**
+     * True if the write threshold has been exceeded, and not since cleared
+     */
+    public boolean isWriteThresholdExceeded();
+
+    /**
+     * Samples the io counters every interval, for the given duration, into the burst capture buffer.  The normal
+     * sampling, and so this bean's values, carry on while the capture runs.
+     *
+     * @param intervalMillis The interval between the samples of the capture, i.e. 10
+     * @param durationMillis How long to capture for, i.e. 30000
+     * @return false if burst capture is not enabled, or a capture is already running
+     */
+    public boolean startBurstCapture(long intervalMillis, long durationMillis);
+
+    /**
+     * True while a burst capture is running
+     */
+    public boolean isBurstCaptureRunning();
+
+    /**
+     * The samples of the current, or last, burst capture: 8 longs per sample, being the time in millis followed by the
+     * read_bytes, write_bytes, rchar, wchar, syscr, syscw and cancelled_write_bytes counters.  Empty if burst capture
+     * is not enabled.
+     */
+    public long[] getBurstCapture();
+
+    /**
+     * Writes the samples of the current, or last, burst capture, as comma separated lines, to the named file in the
+     * agent's burst capture directory.  Names that resolve to anywhere other than directly within that directory are
+     * rejected.
+     *
+     * @param fileName The name of the file, within the burst capture directory, to write to
+     * @return false if burst capture or its directory is not enabled, the name is outside the directory, or the file
+     *         could not be written
+     */
+    public boolean writeBurstCapture(String fileName);
 }
@@ -0,0 +1,61 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.ThreadIO;
+import org.greencheek.processio.service.io.ProcTaskThreadIOReader;
+
+/**
+ * <p>
+ * MXBean object that returns the threads performing the most io, as sampled by a {@link ProcTaskThreadIOReader}.
+ * </p>
+ */
+public class ThreadIOUsageHolder implements ThreadIOUsageMXBean {
+
+    public static final int DEFAULT_TOP_THREADS_LIMIT = 10;
+
+    private final ProcTaskThreadIOReader reader;
+    private volatile int topThreadsLimit;
+
+    public ThreadIOUsageHolder(ProcTaskThreadIOReader reader) {
+        this(reader,DEFAULT_TOP_THREADS_LIMIT);
+    }
+
+    public ThreadIOUsageHolder(ProcTaskThreadIOReader reader, int topThreadsLimit) {
+        this.reader = reader;
+        this.topThreadsLimit = topThreadsLimit;
+    }
+
+    @Override
+    public ThreadIO[] getTopThreads() {
+        return reader.getTopThreads(topThreadsLimit);
+    }
+
+    @Override
+    public int getTopThreadsLimit() {
+        return topThreadsLimit;
+    }
+
+    @Override
+    public void setTopThreadsLimit(int limit) {
+        this.topThreadsLimit = limit;
+    }
+
+    @Override
+    public int getTrackedThreadCount() {
+        return reader.getTrackedThreadCount();
+    }
+}
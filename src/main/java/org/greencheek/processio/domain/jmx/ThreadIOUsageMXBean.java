@@ -0,0 +1,52 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain.jmx;
+
+import org.greencheek.processio.domain.ThreadIO;
+
+/**
+ * <p>
+ * MXBean that returns the threads of the jvm process that are performing the most io, so that
+ * it can be seen which thread (i.e. a compaction thread, the gc log writer, or a request handler) is
+ * responsible for the io of the process.
+ * </p>
+ */
+public interface ThreadIOUsageMXBean {
+
+    /**
+     * Returns the top threads, ordered by the combined read and write KB per second between the last two samples.
+     * The number of threads returned is at most {@link #getTopThreadsLimit()}.  Threads that performed no io
+     * between the last two samples are not returned.
+     *
+     * @return The threads performing the most io
+     */
+    public ThreadIO[] getTopThreads();
+
+    /**
+     * The maximum number of threads returned by {@link #getTopThreads()}
+     */
+    public int getTopThreadsLimit();
+
+    /**
+     * Sets the maximum number of threads returned by {@link #getTopThreads()}
+     */
+    public void setTopThreadsLimit(int limit);
+
+    /**
+     * The number of threads that were seen at the last sample
+     */
+    public int getTrackedThreadCount();
+}
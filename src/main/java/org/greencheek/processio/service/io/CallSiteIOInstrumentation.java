@@ -0,0 +1,185 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CallSiteIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.instrument.Instrumentation;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.jar.JarOutputStream;
+
+/**
+ * <p>
+ * Attributes the io of the jvm to the call sites that perform it, so that it can be seen which code paths produce
+ * the /proc/PID/io totals.  The io methods of the jdk are rewritten, via the {@link Instrumentation} given to the
+ * agent, by a {@link CallSiteIOTransformer}, so that 1 in N of their calls is counted by the
+ * {@link CallSiteIORecorder} against the call site that made it.  Unlike the other readers, this is not a sampler
+ * of the scheduler: the bytes are counted as the calls are made, and are read from the recorder when asked for.
+ * </p>
+ * <p>
+ * On {@link #install(Instrumentation, int) install} the recorder is written to a jar in the temp directory, which is
+ * appended to the bootstrap class path, as the rewritten classes of the jdk are loaded by the bootstrap class loader
+ * and must be able to call it.  The jdk classes that are already loaded (the file streams always are) are then
+ * retransformed; those loaded later are rewritten as they are loaded.  The jvm's agent jar must therefore declare
+ * Can-Retransform-Classes in its manifest.
+ * </p>
+ */
+public class CallSiteIOInstrumentation {
+
+    private static final Logger log = LoggerFactory.getLogger(CallSiteIOInstrumentation.class);
+
+    private static final String RECORDER_CLASS_FILE = CallSiteIOTransformer.RECORDER + ".class";
+
+    private CallSiteIOInstrumentation() {
+    }
+
+    /**
+     * Rewrites the io methods of the jdk, and starts attributing 1 in the given number of their calls to call sites
+     *
+     * @param inst The instrumentation given to the agent
+     * @param sampleEveryCalls Attribute 1 in this many io calls
+     * @return The instrumentation, or null if the io methods could not be rewritten
+     */
+    public static CallSiteIOInstrumentation install(Instrumentation inst, int sampleEveryCalls) {
+        if(inst==null) {
+            log.error("No instrumentation is available to the agent, call site io will not be attributed");
+            return null;
+        }
+
+        try {
+            inst.appendToBootstrapClassLoaderSearch(new JarFile(writeRecorderJar()));
+        } catch(IOException e) {
+            log.error("Unable to add the call site io recorder to the bootstrap class path, call site io will not be attributed",e);
+            return null;
+        }
+
+        CallSiteIORecorder.enable(sampleEveryCalls,CallSiteIORecorder.DEFAULT_MAX_CALL_SITES);
+        CallSiteIOTransformer transformer = new CallSiteIOTransformer();
+        inst.addTransformer(transformer,true);
+
+        if(!inst.isRetransformClassesSupported()) {
+            log.warn("The jvm cannot retransform classes, only the io of the classes loaded after the agent will be attributed to call sites");
+        } else {
+            List<Class<?>> loaded = new ArrayList<Class<?>>();
+            for(Class<?> loadedClass : inst.getAllLoadedClasses()) {
+                if(transformer.isTarget(loadedClass.getName()) && inst.isModifiableClass(loadedClass)) {
+                    loaded.add(loadedClass);
+                }
+            }
+            try {
+                if(loaded.size()>0) inst.retransformClasses(loaded.toArray(new Class<?>[loaded.size()]));
+            } catch(Throwable e) {
+                log.error("Unable to retransform the loaded io classes, their io will not be attributed to call sites",e);
+            }
+        }
+        return new CallSiteIOInstrumentation();
+    }
+
+    /**
+     * Writes the recorder's class file, read from the agent's jar, to a jar of its own
+     */
+    private static File writeRecorderJar() throws IOException {
+        File jar = File.createTempFile("processio-callsite",".jar");
+        jar.deleteOnExit();
+
+        InputStream recorder = CallSiteIOInstrumentation.class.getClassLoader().getResourceAsStream(RECORDER_CLASS_FILE);
+        if(recorder==null) throw new IOException("Unable to find " + RECORDER_CLASS_FILE);
+        JarOutputStream out = new JarOutputStream(new FileOutputStream(jar));
+        try {
+            out.putNextEntry(new JarEntry(RECORDER_CLASS_FILE));
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = recorder.read(buffer))!=-1) {
+                out.write(buffer,0,read);
+            }
+            out.closeEntry();
+        } finally {
+            recorder.close();
+            out.close();
+        }
+        return jar;
+    }
+
+    /**
+     * Returns the call sites with the most bytes attributed to them since the last reset
+     *
+     * @param limit The maximum number of call sites to return
+     * @return The call sites, ordered by the most bytes first
+     */
+    public CallSiteIO[] getTopCallSites(int limit) {
+        return topCallSites(CallSiteIORecorder.getCallSites(),CallSiteIORecorder.getSinceMillis(),limit);
+    }
+
+    static CallSiteIO[] topCallSites(Map<String,long[]> callSites, long sinceMillis, int limit) {
+        if(limit<=0) return new CallSiteIO[0];
+
+        List<Map.Entry<String,long[]>> sites = new ArrayList<Map.Entry<String,long[]>>(callSites.entrySet());
+        long total = 0;
+        for(Map.Entry<String,long[]> site : sites) {
+            total += site.getValue()[0];
+        }
+        Collections.sort(sites,new Comparator<Map.Entry<String,long[]>>() {
+            @Override
+            public int compare(Map.Entry<String,long[]> a, Map.Entry<String,long[]> b) {
+                long aBytes = a.getValue()[0];
+                long bBytes = b.getValue()[0];
+                return aBytes < bBytes ? 1 : (aBytes == bBytes ? 0 : -1);
+            }
+        });
+
+        CallSiteIO[] result = new CallSiteIO[Math.min(limit,sites.size())];
+        for(int i=0;i<result.length;i++) {
+            Map.Entry<String,long[]> site = sites.get(i);
+            long bytes = site.getValue()[0];
+            result[i] = new CallSiteIO(site.getKey(),bytes,site.getValue()[1],
+                                       total==0 ? 0.0 : bytes * 100.0 / total,sinceMillis);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of call sites that have had bytes attributed to them since the last reset
+     */
+    public int getCallSiteCount() {
+        return CallSiteIORecorder.getCallSiteCount();
+    }
+
+    /**
+     * Returns the number of io calls, of which 1 is attributed to its call site
+     */
+    public int getSampleEveryCalls() {
+        return CallSiteIORecorder.getSampleEveryCalls();
+    }
+
+    /**
+     * Clears the bytes attributed to every call site
+     */
+    public void reset() {
+        CallSiteIORecorder.reset();
+    }
+}
@@ -0,0 +1,231 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * <p>
+ * Counts the bytes read and written by the jdk's io methods against the call sites that call them.  The methods of
+ * the file channel, the file streams, RandomAccessFile and the socket streams are rewritten by the
+ * {@link CallSiteIOTransformer} to pass the bytes each call read or wrote to this class as the call returns, so the
+ * bytes are those of the call itself: nothing is estimated from what a thread happens to be doing when sampled.
+ * </p>
+ * <p>
+ * Only 1 in {@link #getSampleEveryCalls()} calls is attributed.  On the other calls the cost is a read of the
+ * {@link #isEnabled() enabled} flag and a {@link ThreadLocalRandom}.  On an attributed call the stack is taken, and
+ * the bytes of the call, multiplied by the sampling rate, are added to the call site: the class and method of the
+ * first frame that is not in the jdk (i.e. the caller of FileChannel.write, not FileChannelImpl.write).  The per call
+ * site counters are {@link LongAdder}s, as the calls of any thread may update them at the same time.  At most
+ * {@link #DEFAULT_MAX_CALL_SITES} call sites are counted; the bytes of any further call sites are attributed to
+ * {@value #OTHER_CALL_SITES}.
+ * </p>
+ * <p>
+ * The rewritten methods of the jdk are loaded by the bootstrap class loader, so this class is appended to the
+ * bootstrap class path before the methods are rewritten (see {@link CallSiteIOInstrumentation}).  It therefore only
+ * depends upon the jdk, and is all static: there is the one recorder per jvm.
+ * </p>
+ */
+public final class CallSiteIORecorder {
+
+    public static final int DEFAULT_SAMPLE_EVERY_CALLS = 100;
+    public static final int DEFAULT_MAX_CALL_SITES = 1024;
+    public static final String OTHER_CALL_SITES = "(other)";
+    public static final String UNKNOWN_CALL_SITE = "(unknown)";
+
+    static final String[] SKIPPED_PACKAGES = new String[] {
+            "java.", "javax.", "sun.", "jdk.", "com.sun."
+    };
+
+    private static final int BYTES = 0;
+    private static final int SAMPLES = 1;
+
+    private static final ConcurrentMap<String,LongAdder[]> callSites = new ConcurrentHashMap<String,LongAdder[]>();
+
+    // Stops the io performed while a call is attributed (i.e. class loading) from being attributed itself
+    private static final ThreadLocal<Boolean> attributing = new ThreadLocal<Boolean>();
+
+    private static volatile boolean enabled;
+    private static volatile int sampleEveryCalls = DEFAULT_SAMPLE_EVERY_CALLS;
+    private static volatile int maxCallSites = DEFAULT_MAX_CALL_SITES;
+    private static volatile long sinceMillis = System.currentTimeMillis();
+
+    private CallSiteIORecorder() {
+    }
+
+    /**
+     * Starts attributing the io calls
+     *
+     * @param sampleEvery Attribute 1 in this many io calls
+     * @param maxSites The maximum number of call sites counted
+     */
+    public static void enable(int sampleEvery, int maxSites) {
+        sampleEveryCalls = Math.max(1,sampleEvery);
+        maxCallSites = Math.max(1,maxSites);
+        enabled = true;
+    }
+
+    /**
+     * Stops attributing the io calls.  The rewritten methods still call this class, but return straight away.
+     */
+    public static void disable() {
+        enabled = false;
+    }
+
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Called with the value returned by a read of many bytes, returning it unchanged.  A negative value (the end of
+     * the stream) or 0 reads nothing.
+     */
+    public static int read(int bytes) {
+        if(enabled && bytes>0) sample(bytes);
+        return bytes;
+    }
+
+    /**
+     * Called with the value returned by a scattering read, returning it unchanged
+     */
+    public static long read(long bytes) {
+        if(enabled && bytes>0) sample(bytes);
+        return bytes;
+    }
+
+    /**
+     * Called with the value returned by a read of a single byte, returning it unchanged.  The value is the byte read,
+     * or -1 at the end of the stream.
+     */
+    public static int readByte(int value) {
+        if(enabled && value>=0) sample(1);
+        return value;
+    }
+
+    /**
+     * Called with the number of bytes written, returning it unchanged
+     */
+    public static int write(int bytes) {
+        if(enabled && bytes>0) sample(bytes);
+        return bytes;
+    }
+
+    /**
+     * Called with the value returned by a gathering write, returning it unchanged
+     */
+    public static long write(long bytes) {
+        if(enabled && bytes>0) sample(bytes);
+        return bytes;
+    }
+
+    private static void sample(long bytes) {
+        int every = sampleEveryCalls;
+        if(every>1 && ThreadLocalRandom.current().nextInt(every)!=0) return;
+        if(attributing.get()!=null) return;
+
+        attributing.set(Boolean.TRUE);
+        try {
+            LongAdder[] counters = counters(callSite(new Throwable().getStackTrace()));
+            counters[BYTES].add(bytes * every);
+            counters[SAMPLES].increment();
+        } finally {
+            attributing.remove();
+        }
+    }
+
+    /**
+     * Returns the class and method of the first frame that is neither in this class nor in a skipped package
+     */
+    static String callSite(StackTraceElement[] stack) {
+        String recorder = CallSiteIORecorder.class.getName();
+        for(StackTraceElement frame : stack) {
+            String className = frame.getClassName();
+            if(!className.equals(recorder) && !isSkipped(className)) {
+                return className + "." + frame.getMethodName();
+            }
+        }
+        return UNKNOWN_CALL_SITE;
+    }
+
+    private static boolean isSkipped(String className) {
+        for(String skipped : SKIPPED_PACKAGES) {
+            if(className.startsWith(skipped)) return true;
+        }
+        return false;
+    }
+
+    private static LongAdder[] counters(String callSite) {
+        LongAdder[] counters = callSites.get(callSite);
+        if(counters==null) {
+            if(callSites.size()>=maxCallSites) {
+                callSite = OTHER_CALL_SITES;
+                counters = callSites.get(callSite);
+                if(counters!=null) return counters;
+            }
+            LongAdder[] created = new LongAdder[] { new LongAdder(), new LongAdder() };
+            counters = callSites.putIfAbsent(callSite,created);
+            if(counters==null) counters = created;
+        }
+        return counters;
+    }
+
+    /**
+     * Returns the bytes, and the number of attributed calls, of each call site since the last reset, as
+     * call site to {bytes, calls}
+     */
+    public static Map<String,long[]> getCallSites() {
+        Map<String,long[]> sites = new HashMap<String,long[]>(callSites.size()*2);
+        for(Map.Entry<String,LongAdder[]> entry : callSites.entrySet()) {
+            LongAdder[] counters = entry.getValue();
+            sites.put(entry.getKey(),new long[] { counters[BYTES].sum(), counters[SAMPLES].sum() });
+        }
+        return sites;
+    }
+
+    /**
+     * Returns the number of call sites that have had bytes attributed to them since the last reset
+     */
+    public static int getCallSiteCount() {
+        return callSites.size();
+    }
+
+    /**
+     * Returns the number of io calls, of which 1 is attributed
+     */
+    public static int getSampleEveryCalls() {
+        return sampleEveryCalls;
+    }
+
+    /**
+     * Returns the time, in millis, from which the bytes have been attributed
+     */
+    public static long getSinceMillis() {
+        return sinceMillis;
+    }
+
+    /**
+     * Clears the bytes attributed to every call site
+     */
+    public static void reset() {
+        callSites.clear();
+        sinceMillis = System.currentTimeMillis();
+    }
+}
@@ -0,0 +1,250 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.lang.instrument.ClassFileTransformer;
+import java.security.ProtectionDomain;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * <p>
+ * Rewrites the io methods of the jdk so that, as each call returns, the bytes it read or wrote are passed to the
+ * {@link CallSiteIORecorder}.  The methods rewritten are the {@link #JDK_TARGETS}: the reads and writes of
+ * FileChannelImpl and SocketChannelImpl, of FileInputStream, FileOutputStream and RandomAccessFile, and of the socket
+ * streams (NioSocketImpl from jdk 13, SocketInputStream and SocketOutputStream before).  Only the methods that do not
+ * call one another are rewritten, so that a call is counted once: i.e. RandomAccessFile.readFully is counted by the
+ * reads it makes.  Targets that do not exist in the running jdk are ignored, as are native methods (the single
+ * byte reads of jdk 8).
+ * </p>
+ * <p>
+ * A call to the recorder is inserted before each return of a method.  For a method that returns the bytes read or
+ * written, the returned value is passed through the recorder.  For a void write, the bytes are those given to it:
+ * its length parameter, the length of its array, or 1 for a single byte.  Nothing else in the method is changed, so
+ * the stack map frames of the method stay valid, and only the max stack is recomputed.  A call that throws is not
+ * counted.
+ * </p>
+ */
+public class CallSiteIOTransformer implements ClassFileTransformer {
+
+    private static final Logger log = LoggerFactory.getLogger(CallSiteIOTransformer.class);
+
+    // not a class literal, so that the recorder is not loaded before it is on the bootstrap class path
+    static final String RECORDER = "org/greencheek/processio/service/io/CallSiteIORecorder";
+
+    /**
+     * How the bytes of a call are passed to the recorder as the method returns
+     */
+    public enum Probe {
+        /** The int or long returned is the number of bytes read */
+        READ_RETURNED,
+        /** The int returned is a single byte read, or -1 */
+        READ_BYTE_RETURNED,
+        /** The int or long returned is the number of bytes written */
+        WRITE_RETURNED,
+        /** A void write of the bytes of its array, given as (byte[] b, int off, int len) */
+        WRITE_LENGTH_PARAMETER,
+        /** A void write of the whole of its array */
+        WRITE_ARRAY_LENGTH,
+        /** A void write of a single byte */
+        WRITE_BYTE
+    }
+
+    /**
+     * A method to be rewritten
+     */
+    public static final class Target {
+        private final String className;
+        private final String methodName;
+        private final String descriptor;
+        private final Probe probe;
+
+        /**
+         * @param className The internal name of the class, i.e. java/io/FileInputStream
+         * @param methodName The name of the method
+         * @param descriptor The descriptor of the method, i.e. ([BII)I
+         * @param probe How the bytes of a call are passed to the recorder
+         */
+        public Target(String className, String methodName, String descriptor, Probe probe) {
+            this.className = className;
+            this.methodName = methodName;
+            this.descriptor = descriptor;
+            this.probe = probe;
+        }
+
+        public String getClassName() {
+            return className;
+        }
+
+        private boolean matches(String name, String desc) {
+            return methodName.equals(name) && descriptor.equals(desc);
+        }
+    }
+
+    public static final List<Target> JDK_TARGETS = Collections.unmodifiableList(Arrays.asList(
+            new Target("sun/nio/ch/FileChannelImpl","read","(Ljava/nio/ByteBuffer;)I",Probe.READ_RETURNED),
+            new Target("sun/nio/ch/FileChannelImpl","read","([Ljava/nio/ByteBuffer;II)J",Probe.READ_RETURNED),
+            new Target("sun/nio/ch/FileChannelImpl","read","(Ljava/nio/ByteBuffer;J)I",Probe.READ_RETURNED),
+            new Target("sun/nio/ch/FileChannelImpl","write","(Ljava/nio/ByteBuffer;)I",Probe.WRITE_RETURNED),
+            new Target("sun/nio/ch/FileChannelImpl","write","([Ljava/nio/ByteBuffer;II)J",Probe.WRITE_RETURNED),
+            new Target("sun/nio/ch/FileChannelImpl","write","(Ljava/nio/ByteBuffer;J)I",Probe.WRITE_RETURNED),
+
+            new Target("sun/nio/ch/SocketChannelImpl","read","(Ljava/nio/ByteBuffer;)I",Probe.READ_RETURNED),
+            new Target("sun/nio/ch/SocketChannelImpl","read","([Ljava/nio/ByteBuffer;II)J",Probe.READ_RETURNED),
+            new Target("sun/nio/ch/SocketChannelImpl","write","(Ljava/nio/ByteBuffer;)I",Probe.WRITE_RETURNED),
+            new Target("sun/nio/ch/SocketChannelImpl","write","([Ljava/nio/ByteBuffer;II)J",Probe.WRITE_RETURNED),
+
+            new Target("java/io/FileInputStream","read","()I",Probe.READ_BYTE_RETURNED),
+            new Target("java/io/FileInputStream","read","([B)I",Probe.READ_RETURNED),
+            new Target("java/io/FileInputStream","read","([BII)I",Probe.READ_RETURNED),
+            new Target("java/io/FileOutputStream","write","(I)V",Probe.WRITE_BYTE),
+            new Target("java/io/FileOutputStream","write","([B)V",Probe.WRITE_ARRAY_LENGTH),
+            new Target("java/io/FileOutputStream","write","([BII)V",Probe.WRITE_LENGTH_PARAMETER),
+
+            new Target("java/io/RandomAccessFile","read","()I",Probe.READ_BYTE_RETURNED),
+            new Target("java/io/RandomAccessFile","read","([B)I",Probe.READ_RETURNED),
+            new Target("java/io/RandomAccessFile","read","([BII)I",Probe.READ_RETURNED),
+            new Target("java/io/RandomAccessFile","write","(I)V",Probe.WRITE_BYTE),
+            new Target("java/io/RandomAccessFile","write","([B)V",Probe.WRITE_ARRAY_LENGTH),
+            new Target("java/io/RandomAccessFile","write","([BII)V",Probe.WRITE_LENGTH_PARAMETER),
+
+            // jdk 13 and later
+            new Target("sun/nio/ch/NioSocketImpl","read","([BII)I",Probe.READ_RETURNED),
+            new Target("sun/nio/ch/NioSocketImpl","write","([BII)V",Probe.WRITE_LENGTH_PARAMETER),
+            // jdk 12 and earlier
+            new Target("java/net/SocketInputStream","read","([BIII)I",Probe.READ_RETURNED),
+            new Target("java/net/SocketOutputStream","socketWrite","([BII)V",Probe.WRITE_LENGTH_PARAMETER)
+    ));
+
+    private final List<Target> targets;
+    private final Set<String> classNames = new HashSet<String>();
+
+    /**
+     * Rewrites the {@link #JDK_TARGETS}
+     */
+    public CallSiteIOTransformer() {
+        this(JDK_TARGETS);
+    }
+
+    /**
+     * @param targets The methods to rewrite
+     */
+    public CallSiteIOTransformer(List<Target> targets) {
+        this.targets = new ArrayList<Target>(targets);
+        for(Target target : targets) {
+            classNames.add(target.getClassName());
+        }
+    }
+
+    /**
+     * Returns true if the class, given by its binary name (i.e. java.io.FileInputStream), has methods to rewrite
+     */
+    public boolean isTarget(String className) {
+        return classNames.contains(className.replace('.','/'));
+    }
+
+    @Override
+    public byte[] transform(ClassLoader loader, String className, Class<?> classBeingRedefined,
+                            ProtectionDomain protectionDomain, byte[] classfileBuffer) {
+        if(className==null || !classNames.contains(className)) return null;
+        try {
+            return transform(className,classfileBuffer);
+        } catch(Throwable e) {
+            // returning null leaves the class as it was
+            log.error("Unable to add the call site io probes to {}",className,e);
+            return null;
+        }
+    }
+
+    byte[] transform(final String className, byte[] classfile) {
+        ClassReader reader = new ClassReader(classfile);
+        ClassWriter writer = new ClassWriter(reader,ClassWriter.COMPUTE_MAXS);
+        reader.accept(new ClassVisitor(Opcodes.ASM9,writer) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                MethodVisitor visitor = super.visitMethod(access,name,descriptor,signature,exceptions);
+                Probe probe = probe(className,name,descriptor);
+                return probe==null ? visitor : new ProbeMethodVisitor(visitor,probe);
+            }
+        },0);
+        return writer.toByteArray();
+    }
+
+    private Probe probe(String className, String name, String descriptor) {
+        for(Target target : targets) {
+            if(target.getClassName().equals(className) && target.matches(name,descriptor)) return target.probe;
+        }
+        return null;
+    }
+
+    /**
+     * Inserts the call to the recorder before each return of the method
+     */
+    private static final class ProbeMethodVisitor extends MethodVisitor {
+        private final Probe probe;
+
+        private ProbeMethodVisitor(MethodVisitor visitor, Probe probe) {
+            super(Opcodes.ASM9,visitor);
+            this.probe = probe;
+        }
+
+        @Override
+        public void visitInsn(int opcode) {
+            switch(opcode) {
+                case Opcodes.IRETURN:
+                    record(probe==Probe.READ_BYTE_RETURNED ? "readByte" : method(),"(I)I");
+                    break;
+                case Opcodes.LRETURN:
+                    record(method(),"(J)J");
+                    break;
+                case Opcodes.RETURN:
+                    if(probe==Probe.WRITE_LENGTH_PARAMETER) {
+                        super.visitVarInsn(Opcodes.ILOAD,3);
+                    } else if(probe==Probe.WRITE_ARRAY_LENGTH) {
+                        super.visitVarInsn(Opcodes.ALOAD,1);
+                        super.visitInsn(Opcodes.ARRAYLENGTH);
+                    } else {
+                        super.visitInsn(Opcodes.ICONST_1);
+                    }
+                    record("write","(I)I");
+                    super.visitInsn(Opcodes.POP);
+                    break;
+                default:
+            }
+            super.visitInsn(opcode);
+        }
+
+        private String method() {
+            return probe==Probe.WRITE_RETURNED ? "write" : "read";
+        }
+
+        private void record(String method, String descriptor) {
+            super.visitMethodInsn(Opcodes.INVOKESTATIC,RECORDER,method,descriptor,false);
+        }
+    }
+}
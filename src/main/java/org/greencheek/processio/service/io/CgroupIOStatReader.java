@@ -0,0 +1,332 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CgroupDeviceIO;
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Reads the block io of the jvm's cgroup (i.e. its container or pod) from the cgroup v2 io.stat file, rather than
+ * that of the process from /proc/PID/io.  In a container it is the cgroup's io on each device that is throttled.
+ * The returned {@link CurrentProcessIO} holds the rbytes and wbytes summed over the devices, as the read and write
+ * bytes, and the rios and wios as the read and write syscalls; the other counters are 0.
+ * </p>
+ * <p>
+ * The cgroup's directory is found from the "0::/path" line of /proc/self/cgroup, under the cgroup2 mount
+ * (by default /sys/fs/cgroup), by {@link #findCgroupDirectory(File, File)}.  The io of each device, the rates between
+ * the last two samples, and the limits from the io.max file (if the cgroup has one) are returned by
+ * {@link #getDevices()}; along with how close the rates are to the limits.
+ * </p>
+ * <p>
+ * As with {@link FileChannelProcIOProcessIOReader} the io.stat and io.max files are kept open, re-read into reused
+ * buffers, and parsed straight from the bytes.  The state of each device is held in an {@link IntKeyedSampleTable}
+ * keyed on the device number, so the only object created per sample is the returned {@link CurrentProcessIO}.
+ * Devices that are no longer listed are removed.
+ * </p>
+ * <p>
+ * Calls are synchronized, as the buffers and device table are shared between calls.
+ * </p>
+ */
+public class CgroupIOStatReader implements ProcessIOReader {
+
+    private static final Logger log = LoggerFactory.getLogger(CgroupIOStatReader.class);
+
+    public static final File DEFAULT_PROC_CGROUP = new File("/proc/self/cgroup");
+    public static final File DEFAULT_CGROUP_MOUNT = new File("/sys/fs/cgroup");
+    public static final String IO_STAT = "io.stat";
+    public static final String IO_MAX = "io.max";
+
+    private static final String CGROUP_V2_PREFIX = "0::";
+
+    private static final int READ_BYTES = 0;
+    private static final int WRITE_BYTES = 1;
+    private static final int READ_IOS = 2;
+    private static final int WRITE_IOS = 3;
+    private static final int DISCARD_BYTES = 4;
+    private static final byte[][] STAT_KEYS = new byte[][] {
+            ProcFileParser.key("rbytes"),
+            ProcFileParser.key("wbytes"),
+            ProcFileParser.key("rios"),
+            ProcFileParser.key("wios"),
+            ProcFileParser.key("dbytes")
+    };
+
+    private static final int READ_BPS = 0;
+    private static final int WRITE_BPS = 1;
+    private static final int READ_IOPS = 2;
+    private static final int WRITE_IOPS = 3;
+    private static final byte[][] MAX_KEYS = new byte[][] {
+            ProcFileParser.key("rbps"),
+            ProcFileParser.key("wbps"),
+            ProcFileParser.key("riops"),
+            ProcFileParser.key("wiops")
+    };
+
+    // The columns of the device table: the current counters (indexed as the STAT_KEYS), the previous
+    // counters, the times of the two samples, and the limits (indexed as the MAX_KEYS)
+    private static final int PREVIOUS = STAT_KEYS.length;
+    private static final int SAMPLE_MILLIS = PREVIOUS + 4;
+    private static final int PREVIOUS_SAMPLE_MILLIS = SAMPLE_MILLIS + 1;
+    private static final int LIMITS = PREVIOUS_SAMPLE_MILLIS + 1;
+    private static final int COLUMNS = LIMITS + MAX_KEYS.length;
+
+    private final File cgroupDirectory;
+    private final ReusableProcFileChannel ioStat;
+    private final ReusableProcFileChannel ioMax;
+    private final IntKeyedSampleTable devices = new IntKeyedSampleTable(COLUMNS,16);
+    private final long[] values = new long[STAT_KEYS.length];
+    private int generation;
+
+    /**
+     * Reads the io of the jvm's cgroup, found from /proc/self/cgroup under /sys/fs/cgroup
+     */
+    public CgroupIOStatReader() {
+        this(findCgroupDirectory(DEFAULT_PROC_CGROUP,DEFAULT_CGROUP_MOUNT));
+    }
+
+    /**
+     * @param cgroupDirectory The cgroup's directory, containing the io.stat file, or null if it could not be found,
+     *                        in which case the io is never readable
+     */
+    public CgroupIOStatReader(File cgroupDirectory) {
+        this.cgroupDirectory = cgroupDirectory;
+        if(cgroupDirectory==null) {
+            ioStat = null;
+            ioMax = null;
+        } else {
+            ioStat = new ReusableProcFileChannel(new File(cgroupDirectory,IO_STAT));
+            // the root cgroup has no limits
+            File maxFile = new File(cgroupDirectory,IO_MAX);
+            ioMax = maxFile.exists() ? new ReusableProcFileChannel(maxFile) : null;
+        }
+    }
+
+    /**
+     * Finds the cgroup v2 directory of a process, from the "0::/path" line of its /proc/PID/cgroup file.
+     *
+     * @param procCgroup The /proc/PID/cgroup file, i.e. /proc/self/cgroup
+     * @param cgroupMount The directory the cgroup2 file system is mounted on, i.e. /sys/fs/cgroup
+     * @return The cgroup's directory, or null if the process is not in a cgroup v2 hierarchy
+     */
+    public static File findCgroupDirectory(File procCgroup, File cgroupMount) {
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new FileReader(procCgroup));
+            String line;
+            while((line = reader.readLine())!=null) {
+                if(line.startsWith(CGROUP_V2_PREFIX)) {
+                    File directory = new File(cgroupMount,line.substring(CGROUP_V2_PREFIX.length()).trim());
+                    if(directory.isDirectory()) return directory;
+                    log.warn("cgroup directory does not exist: {}",directory.getAbsolutePath());
+                    return null;
+                }
+            }
+            log.warn("No cgroup v2 hierarchy found in: {}",procCgroup.getAbsolutePath());
+        } catch (IOException e) {
+            log.warn("Unable to read cgroup location: {}",procCgroup.getAbsolutePath());
+        } finally {
+            if(reader!=null) {
+                try {
+                    reader.close();
+                } catch (IOException e) {
+
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the cgroup's directory, or null if it was not found
+     */
+    public File getCgroupDirectory() {
+        return cgroupDirectory;
+    }
+
+    /**
+     * Reads the io.stat, and io.max, files; returning the rbytes and wbytes (and rios and wios) summed over the
+     * devices.  If the io.stat file is not readable {@link ProcessIOReader#NON_READABLE_PROCESS_IO} is returned.
+     */
+    @Override
+    public CurrentProcessIO getCurrentProcessIO() {
+        return read(System.currentTimeMillis());
+    }
+
+    synchronized CurrentProcessIO read(long sampleTimeInMillis) {
+        ByteBuffer content = ioStat==null ? null : ioStat.read();
+        if(content==null) {
+            return NON_READABLE_PROCESS_IO;
+        }
+
+        int currentGeneration = ++generation;
+        long readBytes = 0, writeBytes = 0, readIos = 0, writeIos = 0;
+        int limit = content.limit();
+        int lineStart = content.position();
+        while(lineStart<limit) {
+            int lineEnd = ProcFileParser.endOfLine(content,lineStart,limit);
+            int device = ProcFileParser.parseNestedKeyedLine(content,lineStart,lineEnd,STAT_KEYS,values);
+            lineStart = lineEnd+1;
+            if(device<=0 || values[READ_BYTES]==ProcFileParser.NOT_PARSED) continue;
+
+            int slot = devices.find(device);
+            if(slot==-1) {
+                slot = devices.insert(device);
+            } else {
+                for(int c=0;c<4;c++) {
+                    devices.set(PREVIOUS+c,slot,devices.get(c,slot));
+                }
+                devices.set(PREVIOUS_SAMPLE_MILLIS,slot,devices.get(SAMPLE_MILLIS,slot));
+            }
+            for(int c=0;c<STAT_KEYS.length;c++) {
+                devices.set(c,slot,value(values[c]));
+            }
+            devices.set(SAMPLE_MILLIS,slot,sampleTimeInMillis);
+            devices.markSeen(slot,currentGeneration);
+
+            readBytes += devices.get(READ_BYTES,slot);
+            writeBytes += devices.get(WRITE_BYTES,slot);
+            readIos += devices.get(READ_IOS,slot);
+            writeIos += devices.get(WRITE_IOS,slot);
+        }
+        devices.removeUnseen(currentGeneration);
+        readLimits();
+
+        return new CurrentProcessIO(sampleTimeInMillis,readBytes,writeBytes,0,0,readIos,writeIos,0);
+    }
+
+    /**
+     * Sets the limits of each device from the io.max file.  Devices not listed, or limits of "max", are not limited.
+     */
+    private void readLimits() {
+        int capacity = devices.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!devices.isOccupied(slot)) continue;
+            for(int c=0;c<MAX_KEYS.length;c++) {
+                devices.set(LIMITS+c,slot,CgroupDeviceIO.NO_LIMIT);
+            }
+        }
+
+        ByteBuffer content = ioMax==null ? null : ioMax.read();
+        if(content==null) return;
+
+        int limit = content.limit();
+        int lineStart = content.position();
+        while(lineStart<limit) {
+            int lineEnd = ProcFileParser.endOfLine(content,lineStart,limit);
+            int device = ProcFileParser.parseNestedKeyedLine(content,lineStart,lineEnd,MAX_KEYS,values);
+            lineStart = lineEnd+1;
+            int slot = device<=0 ? -1 : devices.find(device);
+            if(slot==-1) continue;
+            for(int c=0;c<MAX_KEYS.length;c++) {
+                devices.set(LIMITS+c,slot,values[c]==ProcFileParser.NOT_PARSED ? CgroupDeviceIO.NO_LIMIT : values[c]);
+            }
+        }
+    }
+
+    private static long value(long parsed) {
+        return parsed==ProcFileParser.NOT_PARSED ? 0 : parsed;
+    }
+
+    /**
+     * Returns the io, rates and limits of each device, ordered by device number
+     */
+    public synchronized CgroupDeviceIO[] getDevices() {
+        int[] slots = new int[devices.size()];
+        int found = 0;
+        int capacity = devices.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!devices.isOccupied(slot)) continue;
+            // insertion sort by device number
+            int position = found++;
+            while(position>0 && devices.keyAt(slots[position-1])>devices.keyAt(slot)) {
+                slots[position] = slots[position-1];
+                position--;
+            }
+            slots[position] = slot;
+        }
+
+        CgroupDeviceIO[] result = new CgroupDeviceIO[found];
+        for(int i=0;i<found;i++) {
+            int slot = slots[i];
+            int device = devices.keyAt(slot);
+            double readBytesPerSecond = perSecond(slot,READ_BYTES);
+            double writeBytesPerSecond = perSecond(slot,WRITE_BYTES);
+            double readIosPerSecond = perSecond(slot,READ_IOS);
+            double writeIosPerSecond = perSecond(slot,WRITE_IOS);
+
+            double utilisation = Math.max(Math.max(utilisation(readBytesPerSecond,devices.get(LIMITS+READ_BPS,slot)),
+                                                   utilisation(writeBytesPerSecond,devices.get(LIMITS+WRITE_BPS,slot))),
+                                          Math.max(utilisation(readIosPerSecond,devices.get(LIMITS+READ_IOPS,slot)),
+                                                   utilisation(writeIosPerSecond,devices.get(LIMITS+WRITE_IOPS,slot))));
+
+            result[i] = new CgroupDeviceIO((device >>> 20) + ":" + (device & ((1<<20)-1)),
+                                           devices.get(READ_BYTES,slot),devices.get(WRITE_BYTES,slot),
+                                           devices.get(READ_IOS,slot),devices.get(WRITE_IOS,slot),
+                                           devices.get(DISCARD_BYTES,slot),
+                                           readBytesPerSecond/1024.0,writeBytesPerSecond/1024.0,
+                                           readIosPerSecond,writeIosPerSecond,
+                                           devices.get(LIMITS+READ_BPS,slot),devices.get(LIMITS+WRITE_BPS,slot),
+                                           devices.get(LIMITS+READ_IOPS,slot),devices.get(LIMITS+WRITE_IOPS,slot),
+                                           utilisation);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the highest fraction of any limit, on any device, used between the last two samples; or 0 if there are
+     * no limits
+     */
+    public double getHighestLimitUtilisation() {
+        double highest = 0.0;
+        for(CgroupDeviceIO device : getDevices()) {
+            highest = Math.max(highest,device.getLimitUtilisation());
+        }
+        return highest;
+    }
+
+    /**
+     * The change in the given counter per second between the last two samples of the device in the slot, or 0 if the
+     * device has only been sampled once
+     */
+    private double perSecond(int slot, int column) {
+        long previousMillis = devices.get(PREVIOUS_SAMPLE_MILLIS,slot);
+        long elapsedMillis = devices.get(SAMPLE_MILLIS,slot) - previousMillis;
+        if(previousMillis<=0 || elapsedMillis<=0) return 0.0;
+        long difference = devices.get(column,slot) - devices.get(PREVIOUS+column,slot);
+        return difference<0 ? 0.0 : difference * 1000.0 / elapsedMillis;
+    }
+
+    private static double utilisation(double perSecond, long limit) {
+        return limit==CgroupDeviceIO.NO_LIMIT ? 0.0 : perSecond / limit;
+    }
+
+    /**
+     * Closes the open file handles on the io.stat and io.max files
+     */
+    public synchronized void close() {
+        if(ioStat!=null) ioStat.close();
+        if(ioMax!=null) ioMax.close();
+    }
+}
@@ -0,0 +1,264 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.DiskDeviceStats;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+import org.greencheek.processio.service.scheduler.ScheduledSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Samples /proc/diskstats on each tick of the scheduler, after the process io has been read, so that how busy each
+ * block device is can be seen alongside how much io the process is doing.  From the counters of each device
+ * between the last two samples the utilisation, average await, average queue depth, ios per second and KB per
+ * second are calculated; as by iostat -x.  The process's share of each device's bytes is calculated from the
+ * read and write KB per second of the given {@link ProcessIOUsageMXBean}, which is updated on the same tick.
+ * </p>
+ * <p>
+ * Devices that have never completed a read or write (i.e. unused loop and ram devices) are not returned.  Devices
+ * that are no longer listed are removed.
+ * </p>
+ * <p>
+ * As with {@link CgroupIOStatReader} the file is kept open and re-read into a reused buffer, and parsed straight
+ * from the bytes.  The counters of each device are held in an {@link IntKeyedSampleTable} keyed on the device number;
+ * the device's name is only created the first time the device is seen.
+ * </p>
+ */
+public class DiskStatsReader implements ScheduledSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(DiskStatsReader.class);
+
+    public static final File DEFAULT_DISKSTATS = new File("/proc/diskstats");
+
+    /**
+     * The size of a sector in /proc/diskstats, whatever the device's sector size
+     */
+    public static final int SECTOR_SIZE = 512;
+
+    // The fields of a /proc/diskstats line, numbered from 0
+    private static final int MAJOR_FIELD = 0;
+    private static final int MINOR_FIELD = 1;
+    private static final int NAME_FIELD = 2;
+    private static final int[] FIELDS = new int[] { 3, 5, 6, 7, 9, 10, 11, 12, 13 };
+    private static final int LINE_FIELDS = 14;
+
+    // The columns of the device table: the current counters (in the order of FIELDS), the previous counters,
+    // and the times of the two samples
+    private static final int READS = 0;
+    private static final int SECTORS_READ = 1;
+    private static final int MILLIS_READING = 2;
+    private static final int WRITES = 3;
+    private static final int SECTORS_WRITTEN = 4;
+    private static final int MILLIS_WRITING = 5;
+    private static final int IOS_IN_PROGRESS = 6;
+    private static final int MILLIS_DOING_IO = 7;
+    private static final int WEIGHTED_MILLIS_DOING_IO = 8;
+    private static final int PREVIOUS = FIELDS.length;
+    private static final int SAMPLE_MILLIS = PREVIOUS * 2;
+    private static final int PREVIOUS_SAMPLE_MILLIS = SAMPLE_MILLIS + 1;
+    private static final int COLUMNS = PREVIOUS_SAMPLE_MILLIS + 1;
+
+    private final File diskstatsFile;
+    private final ReusableProcFileChannel diskstats;
+    private final ProcessIOUsageMXBean processIO;
+    private final IntKeyedSampleTable devices = new IntKeyedSampleTable(COLUMNS,16);
+    private final long[] values = new long[LINE_FIELDS];
+    private int generation;
+    private double processBytesPerSecond;
+
+    /**
+     * Samples /proc/diskstats
+     *
+     * @param processIO The holder of the process's io, or null if the process share is not to be calculated
+     */
+    public DiskStatsReader(ProcessIOUsageMXBean processIO) {
+        this(DEFAULT_DISKSTATS,processIO);
+    }
+
+    /**
+     * @param diskstats The diskstats file
+     * @param processIO The holder of the process's io, or null if the process share is not to be calculated
+     */
+    public DiskStatsReader(File diskstats, ProcessIOUsageMXBean processIO) {
+        this.diskstatsFile = diskstats;
+        this.diskstats = new ReusableProcFileChannel(diskstats);
+        this.processIO = processIO;
+    }
+
+    /**
+     * Reads the counters of every device, and the process's bytes per second from the process io holder.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    @Override
+    public synchronized void sample(long sampleTimeInMillis) {
+        ByteBuffer content = diskstats.read();
+        if(content==null) {
+            log.warn("Unable to read disk stats: {}",diskstatsFile.getAbsolutePath());
+            return;
+        }
+
+        int currentGeneration = ++generation;
+        int limit = content.limit();
+        int lineStart = content.position();
+        while(lineStart<limit) {
+            int lineEnd = ProcFileParser.endOfLine(content,lineStart,limit);
+            int fields = ProcFileParser.parseFields(content,lineStart,lineEnd,values);
+            int start = lineStart;
+            lineStart = lineEnd+1;
+
+            long major = values[MAJOR_FIELD];
+            long minor = values[MINOR_FIELD];
+            if(fields<LINE_FIELDS || major==ProcFileParser.NOT_PARSED || minor==ProcFileParser.NOT_PARSED
+               || major>=(1<<11) || minor>=(1<<20)) continue;
+            if(values[FIELDS[READS]]==0 && values[FIELDS[WRITES]]==0) continue;
+
+            int device = (int)((major << 20) | minor);
+            int slot = devices.find(device);
+            if(slot==-1) {
+                slot = devices.insert(device);
+                devices.setAttachment(slot,name(content,start,lineEnd));
+            } else {
+                for(int c=0;c<FIELDS.length;c++) {
+                    devices.set(PREVIOUS+c,slot,devices.get(c,slot));
+                }
+                devices.set(PREVIOUS_SAMPLE_MILLIS,slot,devices.get(SAMPLE_MILLIS,slot));
+            }
+            for(int c=0;c<FIELDS.length;c++) {
+                long value = values[FIELDS[c]];
+                devices.set(c,slot,value==ProcFileParser.NOT_PARSED ? 0 : value);
+            }
+            devices.set(SAMPLE_MILLIS,slot,sampleTimeInMillis);
+            devices.markSeen(slot,currentGeneration);
+        }
+        devices.removeUnseen(currentGeneration);
+
+        processBytesPerSecond = processBytesPerSecond();
+    }
+
+    private double processBytesPerSecond() {
+        if(processIO==null) return 0.0;
+        return (processIO.getSampleTimeKbPerSecondReadIO() + processIO.getSampleTimeKbPerSecondWriteIO()) * 1024;
+    }
+
+    /**
+     * Returns the name field of the diskstats line
+     */
+    private static String name(ByteBuffer content, int from, int to) {
+        int i = from;
+        for(int field=0;field<=NAME_FIELD;field++) {
+            i = ProcFileParser.skipWhitespace(content,i,to);
+            int tokenEnd = i;
+            while(tokenEnd<to && !ProcFileParser.isWhitespace(content.get(tokenEnd))) tokenEnd++;
+            if(field==NAME_FIELD) return ProcFileParser.toAsciiString(content,i,tokenEnd);
+            i = tokenEnd;
+        }
+        return "";
+    }
+
+    /**
+     * Returns how busy each device was between the last two samples, ordered by device number.  Devices sampled only
+     * once have no rates.
+     */
+    public synchronized DiskDeviceStats[] getDevices() {
+        int[] slots = new int[devices.size()];
+        int found = 0;
+        int capacity = devices.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!devices.isOccupied(slot)) continue;
+            // insertion sort by device number
+            int position = found++;
+            while(position>0 && devices.keyAt(slots[position-1])>devices.keyAt(slot)) {
+                slots[position] = slots[position-1];
+                position--;
+            }
+            slots[position] = slot;
+        }
+
+        DiskDeviceStats[] result = new DiskDeviceStats[found];
+        for(int i=0;i<found;i++) {
+            int slot = slots[i];
+            int device = devices.keyAt(slot);
+            long elapsedMillis = devices.get(PREVIOUS_SAMPLE_MILLIS,slot)<=0 ? 0 :
+                    devices.get(SAMPLE_MILLIS,slot) - devices.get(PREVIOUS_SAMPLE_MILLIS,slot);
+
+            long reads = difference(slot,READS);
+            long writes = difference(slot,WRITES);
+            double utilisationPercent = 0.0, averageAwaitMillis = 0.0, averageQueueDepth = 0.0;
+            double readIosPerSecond = 0.0, writeIosPerSecond = 0.0;
+            double readBytesPerSecond = 0.0, writeBytesPerSecond = 0.0, processShare = 0.0;
+            if(elapsedMillis>0) {
+                utilisationPercent = Math.min(100.0,difference(slot,MILLIS_DOING_IO) * 100.0 / elapsedMillis);
+                averageQueueDepth = difference(slot,WEIGHTED_MILLIS_DOING_IO) / (double)elapsedMillis;
+                if(reads+writes>0) {
+                    averageAwaitMillis = (difference(slot,MILLIS_READING) + difference(slot,MILLIS_WRITING)) / (double)(reads+writes);
+                }
+                readIosPerSecond = reads * 1000.0 / elapsedMillis;
+                writeIosPerSecond = writes * 1000.0 / elapsedMillis;
+                readBytesPerSecond = difference(slot,SECTORS_READ) * SECTOR_SIZE * 1000.0 / elapsedMillis;
+                writeBytesPerSecond = difference(slot,SECTORS_WRITTEN) * SECTOR_SIZE * 1000.0 / elapsedMillis;
+                double deviceBytesPerSecond = readBytesPerSecond + writeBytesPerSecond;
+                if(deviceBytesPerSecond>0) {
+                    processShare = Math.min(1.0,processBytesPerSecond / deviceBytesPerSecond);
+                }
+            }
+
+            result[i] = new DiskDeviceStats((device >>> 20) + ":" + (device & ((1<<20)-1)),
+                                            (String)devices.getAttachment(slot),
+                                            devices.get(READS,slot),devices.get(WRITES,slot),
+                                            devices.get(SECTORS_READ,slot) * SECTOR_SIZE,
+                                            devices.get(SECTORS_WRITTEN,slot) * SECTOR_SIZE,
+                                            devices.get(IOS_IN_PROGRESS,slot),
+                                            utilisationPercent,averageAwaitMillis,averageQueueDepth,
+                                            readIosPerSecond,writeIosPerSecond,
+                                            readBytesPerSecond/1024.0,writeBytesPerSecond/1024.0,
+                                            processShare);
+        }
+        return result;
+    }
+
+    /**
+     * Returns the highest utilisation percent of any device between the last two samples
+     */
+    public double getHighestUtilisationPercent() {
+        double highest = 0.0;
+        for(DiskDeviceStats device : getDevices()) {
+            highest = Math.max(highest,device.getUtilisationPercent());
+        }
+        return highest;
+    }
+
+    /**
+     * The change in the given counter between the last two samples of the device in the slot; counters that have
+     * wrapped are treated as unchanged
+     */
+    private long difference(int slot, int column) {
+        long difference = devices.get(column,slot) - devices.get(PREVIOUS+column,slot);
+        return difference<0 ? 0 : difference;
+    }
+
+    /**
+     * Closes the open file handle on the diskstats file
+     */
+    public synchronized void close() {
+        diskstats.close();
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Reads the /proc/PID/io file for the given pid, returning the same values as {@link FileSystemProcIOProcessIOReader}
+ * but without creating garbage on each sample.  Rather than opening the file, and creating a reader and a String per
+ * line that is matched against a regex; this implementation keeps a single {@link java.nio.channels.FileChannel} open
+ * on the /proc/PID/io file (via {@link ReusableProcFileChannel}), re-reads it with a positional read into a reused
+ * direct ByteBuffer, and parses the read_bytes and write_bytes (and the rchar, wchar, syscr, syscw and
+ * cancelled_write_bytes counters) straight from the bytes (via {@link ProcFileParser}).
+ * </p>
+ * <p>
+ * The only object created per sample is the returned {@link CurrentProcessIO}.  If the file handle goes stale, it is
+ * re-opened.  If the io cannot be read {@link ProcessIOReader#NON_READABLE_PROCESS_IO} is returned.
+ * </p>
+ * <p>
+ * Calls to {@link #getCurrentProcessIO()} are synchronized, as the buffer is shared between calls.
+ * </p>
+ */
+public class FileChannelProcIOProcessIOReader implements ProcessIOReader {
+
+    private static final Logger log = LoggerFactory.getLogger(FileChannelProcIOProcessIOReader.class);
+    private static final String PROC_IO_LOCATION = "/proc/%d/io";
+
+    static final int READ_BYTES = 0;
+    static final int WRITE_BYTES = 1;
+    static final int READ_CHARS = 2;
+    static final int WRITE_CHARS = 3;
+    static final int READ_SYSCALLS = 4;
+    static final int WRITE_SYSCALLS = 5;
+    static final int CANCELLED_WRITE_BYTES = 6;
+    // The keys of the counters in /proc/PID/io, indexed by the above constants
+    static final byte[][] KEYS = new byte[][] {
+            ProcFileParser.key("read_bytes"),
+            ProcFileParser.key("write_bytes"),
+            ProcFileParser.key("rchar"),
+            ProcFileParser.key("wchar"),
+            ProcFileParser.key("syscr"),
+            ProcFileParser.key("syscw"),
+            ProcFileParser.key("cancelled_write_bytes")
+    };
+
+    /**
+     * The number of counters written by {@link #readCounters(long[], int)}
+     */
+    public static final int COUNTERS = KEYS.length;
+
+    private final ReusableProcFileChannel procIOChannel;
+    private final long[] values = new long[KEYS.length];
+
+    public FileChannelProcIOProcessIOReader(File location) {
+        procIOChannel = new ReusableProcFileChannel(location);
+    }
+
+    public FileChannelProcIOProcessIOReader(int pid) {
+        this(new File(String.format(PROC_IO_LOCATION,pid)));
+    }
+
+    /**
+     * Reads the read_bytes and write_bytes from the current process io /proc file.
+     * If the /proc/PID/io file is not readable then it returns
+     * {@value org.greencheek.processio.service.io.ProcessIOReader#NON_READABLE_PROCESS_IO}
+     *
+     * @return  The current io of the jvm process
+     */
+    @Override
+    public synchronized CurrentProcessIO getCurrentProcessIO() {
+        ByteBuffer content = procIOChannel.read();
+        if(content==null) {
+            return NON_READABLE_PROCESS_IO;
+        }
+
+        ProcFileParser.parseKeyValueLines(content,KEYS,values);
+
+        if(values[READ_BYTES]==ProcFileParser.NOT_PARSED || values[WRITE_BYTES]==ProcFileParser.NOT_PARSED) {
+            log.warn("Unable read with the read_bytes or write_bytes from io location: {}",procIOChannel.getLocation().getAbsolutePath());
+            return NON_READABLE_PROCESS_IO;
+        } else {
+            return new CurrentProcessIO(System.currentTimeMillis(),values[READ_BYTES],values[WRITE_BYTES],
+                                        value(READ_CHARS),value(WRITE_CHARS),
+                                        value(READ_SYSCALLS),value(WRITE_SYSCALLS),
+                                        value(CANCELLED_WRITE_BYTES));
+        }
+    }
+
+    /**
+     * <p>
+     * Reads the counters of the /proc/PID/io file into the given array, rather than into a new {@link CurrentProcessIO};
+     * so that the io can be sampled at a high frequency without creating any objects (see
+     * {@link org.greencheek.processio.service.scheduler.BurstCapture}).  The {@value #COUNTERS} counters are written
+     * from the offset in the order: read_bytes, write_bytes, rchar, wchar, syscr, syscw and cancelled_write_bytes.
+     * </p>
+     *
+     * @param counters The array in which to store the counters
+     * @param offset The index of the array at which to store the first counter
+     * @return false if the io could not be read, in which case the array is unchanged
+     */
+    public synchronized boolean readCounters(long[] counters, int offset) {
+        ByteBuffer content = procIOChannel.read();
+        if(content==null) return false;
+
+        ProcFileParser.parseKeyValueLines(content,KEYS,values);
+        if(values[READ_BYTES]==ProcFileParser.NOT_PARSED || values[WRITE_BYTES]==ProcFileParser.NOT_PARSED) return false;
+
+        for(int i=0;i<COUNTERS;i++) {
+            counters[offset+i] = value(i);
+        }
+        return true;
+    }
+
+    /**
+     * The optional counters default to 0 if they were not present in the file
+     */
+    private long value(int key) {
+        long value = values[key];
+        return value==ProcFileParser.NOT_PARSED ? 0 : value;
+    }
+
+    /**
+     * Closes the open file handle on the /proc/PID/io file
+     */
+    public synchronized void close() {
+        procIOChannel.close();
+    }
+}
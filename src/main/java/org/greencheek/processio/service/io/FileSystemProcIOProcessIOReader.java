@@ -27,7 +27,8 @@ import java.util.regex.Pattern;
 
 /**
  * Reads the  /proc/PID/io file system for the given pid.  It reads the values for the read_bytes and write_bytes
- * from the file.  On a redhat system the contents of the /proc/PID/io look like the following:
+ * from the file, along with the rchar, wchar, syscr, syscw and cancelled_write_bytes counters.
+ * On a redhat system the contents of the /proc/PID/io look like the following:
  * <pre>
  rchar: 49820184
  wchar: 79916
@@ -54,8 +55,7 @@ public class FileSystemProcIOProcessIOReader implements ProcessIOReader {
     private static final Logger log = LoggerFactory.getLogger(FileSystemProcIOProcessIOReader.class);
     private static final String PROC_IO_LOCATION = "/proc/%d/io";
 
-    private static final Pattern READ_BYTES_PATTERN = Pattern.compile("^\\s*read_bytes\\s*:\\s*(\\d+)[^\\d]*$");
-    private static final Pattern WRITE_BYTES_PATTERN = Pattern.compile("^\\s*write_bytes\\s*:\\s*(\\d+)[^\\d]*$");
+    private static final Pattern KEY_VALUE_PATTERN = Pattern.compile("^\\s*(\\w+)\\s*:\\s*(\\d+)[^\\d]*$");
 
 
     private final File procIOLocation;
@@ -69,7 +69,7 @@ public class FileSystemProcIOProcessIOReader implements ProcessIOReader {
     }
 
     /**
-     * Reads the read_bytes and write_bytes from the current process io /proc file.
+     * Reads the read_bytes and write_bytes (and the other counters) from the current process io /proc file.
      * If the /proc/PID/io file is not readable then it returns
      * {@value org.greencheek.processio.service.io.ProcessIOReader#NON_READABLE_PROCESS_IO}
      *
@@ -97,6 +97,11 @@ public class FileSystemProcIOProcessIOReader implements ProcessIOReader {
 
         Long readBytes = null;
         Long writeBytes = null;
+        long readChars = 0;
+        long writeChars = 0;
+        long readSyscalls = 0;
+        long writeSyscalls = 0;
+        long cancelledWriteBytes = 0;
         try
         {
             is = new InputStreamReader(fis, Charset.forName("UTF-8"));
@@ -104,21 +109,24 @@ public class FileSystemProcIOProcessIOReader implements ProcessIOReader {
             String strLine;
             //Read File Line By Line
             while ((strLine = br.readLine()) != null)   {
-                // Print the content on the console
-                Matcher readMatcher = READ_BYTES_PATTERN.matcher(strLine);
-                Matcher writeMatcher = WRITE_BYTES_PATTERN.matcher(strLine);
-
-                if(readMatcher.matches()) {
-                    try {
-                        readBytes = Long.parseLong(readMatcher.group(1));
-                    } catch (NumberFormatException e) {}
-                }
+                Matcher matcher = KEY_VALUE_PATTERN.matcher(strLine);
+                if(!matcher.matches()) continue;
 
-                if(writeMatcher.matches()) {
-                    try {
-                        writeBytes = Long.parseLong(writeMatcher.group(1));
-                    } catch (NumberFormatException e) {}
+                String key = matcher.group(1);
+                long value;
+                try {
+                    value = Long.parseLong(matcher.group(2));
+                } catch (NumberFormatException e) {
+                    continue;
                 }
+
+                if("read_bytes".equals(key)) readBytes = value;
+                else if("write_bytes".equals(key)) writeBytes = value;
+                else if("rchar".equals(key)) readChars = value;
+                else if("wchar".equals(key)) writeChars = value;
+                else if("syscr".equals(key)) readSyscalls = value;
+                else if("syscw".equals(key)) writeSyscalls = value;
+                else if("cancelled_write_bytes".equals(key)) cancelledWriteBytes = value;
             }
         } catch (IOException e) {
             log.warn("Unable to read process io location: {}",procIOLocation.getAbsolutePath());
@@ -138,7 +146,8 @@ public class FileSystemProcIOProcessIOReader implements ProcessIOReader {
 
             return NON_READABLE_PROCESS_IO;
         } else {
-            return new CurrentProcessIO(System.currentTimeMillis(),readBytes,writeBytes);
+            return new CurrentProcessIO(System.currentTimeMillis(),readBytes,writeBytes,
+                                        readChars,writeChars,readSyscalls,writeSyscalls,cancelledWriteBytes);
         }
     }
 }
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+import org.greencheek.processio.service.scheduler.ScheduledSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Samples how long the process's threads stalled waiting for block io, from the delayacct_blkio_ticks field of
+ * /proc/PID/stat, on each tick of the scheduler.  The ticks are converted to the millis of io wait per second
+ * between the last two samples: i.e. 500 means that, on average, half a thread was stalled on the disk.  The
+ * read and write KB per second of the same tick are taken from the given {@link ProcessIOUsageMXBean}, so the time
+ * stalled can be compared with the bytes.
+ * </p>
+ * <p>
+ * The ticks are only counted when delay accounting is enabled in the kernel.  From linux 5.14 it is disabled by
+ * default, and is enabled with the delayacct boot option or the kernel.task_delayacct sysctl.  The sysctl is read
+ * on each sample; when it is 0 {@link #isDelayAccountingEnabled()} returns false, and the io wait is not
+ * calculated.  On older kernels, without the sysctl, delay accounting is assumed to be enabled.
+ * </p>
+ * <p>
+ * As with {@link FileChannelProcIOProcessIOReader} the files are kept open, re-read into reused buffers and parsed
+ * straight from the bytes.  The sample is synchronized; the getters may be called by any thread.
+ * </p>
+ */
+public class IOWaitReader implements ScheduledSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(IOWaitReader.class);
+    private static final String PROC_PID_LOCATION = "/proc/%d";
+
+    public static final File DEFAULT_TASK_DELAYACCT_SYSCTL = new File("/proc/sys/kernel/task_delayacct");
+
+    /**
+     * The field of /proc/PID/stat (and /proc/PID/task/TID/stat) holding the ticks spent waiting for block io
+     */
+    public static final int DELAYACCT_BLKIO_TICKS_FIELD = 42;
+
+    /**
+     * The clock ticks per second of the times in /proc/PID/stat (USER_HZ), which is 100 on linux
+     */
+    public static final int CLOCK_TICKS_PER_SECOND = 100;
+
+    private final File processDirectory;
+    private final ReusableProcFileChannel stat;
+    private final ReusableProcFileChannel taskDelayacct;
+    private final ProcessIOUsageMXBean processIO;
+
+    private long previousSampleMillis = -1;
+    private long previousTicks;
+
+    private volatile boolean delayAccountingEnabled;
+    private volatile long ioWaitTicks;
+    private volatile double ioWaitMillisPerSecond;
+    private volatile double kbPerSecondReadIO;
+    private volatile double kbPerSecondWriteIO;
+
+    /**
+     * @param pid The process whose io wait is sampled
+     * @param processIO The holder of the process's io, or null if the read and write rates are not to be reported
+     */
+    public IOWaitReader(int pid, ProcessIOUsageMXBean processIO) {
+        this(new File(String.format(PROC_PID_LOCATION,pid)),DEFAULT_TASK_DELAYACCT_SYSCTL,processIO);
+    }
+
+    /**
+     * @param processDirectory The /proc/PID directory of the process
+     * @param taskDelayacctSysctl The kernel.task_delayacct sysctl file
+     * @param processIO The holder of the process's io, or null if the read and write rates are not to be reported
+     */
+    public IOWaitReader(File processDirectory, File taskDelayacctSysctl, ProcessIOUsageMXBean processIO) {
+        this.processDirectory = new File(processDirectory.getAbsolutePath());
+        this.stat = new ReusableProcFileChannel(new File(processDirectory,"stat"));
+        this.taskDelayacct = taskDelayacctSysctl.exists() ? new ReusableProcFileChannel(taskDelayacctSysctl) : null;
+        this.processIO = processIO;
+        this.delayAccountingEnabled = isDelayAccountingEnabled(taskDelayacct);
+    }
+
+    /**
+     * Reads the block io ticks of the process, and calculates the millis of io wait per second since the
+     * previous sample.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    @Override
+    public synchronized void sample(long sampleTimeInMillis) {
+        delayAccountingEnabled = isDelayAccountingEnabled(taskDelayacct);
+        kbPerSecondReadIO = processIO==null ? 0.0 : processIO.getSampleTimeKbPerSecondReadIO();
+        kbPerSecondWriteIO = processIO==null ? 0.0 : processIO.getSampleTimeKbPerSecondWriteIO();
+
+        ByteBuffer content = stat.read();
+        long ticks = content==null ? ProcFileParser.NOT_PARSED : ProcFileParser.parseStatField(content,DELAYACCT_BLKIO_TICKS_FIELD);
+        if(ticks==ProcFileParser.NOT_PARSED) {
+            log.warn("Unable to read delayacct_blkio_ticks from: {}/stat",processDirectory.getAbsolutePath());
+            return;
+        }
+
+        ioWaitTicks = ticks;
+        ioWaitMillisPerSecond = delayAccountingEnabled ?
+                millisPerSecond(previousSampleMillis,previousTicks,sampleTimeInMillis,ticks) : 0.0;
+        previousSampleMillis = sampleTimeInMillis;
+        previousTicks = ticks;
+    }
+
+    /**
+     * Returns the millis of io wait per second represented by the change in the block io ticks between two samples,
+     * or 0 if there is no previous sample
+     */
+    static double millisPerSecond(long previousMillis, long previousTicks, long currentMillis, long currentTicks) {
+        long elapsedMillis = currentMillis - previousMillis;
+        if(previousMillis==-1 || elapsedMillis<=0 || currentTicks<=previousTicks) return 0.0;
+        double waitMillis = (currentTicks - previousTicks) * (1000.0 / CLOCK_TICKS_PER_SECOND);
+        return waitMillis * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Returns false if the kernel.task_delayacct sysctl is 0.  If the sysctl does not exist, or cannot be read,
+     * delay accounting is assumed to be enabled.
+     */
+    static boolean isDelayAccountingEnabled(ReusableProcFileChannel taskDelayacct) {
+        if(taskDelayacct==null) return true;
+        ByteBuffer content = taskDelayacct.read();
+        if(content==null) return true;
+        return ProcFileParser.parseLong(content,content.position(),content.limit())!=0;
+    }
+
+    /**
+     * Returns whether the kernel is counting the time spent waiting for block io
+     */
+    public boolean isDelayAccountingEnabled() {
+        return delayAccountingEnabled;
+    }
+
+    /**
+     * Returns the clock ticks the process has spent waiting for block io
+     */
+    public long getIOWaitTicks() {
+        return ioWaitTicks;
+    }
+
+    /**
+     * Returns the millis per second the process's threads spent waiting for block io between the last two samples
+     */
+    public double getSampleTimeIOWaitMillisPerSecond() {
+        return ioWaitMillisPerSecond;
+    }
+
+    /**
+     * Returns the read KB per second of the process, from /proc/PID/io, on the tick the io wait was last sampled
+     */
+    public double getSampleTimeKbPerSecondReadIO() {
+        return kbPerSecondReadIO;
+    }
+
+    /**
+     * Returns the write KB per second of the process, from /proc/PID/io, on the tick the io wait was last sampled
+     */
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return kbPerSecondWriteIO;
+    }
+
+    /**
+     * Closes the open file handles on the stat and sysctl files
+     */
+    public synchronized void close() {
+        stat.close();
+        if(taskDelayacct!=null) taskDelayacct.close();
+    }
+}
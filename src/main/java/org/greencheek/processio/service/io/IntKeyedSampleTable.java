@@ -0,0 +1,258 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+/**
+ * <p>
+ * An open addressing (linear probing) hash table, keyed on a positive int (i.e. a TID, PID or file descriptor), that
+ * stores a fixed number of long values per key in primitive arrays, plus an optional object attachment per key
+ * (i.e. a thread name).  It is used to hold the state of each entity between samples without creating an object
+ * per entity per sample.
+ * </p>
+ * <p>
+ * Each key is stored in a slot.  The values of a slot are accessed via {@link #get(int, int)} and
+ * {@link #set(int, int, long)}, given the column and the slot.  Slots are valid until the next call to
+ * {@link #removeUnseen(int)}, which removes every key that has not been marked as seen in the given generation.
+ * This is how churn (threads exiting, processes ending, or files being closed) is handled: each sample
+ * is given a new generation, every key read in the sample is marked with that generation,
+ * and those not marked are removed at the end of the sample.
+ * </p>
+ * <p>
+ * Removal re-hashes the live keys into a second set of arrays, which are then swapped with the first.  Arrays are
+ * only allocated when the table grows.  Instances are not thread safe.
+ * </p>
+ */
+public class IntKeyedSampleTable {
+
+    private static final int EMPTY = 0;
+
+    private final int columns;
+
+    private int capacity;
+    private int mask;
+    private int size;
+
+    private int[] keys;
+    private int[] generations;
+    private long[][] values;
+    private Object[] attachments;
+
+    private int[] spareKeys;
+    private int[] spareGenerations;
+    private long[][] spareValues;
+    private Object[] spareAttachments;
+
+    /**
+     * @param columns The number of long values stored per key
+     * @param initialCapacity The expected number of keys
+     */
+    public IntKeyedSampleTable(int columns, int initialCapacity) {
+        this.columns = columns;
+        allocate(tableSizeFor(initialCapacity));
+    }
+
+    /**
+     * Returns the slot holding the given key, or -1 if the key is not in the table
+     */
+    public int find(int key) {
+        int slot = hash(key) & mask;
+        while(true) {
+            int k = keys[slot];
+            if(k==key) return slot;
+            if(k==EMPTY) return -1;
+            slot = (slot+1) & mask;
+        }
+    }
+
+    /**
+     * Adds the given key to the table, if it is not already present, and returns it's slot.  A newly added key has all
+     * its values set to 0, and a null attachment.
+     *
+     * @param key A positive key
+     * @return The slot of the key
+     */
+    public int insert(int key) {
+        if(key<=EMPTY) throw new IllegalArgumentException("key must be positive: " + key);
+
+        int slot = find(key);
+        if(slot!=-1) return slot;
+
+        if((size+1)*2 > capacity) {
+            grow();
+        }
+
+        slot = hash(key) & mask;
+        while(keys[slot]!=EMPTY) {
+            slot = (slot+1) & mask;
+        }
+        keys[slot] = key;
+        generations[slot] = 0;
+        for(int c=0;c<columns;c++) {
+            values[c][slot] = 0;
+        }
+        attachments[slot] = null;
+        size++;
+        return slot;
+    }
+
+    /**
+     * Marks the key in the given slot as having been seen in the given generation
+     */
+    public void markSeen(int slot, int generation) {
+        generations[slot] = generation;
+    }
+
+    /**
+     * Returns true if the key in the given slot has been marked as seen in the given generation
+     */
+    public boolean isSeen(int slot, int generation) {
+        return generations[slot]==generation;
+    }
+
+    /**
+     * Removes every key that has not been marked as seen in the given generation.  Slots returned before
+     * this call are no longer valid.
+     *
+     * @return The number of keys removed
+     */
+    public int removeUnseen(int generation) {
+        int removed = 0;
+        for(int i=0;i<capacity;i++) {
+            if(keys[i]!=EMPTY && generations[i]!=generation) removed++;
+        }
+        if(removed==0) return 0;
+
+        for(int i=0;i<capacity;i++) {
+            spareKeys[i] = EMPTY;
+            spareAttachments[i] = null;
+        }
+
+        for(int i=0;i<capacity;i++) {
+            int key = keys[i];
+            if(key==EMPTY || generations[i]!=generation) continue;
+
+            int slot = hash(key) & mask;
+            while(spareKeys[slot]!=EMPTY) {
+                slot = (slot+1) & mask;
+            }
+            spareKeys[slot] = key;
+            spareGenerations[slot] = generations[i];
+            for(int c=0;c<columns;c++) {
+                spareValues[c][slot] = values[c][i];
+            }
+            spareAttachments[slot] = attachments[i];
+        }
+
+        swap();
+        size -= removed;
+        return removed;
+    }
+
+    public long get(int column, int slot) {
+        return values[column][slot];
+    }
+
+    public void set(int column, int slot, long value) {
+        values[column][slot] = value;
+    }
+
+    public Object getAttachment(int slot) {
+        return attachments[slot];
+    }
+
+    public void setAttachment(int slot, Object attachment) {
+        attachments[slot] = attachment;
+    }
+
+    /**
+     * The number of slots in the table.  Slots from 0 to capacity-1 can be iterated over, checking
+     * {@link #isOccupied(int)}
+     */
+    public int capacity() {
+        return capacity;
+    }
+
+    public boolean isOccupied(int slot) {
+        return keys[slot]!=EMPTY;
+    }
+
+    public int keyAt(int slot) {
+        return keys[slot];
+    }
+
+    /**
+     * The number of keys in the table
+     */
+    public int size() {
+        return size;
+    }
+
+    private void grow() {
+        int[] oldKeys = keys;
+        int[] oldGenerations = generations;
+        long[][] oldValues = values;
+        Object[] oldAttachments = attachments;
+        int oldCapacity = capacity;
+
+        allocate(capacity*2);
+
+        for(int i=0;i<oldCapacity;i++) {
+            int key = oldKeys[i];
+            if(key==EMPTY) continue;
+            int slot = hash(key) & mask;
+            while(keys[slot]!=EMPTY) {
+                slot = (slot+1) & mask;
+            }
+            keys[slot] = key;
+            generations[slot] = oldGenerations[i];
+            for(int c=0;c<columns;c++) {
+                values[c][slot] = oldValues[c][i];
+            }
+            attachments[slot] = oldAttachments[i];
+        }
+    }
+
+    private void allocate(int tableSize) {
+        capacity = tableSize;
+        mask = tableSize-1;
+        keys = new int[tableSize];
+        generations = new int[tableSize];
+        values = new long[columns][tableSize];
+        attachments = new Object[tableSize];
+        spareKeys = new int[tableSize];
+        spareGenerations = new int[tableSize];
+        spareValues = new long[columns][tableSize];
+        spareAttachments = new Object[tableSize];
+    }
+
+    private void swap() {
+        int[] k = keys; keys = spareKeys; spareKeys = k;
+        int[] g = generations; generations = spareGenerations; spareGenerations = g;
+        long[][] v = values; values = spareValues; spareValues = v;
+        Object[] a = attachments; attachments = spareAttachments; spareAttachments = a;
+    }
+
+    private static int tableSizeFor(int expected) {
+        int size = 16;
+        while(size < expected*2) size <<= 1;
+        return size;
+    }
+
+    private static int hash(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,51 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+/**
+ * A growable list of primitive ints, that is cleared and reused between samples rather than re-created.
+ * Instances are not thread safe.
+ */
+public class IntList {
+
+    private int[] values;
+    private int size;
+
+    public IntList(int initialCapacity) {
+        values = new int[initialCapacity];
+    }
+
+    public void add(int value) {
+        if(size==values.length) {
+            int[] grown = new int[values.length*2];
+            System.arraycopy(values,0,grown,0,size);
+            values = grown;
+        }
+        values[size++] = value;
+    }
+
+    public int get(int index) {
+        return values[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+}
@@ -0,0 +1,305 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.NetworkInterfaceIO;
+import org.greencheek.processio.service.scheduler.ScheduledSampler;
+import org.greencheek.processio.service.usage.DifferenceInKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * <p>
+ * Samples /proc/PID/net/dev and /proc/PID/net/snmp on each tick of the scheduler, so that the bytes, packets and
+ * drops received and transmitted on each network interface, and the tcp segments retransmitted, can be seen
+ * alongside the process's disk io.  The KB per second of each interface are calculated with the same
+ * {@link DifferenceInKBPerSecondCalculator} as the process io.
+ * </p>
+ * <p>
+ * The counters are those of the network namespace of the process, not of the process itself: in a container they
+ * are the container's, and otherwise the host's.
+ * </p>
+ * <p>
+ * As with {@link DiskStatsReader} both files are kept open and re-read into reused buffers, and parsed straight from
+ * the bytes.  The counters of each interface are held in an {@link IntKeyedSampleTable} keyed on the interface's line
+ * in net/dev; the interface's name is held as the slot's attachment, and is only copied when an interface is first
+ * seen on a line.  If the interface on a line changes (an interface has been added or removed) the line's counters
+ * are started again, so the interface has no rates until it has been sampled twice.  Interfaces that are no longer
+ * listed are removed.
+ * </p>
+ */
+public class NetworkIOReader implements ScheduledSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(NetworkIOReader.class);
+    private static final String PROC_PID_NET_LOCATION = "/proc/%d/net";
+
+    /**
+     * The name of the loopback interface, that is excluded from the totals
+     */
+    public static final String LOOPBACK = "lo";
+
+    // The fields of a net/dev line after the "name:", numbered from 0
+    private static final int[] FIELDS = new int[] { 0, 8, 1, 9, 3, 11 };
+    private static final int LINE_FIELDS = 16;
+
+    // The columns of the interface table: the current counters (in the order of FIELDS), the previous counters,
+    // and the times of the two samples
+    private static final int RECEIVED_BYTES = 0;
+    private static final int TRANSMITTED_BYTES = 1;
+    private static final int RECEIVED_PACKETS = 2;
+    private static final int TRANSMITTED_PACKETS = 3;
+    private static final int RECEIVED_DROPS = 4;
+    private static final int TRANSMITTED_DROPS = 5;
+    private static final int PREVIOUS = FIELDS.length;
+    private static final int SAMPLE_MILLIS = PREVIOUS * 2;
+    private static final int PREVIOUS_SAMPLE_MILLIS = SAMPLE_MILLIS + 1;
+    private static final int COLUMNS = PREVIOUS_SAMPLE_MILLIS + 1;
+
+    private static final byte[] TCP_PREFIX = ProcFileParser.key("Tcp:");
+    private static final int RETRANSMITTED_SEGMENTS_KEY = 0;
+    private static final int OUT_SEGMENTS_KEY = 1;
+    private static final byte[][] TCP_KEYS = new byte[][] {
+            ProcFileParser.key("RetransSegs"),
+            ProcFileParser.key("OutSegs")
+    };
+
+    private final File netDirectory;
+    private final ReusableProcFileChannel dev;
+    private final ReusableProcFileChannel snmp;
+    private final DifferenceInKBPerSecondCalculator calculator;
+    private final IntKeyedSampleTable interfaces = new IntKeyedSampleTable(COLUMNS,16);
+    private final long[] values = new long[LINE_FIELDS];
+    private final long[] tcpValues = new long[TCP_KEYS.length];
+    private int generation;
+
+    private long retransmittedSegments;
+    private long previousRetransmittedSegments;
+    private long outSegments;
+    private long previousOutSegments;
+    private long tcpSampleMillis;
+    private long previousTcpSampleMillis;
+
+    /**
+     * Samples the network io of the network namespace of the given process
+     *
+     * @param pid The process id
+     */
+    public NetworkIOReader(int pid) {
+        this(new File(String.format(PROC_PID_NET_LOCATION,pid)),new PrimitiveBasedDifferenceInKBPerSecondCalculator());
+    }
+
+    /**
+     * @param netDirectory The directory containing the dev and snmp files, i.e. /proc/PID/net
+     * @param calculator The calculator of the KB per second between two samples
+     */
+    public NetworkIOReader(File netDirectory, DifferenceInKBPerSecondCalculator calculator) {
+        this.netDirectory = netDirectory;
+        this.dev = new ReusableProcFileChannel(new File(netDirectory,"dev"));
+        this.snmp = new ReusableProcFileChannel(new File(netDirectory,"snmp"));
+        this.calculator = calculator;
+    }
+
+    /**
+     * Reads the counters of every interface, and the tcp segment counters.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    @Override
+    public synchronized void sample(long sampleTimeInMillis) {
+        ByteBuffer content = dev.read();
+        if(content==null) {
+            log.warn("Unable to read network interface stats: {}",new File(netDirectory,"dev").getAbsolutePath());
+        } else {
+            sampleInterfaces(content,sampleTimeInMillis);
+        }
+
+        content = snmp.read();
+        if(content!=null && ProcFileParser.parseHeaderedLines(content,TCP_PREFIX,TCP_KEYS,tcpValues)==TCP_KEYS.length) {
+            previousRetransmittedSegments = retransmittedSegments;
+            previousOutSegments = outSegments;
+            previousTcpSampleMillis = tcpSampleMillis;
+            retransmittedSegments = tcpValues[RETRANSMITTED_SEGMENTS_KEY];
+            outSegments = tcpValues[OUT_SEGMENTS_KEY];
+            tcpSampleMillis = sampleTimeInMillis;
+        }
+    }
+
+    private void sampleInterfaces(ByteBuffer content, long sampleTimeInMillis) {
+        int currentGeneration = ++generation;
+        int limit = content.limit();
+        int lineStart = content.position();
+        int line = 0;
+        while(lineStart<limit) {
+            int lineEnd = ProcFileParser.endOfLine(content,lineStart,limit);
+            int start = lineStart;
+            lineStart = lineEnd+1;
+            line++;
+
+            // the two header lines have no colon
+            int colon = ProcFileParser.indexOf(content,(byte)':',start,lineEnd);
+            if(colon==-1) continue;
+            if(ProcFileParser.parseFields(content,colon+1,lineEnd,values)<LINE_FIELDS) continue;
+
+            int nameStart = ProcFileParser.skipWhitespace(content,start,colon);
+            int slot = interfaces.find(line);
+            if(slot!=-1 && !ProcFileParser.regionEquals(content,nameStart,colon,(byte[])interfaces.getAttachment(slot))) {
+                interfaces.set(SAMPLE_MILLIS,slot,0);
+                interfaces.setAttachment(slot,name(content,nameStart,colon));
+            } else if(slot==-1) {
+                slot = interfaces.insert(line);
+                interfaces.setAttachment(slot,name(content,nameStart,colon));
+            }
+
+            boolean sampled = interfaces.get(SAMPLE_MILLIS,slot)>0;
+            for(int c=0;c<FIELDS.length;c++) {
+                long value = values[FIELDS[c]];
+                if(value==ProcFileParser.NOT_PARSED) value = 0;
+                interfaces.set(PREVIOUS+c,slot,sampled ? interfaces.get(c,slot) : value);
+                interfaces.set(c,slot,value);
+            }
+            interfaces.set(PREVIOUS_SAMPLE_MILLIS,slot,interfaces.get(SAMPLE_MILLIS,slot));
+            interfaces.set(SAMPLE_MILLIS,slot,sampleTimeInMillis);
+            interfaces.markSeen(slot,currentGeneration);
+        }
+        interfaces.removeUnseen(currentGeneration);
+    }
+
+    private static byte[] name(ByteBuffer content, int from, int to) {
+        byte[] name = new byte[to-from];
+        for(int i=0;i<name.length;i++) {
+            name[i] = content.get(from+i);
+        }
+        return name;
+    }
+
+    /**
+     * Returns the counters and rates of each interface between the last two samples, in the order of net/dev.
+     * Interfaces sampled only once have no rates.
+     */
+    public synchronized NetworkInterfaceIO[] getInterfaces() {
+        int[] slots = new int[interfaces.size()];
+        int found = 0;
+        int capacity = interfaces.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!interfaces.isOccupied(slot)) continue;
+            // insertion sort by line
+            int position = found++;
+            while(position>0 && interfaces.keyAt(slots[position-1])>interfaces.keyAt(slot)) {
+                slots[position] = slots[position-1];
+                position--;
+            }
+            slots[position] = slot;
+        }
+
+        NetworkInterfaceIO[] result = new NetworkInterfaceIO[found];
+        for(int i=0;i<found;i++) {
+            int slot = slots[i];
+            long previousMillis = interfaces.get(PREVIOUS_SAMPLE_MILLIS,slot);
+            long currentMillis = interfaces.get(SAMPLE_MILLIS,slot);
+            double kbReceived = 0.0, kbTransmitted = 0.0;
+            if(previousMillis>0) {
+                kbReceived = Math.max(0.0,calculator.getDifferenceInKbPerSecond(previousMillis,interfaces.get(PREVIOUS+RECEIVED_BYTES,slot),
+                                                                                currentMillis,interfaces.get(RECEIVED_BYTES,slot)));
+                kbTransmitted = Math.max(0.0,calculator.getDifferenceInKbPerSecond(previousMillis,interfaces.get(PREVIOUS+TRANSMITTED_BYTES,slot),
+                                                                                   currentMillis,interfaces.get(TRANSMITTED_BYTES,slot)));
+            }
+
+            result[i] = new NetworkInterfaceIO(new String((byte[])interfaces.getAttachment(slot),StandardCharsets.US_ASCII),
+                                               interfaces.get(RECEIVED_BYTES,slot),interfaces.get(TRANSMITTED_BYTES,slot),
+                                               interfaces.get(RECEIVED_PACKETS,slot),interfaces.get(TRANSMITTED_PACKETS,slot),
+                                               interfaces.get(RECEIVED_DROPS,slot),interfaces.get(TRANSMITTED_DROPS,slot),
+                                               kbReceived,kbTransmitted,
+                                               perSecond(slot,RECEIVED_PACKETS),perSecond(slot,TRANSMITTED_PACKETS),
+                                               perSecond(slot,RECEIVED_DROPS),perSecond(slot,TRANSMITTED_DROPS));
+        }
+        return result;
+    }
+
+    /**
+     * The change per second in the given counter between the last two samples of the interface in the slot; counters
+     * that have wrapped are treated as unchanged
+     */
+    private double perSecond(int slot, int column) {
+        long previousMillis = interfaces.get(PREVIOUS_SAMPLE_MILLIS,slot);
+        long elapsedMillis = interfaces.get(SAMPLE_MILLIS,slot) - previousMillis;
+        if(previousMillis<=0 || elapsedMillis<=0) return 0.0;
+        long difference = interfaces.get(column,slot) - interfaces.get(PREVIOUS+column,slot);
+        return difference<0 ? 0.0 : difference * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Returns the KB received per second, between the last two samples, over every interface but the loopback
+     */
+    public double getTotalKbPerSecondReceived() {
+        double total = 0.0;
+        for(NetworkInterfaceIO io : getInterfaces()) {
+            if(!LOOPBACK.equals(io.getName())) total += io.getSampleTimeKbPerSecondReceived();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the KB transmitted per second, between the last two samples, over every interface but the loopback
+     */
+    public double getTotalKbPerSecondTransmitted() {
+        double total = 0.0;
+        for(NetworkInterfaceIO io : getInterfaces()) {
+            if(!LOOPBACK.equals(io.getName())) total += io.getSampleTimeKbPerSecondTransmitted();
+        }
+        return total;
+    }
+
+    /**
+     * Returns the number of tcp segments retransmitted, or 0 if net/snmp could not be read
+     */
+    public synchronized long getTcpRetransmittedSegments() {
+        return retransmittedSegments;
+    }
+
+    /**
+     * Returns the tcp segments retransmitted per second between the last two samples
+     */
+    public synchronized double getTcpRetransmittedSegmentsPerSecond() {
+        long elapsedMillis = tcpSampleMillis - previousTcpSampleMillis;
+        if(previousTcpSampleMillis<=0 || elapsedMillis<=0) return 0.0;
+        long difference = retransmittedSegments - previousRetransmittedSegments;
+        return difference<0 ? 0.0 : difference * 1000.0 / elapsedMillis;
+    }
+
+    /**
+     * Returns the percentage of the tcp segments sent between the last two samples that were retransmissions
+     */
+    public synchronized double getTcpRetransmitPercent() {
+        if(previousTcpSampleMillis<=0) return 0.0;
+        long sent = outSegments - previousOutSegments;
+        long retransmitted = retransmittedSegments - previousRetransmittedSegments;
+        if(sent<=0 || retransmitted<0) return 0.0;
+        return Math.min(100.0,retransmitted * 100.0 / sent);
+    }
+
+    /**
+     * Closes the open file handles on the dev and snmp files
+     */
+    public synchronized void close() {
+        dev.close();
+        snmp.close();
+    }
+}
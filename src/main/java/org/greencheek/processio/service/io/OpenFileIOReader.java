@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.FileIO;
+import org.greencheek.processio.service.scheduler.ScheduledSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+
+/**
+ * <p>
+ * Samples the approximate throughput of each file the process has open, from how far the position of each file
+ * descriptor moves between samples; so that it can be seen which files (segment files, write ahead logs, log files)
+ * are being read or written the fastest, without instrumenting the application.  On each sample the
+ * /proc/PID/fdinfo directory is listed, and the pos, flags and ino of each file descriptor are read from its
+ * /proc/PID/fdinfo/FD file.
+ * </p>
+ * <p>
+ * The file descriptors are held between samples in an {@link IntKeyedSampleTable} keyed on the descriptor.  The
+ * /proc/PID/fd/FD link is only read (for the file's path) when a descriptor is first seen, or when it has been
+ * reused for another file: that is when its inode has changed or, on kernels whose fdinfo has no ino, when its
+ * position has gone backwards and the link now names another file.  Descriptors that are not files (sockets, pipes,
+ * eventfds) are tracked, so that their links are not read again, but are not returned.  Descriptors that are closed
+ * between samples are removed.
+ * </p>
+ * <p>
+ * The fdinfo files are read in turn into a single reused buffer, and parsed without creating Strings.  Unlike the
+ * per thread files of {@link ProcTaskThreadIOReader}, the fdinfo files are not kept open between samples, as each
+ * would add a descriptor to the very directory being listed, doubling the process's open files.  So each fdinfo file
+ * is opened and closed on each sample: per descriptor per sample that is an open and close system call, and a
+ * FileChannel (with its FileDescriptor), read into a reused direct buffer.  Unlike a FileInputStream, neither is
+ * finalizable on java 8, so a process with tens of thousands of descriptors does not queue as many objects for
+ * finalization on each sample.  The File of each fdinfo file, and its Path, are created once, when the descriptor is
+ * first seen.  Beyond that the objects created per sample are those of the directory listing (an array and a
+ * String per descriptor), and the path of each newly opened file.  The position does not move for positional reads and writes or memory mapped io; see
+ * {@link FileIO}.
+ * </p>
+ */
+public class OpenFileIOReader implements ScheduledSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(OpenFileIOReader.class);
+    private static final String PROC_PID_LOCATION = "/proc/%d";
+
+    private static final int POSITION_KEY = 0;
+    private static final int FLAGS_KEY = 1;
+    private static final int INODE_KEY = 2;
+    private static final byte[][] KEYS = new byte[][] {
+            ProcFileParser.key("pos"),
+            ProcFileParser.key("flags"),
+            ProcFileParser.key("ino")
+    };
+
+    private static final String[] ACCESS_MODES = new String[] { "r", "w", "rw", "rw" };
+
+    private static final int POSITION = 0;
+    private static final int INODE = 1;
+    private static final int ACCESS_MODE = 2;
+    private static final int BYTES_MOVED = 3;
+    private static final int SAMPLE_MILLIS = 4;
+    private static final int KB_PER_SECOND = 5;
+    private static final int NOT_A_FILE = 6;
+    private static final int COLUMNS = 7;
+
+    private final File fdDirectory;
+    private final File fdinfoDirectory;
+    private final IntKeyedSampleTable files = new IntKeyedSampleTable(COLUMNS,1024);
+    private final ReusableProcFileBuffer buffer = new ReusableProcFileBuffer();
+    private final long[] values = new long[KEYS.length];
+    private int generation;
+
+    public OpenFileIOReader(int pid) {
+        this(new File(String.format(PROC_PID_LOCATION,pid)));
+    }
+
+    /**
+     * @param processDirectory The /proc/PID directory of the process, containing the fd and fdinfo directories
+     */
+    public OpenFileIOReader(File processDirectory) {
+        this.fdDirectory = new File(processDirectory.getAbsoluteFile(),"fd");
+        this.fdinfoDirectory = new File(processDirectory.getAbsoluteFile(),"fdinfo");
+    }
+
+    /**
+     * Reads the position of every file descriptor, and calculates the KB per second each moved since the previous
+     * sample.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    @Override
+    public synchronized void sample(long sampleTimeInMillis) {
+        String[] fds = fdinfoDirectory.list();
+        if(fds==null) {
+            log.warn("Unable to list file descriptors in: {}",fdinfoDirectory.getAbsolutePath());
+            return;
+        }
+
+        int currentGeneration = ++generation;
+        for(String fdName : fds) {
+            int fd = parseFd(fdName);
+            if(fd<0) continue;
+
+            // descriptors start at 0, keys at 1
+            int slot = files.find(fd+1);
+            Descriptor descriptor = slot==-1 ? new Descriptor(new File(fdinfoDirectory,fdName)) :
+                                               (Descriptor)files.getAttachment(slot);
+
+            ByteBuffer content = buffer.read(descriptor.fdinfo);
+            if(content==null) continue;
+
+            ProcFileParser.parseKeyValueLines(content,KEYS,values);
+            long position = values[POSITION_KEY];
+            if(position==ProcFileParser.NOT_PARSED) continue;
+            long inode = values[INODE_KEY]==ProcFileParser.NOT_PARSED ? 0 : values[INODE_KEY];
+
+            if(slot==-1 || isReused(slot,fdName,position,inode)) {
+                if(slot==-1) {
+                    slot = files.insert(fd+1);
+                    files.setAttachment(slot,descriptor);
+                }
+                opened(slot,fdName,position,inode,values[FLAGS_KEY],sampleTimeInMillis);
+            } else {
+                long moved = Math.max(0,position - files.get(POSITION,slot));
+                long elapsedMillis = sampleTimeInMillis - files.get(SAMPLE_MILLIS,slot);
+                double kbPerSecond = elapsedMillis<=0 ? 0.0 : (moved / 1024.0) / (elapsedMillis / 1000.0);
+                files.set(KB_PER_SECOND,slot,Double.doubleToRawLongBits(kbPerSecond));
+                files.set(BYTES_MOVED,slot,files.get(BYTES_MOVED,slot) + moved);
+                files.set(POSITION,slot,position);
+                files.set(SAMPLE_MILLIS,slot,sampleTimeInMillis);
+            }
+            files.markSeen(slot,currentGeneration);
+        }
+        files.removeUnseen(currentGeneration);
+    }
+
+    /**
+     * Returns true if the descriptor in the slot now refers to another file
+     */
+    private boolean isReused(int slot, String fdName, long position, long inode) {
+        if(inode!=0) return inode!=files.get(INODE,slot);
+        if(position>=files.get(POSITION,slot)) return false;
+
+        String path = readLink(fdName);
+        String previousPath = ((Descriptor)files.getAttachment(slot)).path;
+        return path==null ? previousPath!=null : !path.equals(previousPath);
+    }
+
+    private void opened(int slot, String fdName, long position, long inode, long flags, long sampleTimeInMillis) {
+        String path = readLink(fdName);
+        ((Descriptor)files.getAttachment(slot)).path = path;
+        files.set(NOT_A_FILE,slot,path==null || !path.startsWith("/") ? 1 : 0);
+        files.set(POSITION,slot,position);
+        files.set(INODE,slot,inode);
+        // flags are in octal, but are parsed as decimal; the last digit, holding O_RDONLY, O_WRONLY or O_RDWR, is the same
+        files.set(ACCESS_MODE,slot,flags==ProcFileParser.NOT_PARSED ? 0 : (flags % 10) & 3);
+        files.set(BYTES_MOVED,slot,0);
+        files.set(SAMPLE_MILLIS,slot,sampleTimeInMillis);
+        files.set(KB_PER_SECOND,slot,Double.doubleToRawLongBits(0.0));
+    }
+
+    private String readLink(String fdName) {
+        try {
+            return Files.readSymbolicLink(new File(fdDirectory,fdName).toPath()).toString();
+        } catch (IOException e) {
+            return null;
+        } catch (UnsupportedOperationException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Returns the files whose position moved the most KB per second between the last two samples.  Files whose
+     * position did not move are not returned.
+     *
+     * @param limit The maximum number of files to return
+     * @return The files, ordered by the fastest first
+     */
+    public synchronized FileIO[] getTopFiles(int limit) {
+        if(limit<=0) return new FileIO[0];
+
+        int[] top = new int[limit];
+        int found = 0;
+
+        int capacity = files.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!files.isOccupied(slot) || files.get(NOT_A_FILE,slot)!=0) continue;
+            double rate = rate(slot);
+            if(rate<=0.0) continue;
+
+            // insertion into the sorted top array, dropping the slowest when full
+            int position = found;
+            while(position>0 && rate(top[position-1])<rate) {
+                if(position<limit) top[position] = top[position-1];
+                position--;
+            }
+            if(position<limit) {
+                top[position] = slot;
+                if(found<limit) found++;
+            }
+        }
+
+        FileIO[] result = new FileIO[found];
+        for(int i=0;i<found;i++) {
+            int slot = top[i];
+            result[i] = new FileIO(files.keyAt(slot)-1,((Descriptor)files.getAttachment(slot)).path,files.get(INODE,slot),
+                                   ACCESS_MODES[(int)files.get(ACCESS_MODE,slot)],
+                                   files.get(POSITION,slot),files.get(BYTES_MOVED,slot),rate(slot));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of file descriptors, of files or otherwise, seen at the last sample
+     */
+    public synchronized int getTrackedFileDescriptorCount() {
+        return files.size();
+    }
+
+    private double rate(int slot) {
+        return Double.longBitsToDouble(files.get(KB_PER_SECOND,slot));
+    }
+
+    private static int parseFd(String name) {
+        if(name.length()==0) return -1;
+        int fd = 0;
+        for(int i=0;i<name.length();i++) {
+            int digit = name.charAt(i) - '0';
+            if(digit<0 || digit>9) return -1;
+            fd = fd*10 + digit;
+        }
+        return fd;
+    }
+
+    /**
+     * The fdinfo file of a descriptor, and the path of the file it refers to, held as the attachment of its slot
+     */
+    private static final class Descriptor {
+        final File fdinfo;
+        String path;
+
+        Descriptor(File fdinfo) {
+            this.fdinfo = fdinfo;
+        }
+    }
+}
@@ -0,0 +1,192 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+import org.greencheek.processio.service.scheduler.ScheduledSampler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Samples the page faults of the process, from the minflt and majflt fields of /proc/PID/stat, on each tick of the
+ * scheduler.  Reads of a MappedByteBuffer are satisfied by page faults rather than read() calls, so only partly show
+ * up in the read_bytes of /proc/PID/io; a high rate of major faults (those that had to wait for the disk) next to a
+ * low read rate is a sign the process is thrashing the page cache.  The read KB per second of the same tick is taken
+ * from the given {@link ProcessIOUsageMXBean}, so the two can be compared.
+ * </p>
+ * <p>
+ * Optionally /proc/PID/smaps_rollup is also read, for the resident set size and how much of it is file backed
+ * (Rss less Anonymous, which includes mapped files and shared memory).  smaps_rollup walks every mapping of
+ * the process in the kernel, so it is more expensive to read than the stat file, and is off by default.
+ * </p>
+ * <p>
+ * As with {@link FileChannelProcIOProcessIOReader} the files are kept open, re-read into reused buffers and parsed
+ * straight from the bytes; no objects are created per sample.  The sample is synchronized; the getters may be
+ * called by any thread.
+ * </p>
+ */
+public class PageFaultReader implements ScheduledSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(PageFaultReader.class);
+    private static final String PROC_PID_LOCATION = "/proc/%d";
+
+    /**
+     * The fields of /proc/PID/stat holding the minor and major faults of the process
+     */
+    private static final int MINOR_FAULTS_FIELD = 10;
+    private static final int MAJOR_FAULTS_FIELD = 12;
+
+    private static final int RSS = 0;
+    private static final int ANONYMOUS = 1;
+    private static final byte[][] SMAPS_KEYS = new byte[][] {
+            ProcFileParser.key("Rss"),
+            ProcFileParser.key("Anonymous")
+    };
+
+    private final File processDirectory;
+    private final ReusableProcFileChannel stat;
+    private final ReusableProcFileChannel smapsRollup;
+    private final ProcessIOUsageMXBean processIO;
+    private final long[] values = new long[SMAPS_KEYS.length];
+
+    private long previousSampleMillis = -1;
+    private long previousMinorFaults;
+    private long previousMajorFaults;
+
+    private volatile long minorFaults;
+    private volatile long majorFaults;
+    private volatile double minorFaultsPerSecond;
+    private volatile double majorFaultsPerSecond;
+    private volatile double kbPerSecondReadIO;
+    private volatile long residentKb;
+    private volatile long fileBackedResidentKb;
+
+    /**
+     * @param pid The process whose faults are sampled
+     * @param processIO The holder of the process's io, or null if the read rate is not to be reported
+     * @param readSmapsRollup Whether the resident and file backed memory is read from /proc/PID/smaps_rollup
+     */
+    public PageFaultReader(int pid, ProcessIOUsageMXBean processIO, boolean readSmapsRollup) {
+        this(new File(String.format(PROC_PID_LOCATION,pid)),processIO,readSmapsRollup);
+    }
+
+    /**
+     * @param processDirectory The /proc/PID directory of the process
+     * @param processIO The holder of the process's io, or null if the read rate is not to be reported
+     * @param readSmapsRollup Whether the resident and file backed memory is read from the smaps_rollup file
+     */
+    public PageFaultReader(File processDirectory, ProcessIOUsageMXBean processIO, boolean readSmapsRollup) {
+        this.processDirectory = new File(processDirectory.getAbsolutePath());
+        this.stat = new ReusableProcFileChannel(new File(processDirectory,"stat"));
+        this.smapsRollup = readSmapsRollup ? new ReusableProcFileChannel(new File(processDirectory,"smaps_rollup"),1024) : null;
+        this.processIO = processIO;
+    }
+
+    /**
+     * Reads the faults of the process, and calculates the faults per second since the previous sample.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    @Override
+    public synchronized void sample(long sampleTimeInMillis) {
+        ByteBuffer content = stat.read();
+        long minor = content==null ? ProcFileParser.NOT_PARSED : ProcFileParser.parseStatField(content,MINOR_FAULTS_FIELD);
+        long major = content==null ? ProcFileParser.NOT_PARSED : ProcFileParser.parseStatField(content,MAJOR_FAULTS_FIELD);
+        if(minor==ProcFileParser.NOT_PARSED || major==ProcFileParser.NOT_PARSED) {
+            log.warn("Unable to read page faults from: {}/stat",processDirectory.getAbsolutePath());
+            return;
+        }
+
+        long elapsedMillis = sampleTimeInMillis - previousSampleMillis;
+        if(previousSampleMillis!=-1 && elapsedMillis>0) {
+            minorFaultsPerSecond = Math.max(0,minor - previousMinorFaults) * 1000.0 / elapsedMillis;
+            majorFaultsPerSecond = Math.max(0,major - previousMajorFaults) * 1000.0 / elapsedMillis;
+        }
+        previousSampleMillis = sampleTimeInMillis;
+        previousMinorFaults = minor;
+        previousMajorFaults = major;
+        minorFaults = minor;
+        majorFaults = major;
+        kbPerSecondReadIO = kbPerSecondReadIO();
+
+        if(smapsRollup!=null) {
+            content = smapsRollup.read();
+            if(content!=null && ProcFileParser.parseKeyValueLines(content,SMAPS_KEYS,values)==SMAPS_KEYS.length) {
+                residentKb = values[RSS];
+                fileBackedResidentKb = Math.max(0,values[RSS] - values[ANONYMOUS]);
+            }
+        }
+    }
+
+    private double kbPerSecondReadIO() {
+        return processIO==null ? 0.0 : processIO.getSampleTimeKbPerSecondReadIO();
+    }
+
+    /**
+     * Returns the minor faults (those satisfied without waiting for the disk) of the process
+     */
+    public long getMinorFaults() {
+        return minorFaults;
+    }
+
+    /**
+     * Returns the major faults (those that waited for a page to be read from the disk) of the process
+     */
+    public long getMajorFaults() {
+        return majorFaults;
+    }
+
+    public double getSampleTimeMinorFaultsPerSecond() {
+        return minorFaultsPerSecond;
+    }
+
+    public double getSampleTimeMajorFaultsPerSecond() {
+        return majorFaultsPerSecond;
+    }
+
+    /**
+     * Returns the read KB per second of the process, from /proc/PID/io, on the tick the faults were last sampled
+     */
+    public double getSampleTimeKbPerSecondReadIO() {
+        return kbPerSecondReadIO;
+    }
+
+    /**
+     * Returns the resident set size in KB, or 0 if smaps_rollup is not read
+     */
+    public long getResidentKb() {
+        return residentKb;
+    }
+
+    /**
+     * Returns the resident KB that is not anonymous memory (i.e. mapped files), or 0 if smaps_rollup is not read
+     */
+    public long getFileBackedResidentKb() {
+        return fileBackedResidentKb;
+    }
+
+    /**
+     * Closes the open file handles on the stat and smaps_rollup files
+     */
+    public synchronized void close() {
+        stat.close();
+        if(smapsRollup!=null) smapsRollup.close();
+    }
+}
@@ -0,0 +1,377 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Static helper methods for parsing the content of /proc files directly from a {@link ByteBuffer}, without creating
+ * Strings, or using regular expressions.  The methods use absolute gets on the buffer, so the buffer's position is
+ * not modified.
+ * </p>
+ * <p>
+ * The /proc files are ascii, so keys are given as byte arrays that are compared byte for byte
+ * with the buffer's content.
+ * </p>
+ */
+public final class ProcFileParser {
+
+    /**
+     * Returned from the parse methods when no number could be parsed
+     */
+    public static final long NOT_PARSED = Long.MIN_VALUE;
+
+    private ProcFileParser() {
+    }
+
+    /**
+     * Converts the given ascii string into the bytes used for key comparisons.
+     */
+    public static byte[] key(String key) {
+        byte[] bytes = new byte[key.length()];
+        for(int i=0;i<bytes.length;i++) {
+            bytes[i] = (byte)key.charAt(i);
+        }
+        return bytes;
+    }
+
+    /**
+     * <p>
+     * Parses a file of "key: value" lines, as found in /proc/PID/io, into the given values array.  For each line the
+     * text before the ':' is compared to each of the given keys.  If it matches, the number after the ':' is
+     * stored in the values array, at the same index as the key.  Any key that is not found in the buffer has the
+     * value {@link #NOT_PARSED}.
+     * </p>
+     *
+     * @param buffer The buffer containing the file content, between position and limit
+     * @param keys  The keys to look for
+     * @param values  The array in which to store the values found for the keys
+     * @return the number of keys that were found
+     */
+    public static int parseKeyValueLines(ByteBuffer buffer, byte[][] keys, long[] values) {
+        for(int i=0;i<values.length;i++) {
+            values[i] = NOT_PARSED;
+        }
+
+        int found = 0;
+        int limit = buffer.limit();
+        int lineStart = buffer.position();
+        while(lineStart<limit) {
+            int lineEnd = endOfLine(buffer,lineStart,limit);
+            int separator = indexOf(buffer,(byte)':',lineStart,lineEnd);
+            if(separator!=-1) {
+                int keyStart = skipWhitespace(buffer,lineStart,separator);
+                int keyEnd = separator;
+                while(keyEnd>keyStart && isWhitespace(buffer.get(keyEnd-1))) keyEnd--;
+
+                for(int k=0;k<keys.length;k++) {
+                    if(values[k]==NOT_PARSED && regionEquals(buffer,keyStart,keyEnd,keys[k])) {
+                        values[k] = parseLong(buffer,separator+1,lineEnd);
+                        if(values[k]!=NOT_PARSED) found++;
+                        break;
+                    }
+                }
+            }
+            lineStart = lineEnd+1;
+        }
+        return found;
+    }
+
+    /**
+     * <p>
+     * Parses a line of a cgroup v2 "nested keyed" file, such as io.stat or io.max, i.e.
+     * "8:0 rbytes=90430464 wbytes=0 rios=2155".  The line starts with the device as major:minor, followed by
+     * key=value pairs.  The value of each pair whose key is one of the given keys is stored in the values array, at
+     * the same index as the key.  Keys not on the line, or whose value is not a number (i.e. "max"), have the value
+     * {@link #NOT_PARSED}.
+     * </p>
+     *
+     * @param buffer The buffer containing the file content
+     * @param from The index of the start of the line
+     * @param to The index of the end of the line (exclusive)
+     * @param keys  The keys to look for
+     * @param values  The array in which to store the values found for the keys
+     * @return The device, as (major &lt;&lt; 20) | minor, or -1 if the line does not start with a device
+     */
+    public static int parseNestedKeyedLine(ByteBuffer buffer, int from, int to, byte[][] keys, long[] values) {
+        for(int i=0;i<values.length;i++) {
+            values[i] = NOT_PARSED;
+        }
+
+        int i = skipWhitespace(buffer,from,to);
+        int tokenEnd = i;
+        while(tokenEnd<to && !isWhitespace(buffer.get(tokenEnd))) tokenEnd++;
+        int colon = indexOf(buffer,(byte)':',i,tokenEnd);
+        if(colon==-1) return -1;
+        long major = parseLong(buffer,i,colon);
+        long minor = parseLong(buffer,colon+1,tokenEnd);
+        if(major==NOT_PARSED || minor==NOT_PARSED || major>=(1<<11) || minor>=(1<<20)) return -1;
+
+        i = tokenEnd;
+        while(i<to) {
+            i = skipWhitespace(buffer,i,to);
+            if(i>=to) break;
+            tokenEnd = i;
+            while(tokenEnd<to && !isWhitespace(buffer.get(tokenEnd))) tokenEnd++;
+            int equals = indexOf(buffer,(byte)'=',i,tokenEnd);
+            if(equals!=-1) {
+                for(int k=0;k<keys.length;k++) {
+                    if(regionEquals(buffer,i,equals,keys[k])) {
+                        values[k] = parseLong(buffer,equals+1,tokenEnd);
+                        break;
+                    }
+                }
+            }
+            i = tokenEnd;
+        }
+        return (int)((major << 20) | minor);
+    }
+
+    /**
+     * <p>
+     * Parses the given field of a /proc/PID/stat (or /proc/PID/task/TID/stat) file.  Fields are numbered from 1, as in
+     * the proc(5) man page, i.e. 12 is majflt, 22 is starttime and 42 is delayacct_blkio_ticks.  As the second field,
+     * the command name, is in brackets and can itself contain spaces and brackets, fields after the second are
+     * counted from the last ')' in the file.
+     * </p>
+     *
+     * @param buffer The buffer containing the stat file content, between position and limit
+     * @param field The field number, which must be greater than 2
+     * @return The value of the field, or {@link #NOT_PARSED} if the file does not have the field
+     */
+    public static long parseStatField(ByteBuffer buffer, int field) {
+        int limit = buffer.limit();
+        int i = limit-1;
+        while(i>=buffer.position() && buffer.get(i)!=')') i--;
+        if(i<buffer.position()) return NOT_PARSED;
+
+        // the field after the ')' is field 3
+        int currentField = 2;
+        i++;
+        while(i<limit) {
+            i = skipWhitespace(buffer,i,limit);
+            if(i>=limit) break;
+            currentField++;
+            if(currentField==field) {
+                // fields such as the state are not numeric; signed values are not parsed
+                return parseLong(buffer,i,limit);
+            }
+            while(i<limit && !isWhitespace(buffer.get(i))) i++;
+        }
+        return NOT_PARSED;
+    }
+
+    /**
+     * Parses a whitespace separated list of non negative numbers (as found in /proc/PID/task/TID/children),
+     * adding each to the given list.
+     *
+     * @param buffer The buffer containing the list, between position and limit
+     * @param into The list to add the numbers to
+     * @return The number of entries added to the list
+     */
+    public static int parseIntList(ByteBuffer buffer, IntList into) {
+        int limit = buffer.limit();
+        int i = buffer.position();
+        int added = 0;
+        while(i<limit) {
+            i = skipWhitespace(buffer,i,limit);
+            if(i>=limit) break;
+            int end = i;
+            while(end<limit && !isWhitespace(buffer.get(end))) end++;
+            long value = parseLong(buffer,i,end);
+            if(value!=NOT_PARSED) {
+                into.add((int)value);
+                added++;
+            }
+            i = end;
+        }
+        return added;
+    }
+
+    /**
+     * <p>
+     * Parses a file of header and value line pairs, as found in /proc/net/snmp, i.e.
+     * "Tcp: RtoAlgorithm RtoMin ... RetransSegs" followed by "Tcp: 1 200 ... 30".  The first line starting with the
+     * given prefix holds the names of the fields, and the second the values.  The value of each field whose name is
+     * one of the given keys is stored in the values array, at the same index as the key.  Any key that is not found
+     * has the value {@link #NOT_PARSED}.
+     * </p>
+     *
+     * @param buffer The buffer containing the file content, between position and limit
+     * @param prefix The prefix of the header and value lines, i.e. "Tcp:"
+     * @param keys  The names of the fields to look for
+     * @param values  The array in which to store the values found for the keys
+     * @return the number of keys that were found
+     */
+    public static int parseHeaderedLines(ByteBuffer buffer, byte[] prefix, byte[][] keys, long[] values) {
+        for(int i=0;i<values.length;i++) {
+            values[i] = NOT_PARSED;
+        }
+
+        int limit = buffer.limit();
+        int headerStart = -1, headerEnd = -1;
+        int lineStart = buffer.position();
+        while(lineStart<limit) {
+            int lineEnd = endOfLine(buffer,lineStart,limit);
+            if(lineEnd-lineStart>=prefix.length && regionEquals(buffer,lineStart,lineStart+prefix.length,prefix)) {
+                if(headerStart==-1) {
+                    headerStart = lineStart+prefix.length;
+                    headerEnd = lineEnd;
+                } else {
+                    return parseHeaderedValues(buffer,headerStart,headerEnd,lineStart+prefix.length,lineEnd,keys,values);
+                }
+            }
+            lineStart = lineEnd+1;
+        }
+        return 0;
+    }
+
+    private static int parseHeaderedValues(ByteBuffer buffer, int header, int headerEnd, int value, int valueEnd,
+                                           byte[][] keys, long[] values) {
+        int found = 0;
+        while(true) {
+            header = skipWhitespace(buffer,header,headerEnd);
+            value = skipWhitespace(buffer,value,valueEnd);
+            if(header>=headerEnd || value>=valueEnd) break;
+            int nameEnd = header;
+            while(nameEnd<headerEnd && !isWhitespace(buffer.get(nameEnd))) nameEnd++;
+            int valueTokenEnd = value;
+            while(valueTokenEnd<valueEnd && !isWhitespace(buffer.get(valueTokenEnd))) valueTokenEnd++;
+
+            for(int k=0;k<keys.length;k++) {
+                if(values[k]==NOT_PARSED && regionEquals(buffer,header,nameEnd,keys[k])) {
+                    values[k] = parseLong(buffer,value,valueTokenEnd);
+                    if(values[k]!=NOT_PARSED) found++;
+                    break;
+                }
+            }
+            header = nameEnd;
+            value = valueTokenEnd;
+        }
+        return found;
+    }
+
+    /**
+     * <p>
+     * Parses the whitespace separated fields of a line, such as a line of /proc/diskstats, i.e.
+     * "8 0 sda 4143 1543 302906 1529 ...".  The value of each field is stored in the values array in turn; fields that
+     * are not a number (i.e. the device name) have the value {@link #NOT_PARSED}.  Fields beyond the length of the
+     * values array are ignored; entries beyond the number of fields on the line are set to {@link #NOT_PARSED}.
+     * </p>
+     *
+     * @param buffer The buffer containing the file content
+     * @param from The index of the start of the line
+     * @param to The index of the end of the line (exclusive)
+     * @param values  The array in which to store the values of the fields
+     * @return The number of fields on the line (up to the length of the values array)
+     */
+    public static int parseFields(ByteBuffer buffer, int from, int to, long[] values) {
+        int fields = 0;
+        int i = from;
+        while(i<to && fields<values.length) {
+            i = skipWhitespace(buffer,i,to);
+            if(i>=to) break;
+            int tokenEnd = i;
+            while(tokenEnd<to && !isWhitespace(buffer.get(tokenEnd))) tokenEnd++;
+            long value = parseLong(buffer,i,tokenEnd);
+            // a token such as "sda1" starts with no digits; "1abc" is not a number either
+            int digits = 0;
+            while(i+digits<tokenEnd && buffer.get(i+digits)>='0' && buffer.get(i+digits)<='9') digits++;
+            values[fields++] = digits==tokenEnd-i ? value : NOT_PARSED;
+            i = tokenEnd;
+        }
+        for(int f=fields;f<values.length;f++) {
+            values[f] = NOT_PARSED;
+        }
+        return fields;
+    }
+
+    /**
+     * Parses the first non negative decimal number found between from (inclusive) and to (exclusive),
+     * skipping any leading whitespace.
+     *
+     * @return the number, or {@link #NOT_PARSED} if no digits are found at the start of the region
+     */
+    public static long parseLong(ByteBuffer buffer, int from, int to) {
+        int i = skipWhitespace(buffer,from,to);
+        long value = 0;
+        int digits = 0;
+        while(i<to) {
+            int digit = buffer.get(i) - '0';
+            if(digit<0 || digit>9) break;
+            value = value*10 + digit;
+            digits++;
+            i++;
+        }
+        return digits==0 ? NOT_PARSED : value;
+    }
+
+    /**
+     * Returns the index of the given byte between from (inclusive) and to (exclusive), or -1 if not found
+     */
+    public static int indexOf(ByteBuffer buffer, byte b, int from, int to) {
+        for(int i=from;i<to;i++) {
+            if(buffer.get(i)==b) return i;
+        }
+        return -1;
+    }
+
+    /**
+     * Returns the index of the next new line at or after from, or to if the region has no further new line
+     */
+    public static int endOfLine(ByteBuffer buffer, int from, int to) {
+        int i = indexOf(buffer,(byte)'\n',from,to);
+        return i==-1 ? to : i;
+    }
+
+    /**
+     * Returns the index of the first non whitespace character at or after from, or to if there is none
+     */
+    public static int skipWhitespace(ByteBuffer buffer, int from, int to) {
+        int i = from;
+        while(i<to && isWhitespace(buffer.get(i))) i++;
+        return i;
+    }
+
+    /**
+     * Returns true if the bytes between start (inclusive) and end (exclusive) are equal to the given key
+     */
+    public static boolean regionEquals(ByteBuffer buffer, int start, int end, byte[] key) {
+        if(end-start!=key.length) return false;
+        for(int i=0;i<key.length;i++) {
+            if(buffer.get(start+i)!=key[i]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Creates a String from the ascii bytes between from (inclusive) and to (exclusive), with any trailing whitespace
+     * removed.  This does create garbage, so is only for values that are then cached, i.e. thread names.
+     */
+    public static String toAsciiString(ByteBuffer buffer, int from, int to) {
+        while(to>from && isWhitespace(buffer.get(to-1))) to--;
+        char[] chars = new char[to-from];
+        for(int i=0;i<chars.length;i++) {
+            chars[i] = (char)(buffer.get(from+i) & 0xFF);
+        }
+        return new String(chars);
+    }
+
+    public static boolean isWhitespace(byte b) {
+        return b==' ' || b=='\t' || b=='\r' || b=='\n';
+    }
+}
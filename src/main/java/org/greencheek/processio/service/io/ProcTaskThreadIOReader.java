@@ -0,0 +1,438 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.ThreadIO;
+import org.greencheek.processio.service.scheduler.ScheduledSampler;
+import org.greencheek.processio.service.usage.DifferenceInKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * <p>
+ * Samples the io of each thread of the process, by reading the /proc/PID/task/TID/io file of every thread found in the
+ * /proc/PID/task directory.  The read_bytes and write_bytes of each thread are held between samples in an
+ * {@link IntKeyedSampleTable} keyed on the linux thread id (TID), from which the read and write KB per second of
+ * each thread between the last two samples is calculated.  Threads that exit between samples are removed from the
+ * table; new threads are added.  As a thread's counters start at 0, the io of a thread first seen in a sample is
+ * attributed to the time since the previous sample.
+ * </p>
+ * <p>
+ * The first time a TID is seen, its native name is read from /proc/PID/task/TID/comm, and is mapped to a java thread.
+ * On linux the jvm names each native thread after the java thread (truncated to 15 characters); so the TID
+ * is mapped to the java thread whose name, truncated in the same way, is equal to the native name.  If no single
+ * java thread matches, the native name is used and the java thread id is {@link ThreadIO#UNKNOWN_JAVA_THREAD_ID}.
+ * </p>
+ * <p>
+ * Optionally the delayacct_blkio_ticks of each thread is also read from /proc/PID/task/TID/stat, from which the
+ * millis per second each thread spent waiting for block io is calculated (see {@link IOWaitReader}).  The stat file
+ * is kept open and re-read in the same way as the io file, in the same pass over the threads; but it doubles the
+ * reads and the file descriptors per thread, so is off by default.
+ * </p>
+ * <p>
+ * The io file of each thread is opened when the thread is first seen, and kept open until the thread exits; on each
+ * sample it is re-read from the start into a single reused buffer (see {@link ReusableProcFileBuffer}), and parsed
+ * without creating Strings.  Each thread seen therefore holds a file descriptor, up to a maximum number of open
+ * files (by default {@value ReusableProcFileBuffer#DEFAULT_MAX_OPEN_CHANNELS}, kept small as the descriptors count
+ * against the file descriptor limit of the process being monitored).  While that many are open, the io
+ * file of any other thread is opened and closed on each sample instead, at the cost of a FileInputStream and
+ * FileChannel per thread per sample.  Otherwise the objects created on each sample are the listing of the task directory (an
+ * array and a String per thread), objects for threads that have not been seen before, and those created when the
+ * top threads are requested.
+ * </p>
+ */
+public class ProcTaskThreadIOReader implements ScheduledSampler {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcTaskThreadIOReader.class);
+    private static final String PROC_TASK_LOCATION = "/proc/%d/task";
+
+    /**
+     * The maximum length of a thread's native name on linux
+     */
+    public static final int NATIVE_THREAD_NAME_LENGTH = 15;
+
+    private static final long NOT_MAPPED = Long.MIN_VALUE;
+
+    private static final int READ_BYTES = 0;
+    private static final int WRITE_BYTES = 1;
+    private static final int SAMPLE_MILLIS = 2;
+    private static final int READ_KB_PER_SECOND = 3;
+    private static final int WRITE_KB_PER_SECOND = 4;
+    private static final int JAVA_THREAD_ID = 5;
+    private static final int IO_WAIT_TICKS = 6;
+    private static final int IO_WAIT_MILLIS_PER_SECOND = 7;
+    private static final int COLUMNS = 8;
+
+    private static final byte[][] KEYS = new byte[][] {
+            ProcFileParser.key("read_bytes"),
+            ProcFileParser.key("write_bytes")
+    };
+
+    private final File taskDirectory;
+    private final IntKeyedSampleTable threads;
+    private final ReusableProcFileBuffer buffer;
+    private final long[] values = new long[KEYS.length];
+    private final DifferenceInKBPerSecondCalculator calculator;
+    private final ThreadMXBean threadMXBean = ManagementFactory.getThreadMXBean();
+    private final boolean readIOWait;
+    private int generation;
+    private long previousSampleMillis = -1;
+
+    public ProcTaskThreadIOReader(int pid) {
+        this(pid,false);
+    }
+
+    /**
+     * @param pid The process whose threads are sampled
+     * @param readIOWait Whether the io wait of each thread is also read from its stat file
+     */
+    public ProcTaskThreadIOReader(int pid, boolean readIOWait) {
+        this(pid,readIOWait,ReusableProcFileBuffer.DEFAULT_MAX_OPEN_CHANNELS);
+    }
+
+    /**
+     * @param pid The process whose threads are sampled
+     * @param readIOWait Whether the io wait of each thread is also read from its stat file
+     * @param maxOpenFiles The maximum number of thread files kept open between samples, each a file descriptor of the
+     *                     process
+     */
+    public ProcTaskThreadIOReader(int pid, boolean readIOWait, int maxOpenFiles) {
+        this(new File(String.format(PROC_TASK_LOCATION,pid)),new PrimitiveBasedDifferenceInKBPerSecondCalculator(),
+             readIOWait,maxOpenFiles);
+    }
+
+    public ProcTaskThreadIOReader(File taskDirectory) {
+        this(taskDirectory,new PrimitiveBasedDifferenceInKBPerSecondCalculator());
+    }
+
+    public ProcTaskThreadIOReader(File taskDirectory, DifferenceInKBPerSecondCalculator calculator) {
+        this(taskDirectory,calculator,false);
+    }
+
+    public ProcTaskThreadIOReader(File taskDirectory, DifferenceInKBPerSecondCalculator calculator, boolean readIOWait) {
+        this(taskDirectory,calculator,readIOWait,ReusableProcFileBuffer.DEFAULT_MAX_OPEN_CHANNELS);
+    }
+
+    /**
+     * @param taskDirectory The /proc/PID/task directory of the process whose threads are sampled
+     * @param calculator Calculates the KB per second between two samples of a counter
+     * @param readIOWait Whether the io wait of each thread is also read from its stat file
+     * @param maxOpenFiles The maximum number of thread files kept open between samples
+     */
+    public ProcTaskThreadIOReader(File taskDirectory, DifferenceInKBPerSecondCalculator calculator, boolean readIOWait,
+                                  int maxOpenFiles) {
+        this.taskDirectory = new File(taskDirectory.getAbsolutePath());
+        this.calculator = calculator;
+        this.readIOWait = readIOWait;
+        this.buffer = new ReusableProcFileBuffer(ReusableProcFileChannel.DEFAULT_BUFFER_SIZE,maxOpenFiles);
+        this.threads = new IntKeyedSampleTable(COLUMNS,256);
+    }
+
+    /**
+     * Reads the io of every thread in the task directory, and calculates each thread's read and write
+     * KB per second since the previous sample.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    @Override
+    public synchronized void sample(long sampleTimeInMillis) {
+        String[] tids = taskDirectory.list();
+        if(tids==null) {
+            log.warn("Unable to list threads in task directory: {}",taskDirectory.getAbsolutePath());
+            return;
+        }
+
+        int currentGeneration = ++generation;
+        int seen = 0;
+        boolean unmappedThreads = false;
+
+        for(String tidName : tids) {
+            int tid = parseTid(tidName);
+            if(tid<=0) continue;
+
+            int slot = threads.find(tid);
+            boolean newThread = slot==-1;
+            ThreadFiles files = newThread ? new ThreadFiles(new File(taskDirectory,tidName)) :
+                                            (ThreadFiles)threads.getAttachment(slot);
+            // Opened when first seen, or when a file is no longer kept open for another thread
+            if(files.io==null) files.io = buffer.open(files.ioFile);
+            if(readIOWait && files.stat==null) files.stat = buffer.open(files.statFile);
+
+            // An exited thread, or a reused TID, fails to read through the kept open file; the thread is then
+            // removed as unseen, and is added again as a new thread on the next sample if the TID is in use.
+            if(!readCounters(files)) {
+                if(newThread) files.close(buffer);
+                continue;
+            }
+            long readBytes = values[READ_BYTES];
+            long writeBytes = values[WRITE_BYTES];
+
+            if(newThread) {
+                slot = threads.insert(tid);
+                threads.set(JAVA_THREAD_ID,slot,NOT_MAPPED);
+                files.name = readNativeName(files.directory,tidName);
+                threads.setAttachment(slot,files);
+                unmappedThreads = true;
+                if(previousSampleMillis==-1) {
+                    setRates(slot,0.0,0.0);
+                } else {
+                    // The thread started after the previous sample, with its counters at 0
+                    setRates(slot,
+                             rate(previousSampleMillis,0,sampleTimeInMillis,readBytes),
+                             rate(previousSampleMillis,0,sampleTimeInMillis,writeBytes));
+                }
+            } else {
+                long previousMillis = threads.get(SAMPLE_MILLIS,slot);
+                setRates(slot,
+                         rate(previousMillis,threads.get(READ_BYTES,slot),sampleTimeInMillis,readBytes),
+                         rate(previousMillis,threads.get(WRITE_BYTES,slot),sampleTimeInMillis,writeBytes));
+            }
+
+            if(readIOWait) {
+                sampleIOWait(files,slot,newThread,sampleTimeInMillis);
+            }
+
+            threads.set(READ_BYTES,slot,readBytes);
+            threads.set(WRITE_BYTES,slot,writeBytes);
+            threads.set(SAMPLE_MILLIS,slot,sampleTimeInMillis);
+            threads.markSeen(slot,currentGeneration);
+            seen++;
+        }
+
+        if(seen<threads.size()) {
+            closeUnseen(currentGeneration);
+            threads.removeUnseen(currentGeneration);
+        }
+        previousSampleMillis = sampleTimeInMillis;
+
+        if(unmappedThreads) {
+            mapToJavaThreads();
+        }
+    }
+
+    /**
+     * Reads the thread's io file, through its kept open channel if it has one, into the values array
+     *
+     * @return true if both the read_bytes and write_bytes were read
+     */
+    private boolean readCounters(ThreadFiles files) {
+        ByteBuffer content = files.io==null ? buffer.read(files.ioFile) : buffer.read(files.io);
+        if(content==null) return false;
+
+        ProcFileParser.parseKeyValueLines(content,KEYS,values);
+        return values[READ_BYTES]!=ProcFileParser.NOT_PARSED && values[WRITE_BYTES]!=ProcFileParser.NOT_PARSED;
+    }
+
+    /**
+     * Closes the files kept open for the threads that were not seen in the given generation, before they are removed
+     */
+    private void closeUnseen(int currentGeneration) {
+        int capacity = threads.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!threads.isOccupied(slot) || threads.isSeen(slot,currentGeneration)) continue;
+            ((ThreadFiles)threads.getAttachment(slot)).close(buffer);
+        }
+    }
+
+    /**
+     * Reads the block io ticks of the thread, and sets the millis per second of io wait since the thread's previous
+     * sample.  As with the io counters, a new thread's ticks are attributed to the time since the previous sample.
+     */
+    private void sampleIOWait(ThreadFiles files, int slot, boolean newThread, long sampleTimeInMillis) {
+        long previousTicks = newThread ? 0 : threads.get(IO_WAIT_TICKS,slot);
+        long previousMillis = newThread ? previousSampleMillis : threads.get(SAMPLE_MILLIS,slot);
+
+        ByteBuffer content = files.stat==null ? buffer.read(files.statFile) : buffer.read(files.stat);
+        long ticks = content==null ? ProcFileParser.NOT_PARSED :
+                ProcFileParser.parseStatField(content,IOWaitReader.DELAYACCT_BLKIO_TICKS_FIELD);
+        if(ticks==ProcFileParser.NOT_PARSED) ticks = previousTicks;
+
+        threads.set(IO_WAIT_TICKS,slot,ticks);
+        threads.set(IO_WAIT_MILLIS_PER_SECOND,slot,Double.doubleToRawLongBits(
+                IOWaitReader.millisPerSecond(previousMillis,previousTicks,sampleTimeInMillis,ticks)));
+    }
+
+    /**
+     * Returns the threads with the greatest combined read and write KB per second, between the last two samples.
+     * Threads that performed no io between the two samples (and, if io wait is read, did not wait for io) are not
+     * returned.
+     *
+     * @param limit The maximum number of threads to return
+     * @return The top threads, ordered by the greatest io first
+     */
+    public synchronized ThreadIO[] getTopThreads(int limit) {
+        if(limit<=0) return new ThreadIO[0];
+
+        int[] top = new int[limit];
+        int found = 0;
+
+        int capacity = threads.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!threads.isOccupied(slot)) continue;
+            double total = totalRate(slot);
+            if(total<=0.0 && ioWaitRate(slot)<=0.0) continue;
+
+            // insertion into the sorted top array, dropping the smallest when full
+            int position = found;
+            while(position>0 && totalRate(top[position-1])<total) {
+                if(position<limit) top[position] = top[position-1];
+                position--;
+            }
+            if(position<limit) {
+                top[position] = slot;
+                if(found<limit) found++;
+            }
+        }
+
+        ThreadIO[] result = new ThreadIO[found];
+        for(int i=0;i<found;i++) {
+            int slot = top[i];
+            long javaThreadId = threads.get(JAVA_THREAD_ID,slot);
+            result[i] = new ThreadIO(threads.keyAt(slot),
+                                     javaThreadId==NOT_MAPPED ? ThreadIO.UNKNOWN_JAVA_THREAD_ID : javaThreadId,
+                                     ((ThreadFiles)threads.getAttachment(slot)).name,
+                                     threads.get(READ_BYTES,slot),threads.get(WRITE_BYTES,slot),
+                                     readRate(slot),writeRate(slot),ioWaitRate(slot));
+        }
+        return result;
+    }
+
+    /**
+     * Returns the number of threads that were seen at the last sample
+     */
+    public synchronized int getTrackedThreadCount() {
+        return threads.size();
+    }
+
+    /**
+     * Returns the number of thread files being kept open between samples
+     */
+    synchronized int getOpenFileCount() {
+        return buffer.getOpenChannels();
+    }
+
+    private double rate(long previousMillis, long previousBytes, long currentMillis, long currentBytes) {
+        if(currentBytes<=previousBytes) return 0.0;
+        return calculator.getDifferenceInKbPerSecond(previousMillis,previousBytes,currentMillis,currentBytes);
+    }
+
+    private void setRates(int slot, double readRate, double writeRate) {
+        threads.set(READ_KB_PER_SECOND,slot,Double.doubleToRawLongBits(readRate));
+        threads.set(WRITE_KB_PER_SECOND,slot,Double.doubleToRawLongBits(writeRate));
+    }
+
+    private double readRate(int slot) {
+        return Double.longBitsToDouble(threads.get(READ_KB_PER_SECOND,slot));
+    }
+
+    private double writeRate(int slot) {
+        return Double.longBitsToDouble(threads.get(WRITE_KB_PER_SECOND,slot));
+    }
+
+    private double ioWaitRate(int slot) {
+        return Double.longBitsToDouble(threads.get(IO_WAIT_MILLIS_PER_SECOND,slot));
+    }
+
+    private double totalRate(int slot) {
+        return readRate(slot) + writeRate(slot);
+    }
+
+    private String readNativeName(File threadDirectory, String tidName) {
+        ByteBuffer content = buffer.read(new File(threadDirectory,"comm"));
+        if(content==null || content.limit()==0) return tidName;
+        return ProcFileParser.toAsciiString(content,0,content.limit());
+    }
+
+    /**
+     * Maps each TID that has not yet been mapped to a java thread, by comparing the native thread name
+     * with the names of the live java threads, truncated to {@value #NATIVE_THREAD_NAME_LENGTH} characters.
+     * A name shared by more than one java thread is not mapped.
+     */
+    private void mapToJavaThreads() {
+        ThreadInfo[] infos = threadMXBean.getThreadInfo(threadMXBean.getAllThreadIds(),0);
+        Map<String,ThreadInfo> byNativeName = new HashMap<String,ThreadInfo>(infos.length*2);
+        Map<String,ThreadInfo> ambiguous = new HashMap<String,ThreadInfo>();
+        for(ThreadInfo info : infos) {
+            if(info==null) continue;
+            String name = nativeName(info.getThreadName());
+            if(byNativeName.put(name,info)!=null) ambiguous.put(name,info);
+        }
+
+        int capacity = threads.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!threads.isOccupied(slot) || threads.get(JAVA_THREAD_ID,slot)!=NOT_MAPPED) continue;
+
+            ThreadFiles files = (ThreadFiles)threads.getAttachment(slot);
+            ThreadInfo info = byNativeName.get(files.name);
+            if(info==null || ambiguous.containsKey(files.name)) {
+                threads.set(JAVA_THREAD_ID,slot,ThreadIO.UNKNOWN_JAVA_THREAD_ID);
+            } else {
+                threads.set(JAVA_THREAD_ID,slot,info.getThreadId());
+                files.name = info.getThreadName();
+            }
+        }
+    }
+
+    private static String nativeName(String javaThreadName) {
+        return javaThreadName.length() > NATIVE_THREAD_NAME_LENGTH ?
+                javaThreadName.substring(0,NATIVE_THREAD_NAME_LENGTH) : javaThreadName;
+    }
+
+    private static int parseTid(String name) {
+        int tid = 0;
+        for(int i=0;i<name.length();i++) {
+            int digit = name.charAt(i) - '0';
+            if(digit<0 || digit>9) return -1;
+            tid = tid*10 + digit;
+        }
+        return tid;
+    }
+
+    /**
+     * The name of a thread, and the files read for it, held as the attachment of the thread's slot
+     */
+    private static final class ThreadFiles {
+        final File directory;
+        final File ioFile;
+        final File statFile;
+        FileChannel io;
+        FileChannel stat;
+        String name;
+
+        ThreadFiles(File directory) {
+            this.directory = directory;
+            this.ioFile = new File(directory,"io");
+            this.statFile = new File(directory,"stat");
+        }
+
+        void close(ReusableProcFileBuffer buffer) {
+            buffer.close(io);
+            buffer.close(stat);
+            io = null;
+            stat = null;
+        }
+    }
+}
@@ -0,0 +1,298 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+
+/**
+ * <p>
+ * Reads the io of the jvm process plus the io of all its descendant processes (i.e. those started via a
+ * ProcessBuilder).  The io of the jvm process itself is read by the given {@link ProcessIOReader}.  On each call the
+ * descendant process tree is walked, breadth first, via the /proc/PID/task/TID/children files; and the
+ * /proc/PID/stat and /proc/PID/io files of each descendant are read.
+ * </p>
+ * <p>
+ * The counters of each descendant are held between calls in an {@link IntKeyedSampleTable} keyed on PID, along
+ * with the process's start time (field 22 of /proc/PID/stat) and parent PID.  A PID whose start time has changed
+ * has been reused by a new process, and the process that was previously seen under that PID is treated as
+ * having exited.
+ * </p>
+ * <p>
+ * When a child exits and is reaped, the kernel adds the child's io to its parent's /proc/PID/io.  So the io of a
+ * descendant that exits between calls is accounted for as follows:
+ * <ul>
+ *     <li>If its parent was the jvm process (or the parent has also exited), its io has been, or will be, added to
+ *         the jvm process's counters.  The io last seen for the descendant is kept in the descendants' totals.</li>
+ *     <li>If its parent is a descendant that is still running, its io is now in that parent's counters.</li>
+ *     <li>If the process is still running, but is no longer in the tree (i.e. its parent exited and it was
+ *         re-parented), the io last seen for it is kept in both the tree and descendants' totals.</li>
+ * </ul>
+ * The io of a descendant that starts and exits between two calls is only seen via the counters of its parent.
+ * </p>
+ * <p>
+ * {@link #getCurrentProcessIO()} returns the io of the whole tree: the jvm process, the running descendants and
+ * those that left the tree while still running.  The io of the descendants alone is reported separately, via
+ * {@link #getDescendantProcessIO()} and to the optional {@link ProcessIOUsagePersistence}; so that the rates of
+ * the descendants can be registered in jmx alongside those of the jvm.
+ * </p>
+ * <p>
+ * Files are read into a single reused buffer, and parsed without creating Strings.  Calls are synchronized.
+ * </p>
+ */
+public class ProcessTreeProcIOProcessIOReader implements ProcessIOReader {
+
+    private static final String PROC_LOCATION = "/proc";
+
+    /**
+     * The field of /proc/PID/stat holding the time the process started after system boot
+     */
+    private static final int START_TIME_FIELD = 22;
+
+    private static final int COUNTERS = FileChannelProcIOProcessIOReader.KEYS.length;
+
+    // The counters are stored in columns 0 to COUNTERS-1, indexed as FileChannelProcIOProcessIOReader.KEYS
+    private static final int START_TIME = COUNTERS;
+    private static final int PARENT = COUNTERS+1;
+    private static final int COLUMNS = COUNTERS+2;
+
+    private final ProcessIOReader selfReader;
+    private final File procRoot;
+    private final int pid;
+    private final ProcessIOUsagePersistence descendantsPersistence;
+
+    private final IntKeyedSampleTable processes = new IntKeyedSampleTable(COLUMNS,64);
+    private final ReusableProcFileBuffer buffer = new ReusableProcFileBuffer();
+    private final IntList queue = new IntList(64);
+    private final IntList queueParents = new IntList(64);
+    private final long[] values = new long[COUNTERS];
+
+    private final long[] running = new long[COUNTERS];
+    private final long[] exitedIntoSelf = new long[COUNTERS];
+    private final long[] departed = new long[COUNTERS];
+
+    private int generation;
+    private CurrentProcessIO descendantProcessIO = NON_READABLE_PROCESS_IO;
+
+    /**
+     * @param selfReader Reads the io of the process with the given pid
+     * @param pid The pid of the process at the root of the tree
+     * @param descendantsPersistence Where the io of the descendants is persisted, may be null
+     */
+    public ProcessTreeProcIOProcessIOReader(ProcessIOReader selfReader, int pid,
+                                            ProcessIOUsagePersistence descendantsPersistence) {
+        this(selfReader,new File(PROC_LOCATION),pid,descendantsPersistence);
+    }
+
+    /**
+     * @param selfReader Reads the io of the process with the given pid
+     * @param procRoot The location of the proc file system
+     * @param pid The pid of the process at the root of the tree
+     * @param descendantsPersistence Where the io of the descendants is persisted, may be null
+     */
+    public ProcessTreeProcIOProcessIOReader(ProcessIOReader selfReader, File procRoot, int pid,
+                                            ProcessIOUsagePersistence descendantsPersistence) {
+        this.selfReader = selfReader;
+        this.procRoot = new File(procRoot.getAbsolutePath());
+        this.pid = pid;
+        this.descendantsPersistence = descendantsPersistence;
+    }
+
+    /**
+     * Reads the io of the process, and of its descendants.  If the io of the process itself is not readable then
+     * {@value org.greencheek.processio.service.io.ProcessIOReader#NON_READABLE_PROCESS_IO} is returned.
+     *
+     * @return The io of the process and its descendants
+     */
+    @Override
+    public synchronized CurrentProcessIO getCurrentProcessIO() {
+        CurrentProcessIO self = selfReader.getCurrentProcessIO();
+        if(self==NON_READABLE_PROCESS_IO) return self;
+
+        int currentGeneration = ++generation;
+        clear(running);
+        walkDescendants(currentGeneration);
+        accountForUnseen(currentGeneration);
+        processes.removeUnseen(currentGeneration);
+
+        long millis = self.getCurrentSampleTimeInMillis();
+        descendantProcessIO = createProcessIO(millis,0,0,0,0,0,0,0,true);
+        if(descendantsPersistence!=null) {
+            descendantsPersistence.persist(descendantProcessIO);
+        }
+
+        return createProcessIO(millis,self.getCurrentReadBytes(),self.getCurrentWriteBytes(),
+                               self.getCurrentReadChars(),self.getCurrentWriteChars(),
+                               self.getCurrentReadSyscalls(),self.getCurrentWriteSyscalls(),
+                               self.getCurrentCancelledWriteBytes(),false);
+    }
+
+    /**
+     * Returns the io of the descendants of the process, as of the last call to {@link #getCurrentProcessIO()}:
+     * the running descendants, plus those that have exited or left the tree
+     */
+    public synchronized CurrentProcessIO getDescendantProcessIO() {
+        return descendantProcessIO;
+    }
+
+    /**
+     * Returns the number of running descendants found on the last call to {@link #getCurrentProcessIO()}
+     */
+    public synchronized int getDescendantCount() {
+        return processes.size();
+    }
+
+    private void walkDescendants(int currentGeneration) {
+        queue.clear();
+        queueParents.clear();
+        addChildren(pid);
+
+        for(int i=0;i<queue.size();i++) {
+            int child = queue.get(i);
+            if(child<=0 || child==pid) continue;
+
+            int slot = processes.find(child);
+            if(slot!=-1 && processes.isSeen(slot,currentGeneration)) continue;
+
+            File processDirectory = new File(procRoot,Integer.toString(child));
+            ByteBuffer content = buffer.read(new File(processDirectory,"stat"));
+            // exited since its parent's children were listed
+            if(content==null) continue;
+            long startTime = ProcFileParser.parseStatField(content,START_TIME_FIELD);
+            if(startTime==ProcFileParser.NOT_PARSED) continue;
+
+            if(slot==-1) {
+                slot = processes.insert(child);
+                processes.set(START_TIME,slot,startTime);
+            } else if(processes.get(START_TIME,slot)!=startTime) {
+                // the pid has been reused; the process previously seen under it has exited
+                accountForExit(slot,currentGeneration);
+                for(int c=0;c<COUNTERS;c++) processes.set(c,slot,0);
+                processes.set(START_TIME,slot,startTime);
+            }
+            processes.set(PARENT,slot,queueParents.get(i));
+            processes.markSeen(slot,currentGeneration);
+
+            // if the io is not readable (i.e. a setuid child) the last counters read are used
+            content = buffer.read(new File(processDirectory,"io"));
+            if(content!=null) {
+                ProcFileParser.parseKeyValueLines(content,FileChannelProcIOProcessIOReader.KEYS,values);
+                if(values[FileChannelProcIOProcessIOReader.READ_BYTES]!=ProcFileParser.NOT_PARSED &&
+                   values[FileChannelProcIOProcessIOReader.WRITE_BYTES]!=ProcFileParser.NOT_PARSED) {
+                    for(int c=0;c<COUNTERS;c++) {
+                        long value = values[c];
+                        processes.set(c,slot,value==ProcFileParser.NOT_PARSED ? 0 : value);
+                    }
+                }
+            }
+            add(running,slot);
+
+            addChildren(child);
+        }
+    }
+
+    /**
+     * Adds the children of every thread of the given process to the queue
+     */
+    private void addChildren(int parent) {
+        File taskDirectory = new File(new File(procRoot,Integer.toString(parent)),"task");
+        String[] tids = taskDirectory.list();
+        if(tids==null) return;
+
+        for(String tid : tids) {
+            ByteBuffer content = buffer.read(new File(new File(taskDirectory,tid),"children"));
+            if(content==null) continue;
+            int added = ProcFileParser.parseIntList(content,queue);
+            for(int i=0;i<added;i++) {
+                queueParents.add(parent);
+            }
+        }
+    }
+
+    /**
+     * Accounts for the io of each descendant that was not found in the tree
+     */
+    private void accountForUnseen(int currentGeneration) {
+        int capacity = processes.capacity();
+        for(int slot=0;slot<capacity;slot++) {
+            if(!processes.isOccupied(slot) || processes.isSeen(slot,currentGeneration)) continue;
+
+            if(isRunning(processes.keyAt(slot),processes.get(START_TIME,slot))) {
+                add(departed,slot);
+            } else {
+                accountForExit(slot,currentGeneration);
+            }
+        }
+    }
+
+    /**
+     * Accounts for the io of a descendant that has exited.  If it was the child of a descendant that is still
+     * running, its io has been added to that parent's counters.  Otherwise its io has been added to the
+     * process's own counters.
+     */
+    private void accountForExit(int slot, int currentGeneration) {
+        int parent = (int)processes.get(PARENT,slot);
+        if(parent!=pid) {
+            int parentSlot = processes.find(parent);
+            if(parentSlot!=-1 && processes.isSeen(parentSlot,currentGeneration)) return;
+        }
+        add(exitedIntoSelf,slot);
+    }
+
+    private boolean isRunning(int process, long startTime) {
+        ByteBuffer content = buffer.read(new File(new File(procRoot,Integer.toString(process)),"stat"));
+        return content!=null && ProcFileParser.parseStatField(content,START_TIME_FIELD)==startTime;
+    }
+
+    /**
+     * Creates the io from the given values of the process, plus the io of the running and departed descendants.
+     * The io of the exited descendants is also added if the values are not the process's own, as the process's
+     * own counters already include it.
+     */
+    private CurrentProcessIO createProcessIO(long millis, long readBytes, long writeBytes,
+                                             long readChars, long writeChars,
+                                             long readSyscalls, long writeSyscalls,
+                                             long cancelledWriteBytes, boolean includeExited) {
+        return new CurrentProcessIO(millis,
+                readBytes + descendants(FileChannelProcIOProcessIOReader.READ_BYTES,includeExited),
+                writeBytes + descendants(FileChannelProcIOProcessIOReader.WRITE_BYTES,includeExited),
+                readChars + descendants(FileChannelProcIOProcessIOReader.READ_CHARS,includeExited),
+                writeChars + descendants(FileChannelProcIOProcessIOReader.WRITE_CHARS,includeExited),
+                readSyscalls + descendants(FileChannelProcIOProcessIOReader.READ_SYSCALLS,includeExited),
+                writeSyscalls + descendants(FileChannelProcIOProcessIOReader.WRITE_SYSCALLS,includeExited),
+                cancelledWriteBytes + descendants(FileChannelProcIOProcessIOReader.CANCELLED_WRITE_BYTES,includeExited));
+    }
+
+    private long descendants(int counter, boolean includeExited) {
+        long total = running[counter] + departed[counter];
+        return includeExited ? total + exitedIntoSelf[counter] : total;
+    }
+
+    private void add(long[] totals, int slot) {
+        for(int c=0;c<COUNTERS;c++) {
+            totals[c] += processes.get(c,slot);
+        }
+    }
+
+    private static void clear(long[] totals) {
+        for(int c=0;c<totals.length;c++) {
+            totals[c] = 0;
+        }
+    }
+}
@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.util.Collections;
+import java.util.Set;
+
+/**
+ * <p>
+ * Reads the content of many different /proc files (i.e. /proc/PID/task/TID/io for each thread of a process) into
+ * buffers that are reused between reads.
+ * </p>
+ * <p>
+ * A file can be read in one of two ways.  {@link #read(File)} opens and closes the file on each read, reading it
+ * through a FileChannel into a reused direct {@link ByteBuffer}; which creates the FileChannel (and its
+ * FileDescriptor, and the file descriptor itself) per read.  Unlike a FileInputStream, on java 8 neither is
+ * finalizable, so reading many files per sample does not queue as many objects for finalization.  Or the file can be
+ * opened once with {@link #open(File)}, and the returned channel re-read with {@link #read(FileChannel)}; a
+ * positional read from offset 0 into the reused buffer, which creates nothing, as the kernel generates the /proc
+ * file's content afresh on each read from the start.
+ * Keeping a handle open on each of the thousands of files that could be read would use up the process's file
+ * descriptors, so at most a given number of channels are kept open at once; when that many are open
+ * {@link #open(File)} returns null, and the caller falls back to {@link #read(File)}.
+ * </p>
+ * <p>
+ * Instances are not thread safe; callers are expected to synchronise access.
+ * </p>
+ */
+public class ReusableProcFileBuffer {
+
+    /**
+     * The default number of channels kept open by {@link #open(File)}.  Small, as the descriptors are taken from the
+     * file descriptor limit of the process being monitored, which is often 1024 or 4096 in a container.
+     */
+    public static final int DEFAULT_MAX_OPEN_CHANNELS = 64;
+
+    // The options of every open, so that a Set and an array are not created per open by FileChannel.open's varargs
+    private static final Set<StandardOpenOption> READ = Collections.singleton(StandardOpenOption.READ);
+    private static final FileAttribute<?>[] NO_ATTRIBUTES = new FileAttribute<?>[0];
+
+    private final int maxOpenChannels;
+    private ByteBuffer buffer;
+    private int openChannels;
+
+    public ReusableProcFileBuffer() {
+        this(ReusableProcFileChannel.DEFAULT_BUFFER_SIZE,DEFAULT_MAX_OPEN_CHANNELS);
+    }
+
+    public ReusableProcFileBuffer(int initialBufferSize) {
+        this(initialBufferSize,DEFAULT_MAX_OPEN_CHANNELS);
+    }
+
+    /**
+     * @param initialBufferSize The initial size of the reused buffer, which is doubled when a file does not fit
+     * @param maxOpenChannels The most channels kept open by {@link #open(File)}, 0 for none
+     */
+    public ReusableProcFileBuffer(int initialBufferSize, int maxOpenChannels) {
+        this.buffer = ByteBuffer.allocateDirect(initialBufferSize);
+        this.maxOpenChannels = Math.max(0,maxOpenChannels);
+    }
+
+    /**
+     * Opens a channel on the given file, to be re-read with {@link #read(FileChannel)} and closed with
+     * {@link #close(FileChannel)}.
+     *
+     * @param file The file to open
+     * @return The channel, or null if the most channels are already open or the file could not be opened
+     */
+    public FileChannel open(File file) {
+        if(openChannels>=maxOpenChannels) return null;
+        try {
+            FileChannel channel = FileChannel.open(file.toPath(),READ,NO_ATTRIBUTES);
+            openChannels++;
+            return channel;
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Closes a channel returned by {@link #open(File)}
+     */
+    public void close(FileChannel channel) {
+        if(channel==null) return;
+        openChannels--;
+        try {
+            channel.close();
+        } catch (IOException e) {
+
+        }
+    }
+
+    /**
+     * Returns the number of channels opened by {@link #open(File)} that have not been closed
+     */
+    public int getOpenChannels() {
+        return openChannels;
+    }
+
+    /**
+     * Re-reads the entire content of a channel returned by {@link #open(File)} into the reused buffer, from offset 0.
+     * The returned buffer's position is 0 and its limit is the number of bytes read.  The buffer is only valid until
+     * the next read.
+     *
+     * @param channel The channel to read
+     * @return The buffer containing the file's content, or null if the file could not be read or was empty (i.e. the
+     *         thread or process it belonged to has exited)
+     */
+    public ByteBuffer read(FileChannel channel) {
+        try {
+            return readFromStart(channel);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Reads the entire content of the given file into the reused buffer.  The returned buffer's position is 0 and its
+     * limit is the number of bytes read.  The buffer is only valid until the next read.
+     *
+     * @param file The file to read
+     * @return The buffer containing the file's content, or null if the file could not be read (i.e. the thread or
+     *         process it belonged to has exited)
+     */
+    public ByteBuffer read(File file) {
+        FileChannel channel = null;
+        try {
+            channel = FileChannel.open(file.toPath(),READ,NO_ATTRIBUTES);
+            return fill(channel);
+        } catch (IOException e) {
+            return null;
+        } finally {
+            if(channel!=null) {
+                try {
+                    channel.close();
+                } catch (IOException e) {
+
+                }
+            }
+        }
+    }
+
+    /**
+     * Fills the buffer from position 0 of the channel until end of file, returning null if nothing was read
+     */
+    private ByteBuffer readFromStart(FileChannel channel) throws IOException {
+        ByteBuffer content = fill(channel);
+        return content.hasRemaining() ? content : null;
+    }
+
+    /**
+     * Fills the buffer from position 0 of the channel until end of file, growing the buffer and reading again if the
+     * content does not fit.
+     *
+     * @return the buffer, whose limit is the number of bytes read
+     */
+    private ByteBuffer fill(FileChannel channel) throws IOException {
+        while(true) {
+            buffer.clear();
+            long position = 0;
+            int n;
+            while(buffer.hasRemaining() && (n = channel.read(buffer,position))>0) {
+                position+=n;
+            }
+
+            if(buffer.hasRemaining()) {
+                buffer.flip();
+                return buffer;
+            }
+
+            buffer = ByteBuffer.allocateDirect(buffer.capacity()*2);
+        }
+    }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * <p>
+ * Keeps a single {@link FileChannel} open on a /proc file (for example /proc/PID/io), and re-reads the whole
+ * of the file's content on each call to {@link #read()} with a positional read from offset 0 into a
+ * direct {@link ByteBuffer} that is reused between reads.  The /proc files are generated by the kernel on
+ * read, so a positional read from the start of the file returns the latest values without having
+ * to re-open the file.
+ * </p>
+ * <p>
+ * If the channel goes stale (the read throws an IOException, or returns no content), the channel is closed and
+ * the file re-opened once before the read is given up on.  The buffer is only ever re-allocated if the file's
+ * content does not fit within it; in which case the buffer is doubled in size.
+ * </p>
+ * <p>
+ * Instances are not thread safe; callers are expected to synchronise access.
+ * </p>
+ */
+public class ReusableProcFileChannel {
+
+    private static final Logger log = LoggerFactory.getLogger(ReusableProcFileChannel.class);
+
+    public static final int DEFAULT_BUFFER_SIZE = 512;
+
+    private final File location;
+    private ByteBuffer buffer;
+    private FileInputStream stream;
+    private FileChannel channel;
+
+    public ReusableProcFileChannel(File location) {
+        this(location,DEFAULT_BUFFER_SIZE);
+    }
+
+    public ReusableProcFileChannel(File location, int initialBufferSize) {
+        this.location = new File(location.getAbsolutePath());
+        this.buffer = ByteBuffer.allocateDirect(initialBufferSize);
+    }
+
+    /**
+     * Reads the entire content of the file into the reused buffer.  The returned buffer's position is 0 and its
+     * limit is the number of bytes read.  The buffer is only valid until the next call to this method.
+     *
+     * @return The buffer containing the file's content, or null if the file could not be read.
+     */
+    public ByteBuffer read() {
+        if(channel==null && !open()) return null;
+
+        int bytesRead = readFromStart();
+        if(bytesRead<=0) {
+            // stale handle, i.e. the process has gone or the file was replaced.  Re-open and try once more
+            close();
+            if(!open()) return null;
+            bytesRead = readFromStart();
+            if(bytesRead<=0) {
+                close();
+                return null;
+            }
+        }
+
+        buffer.flip();
+        return buffer;
+    }
+
+    /**
+     * The file that is being read
+     */
+    public File getLocation() {
+        return location;
+    }
+
+    /**
+     * Closes the underlying channel.  A subsequent call to {@link #read()} will re-open the file.
+     */
+    public void close() {
+        if(stream!=null) {
+            try {
+                stream.close();
+            } catch (IOException e) {
+
+            }
+        }
+        stream = null;
+        channel = null;
+    }
+
+    private boolean open() {
+        if(!location.canRead()) {
+            log.warn("Unable to read proc file location: {}",location.getAbsolutePath());
+            return false;
+        }
+        try {
+            stream = new FileInputStream(location);
+            channel = stream.getChannel();
+            return true;
+        } catch (IOException e) {
+            log.warn("Not found proc file location: {}",location.getAbsolutePath());
+            close();
+            return false;
+        }
+    }
+
+    /**
+     * Fills the buffer from position 0 of the file until end of file is reached.  If the buffer is filled before
+     * the end of file, the buffer is grown and the file read again from the start, as /proc files are generated
+     * in one unit and a read that spans two generations could be inconsistent.
+     *
+     * @return the number of bytes read, or -1 on error
+     */
+    private int readFromStart() {
+        try {
+            while(true) {
+                buffer.clear();
+                long position = 0;
+                int n;
+                while(buffer.hasRemaining() && (n = channel.read(buffer,position))>0) {
+                    position+=n;
+                }
+
+                if(buffer.hasRemaining()) {
+                    return buffer.position();
+                }
+
+                buffer = ByteBuffer.allocateDirect(buffer.capacity()*2);
+            }
+        } catch (IOException e) {
+            log.debug("Unable to read proc file location: {}",location.getAbsolutePath(),e);
+            return -1;
+        }
+    }
+}
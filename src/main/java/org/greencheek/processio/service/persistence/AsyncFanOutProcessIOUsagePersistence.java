@@ -0,0 +1,306 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * <p>
+ * Hands each sample to a number of {@link ProcessIOUsagePersistence} sinks (i.e. a file and a push to a collector),
+ * each of which persists the samples on its own daemon thread, so that a slow sink does not delay the scheduler's
+ * next read of the io, and so skew the rates.  Unlike {@link CompositeProcessIOUsagePersistence} the samples are
+ * persisted after {@link #persist(CurrentProcessIO)} returns.
+ * </p>
+ * <p>
+ * Each sink has its own {@link BoundedSampleQueue}; {@link #persist(CurrentProcessIO)} only offers the sample to each
+ * queue, and wakes the sink's thread, and so never blocks.  A sink that falls behind loses samples according to its
+ * {@link OverflowPolicy}, rather than holding up the other sinks or the scheduler.  For each sink the number of
+ * samples waiting, dropped, persisted and failed are counted, along with the lag (the time from the sample being
+ * read to it being persisted) of the last sample, and the largest lag.  These are registered in jmx by
+ * {@link org.greencheek.processio.domain.jmx.PersistenceSinksHolder}.
+ * </p>
+ * <p>
+ * A sink's thread runs whilst the scheduler records later samples into the holder.  So a sink that reads the holder,
+ * rather than the queued sample, must read the values of one sample from a single
+ * {@link org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean#getSnapshot()} (as the Prometheus and StatsD sinks
+ * do), and not through the holder's separate getters.
+ * </p>
+ * <p>
+ * {@link #persist(CurrentProcessIO)} must only be called by a single thread (the scheduler's thread).  On
+ * {@link #destroy()} each sink persists the samples already queued (waiting up to {@value #STOP_WAIT_MILLIS}ms)
+ * before being destroyed.
+ * </p>
+ */
+public class AsyncFanOutProcessIOUsagePersistence implements ProcessIOUsagePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(AsyncFanOutProcessIOUsagePersistence.class);
+
+    public static final int DEFAULT_QUEUE_CAPACITY = 16;
+    public static final long STOP_WAIT_MILLIS = 5000;
+
+    // the longest a sink's thread parks without being woken, so that it notices being stopped
+    private static final long PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+
+    private final Sink[] sinks;
+    private boolean started;
+
+    /**
+     * Creates the fan out with the same policy, and queue capacity, for each sink
+     */
+    public AsyncFanOutProcessIOUsagePersistence(OverflowPolicy policy, int queueCapacity,
+                                                ProcessIOUsagePersistence... persistences) {
+        this(persistences,policies(policy,persistences.length),queueCapacity);
+    }
+
+    /**
+     * @param persistences The sinks to persist the samples to
+     * @param policies The overflow policy of the sink at the same index
+     * @param queueCapacity The number of samples queued for each {@link OverflowPolicy#DROP_OLDEST} sink
+     */
+    public AsyncFanOutProcessIOUsagePersistence(ProcessIOUsagePersistence[] persistences, OverflowPolicy[] policies,
+                                                int queueCapacity) {
+        if(persistences.length!=policies.length) {
+            throw new IllegalArgumentException("a policy is required for each persistence");
+        }
+        sinks = new Sink[persistences.length];
+        for(int i=0;i<persistences.length;i++) {
+            sinks[i] = new Sink(persistences[i],new BoundedSampleQueue(Math.max(1,queueCapacity),policies[i]));
+        }
+    }
+
+    private static OverflowPolicy[] policies(OverflowPolicy policy, int number) {
+        OverflowPolicy[] policies = new OverflowPolicy[number];
+        Arrays.fill(policies,policy);
+        return policies;
+    }
+
+    /**
+     * Initialises each sink, and starts its thread
+     */
+    @Override
+    public synchronized void init() {
+        if(started) return;
+        started = true;
+        for(Sink sink : sinks) {
+            try {
+                sink.persistence.init();
+            } catch (Exception e) {
+                log.error("Exception occurred whilst initialising persistence: {}",sink.name,e);
+            }
+            sink.start();
+        }
+    }
+
+    /**
+     * Stops each sink's thread, once it has persisted the samples queued for it, and then destroys the sink
+     */
+    @Override
+    public synchronized void destroy() {
+        if(!started) return;
+        started = false;
+        for(Sink sink : sinks) {
+            sink.stop();
+        }
+        for(Sink sink : sinks) {
+            sink.join(STOP_WAIT_MILLIS);
+            try {
+                sink.persistence.destroy();
+            } catch (Exception e) {
+                log.error("Exception occurred whilst destroying persistence: {}",sink.name,e);
+            }
+        }
+    }
+
+    /**
+     * Queues the sample for each sink.  Does not block.
+     */
+    @Override
+    public void persist(CurrentProcessIO io) {
+        for(Sink sink : sinks) {
+            if(!sink.queue.offer(io)) {
+                log.debug("Persistence {} is behind, sample dropped",sink.name);
+            }
+            sink.wake();
+        }
+    }
+
+    /**
+     * Returns the name of each sink
+     */
+    public String[] getSinkNames() {
+        String[] names = new String[sinks.length];
+        for(int i=0;i<sinks.length;i++) names[i] = sinks[i].name;
+        return names;
+    }
+
+    /**
+     * Returns the overflow policy of each sink
+     */
+    public String[] getSinkOverflowPolicies() {
+        String[] policies = new String[sinks.length];
+        for(int i=0;i<sinks.length;i++) policies[i] = sinks[i].queue.getPolicy().name();
+        return policies;
+    }
+
+    /**
+     * Returns, for each sink, the maximum number of samples that can wait to be persisted
+     */
+    public long[] getQueueCapacities() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].queue.capacity();
+        return values;
+    }
+
+    /**
+     * Returns, for each sink, the number of samples waiting to be persisted
+     */
+    public long[] getQueuedSamples() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].queue.size();
+        return values;
+    }
+
+    /**
+     * Returns, for each sink, the number of samples dropped because the sink had fallen behind
+     */
+    public long[] getDroppedSamples() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].queue.getDropped();
+        return values;
+    }
+
+    /**
+     * Returns, for each sink, the number of samples persisted
+     */
+    public long[] getPersistedSamples() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].persisted;
+        return values;
+    }
+
+    /**
+     * Returns, for each sink, the number of samples whose persistence threw an exception
+     */
+    public long[] getFailedSamples() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].failed;
+        return values;
+    }
+
+    /**
+     * Returns, for each sink, the time in millis from the last sample persisted being read to it being persisted
+     */
+    public long[] getLastLagMillis() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].lastLagMillis;
+        return values;
+    }
+
+    /**
+     * Returns, for each sink, the largest time in millis from a sample being read to it being persisted
+     */
+    public long[] getMaxLagMillis() {
+        long[] values = new long[sinks.length];
+        for(int i=0;i<sinks.length;i++) values[i] = sinks[i].maxLagMillis;
+        return values;
+    }
+
+    /**
+     * A sink's queue, and the thread that persists the samples taken from it
+     */
+    private static final class Sink implements Runnable {
+        private final ProcessIOUsagePersistence persistence;
+        private final BoundedSampleQueue queue;
+        private final String name;
+
+        private volatile Thread thread;
+        private volatile boolean running;
+
+        // only written by the sink's thread
+        private volatile long persisted;
+        private volatile long failed;
+        private volatile long lastLagMillis;
+        private volatile long maxLagMillis;
+
+        Sink(ProcessIOUsagePersistence persistence, BoundedSampleQueue queue) {
+            this.persistence = persistence;
+            this.queue = queue;
+            String simpleName = persistence.getClass().getSimpleName();
+            this.name = simpleName.length()==0 ? persistence.getClass().getName() : simpleName;
+        }
+
+        void start() {
+            running = true;
+            Thread sinkThread = new Thread(this,"processio-sink-" + name);
+            sinkThread.setDaemon(true);
+            thread = sinkThread;
+            sinkThread.start();
+        }
+
+        void wake() {
+            Thread sinkThread = thread;
+            if(sinkThread!=null) LockSupport.unpark(sinkThread);
+        }
+
+        void stop() {
+            running = false;
+            wake();
+        }
+
+        void join(long millis) {
+            Thread sinkThread = thread;
+            if(sinkThread==null) return;
+            try {
+                sinkThread.join(millis);
+                if(sinkThread.isAlive()) {
+                    log.warn("Persistence {} did not stop within {}ms",name,millis);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            thread = null;
+        }
+
+        @Override
+        public void run() {
+            while(true) {
+                CurrentProcessIO io = queue.poll();
+                if(io==null) {
+                    // the samples queued before being stopped are persisted first
+                    if(!running) return;
+                    LockSupport.parkNanos(this,PARK_NANOS);
+                    continue;
+                }
+                try {
+                    persistence.persist(io);
+                    persisted++;
+                } catch (Exception e) {
+                    failed++;
+                    log.error("Exception occurred whilst persisting process io to: {}",name,e);
+                }
+                long lag = System.currentTimeMillis() - io.getCurrentSampleTimeInMillis();
+                lastLagMillis = lag;
+                if(lag>maxLagMillis) maxLagMillis = lag;
+            }
+        }
+    }
+}
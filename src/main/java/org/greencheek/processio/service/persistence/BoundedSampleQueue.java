@@ -0,0 +1,131 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * <p>
+ * A bounded, lock free queue of samples with a single producer (the scheduler's thread) and a single consumer (the
+ * sink's thread).  Offering a sample never blocks, and never fails: when the queue is full a sample is dropped
+ * according to the {@link OverflowPolicy}, and counted.
+ * </p>
+ * <p>
+ * For {@link OverflowPolicy#DROP_OLDEST} the samples are held in a ring of slots, whose capacity is rounded up to a
+ * power of two.  The consumer takes the sample at the head by advancing the head with a compare and set; when the
+ * ring is full the producer drops the oldest sample in the same way, so that the two cannot both take the same
+ * sample.  For {@link OverflowPolicy#COALESCE_LATEST} a single slot is exchanged.
+ * </p>
+ */
+class BoundedSampleQueue {
+
+    private final OverflowPolicy policy;
+    private final int mask;
+    private final AtomicReferenceArray<CurrentProcessIO> slots;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+    private final AtomicReference<CurrentProcessIO> latest = new AtomicReference<CurrentProcessIO>();
+
+    // only written by the producer
+    private volatile long dropped;
+
+    BoundedSampleQueue(int capacity, OverflowPolicy policy) {
+        this.policy = policy;
+        int size = 1;
+        while(size<capacity) size <<= 1;
+        this.mask = size - 1;
+        this.slots = new AtomicReferenceArray<CurrentProcessIO>(policy==OverflowPolicy.DROP_OLDEST ? size : 0);
+    }
+
+    /**
+     * Adds the sample, dropping a queued sample if the queue is full.  Must only be called by the producer.
+     *
+     * @return false if a sample was dropped
+     */
+    boolean offer(CurrentProcessIO io) {
+        if(policy==OverflowPolicy.COALESCE_LATEST) {
+            if(latest.getAndSet(io)!=null) {
+                dropped++;
+                return false;
+            }
+            return true;
+        }
+
+        boolean droppedSample = false;
+        long t = tail.get();
+        while(t - head.get() > mask) {
+            if(take()!=null) {
+                dropped++;
+                droppedSample = true;
+            }
+        }
+        slots.set((int)(t & mask),io);
+        tail.lazySet(t+1);
+        return !droppedSample;
+    }
+
+    /**
+     * Returns the oldest sample, or null if the queue is empty
+     */
+    CurrentProcessIO poll() {
+        if(policy==OverflowPolicy.COALESCE_LATEST) {
+            return latest.getAndSet(null);
+        }
+        return take();
+    }
+
+    private CurrentProcessIO take() {
+        while(true) {
+            long h = head.get();
+            if(h>=tail.get()) return null;
+            CurrentProcessIO io = slots.get((int)(h & mask));
+            // if the head has moved the slot may since have been reused, so it is read again
+            if(head.compareAndSet(h,h+1)) return io;
+        }
+    }
+
+    /**
+     * Returns the number of samples waiting to be taken
+     */
+    int size() {
+        if(policy==OverflowPolicy.COALESCE_LATEST) {
+            return latest.get()==null ? 0 : 1;
+        }
+        return (int)Math.max(0,tail.get() - head.get());
+    }
+
+    /**
+     * Returns the maximum number of samples held
+     */
+    int capacity() {
+        return policy==OverflowPolicy.COALESCE_LATEST ? 1 : mask + 1;
+    }
+
+    OverflowPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Returns the number of samples dropped because the queue was full
+     */
+    long getDropped() {
+        return dropped;
+    }
+}
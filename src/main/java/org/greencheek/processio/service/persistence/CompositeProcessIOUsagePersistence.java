@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Persists each sample to a number of {@link ProcessIOUsagePersistence} implementations in turn, i.e. to jmx and
+ * to a memory mapped file.  An exception thrown by one is logged, and does not stop the sample being persisted by
+ * the others.
+ * </p>
+ */
+public class CompositeProcessIOUsagePersistence implements ProcessIOUsagePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(CompositeProcessIOUsagePersistence.class);
+
+    private final ProcessIOUsagePersistence[] persistences;
+
+    public CompositeProcessIOUsagePersistence(ProcessIOUsagePersistence... persistences) {
+        this.persistences = persistences.clone();
+    }
+
+    @Override
+    public void init() {
+        for(ProcessIOUsagePersistence persistence : persistences) {
+            try {
+                persistence.init();
+            } catch (Exception e) {
+                log.error("Exception occurred whilst initialising persistence: {}",persistence,e);
+            }
+        }
+    }
+
+    @Override
+    public void destroy() {
+        for(ProcessIOUsagePersistence persistence : persistences) {
+            try {
+                persistence.destroy();
+            } catch (Exception e) {
+                log.error("Exception occurred whilst destroying persistence: {}",persistence,e);
+            }
+        }
+    }
+
+    @Override
+    public void persist(CurrentProcessIO io) {
+        for(ProcessIOUsagePersistence persistence : persistences) {
+            try {
+                persistence.persist(io);
+            } catch (Exception e) {
+                log.error("Exception occurred whilst persisting process io to: {}",persistence,e);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence;
+
+/**
+ * <p>
+ * What {@link AsyncFanOutProcessIOUsagePersistence} does with a sample for a sink that has not yet taken the
+ * samples already queued for it.
+ * </p>
+ */
+public enum OverflowPolicy {
+
+    /**
+     * The samples are queued, up to the queue's capacity; when the queue is full the oldest queued sample is dropped
+     * to make room for the new sample.  Suits sinks that record every sample, i.e. a log.
+     */
+    DROP_OLDEST,
+
+    /**
+     * Only the latest sample is held; a sample that has not yet been taken is replaced by the next.  As the io
+     * counters are accumulated values, the latest sample supersedes the ones before it, so this suits sinks that
+     * publish the current values, i.e. a push to a collector.
+     */
+    COALESCE_LATEST
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.jmx;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.management.*;
+import java.lang.management.ManagementFactory;
+
+/**
+ * <p>
+ * Registers, and unregisters, the additional MXBeans (i.e. the per thread io bean) with the jvm's MBeanServer, under the
+ * name domain:type=beanName.  Failures to register are logged rather than thrown, so that a problem with jmx does
+ * not affect the application the agent is running in.
+ * </p>
+ */
+public final class MXBeanRegistration {
+
+    private static final Logger log = LoggerFactory.getLogger(MXBeanRegistration.class);
+
+    private static final MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+
+    private MXBeanRegistration() {
+    }
+
+    /**
+     * Registers the given bean with the jvm's MBeanServer
+     *
+     * @param bean The MXBean to register
+     * @param jmxDomainName the jmx domain under which to register the bean
+     * @param beanName The name (type) of the bean
+     * @return The ObjectName the bean was registered under, or null if the bean could not be registered
+     */
+    public static ObjectName register(Object bean, String jmxDomainName, String beanName) {
+        String beanObjectName = jmxDomainName+":type="+beanName;
+        try {
+            ObjectName name = new ObjectName(beanObjectName);
+            server.registerMBean(bean,name);
+            return name;
+        } catch (MalformedObjectNameException e) {
+            log.warn("Unable to register with jmx, invalid bean name:{}", beanObjectName, e);
+        } catch (InstanceAlreadyExistsException e) {
+            log.warn("Unable to register with jmx, bean already exists:{}", beanObjectName, e);
+        } catch (MBeanRegistrationException e) {
+            log.warn("Unable to register with jmx, exception during registration:{}", beanObjectName, e);
+        } catch (NotCompliantMBeanException e) {
+            log.warn("Unable to register with jmx, bean is not compatible:{}", beanObjectName, e);
+        }
+        return null;
+    }
+
+    /**
+     * Unregisters the bean with the given name, if the name is not null
+     *
+     * @param name The name returned from {@link #register(Object, String, String)}
+     */
+    public static void unregister(ObjectName name) {
+        if(name==null) return;
+        try {
+            server.unregisterMBean(name);
+        } catch (MBeanRegistrationException e) {
+            log.warn("Unable to unregister object with jmx:{}", name, e);
+        } catch (InstanceNotFoundException e) {
+            log.warn("Unable to unregister object with jmx, object not registered:{}", name, e);
+        }
+    }
+}
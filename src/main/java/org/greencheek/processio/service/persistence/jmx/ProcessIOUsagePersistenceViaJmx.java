@@ -16,6 +16,7 @@
 package org.greencheek.processio.service.persistence.jmx;
 
 import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.ProcessIOHistory;
 import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
 import org.greencheek.processio.service.usage.ProcessIOUsage;
 import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
@@ -78,8 +79,21 @@ public class ProcessIOUsagePersistenceViaJmx implements ProcessIOUsagePersistenc
      */
     public ProcessIOUsagePersistenceViaJmx(ProcessIOUsage ioUsage, ObjectName jmxObjectName,
                                            String beanObjectName) {
+        this(ioUsage,new ProcessIOHistory(),jmxObjectName,beanObjectName);
+    }
+
+    /**
+     * Persist/Register the given ProcessIOUsage object with the jvm's MBeanServer
+     *
+     * @param ioUsage  The io object to persist
+     * @param history  The history of samples from which the windowed rates are calculated
+     * @param jmxObjectName the jmx name to persist the ProcessIOUsage object under
+     * @param beanObjectName the jmx domain under which to register the  {@link ProcessIOUsageHolder} object
+     */
+    public ProcessIOUsagePersistenceViaJmx(ProcessIOUsage ioUsage, ProcessIOHistory history,
+                                           ObjectName jmxObjectName, String beanObjectName) {
 
-        ioUsageHolder = new ProcessIOUsageHolder(ioUsage);
+        ioUsageHolder = new ProcessIOUsageHolder(System.currentTimeMillis(),ioUsage,history);
 
         if (jmxObjectName == null) {
             log.error("Using Default ObjectName to register bean, the given object name ({}) could not be used. Registering under {}", beanObjectName, DEFAULT_COMPOSED_JMX_BEAN_NAME);
@@ -117,6 +131,11 @@ public class ProcessIOUsagePersistenceViaJmx implements ProcessIOUsagePersistenc
 
     }
 
+    public ProcessIOUsagePersistenceViaJmx(ProcessIOUsage ioUsage, ProcessIOHistory history,
+                                           String jmxDomainName, String beanName) {
+        this(ioUsage,history,createObjectName(jmxDomainName,beanName),jmxDomainName+":type="+beanName);
+    }
+
     private static ObjectName createObjectName(String jmxDomainName,String beanName) {
         String beanObjectName = jmxDomainName+":type="+beanName;
 
@@ -166,4 +185,11 @@ public class ProcessIOUsagePersistenceViaJmx implements ProcessIOUsagePersistenc
     public ObjectName getBeanObjectName() {
         return jmxRegisteredObjectName;
     }
+
+    /**
+     * Returns the holder registered in jmx, so that it can also be published by other means (i.e. to prometheus)
+     */
+    public ProcessIOUsageHolder getProcessIOUsageHolder() {
+        return ioUsageHolder;
+    }
 }
@@ -0,0 +1,137 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.mmap;
+
+import java.nio.ByteOrder;
+
+/**
+ * <p>
+ * The layout of the memory mapped file written by {@link ProcessIOUsagePersistenceViaMappedFile}, and read by
+ * {@link MappedProcessIOReader}.  The file is {@value #FILE_SIZE} bytes, little endian, and holds the following at
+ * the given byte offsets:
+ * <pre>
+ *   0  int    magic ({@value #MAGIC}, "PIOM")
+ *   4  int    layout version ({@value #VERSION})
+ *   8  long   sequence, odd whilst a sample is being written
+ *  16  long   pid
+ *  24  long   time in millis the agent started
+ *  32  long   number of samples written
+ *  40  long   time in millis of the sample
+ *  48  long   read_bytes
+ *  56  long   write_bytes
+ *  64  long   rchar
+ *  72  long   wchar
+ *  80  long   syscr
+ *  88  long   syscw
+ *  96  long   cancelled_write_bytes
+ * 104  long   time in millis of the previous sample
+ * 112  double read KB per second since the previous sample
+ * 120  double write KB per second since the previous sample
+ * 128  double read KB per second since the agent started
+ * 136  double write KB per second since the agent started
+ * 144  int    number of smoothed rates (at most {@value #MAX_SMOOTHED_RATES})
+ * 152  long[{@value #MAX_SMOOTHED_RATES}]   smoothing time constants in millis
+ * 184  double[{@value #MAX_SMOOTHED_RATES}] smoothed read KB per second
+ * 216  double[{@value #MAX_SMOOTHED_RATES}] smoothed write KB per second
+ * </pre>
+ * </p>
+ * <p>
+ * As in the linux kernel's seqlock, the writer increments the sequence to an odd value, writes the sample, and then
+ * increments the sequence to an even value.  A reader reads the sequence, the values and the sequence again; and
+ * uses the values only if the sequence was even and unchanged.  The writer issues a store fence after each increment
+ * of the sequence to odd, and before each increment to even; the reader issues a load fence after each read of the
+ * sequence, and before the read of it again (see {@link #storeFence()} and {@link #loadFence()}).  Both fences are a
+ * write of a volatile field, so no internal api is needed.  The java memory model says nothing of memory shared with
+ * another process, so a reader in another process only has the ordering of the processor: on x86 (TSO) that is
+ * enough, as stores are not reordered with other stores, nor loads with other loads.  Fields may be added to the end
+ * of the file without changing the version; a change to the existing fields changes the version.
+ * </p>
+ */
+public final class MappedProcessIOLayout {
+
+    public static final int MAGIC = 0x50494F4D;
+    public static final int VERSION = 1;
+    public static final ByteOrder BYTE_ORDER = ByteOrder.LITTLE_ENDIAN;
+    public static final String FILE_SUFFIX = ".processio";
+    public static final int MAX_SMOOTHED_RATES = 4;
+
+    public static final int MAGIC_OFFSET = 0;
+    public static final int VERSION_OFFSET = 4;
+    public static final int SEQUENCE_OFFSET = 8;
+    public static final int PID_OFFSET = 16;
+    public static final int START_MILLIS_OFFSET = 24;
+    public static final int SAMPLE_COUNT_OFFSET = 32;
+    public static final int SAMPLE_MILLIS_OFFSET = 40;
+    public static final int READ_BYTES_OFFSET = 48;
+    public static final int WRITE_BYTES_OFFSET = 56;
+    public static final int READ_CHARS_OFFSET = 64;
+    public static final int WRITE_CHARS_OFFSET = 72;
+    public static final int READ_SYSCALLS_OFFSET = 80;
+    public static final int WRITE_SYSCALLS_OFFSET = 88;
+    public static final int CANCELLED_WRITE_BYTES_OFFSET = 96;
+    public static final int PREVIOUS_SAMPLE_MILLIS_OFFSET = 104;
+    public static final int SAMPLE_KB_PER_SECOND_READ_OFFSET = 112;
+    public static final int SAMPLE_KB_PER_SECOND_WRITE_OFFSET = 120;
+    public static final int ACCUMULATED_KB_PER_SECOND_READ_OFFSET = 128;
+    public static final int ACCUMULATED_KB_PER_SECOND_WRITE_OFFSET = 136;
+    public static final int SMOOTHED_RATES_COUNT_OFFSET = 144;
+    public static final int SMOOTHING_TIME_CONSTANTS_OFFSET = 152;
+    public static final int SMOOTHED_KB_PER_SECOND_READ_OFFSET = SMOOTHING_TIME_CONSTANTS_OFFSET + 8 * MAX_SMOOTHED_RATES;
+    public static final int SMOOTHED_KB_PER_SECOND_WRITE_OFFSET = SMOOTHED_KB_PER_SECOND_READ_OFFSET + 8 * MAX_SMOOTHED_RATES;
+
+    public static final int FILE_SIZE = 256;
+
+    // Written by the fences, as HotSpot follows each volatile write with a full barrier
+    private static volatile int fence;
+
+    private MappedProcessIOLayout() {
+    }
+
+    /**
+     * Returns the name of the file for the given pid
+     */
+    public static String fileName(int pid) {
+        return pid + FILE_SUFFIX;
+    }
+
+    /**
+     * <p>
+     * Stops the writes before the fence being reordered with the writes after it (StoreStore, and LoadStore).
+     * </p>
+     * <p>
+     * The volatile write stops the compiler moving the writes across it, and HotSpot follows it with a full barrier
+     * (a locked add on x86; dmb ish on aarch64).  It is the processor's ordering of the writes to the mapped pages that
+     * a reader in another process relies on, which is only guaranteed by x86's TSO.
+     * </p>
+     */
+    static void storeFence() {
+        fence = 0;
+    }
+
+    /**
+     * <p>
+     * Stops the reads before the fence being reordered with the reads after it (LoadLoad, and LoadStore).
+     * </p>
+     * <p>
+     * A volatile write rather than a read is used, as a volatile read does not stop the reads before it being moved
+     * after it, which the read of the sequence after the values needs.  As with {@link #storeFence()}, the ordering
+     * with respect to the writer's process is that of x86's TSO.
+     * </p>
+     */
+    static void loadFence() {
+        fence = 0;
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.mmap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.greencheek.processio.service.persistence.mmap.MappedProcessIOLayout.*;
+
+/**
+ * <p>
+ * Reads the memory mapped file written by {@link ProcessIOUsagePersistenceViaMappedFile}, so that a process on the
+ * host (i.e. a monitoring agent) can obtain the io of a jvm without jmx.  The file is mapped once, when the reader is
+ * created, and each {@link #read()} copies the current sample out of the mapping without a system call or a lock.
+ * {@link #scan(File)} reads the file of every jvm in a directory.
+ * </p>
+ * <p>
+ * A read retries (up to {@value #MAX_READ_ATTEMPTS} times) whilst the sequence shows a sample is being written.
+ * </p>
+ */
+public class MappedProcessIOReader {
+
+    private static final Logger log = LoggerFactory.getLogger(MappedProcessIOReader.class);
+
+    public static final int MAX_READ_ATTEMPTS = 100;
+
+    private static final FilenameFilter PROCESS_IO_FILES = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.endsWith(FILE_SUFFIX);
+        }
+    };
+
+    private final File file;
+    private final MappedByteBuffer buffer;
+
+    /**
+     * Maps the given file.  If it cannot be mapped the error is logged, and {@link #read()} returns null.
+     */
+    public MappedProcessIOReader(File file) {
+        this.file = file;
+        this.buffer = map(file);
+    }
+
+    private static MappedByteBuffer map(File file) {
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file,"r");
+            if(randomAccessFile.length()<FILE_SIZE) {
+                log.warn("Mapped process io file is too small: {}",file);
+                return null;
+            }
+            MappedByteBuffer mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_ONLY,0,FILE_SIZE);
+            mapped.order(BYTE_ORDER);
+            return mapped;
+        } catch (IOException e) {
+            log.warn("Unable to map process io file: {}",file,e);
+            return null;
+        } finally {
+            if(randomAccessFile!=null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close process io file: {}",file,e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads every {@value MappedProcessIOLayout#FILE_SUFFIX} file in the given directory, returning the samples
+     * that could be read.
+     */
+    public static List<MappedProcessIOSample> scan(File directory) {
+        List<MappedProcessIOSample> samples = new ArrayList<MappedProcessIOSample>();
+        File[] files = directory.listFiles(PROCESS_IO_FILES);
+        if(files==null) return samples;
+
+        for(File file : files) {
+            MappedProcessIOSample sample = new MappedProcessIOReader(file).read();
+            if(sample!=null) samples.add(sample);
+        }
+        return samples;
+    }
+
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns a consistent copy of the current sample; or null if the file could not be mapped, has an unknown
+     * layout, has no samples, or was being written on every attempt.
+     */
+    public MappedProcessIOSample read() {
+        if(buffer==null) return null;
+        if(buffer.getInt(MAGIC_OFFSET)!=MAGIC) return null;
+        if(buffer.getInt(VERSION_OFFSET)!=VERSION) {
+            log.warn("Unknown mapped process io layout version {} in file: {}",buffer.getInt(VERSION_OFFSET),file);
+            return null;
+        }
+
+        for(int attempt=0;attempt<MAX_READ_ATTEMPTS;attempt++) {
+            long before = buffer.getLong(SEQUENCE_OFFSET);
+            if(before==0) return null;
+            if((before & 1)==1) {
+                Thread.yield();
+                continue;
+            }
+            loadFence();
+
+            int smoothed = Math.max(0,Math.min(MAX_SMOOTHED_RATES,buffer.getInt(SMOOTHED_RATES_COUNT_OFFSET)));
+            long[] timeConstants = new long[smoothed];
+            double[] smoothedRead = new double[smoothed];
+            double[] smoothedWrite = new double[smoothed];
+            for(int i=0;i<smoothed;i++) {
+                timeConstants[i] = buffer.getLong(SMOOTHING_TIME_CONSTANTS_OFFSET + 8*i);
+                smoothedRead[i] = buffer.getDouble(SMOOTHED_KB_PER_SECOND_READ_OFFSET + 8*i);
+                smoothedWrite[i] = buffer.getDouble(SMOOTHED_KB_PER_SECOND_WRITE_OFFSET + 8*i);
+            }
+            MappedProcessIOSample sample = new MappedProcessIOSample(
+                    buffer.getLong(PID_OFFSET),buffer.getLong(START_MILLIS_OFFSET),buffer.getLong(SAMPLE_COUNT_OFFSET),
+                    buffer.getLong(SAMPLE_MILLIS_OFFSET),buffer.getLong(PREVIOUS_SAMPLE_MILLIS_OFFSET),
+                    buffer.getLong(READ_BYTES_OFFSET),buffer.getLong(WRITE_BYTES_OFFSET),
+                    buffer.getLong(READ_CHARS_OFFSET),buffer.getLong(WRITE_CHARS_OFFSET),
+                    buffer.getLong(READ_SYSCALLS_OFFSET),buffer.getLong(WRITE_SYSCALLS_OFFSET),
+                    buffer.getLong(CANCELLED_WRITE_BYTES_OFFSET),
+                    buffer.getDouble(SAMPLE_KB_PER_SECOND_READ_OFFSET),buffer.getDouble(SAMPLE_KB_PER_SECOND_WRITE_OFFSET),
+                    buffer.getDouble(ACCUMULATED_KB_PER_SECOND_READ_OFFSET),buffer.getDouble(ACCUMULATED_KB_PER_SECOND_WRITE_OFFSET),
+                    timeConstants,smoothedRead,smoothedWrite);
+
+            loadFence();
+            if(buffer.getLong(SEQUENCE_OFFSET)==before) return sample;
+        }
+        return null;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.mmap;
+
+/**
+ * <p>
+ * A consistent copy of the sample held in a memory mapped process io file, as returned by
+ * {@link MappedProcessIOReader#read()}.
+ * </p>
+ */
+public class MappedProcessIOSample {
+
+    private final long pid;
+    private final long startMillis;
+    private final long sampleCount;
+    private final long sampleMillis;
+    private final long previousSampleMillis;
+    private final long readBytes;
+    private final long writeBytes;
+    private final long readChars;
+    private final long writeChars;
+    private final long readSyscalls;
+    private final long writeSyscalls;
+    private final long cancelledWriteBytes;
+    private final double sampleTimeKbPerSecondReadIO;
+    private final double sampleTimeKbPerSecondWriteIO;
+    private final double accumulatedKbPerSecondReadIO;
+    private final double accumulatedKbPerSecondWriteIO;
+    private final long[] smoothingTimeConstantsInMillis;
+    private final double[] smoothedKbPerSecondReadIO;
+    private final double[] smoothedKbPerSecondWriteIO;
+
+    public MappedProcessIOSample(long pid, long startMillis, long sampleCount,
+                                 long sampleMillis, long previousSampleMillis,
+                                 long readBytes, long writeBytes, long readChars, long writeChars,
+                                 long readSyscalls, long writeSyscalls, long cancelledWriteBytes,
+                                 double sampleTimeKbPerSecondReadIO, double sampleTimeKbPerSecondWriteIO,
+                                 double accumulatedKbPerSecondReadIO, double accumulatedKbPerSecondWriteIO,
+                                 long[] smoothingTimeConstantsInMillis,
+                                 double[] smoothedKbPerSecondReadIO, double[] smoothedKbPerSecondWriteIO) {
+        this.pid = pid;
+        this.startMillis = startMillis;
+        this.sampleCount = sampleCount;
+        this.sampleMillis = sampleMillis;
+        this.previousSampleMillis = previousSampleMillis;
+        this.readBytes = readBytes;
+        this.writeBytes = writeBytes;
+        this.readChars = readChars;
+        this.writeChars = writeChars;
+        this.readSyscalls = readSyscalls;
+        this.writeSyscalls = writeSyscalls;
+        this.cancelledWriteBytes = cancelledWriteBytes;
+        this.sampleTimeKbPerSecondReadIO = sampleTimeKbPerSecondReadIO;
+        this.sampleTimeKbPerSecondWriteIO = sampleTimeKbPerSecondWriteIO;
+        this.accumulatedKbPerSecondReadIO = accumulatedKbPerSecondReadIO;
+        this.accumulatedKbPerSecondWriteIO = accumulatedKbPerSecondWriteIO;
+        this.smoothingTimeConstantsInMillis = smoothingTimeConstantsInMillis;
+        this.smoothedKbPerSecondReadIO = smoothedKbPerSecondReadIO;
+        this.smoothedKbPerSecondWriteIO = smoothedKbPerSecondWriteIO;
+    }
+
+    public long getPid() {
+        return pid;
+    }
+
+    /**
+     * Returns the time in millis the agent started
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Returns the number of samples that have been written
+     */
+    public long getSampleCount() {
+        return sampleCount;
+    }
+
+    public long getSampleMillis() {
+        return sampleMillis;
+    }
+
+    public long getPreviousSampleMillis() {
+        return previousSampleMillis;
+    }
+
+    public long getReadBytes() {
+        return readBytes;
+    }
+
+    public long getWriteBytes() {
+        return writeBytes;
+    }
+
+    public long getReadChars() {
+        return readChars;
+    }
+
+    public long getWriteChars() {
+        return writeChars;
+    }
+
+    public long getReadSyscalls() {
+        return readSyscalls;
+    }
+
+    public long getWriteSyscalls() {
+        return writeSyscalls;
+    }
+
+    public long getCancelledWriteBytes() {
+        return cancelledWriteBytes;
+    }
+
+    /**
+     * Returns the read KB per second between the previous and current samples
+     */
+    public double getSampleTimeKbPerSecondReadIO() {
+        return sampleTimeKbPerSecondReadIO;
+    }
+
+    /**
+     * Returns the write KB per second between the previous and current samples
+     */
+    public double getSampleTimeKbPerSecondWriteIO() {
+        return sampleTimeKbPerSecondWriteIO;
+    }
+
+    /**
+     * Returns the read KB per second since the agent started
+     */
+    public double getAccumulatedKbPerSecondReadIO() {
+        return accumulatedKbPerSecondReadIO;
+    }
+
+    /**
+     * Returns the write KB per second since the agent started
+     */
+    public double getAccumulatedKbPerSecondWriteIO() {
+        return accumulatedKbPerSecondWriteIO;
+    }
+
+    public long[] getSmoothingTimeConstantsInMillis() {
+        return smoothingTimeConstantsInMillis.clone();
+    }
+
+    public double[] getSmoothedKbPerSecondReadIO() {
+        return smoothedKbPerSecondReadIO.clone();
+    }
+
+    public double[] getSmoothedKbPerSecondWriteIO() {
+        return smoothedKbPerSecondWriteIO.clone();
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.mmap;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.greencheek.processio.service.usage.DifferenceInKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.AccumulatedAverageKbPerSecondCalculator;
+import org.greencheek.processio.service.usage.PrimitiveBasedAccumulatedAverageKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+import org.greencheek.processio.service.usage.ProcessIOUsage;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.greencheek.processio.service.persistence.mmap.MappedProcessIOLayout.*;
+
+/**
+ * <p>
+ * Persists each sample, and the rates calculated from it, in a small memory mapped file (in the manner of the jvm's
+ * hsperfdata file), so that a process on the host can read the io of many jvms without attaching to each over jmx.
+ * The file is named &lt;pid&gt;{@value MappedProcessIOLayout#FILE_SUFFIX}, and has the layout described by
+ * {@link MappedProcessIOLayout}.  It can be read with {@link MappedProcessIOReader}.
+ * </p>
+ * <p>
+ * Each sample is written in place under a sequence lock, so that a reader in another process sees a consistent
+ * sample without locking; and writing a sample allocates no objects other than the arrays of smoothed rates returned
+ * by the {@link ProcessIOUsage}.  The file is deleted on {@link #destroy()}, or when the jvm exits.  A file left by a
+ * jvm that was killed will remain, and can be recognised as its pid is no longer running.
+ * </p>
+ * <p>
+ * If the file cannot be created the error is logged, and samples are not persisted.  There must be a single writer,
+ * i.e. the scheduler's thread.
+ * </p>
+ */
+public class ProcessIOUsagePersistenceViaMappedFile implements ProcessIOUsagePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessIOUsagePersistenceViaMappedFile.class);
+
+    private final File file;
+    private final ProcessIOUsage usage;
+    private final DifferenceInKBPerSecondCalculator differenceCalculator = new PrimitiveBasedDifferenceInKBPerSecondCalculator();
+    private final AccumulatedAverageKbPerSecondCalculator accumulatedCalculator = new PrimitiveBasedAccumulatedAverageKBPerSecondCalculator();
+    private final long startMillis;
+    private final MappedByteBuffer buffer;
+
+    private long sequence;
+    private long sampleCount;
+    private long previousMillis;
+    private long previousReadBytes;
+    private long previousWriteBytes;
+
+    /**
+     * @param directory The directory in which to create the file, which is created if it does not exist
+     * @param pid The pid of the jvm
+     * @param usage Used to update and obtain the smoothed rates; must not be shared with another persistence
+     */
+    public ProcessIOUsagePersistenceViaMappedFile(File directory, int pid, ProcessIOUsage usage) {
+        this(directory,pid,usage,System.currentTimeMillis());
+    }
+
+    public ProcessIOUsagePersistenceViaMappedFile(File directory, int pid, ProcessIOUsage usage, long startMillis) {
+        this.file = new File(directory,fileName(pid));
+        this.usage = usage;
+        this.startMillis = startMillis;
+        this.buffer = map(directory,file);
+        if(buffer!=null) {
+            buffer.putLong(PID_OFFSET,pid);
+            buffer.putLong(START_MILLIS_OFFSET,startMillis);
+            buffer.putInt(VERSION_OFFSET,VERSION);
+            storeFence();
+            buffer.putInt(MAGIC_OFFSET,MAGIC);
+        }
+    }
+
+    private static MappedByteBuffer map(File directory, File file) {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            log.error("Unable to create directory for the mapped process io file: {}",directory);
+            return null;
+        }
+
+        RandomAccessFile randomAccessFile = null;
+        try {
+            randomAccessFile = new RandomAccessFile(file,"rw");
+            randomAccessFile.setLength(0);
+            randomAccessFile.setLength(FILE_SIZE);
+            MappedByteBuffer mapped = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE,0,FILE_SIZE);
+            mapped.order(BYTE_ORDER);
+            file.deleteOnExit();
+            return mapped;
+        } catch (IOException e) {
+            log.error("Unable to create the mapped process io file: {}",file,e);
+            return null;
+        } finally {
+            // the mapping remains valid after the channel is closed
+            if(randomAccessFile!=null) {
+                try {
+                    randomAccessFile.close();
+                } catch (IOException e) {
+                    log.warn("Unable to close the mapped process io file: {}",file,e);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the file the samples are written to
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Returns true if the file was created and mapped
+     */
+    public boolean isMapped() {
+        return buffer!=null;
+    }
+
+    @Override
+    public void init() {
+    }
+
+    /**
+     * Deletes the file
+     */
+    @Override
+    public void destroy() {
+        if(buffer!=null && !file.delete()) {
+            log.warn("Unable to delete the mapped process io file: {}",file);
+        }
+    }
+
+    @Override
+    public void persist(CurrentProcessIO io) {
+        long readBytes = io.getCurrentReadBytes();
+        long writeBytes = io.getCurrentWriteBytes();
+        if(buffer==null || (readBytes==Long.MIN_VALUE && writeBytes==Long.MIN_VALUE)) return;
+
+        long millis = io.getCurrentSampleTimeInMillis();
+        double sampleRead = 0.0;
+        double sampleWrite = 0.0;
+        if(sampleCount>0) {
+            sampleRead = differenceCalculator.getDifferenceInKbPerSecond(previousMillis,previousReadBytes,millis,readBytes);
+            sampleWrite = differenceCalculator.getDifferenceInKbPerSecond(previousMillis,previousWriteBytes,millis,writeBytes);
+            usage.update(previousMillis,previousReadBytes,previousWriteBytes,millis,readBytes,writeBytes);
+        }
+        long[] timeConstants = usage.getSmoothingTimeConstantsInMillis();
+        double[] smoothedRead = usage.getSmoothedKbPerSecondReadIO();
+        double[] smoothedWrite = usage.getSmoothedKbPerSecondWriteIO();
+        int smoothed = Math.min(MAX_SMOOTHED_RATES,Math.min(timeConstants.length,Math.min(smoothedRead.length,smoothedWrite.length)));
+
+        buffer.putLong(SEQUENCE_OFFSET,++sequence);
+        storeFence();
+
+        buffer.putLong(SAMPLE_COUNT_OFFSET,++sampleCount);
+        buffer.putLong(SAMPLE_MILLIS_OFFSET,millis);
+        buffer.putLong(READ_BYTES_OFFSET,readBytes);
+        buffer.putLong(WRITE_BYTES_OFFSET,writeBytes);
+        buffer.putLong(READ_CHARS_OFFSET,io.getCurrentReadChars());
+        buffer.putLong(WRITE_CHARS_OFFSET,io.getCurrentWriteChars());
+        buffer.putLong(READ_SYSCALLS_OFFSET,io.getCurrentReadSyscalls());
+        buffer.putLong(WRITE_SYSCALLS_OFFSET,io.getCurrentWriteSyscalls());
+        buffer.putLong(CANCELLED_WRITE_BYTES_OFFSET,io.getCurrentCancelledWriteBytes());
+        buffer.putLong(PREVIOUS_SAMPLE_MILLIS_OFFSET,previousMillis);
+        buffer.putDouble(SAMPLE_KB_PER_SECOND_READ_OFFSET,sampleRead);
+        buffer.putDouble(SAMPLE_KB_PER_SECOND_WRITE_OFFSET,sampleWrite);
+        buffer.putDouble(ACCUMULATED_KB_PER_SECOND_READ_OFFSET,accumulatedCalculator.getKbPerSecond(startMillis,millis,readBytes));
+        buffer.putDouble(ACCUMULATED_KB_PER_SECOND_WRITE_OFFSET,accumulatedCalculator.getKbPerSecond(startMillis,millis,writeBytes));
+        buffer.putInt(SMOOTHED_RATES_COUNT_OFFSET,smoothed);
+        for(int i=0;i<smoothed;i++) {
+            buffer.putLong(SMOOTHING_TIME_CONSTANTS_OFFSET + 8*i,timeConstants[i]);
+            buffer.putDouble(SMOOTHED_KB_PER_SECOND_READ_OFFSET + 8*i,smoothedRead[i]);
+            buffer.putDouble(SMOOTHED_KB_PER_SECOND_WRITE_OFFSET + 8*i,smoothedWrite[i]);
+        }
+
+        storeFence();
+        buffer.putLong(SEQUENCE_OFFSET,++sequence);
+
+        previousMillis = millis;
+        previousReadBytes = readBytes;
+        previousWriteBytes = writeBytes;
+    }
+}
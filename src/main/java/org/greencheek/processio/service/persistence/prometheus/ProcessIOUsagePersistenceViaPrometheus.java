@@ -0,0 +1,151 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.prometheus;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Serves the counters and rates of a {@link ProcessIOUsageMXBean} (i.e. the holder registered in jmx by
+ * {@link org.greencheek.processio.service.persistence.jmx.ProcessIOUsagePersistenceViaJmx}) in the Prometheus text
+ * format, from the jdk's built in HttpServer, at {@value #METRICS_PATH}.
+ * </p>
+ * <p>
+ * The response body is rendered once per sample, on {@link #persist(CurrentProcessIO)}, by a
+ * {@link PrometheusTextRenderer}; and every scrape is served the same bytes.  The cost of a scrape is therefore
+ * a write of a few KB, however many scrapers there are, and the holder is not read by the scrapes.  As it is
+ * given the holder rather than the sample, this must be persisted to after the holder has been updated.
+ * </p>
+ * <p>
+ * The server is started by {@link #init()}, and stopped by {@link #destroy()}.  Its threads are daemon threads, so do
+ * not stop the jvm from exiting.  If the server cannot be started the error is logged.
+ * </p>
+ */
+public class ProcessIOUsagePersistenceViaPrometheus implements ProcessIOUsagePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessIOUsagePersistenceViaPrometheus.class);
+
+    public static final String METRICS_PATH = "/metrics";
+
+    private final ProcessIOUsageMXBean holder;
+    private final InetSocketAddress address;
+    private final PrometheusTextRenderer renderer = new PrometheusTextRenderer();
+
+    // The body served to each scrape.  A new array is published for each sample, so that a scrape in progress is
+    // not overwritten by the next render
+    private volatile byte[] body;
+    private volatile HttpServer server;
+
+    /**
+     * @param holder The holder whose counters and rates are served
+     * @param address The address to listen on
+     */
+    public ProcessIOUsagePersistenceViaPrometheus(ProcessIOUsageMXBean holder, InetSocketAddress address) {
+        this.holder = holder;
+        this.address = address;
+        render();
+    }
+
+    /**
+     * Starts the http server
+     */
+    @Override
+    public synchronized void init() {
+        if(server!=null) return;
+        try {
+            final HttpServer httpServer = HttpServer.create(address,0);
+            httpServer.createContext(METRICS_PATH,new MetricsHandler());
+
+            // The server's dispatcher thread inherits the daemon status of the thread that starts it
+            Thread starter = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    httpServer.start();
+                }
+            },"processio-prometheus-start");
+            starter.setDaemon(true);
+            starter.start();
+            starter.join();
+
+            server = httpServer;
+            log.info("Serving process io to prometheus on {}{}",httpServer.getAddress(),METRICS_PATH);
+        } catch (IOException e) {
+            log.error("Unable to start prometheus http server on {}",address,e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Stops the http server
+     */
+    @Override
+    public synchronized void destroy() {
+        if(server==null) return;
+        server.stop(0);
+        server = null;
+    }
+
+    @Override
+    public void persist(CurrentProcessIO io) {
+        render();
+    }
+
+    private void render() {
+        int length = renderer.render(holder);
+        body = Arrays.copyOf(renderer.getBytes(),length);
+    }
+
+    /**
+     * Returns the address the server is listening on, or null if it is not running
+     */
+    public InetSocketAddress getAddress() {
+        HttpServer httpServer = server;
+        return httpServer==null ? null : httpServer.getAddress();
+    }
+
+    private class MetricsHandler implements HttpHandler {
+        @Override
+        public void handle(HttpExchange exchange) throws IOException {
+            try {
+                if(!"GET".equals(exchange.getRequestMethod())) {
+                    exchange.sendResponseHeaders(405,-1);
+                    return;
+                }
+                byte[] response = body;
+                exchange.getResponseHeaders().set("Content-Type",PrometheusTextRenderer.CONTENT_TYPE);
+                exchange.sendResponseHeaders(200,response.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(response);
+                out.flush();
+            } finally {
+                exchange.close();
+            }
+        }
+    }
+}
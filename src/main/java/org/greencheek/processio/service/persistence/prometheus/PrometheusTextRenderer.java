@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.prometheus;
+
+import org.greencheek.processio.domain.ThroughputPercentiles;
+import org.greencheek.processio.domain.jmx.ProcessIOSnapshot;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+
+/**
+ * <p>
+ * Renders the counters and rates of a {@link ProcessIOUsageMXBean} in the Prometheus text exposition format
+ * (version 0.0.4).  The counters of /proc/PID/io are rendered as counters, named processio_&lt;counter&gt;_total;
+ * the rates are rendered as gauges in KB per second, with a window label for the windowed and smoothed rates, and a
+ * quantile label for the throughput percentiles.
+ * </p>
+ * <p>
+ * The counters, and the rates of the last sample, since the agent started and smoothed, are rendered from a single
+ * {@link ProcessIOUsageMXBean#getSnapshot()}, so are all from the same sample even when the holder is updated
+ * whilst rendering (i.e. when rendered on a sink's own thread).  The windowed rates, and the percentiles, are held
+ * separately by the holder and are read after the snapshot; so they may include a sample recorded after it.
+ * </p>
+ * <p>
+ * The text is rendered into a reused StringBuilder, and then copied into a reused byte array, as the text is ascii.
+ * An instance is not thread safe.
+ * </p>
+ */
+public class PrometheusTextRenderer {
+
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+
+    private static final String PREFIX = "processio_";
+
+    private final StringBuilder text = new StringBuilder(4096);
+    private byte[] bytes = new byte[4096];
+
+    /**
+     * Renders the current values of the given holder
+     *
+     * @return The number of bytes rendered, which are returned by {@link #getBytes()}
+     */
+    public int render(ProcessIOUsageMXBean holder) {
+        text.setLength(0);
+
+        ProcessIOSnapshot io = holder.getSnapshot();
+        counter("read_bytes","Bytes the process caused to be fetched from the storage layer (read_bytes)",io.getCurrentSampleReadBytes());
+        counter("write_bytes","Bytes the process caused to be sent to the storage layer (write_bytes)",io.getCurrentSampleWriteBytes());
+        counter("read_chars","Bytes the process asked to be read, including from the page cache (rchar)",io.getCurrentSampleReadChars());
+        counter("write_chars","Bytes the process asked to be written (wchar)",io.getCurrentSampleWriteChars());
+        counter("read_syscalls","Read syscalls made by the process (syscr)",io.getCurrentSampleReadSyscalls());
+        counter("write_syscalls","Write syscalls made by the process (syscw)",io.getCurrentSampleWriteSyscalls());
+        counter("cancelled_write_bytes","Written bytes truncated before reaching the storage layer (cancelled_write_bytes)",io.getCurrentSampleCancelledWriteBytes());
+        counter("samples","Samples of /proc/PID/io recorded",io.getSampleSequence());
+        gauge("last_sample_timestamp_seconds","Time of the last sample",io.getCurrentSampleMs() / 1000.0);
+
+        gauge("sample_read_kilobytes_per_second","Read KB per second between the last two samples",io.getSampleTimeKbPerSecondReadIO());
+        gauge("sample_write_kilobytes_per_second","Write KB per second between the last two samples",io.getSampleTimeKbPerSecondWriteIO());
+        gauge("accumulated_read_kilobytes_per_second","Read KB per second since the agent started",io.getAccumulatedKbPerSecondReadIO());
+        gauge("accumulated_write_kilobytes_per_second","Write KB per second since the agent started",io.getAccumulatedKbPerSecondWriteIO());
+
+        long[] windows = holder.getHistoryWindowsInMillis();
+        windowed("windowed_read_kilobytes_per_second","Read KB per second over the window",windows,holder.getWindowedKbPerSecondReadIO());
+        windowed("windowed_write_kilobytes_per_second","Write KB per second over the window",windows,holder.getWindowedKbPerSecondWriteIO());
+
+        long[] timeConstants = io.getSmoothingTimeConstantsInMillis();
+        windowed("smoothed_read_kilobytes_per_second","Read KB per second, exponentially weighted over the window",timeConstants,io.getSmoothedKbPerSecondReadIO());
+        windowed("smoothed_write_kilobytes_per_second","Write KB per second, exponentially weighted over the window",timeConstants,io.getSmoothedKbPerSecondWriteIO());
+
+        percentiles("read_throughput_kilobytes_per_second","Percentiles of the read KB per second of the sample intervals",holder.getReadThroughputPercentiles());
+        percentiles("write_throughput_kilobytes_per_second","Percentiles of the write KB per second of the sample intervals",holder.getWriteThroughputPercentiles());
+
+        int length = text.length();
+        if(bytes.length<length) bytes = new byte[Math.max(length,bytes.length*2)];
+        for(int i=0;i<length;i++) {
+            bytes[i] = (byte)text.charAt(i);
+        }
+        return length;
+    }
+
+    /**
+     * Returns the bytes of the last render, which are overwritten by the next render
+     */
+    public byte[] getBytes() {
+        return bytes;
+    }
+
+    private void counter(String name, String help, long value) {
+        header(name + "_total",help,"counter");
+        text.append(PREFIX).append(name).append("_total ").append(value).append('\n');
+    }
+
+    private void gauge(String name, String help, double value) {
+        header(name,help,"gauge");
+        text.append(PREFIX).append(name).append(' ');
+        appendDouble(value);
+        text.append('\n');
+    }
+
+    private void windowed(String name, String help, long[] windowsInMillis, double[] values) {
+        int count = Math.min(windowsInMillis.length,values.length);
+        if(count==0) return;
+        header(name,help,"gauge");
+        for(int i=0;i<count;i++) {
+            text.append(PREFIX).append(name).append("{window=\"").append(windowsInMillis[i] / 1000).append("s\"} ");
+            appendDouble(values[i]);
+            text.append('\n');
+        }
+    }
+
+    private void percentiles(String name, String help, ThroughputPercentiles percentiles) {
+        // a gauge rather than a summary, as the percentiles are reset by resetThroughputPercentiles
+        header(name,help,"gauge");
+        quantile(name,"0.5",percentiles.getP50KbPerSecond());
+        quantile(name,"0.9",percentiles.getP90KbPerSecond());
+        quantile(name,"0.99",percentiles.getP99KbPerSecond());
+        quantile(name,"0.999",percentiles.getP999KbPerSecond());
+        quantile(name,"1",percentiles.getMaxKbPerSecond());
+    }
+
+    private void quantile(String name, String quantile, double value) {
+        text.append(PREFIX).append(name).append("{quantile=\"").append(quantile).append("\"} ");
+        appendDouble(value);
+        text.append('\n');
+    }
+
+    private void header(String name, String help, String type) {
+        text.append("# HELP ").append(PREFIX).append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(PREFIX).append(name).append(' ').append(type).append('\n');
+    }
+
+    private void appendDouble(double value) {
+        if(Double.isNaN(value)) text.append("NaN");
+        else if(value==Double.POSITIVE_INFINITY) text.append("+Inf");
+        else if(value==Double.NEGATIVE_INFINITY) text.append("-Inf");
+        else text.append(value);
+    }
+}
@@ -0,0 +1,262 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.statsd;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOSnapshot;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * Pushes the counters and rates of a {@link ProcessIOUsageMXBean} (i.e. the holder registered in jmx by
+ * {@link org.greencheek.processio.service.persistence.jmx.ProcessIOUsagePersistenceViaJmx}) to a StatsD collector
+ * as udp datagrams, for jvms that cannot be scraped.  For each sample:
+ * <ul>
+ *     <li>The increase of each /proc/PID/io counter since the last sample sent is sent as a counter
+ *         (i.e. &lt;prefix&gt;.read_bytes:1024|c)</li>
+ *     <li>The rates between the last two samples, since the agent started, and the smoothed rates, are sent as gauges
+ *         (i.e. &lt;prefix&gt;.sample_read_kb_per_second:1.0|g)</li>
+ * </ul>
+ * If tags are given they are appended to each metric in the DogStatsD format (|#tag:value,...).
+ * </p>
+ * <p>
+ * The metrics are batched, newline separated, into datagrams of at most the given packet size (by default
+ * {@value #DEFAULT_MAX_PACKET_SIZE} bytes, which fits within an ethernet MTU); and encoded into reused buffers.
+ * The channel is non-blocking, so a datagram that cannot be sent immediately is dropped rather than blocking the
+ * scheduler; as is a datagram that fails to send (i.e. the collector is down).  The number of datagrams sent and
+ * dropped is counted.  As it is given the holder rather than the sample, this must be persisted to after the holder
+ * has been updated.
+ * </p>
+ */
+public class ProcessIOUsagePersistenceViaStatsD implements ProcessIOUsagePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessIOUsagePersistenceViaStatsD.class);
+
+    public static final int DEFAULT_MAX_PACKET_SIZE = 1432;
+    public static final String DEFAULT_PREFIX = "processio";
+
+    private final ProcessIOUsageMXBean holder;
+    private final InetSocketAddress collector;
+    private final String prefix;
+    private final String tags;
+    private final ByteBuffer packet;
+    private final StringBuilder line = new StringBuilder(128);
+
+    private static final String[] COUNTER_NAMES = { "read_bytes", "write_bytes", "read_chars", "write_chars",
+                                                    "read_syscalls", "write_syscalls", "cancelled_write_bytes" };
+
+    private DatagramChannel channel;
+    private long lastSequence;
+    private boolean sentFirst;
+    private long[] counters = new long[COUNTER_NAMES.length];
+    private long[] lastCounters = new long[COUNTER_NAMES.length];
+    private long[] windowTimeConstants = new long[0];
+    private String[] windows = new String[0];
+    private volatile long packetsSent;
+    private volatile long packetsDropped;
+
+    public ProcessIOUsagePersistenceViaStatsD(ProcessIOUsageMXBean holder, InetSocketAddress collector) {
+        this(holder,collector,DEFAULT_PREFIX,null,DEFAULT_MAX_PACKET_SIZE);
+    }
+
+    /**
+     * @param holder The holder whose counters and rates are sent
+     * @param collector The address of the StatsD collector
+     * @param prefix The prefix of each metric's name
+     * @param tags DogStatsD tags (i.e. "service:web,env:prod") appended to each metric, or null for none
+     * @param maxPacketSize The largest datagram to send
+     */
+    public ProcessIOUsagePersistenceViaStatsD(ProcessIOUsageMXBean holder, InetSocketAddress collector,
+                                             String prefix, String tags, int maxPacketSize) {
+        this.holder = holder;
+        this.collector = collector;
+        this.prefix = prefix;
+        this.tags = (tags==null || tags.length()==0) ? null : tags;
+        this.packet = ByteBuffer.allocate(maxPacketSize);
+        if(collector.isUnresolved()) {
+            log.warn("Unable to resolve StatsD collector: {}",collector);
+        }
+    }
+
+    /**
+     * Opens the non-blocking channel the datagrams are sent on
+     */
+    @Override
+    public synchronized void init() {
+        if(channel!=null) return;
+        try {
+            DatagramChannel datagramChannel = DatagramChannel.open();
+            datagramChannel.configureBlocking(false);
+            channel = datagramChannel;
+        } catch (IOException e) {
+            log.error("Unable to open channel to StatsD collector: {}",collector,e);
+        }
+    }
+
+    @Override
+    public synchronized void destroy() {
+        if(channel==null) return;
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.warn("Unable to close channel to StatsD collector: {}",collector,e);
+        } finally {
+            channel = null;
+        }
+    }
+
+    @Override
+    public synchronized void persist(CurrentProcessIO io) {
+        if(channel==null || collector.isUnresolved()) return;
+
+        // only send once per recorded sample.  The counters and rates are all read from one snapshot, so are from
+        // the same sample even when the holder is updated whilst sending (i.e. when persisted to asynchronously)
+        ProcessIOSnapshot processIO = holder.getSnapshot();
+        long sequence = processIO.getSampleSequence();
+        if(sequence==lastSequence) return;
+        lastSequence = sequence;
+
+        // the increases are from the last sample sent, rather than the holder's previous sample, so that none is
+        // lost when samples are skipped (i.e. when persisted to asynchronously).  The first sample is not sent.
+        long[] current = counters;
+        current[0] = processIO.getCurrentSampleReadBytes();
+        current[1] = processIO.getCurrentSampleWriteBytes();
+        current[2] = processIO.getCurrentSampleReadChars();
+        current[3] = processIO.getCurrentSampleWriteChars();
+        current[4] = processIO.getCurrentSampleReadSyscalls();
+        current[5] = processIO.getCurrentSampleWriteSyscalls();
+        current[6] = processIO.getCurrentSampleCancelledWriteBytes();
+        long[] last = lastCounters;
+        counters = last;
+        lastCounters = current;
+        if(!sentFirst) {
+            sentFirst = true;
+            return;
+        }
+
+        packet.clear();
+        for(int i=0;i<COUNTER_NAMES.length;i++) {
+            counter(COUNTER_NAMES[i],current[i] - last[i]);
+        }
+
+        gauge("sample_read_kb_per_second","",processIO.getSampleTimeKbPerSecondReadIO());
+        gauge("sample_write_kb_per_second","",processIO.getSampleTimeKbPerSecondWriteIO());
+        gauge("accumulated_read_kb_per_second","",processIO.getAccumulatedKbPerSecondReadIO());
+        gauge("accumulated_write_kb_per_second","",processIO.getAccumulatedKbPerSecondWriteIO());
+
+        String[] windows = windowSuffixes(processIO.getSmoothingTimeConstantsInMillis());
+        double[] smoothedRead = processIO.getSmoothedKbPerSecondReadIO();
+        double[] smoothedWrite = processIO.getSmoothedKbPerSecondWriteIO();
+        for(int i=0;i<windows.length && i<smoothedRead.length && i<smoothedWrite.length;i++) {
+            gauge("smoothed_read_kb_per_second",windows[i],smoothedRead[i]);
+            gauge("smoothed_write_kb_per_second",windows[i],smoothedWrite[i]);
+        }
+
+        send();
+    }
+
+    /**
+     * Returns the number of datagrams sent
+     */
+    public long getPacketsSent() {
+        return packetsSent;
+    }
+
+    /**
+     * Returns the number of datagrams that could not be sent
+     */
+    public long getPacketsDropped() {
+        return packetsDropped;
+    }
+
+    private void counter(String name, long value) {
+        if(value<0) return;
+        line.setLength(0);
+        line.append(prefix).append('.').append(name).append(':').append(value).append("|c");
+        append();
+    }
+
+    /**
+     * Returns the suffix (i.e. _60s) of each smoothed rate's name, which are only created when the time constants
+     * change rather than for every sample
+     */
+    private String[] windowSuffixes(long[] timeConstants) {
+        if(!Arrays.equals(timeConstants,windowTimeConstants)) {
+            String[] suffixes = new String[timeConstants.length];
+            for(int i=0;i<timeConstants.length;i++) {
+                suffixes[i] = "_" + (timeConstants[i] / 1000) + "s";
+            }
+            windowTimeConstants = timeConstants;
+            windows = suffixes;
+        }
+        return windows;
+    }
+
+    private void gauge(String name, String suffix, double value) {
+        if(Double.isNaN(value) || Double.isInfinite(value)) return;
+        line.setLength(0);
+        line.append(prefix).append('.').append(name).append(suffix).append(':').append(value).append("|g");
+        append();
+    }
+
+    /**
+     * Adds the line to the datagram, sending the datagram first if the line does not fit
+     */
+    private void append() {
+        if(tags!=null) line.append("|#").append(tags);
+
+        int length = line.length();
+        int separator = packet.position()>0 ? 1 : 0;
+        if(packet.remaining() < length + separator) {
+            send();
+            separator = 0;
+        }
+        if(packet.remaining() < length) {
+            log.warn("StatsD metric is larger than the packet size: {}",line);
+            return;
+        }
+        if(separator==1) packet.put((byte)'\n');
+        for(int i=0;i<length;i++) {
+            packet.put((byte)line.charAt(i));
+        }
+    }
+
+    private void send() {
+        if(packet.position()==0) return;
+        packet.flip();
+        try {
+            if(channel.send(packet,collector)==0) {
+                packetsDropped++;
+                log.debug("StatsD datagram dropped, the socket's send buffer is full");
+            } else {
+                packetsSent++;
+            }
+        } catch (IOException e) {
+            packetsDropped++;
+            log.debug("Unable to send StatsD datagram to {}",collector,e);
+        }
+        packet.clear();
+    }
+}
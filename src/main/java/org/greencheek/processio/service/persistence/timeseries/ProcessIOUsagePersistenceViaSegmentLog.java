@@ -0,0 +1,193 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.timeseries;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.greencheek.processio.service.persistence.timeseries.SegmentLogFormat.*;
+
+/**
+ * <p>
+ * Appends each sample to a compact binary log on local disk, so that a long history of the process's io (i.e. a
+ * sample a second for days) is kept for post-mortems, at a few bytes per sample.  The format is described by
+ * {@link SegmentLogFormat}, and the log is read with {@link SegmentLogReader}.
+ * </p>
+ * <p>
+ * The log is split into segment files.  A new segment is started when the current segment would exceed the maximum
+ * size, or its first sample is older than the maximum segment duration.  When a segment is started the oldest
+ * segments are deleted, so that at most the given number are kept.
+ * </p>
+ * <p>
+ * Each record is encoded into a reused buffer and written with a FileChannel, so appending a sample allocates
+ * nothing.  Records are not forced to disk on each write; the segment is forced when it is rotated or the
+ * persistence is destroyed.  An io error is logged, the segment is closed, and the next sample starts a new segment.
+ * There must be a single writer, i.e. the scheduler's thread.
+ * </p>
+ */
+public class ProcessIOUsagePersistenceViaSegmentLog implements ProcessIOUsagePersistence {
+
+    private static final Logger log = LoggerFactory.getLogger(ProcessIOUsagePersistenceViaSegmentLog.class);
+
+    public static final long DEFAULT_MAX_SEGMENT_BYTES = 16 * 1024 * 1024;
+    public static final long DEFAULT_MAX_SEGMENT_MILLIS = 60 * 60 * 1000;
+    public static final int DEFAULT_MAX_SEGMENTS = 48;
+
+    private final File directory;
+    private final long maxSegmentBytes;
+    private final long maxSegmentMillis;
+    private final int maxSegments;
+    private final ByteBuffer buffer = ByteBuffer.allocate(Math.max(HEADER_SIZE,MAX_RECORD_SIZE));
+
+    private FileChannel segment;
+    private long segmentBytes;
+    private long segmentFirstMillis;
+
+    private long previousMillis;
+    private long previousDeltaMillis;
+    private final long[] previousCounters = new long[FIELDS-1];
+    private final long[] counters = new long[FIELDS-1];
+
+    public ProcessIOUsagePersistenceViaSegmentLog(File directory) {
+        this(directory,DEFAULT_MAX_SEGMENT_BYTES,DEFAULT_MAX_SEGMENT_MILLIS,DEFAULT_MAX_SEGMENTS);
+    }
+
+    /**
+     * @param directory The directory to write the segments to, created if it does not exist
+     * @param maxSegmentBytes The size at which a new segment is started
+     * @param maxSegmentMillis The duration after which a new segment is started
+     * @param maxSegments The number of segments to keep
+     */
+    public ProcessIOUsagePersistenceViaSegmentLog(File directory, long maxSegmentBytes, long maxSegmentMillis, int maxSegments) {
+        this.directory = directory;
+        this.maxSegmentBytes = Math.max(HEADER_SIZE + MAX_RECORD_SIZE,maxSegmentBytes);
+        this.maxSegmentMillis = maxSegmentMillis;
+        this.maxSegments = Math.max(1,maxSegments);
+    }
+
+    @Override
+    public void init() {
+    }
+
+    /**
+     * Forces and closes the current segment
+     */
+    @Override
+    public void destroy() {
+        closeSegment();
+    }
+
+    @Override
+    public void persist(CurrentProcessIO io) {
+        if(io.getCurrentReadBytes()==Long.MIN_VALUE && io.getCurrentWriteBytes()==Long.MIN_VALUE) return;
+
+        long millis = io.getCurrentSampleTimeInMillis();
+        counters[0] = io.getCurrentReadBytes();
+        counters[1] = io.getCurrentWriteBytes();
+        counters[2] = io.getCurrentReadChars();
+        counters[3] = io.getCurrentWriteChars();
+        counters[4] = io.getCurrentReadSyscalls();
+        counters[5] = io.getCurrentWriteSyscalls();
+        counters[6] = io.getCurrentCancelledWriteBytes();
+
+        try {
+            if(segment!=null && (segmentBytes + MAX_RECORD_SIZE > maxSegmentBytes || millis - segmentFirstMillis >= maxSegmentMillis)) {
+                closeSegment();
+            }
+            if(segment==null) openSegment(millis);
+
+            long deltaMillis = millis - previousMillis;
+            buffer.clear();
+            putVarLong(buffer,deltaMillis - previousDeltaMillis);
+            for(int i=0;i<counters.length;i++) {
+                putVarLong(buffer,counters[i] - previousCounters[i]);
+            }
+            buffer.flip();
+            segmentBytes += write();
+
+            previousMillis = millis;
+            previousDeltaMillis = deltaMillis;
+            System.arraycopy(counters,0,previousCounters,0,counters.length);
+        } catch (IOException e) {
+            log.error("Unable to append sample to segment log in: {}",directory,e);
+            closeSegment();
+        }
+    }
+
+    private void openSegment(long firstMillis) throws IOException {
+        if(!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Unable to create segment log directory: " + directory);
+        }
+        // a segment is never appended to, as its records are encoded from the start of the file
+        long nameMillis = firstMillis;
+        File file = new File(directory,segmentName(nameMillis));
+        while(file.exists()) {
+            file = new File(directory,segmentName(++nameMillis));
+        }
+        segment = new FileOutputStream(file).getChannel();
+        segmentBytes = 0;
+        segmentFirstMillis = firstMillis;
+        previousMillis = 0;
+        previousDeltaMillis = 0;
+        for(int i=0;i<previousCounters.length;i++) {
+            previousCounters[i] = 0;
+        }
+
+        buffer.clear();
+        buffer.putInt(MAGIC);
+        buffer.put(VERSION);
+        buffer.flip();
+        segmentBytes += write();
+        deleteOldSegments();
+    }
+
+    private int write() throws IOException {
+        int written = buffer.remaining();
+        while(buffer.hasRemaining()) {
+            segment.write(buffer);
+        }
+        return written;
+    }
+
+    private void closeSegment() {
+        if(segment==null) return;
+        try {
+            segment.force(false);
+            segment.close();
+        } catch (IOException e) {
+            log.warn("Unable to close segment log in: {}",directory,e);
+        } finally {
+            segment = null;
+        }
+    }
+
+    private void deleteOldSegments() {
+        File[] segments = segments(directory);
+        for(int i=0;i<segments.length-maxSegments;i++) {
+            if(!segments[i].delete()) {
+                log.warn("Unable to delete old segment: {}",segments[i]);
+            }
+        }
+    }
+}
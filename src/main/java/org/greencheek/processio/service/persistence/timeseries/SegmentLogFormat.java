@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.timeseries;
+
+import java.io.File;
+import java.io.FilenameFilter;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * <p>
+ * The format of the segment files written by {@link ProcessIOUsagePersistenceViaSegmentLog} and read by
+ * {@link SegmentLogReader}.
+ * </p>
+ * <p>
+ * A segment starts with a {@value #HEADER_SIZE} byte header: the int {@value #MAGIC} ("PIOS") and a version byte.
+ * The header is followed by one record per sample.  A record is {@value #FIELDS} zig-zag encoded varints:
+ * <ul>
+ *     <li>The delta of delta of the sample's time in millis; the difference between the time since the previous
+ *         sample and the time between the two samples before it.  For a regular sample frequency this is 0, or close
+ *         to it, and so is one byte</li>
+ *     <li>The difference since the previous sample of each of the counters: read_bytes, write_bytes, rchar, wchar,
+ *         syscr, syscw and cancelled_write_bytes</li>
+ * </ul>
+ * The previous time, time delta and counters are taken as 0 at the start of each segment, so the first record of a
+ * segment holds absolute values; and each segment can be decoded on its own.
+ * </p>
+ * <p>
+ * Segment files are named {@value #FILE_PREFIX}&lt;millis of the first sample, zero padded&gt;{@value #FILE_SUFFIX},
+ * so that sorting the names orders the segments by time.
+ * </p>
+ */
+public final class SegmentLogFormat {
+
+    public static final int MAGIC = 0x50494F53;
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 5;
+    public static final String FILE_PREFIX = "processio-";
+    public static final String FILE_SUFFIX = ".seg";
+
+    /**
+     * The time delta of delta, and the seven /proc/PID/io counters
+     */
+    public static final int FIELDS = 8;
+
+    /**
+     * The largest encoded record: a varint of a 64 bit value is at most 10 bytes
+     */
+    public static final int MAX_RECORD_SIZE = FIELDS * 10;
+
+    private static final FilenameFilter SEGMENT_FILES = new FilenameFilter() {
+        @Override
+        public boolean accept(File dir, String name) {
+            return name.startsWith(FILE_PREFIX) && name.endsWith(FILE_SUFFIX);
+        }
+    };
+
+    private SegmentLogFormat() {
+    }
+
+    /**
+     * Returns the name of the segment whose first sample was at the given millis
+     */
+    public static String segmentName(long firstSampleMillis) {
+        return FILE_PREFIX + String.format("%020d",firstSampleMillis) + FILE_SUFFIX;
+    }
+
+    /**
+     * Returns the segment files in the given directory, oldest first
+     */
+    public static File[] segments(File directory) {
+        File[] files = directory.listFiles(SEGMENT_FILES);
+        if(files==null) return new File[0];
+        Arrays.sort(files);
+        return files;
+    }
+
+    static void putVarLong(ByteBuffer buffer, long value) {
+        long zigZag = (value << 1) ^ (value >> 63);
+        while((zigZag & ~0x7FL)!=0) {
+            buffer.put((byte)((zigZag & 0x7F) | 0x80));
+            zigZag >>>= 7;
+        }
+        buffer.put((byte)zigZag);
+    }
+
+    /**
+     * @throws BufferUnderflowException if the buffer ends part way through the value
+     */
+    static long getVarLong(ByteBuffer buffer) {
+        long zigZag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = buffer.get();
+            zigZag |= (long)(b & 0x7F) << shift;
+            shift += 7;
+        } while((b & 0x80)!=0 && shift<70);
+        return (zigZag >>> 1) ^ -(zigZag & 1);
+    }
+}
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.timeseries;
+
+import org.greencheek.processio.domain.ProcessIO;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import static org.greencheek.processio.service.persistence.timeseries.SegmentLogFormat.*;
+
+/**
+ * <p>
+ * Reads the samples written by {@link ProcessIOUsagePersistenceViaSegmentLog}, for offline analysis.  Iterating
+ * returns a {@link ProcessIO} for each sample, holding that sample as the current values and the sample before it as
+ * the previous values, so the rates between samples can be calculated with a
+ * {@link org.greencheek.processio.service.usage.ProcessIOUsage}.  The previous values of the first sample are 0.
+ * </p>
+ * <p>
+ * The segments are decoded lazily, a buffer at a time, so a log of millions of samples can be streamed in little
+ * memory.  A record cut short at the end of a segment (i.e. the jvm was killed part way through a write) ends that
+ * segment.  A segment that cannot be read, or has an unknown header, is logged and skipped.
+ * </p>
+ */
+public class SegmentLogReader implements Iterable<ProcessIO> {
+
+    private static final Logger log = LoggerFactory.getLogger(SegmentLogReader.class);
+
+    private static final int READ_BUFFER_SIZE = 64 * 1024;
+
+    private final File[] segments;
+
+    /**
+     * Reads the segments in the given directory, oldest first
+     */
+    public SegmentLogReader(File directory) {
+        this(segments(directory));
+    }
+
+    /**
+     * Reads the given segments in the order given
+     */
+    public SegmentLogReader(File[] segments) {
+        this.segments = segments.clone();
+    }
+
+    @Override
+    public Iterator<ProcessIO> iterator() {
+        return new SampleIterator();
+    }
+
+    private class SampleIterator implements Iterator<ProcessIO> {
+
+        private final ByteBuffer buffer = ByteBuffer.allocate(READ_BUFFER_SIZE);
+        private final long[] counters = new long[FIELDS-1];
+        private long millis;
+        private long deltaMillis;
+
+        private ProcessIO previous = new ProcessIO();
+        private ProcessIO next;
+
+        private int nextSegment;
+        private FileChannel segment;
+        private boolean endOfSegment;
+
+        @Override
+        public boolean hasNext() {
+            while(next==null) {
+                if(segment==null && !openNextSegment()) return false;
+                next = decode();
+                if(next==null) closeSegment();
+            }
+            return true;
+        }
+
+        @Override
+        public ProcessIO next() {
+            if(!hasNext()) throw new NoSuchElementException();
+            ProcessIO io = next;
+            next = null;
+            previous = io;
+            return io;
+        }
+
+        @Override
+        public void remove() {
+            throw new UnsupportedOperationException();
+        }
+
+        private boolean openNextSegment() {
+            while(nextSegment<segments.length) {
+                File file = segments[nextSegment++];
+                try {
+                    segment = new FileInputStream(file).getChannel();
+                    endOfSegment = false;
+                    buffer.clear();
+                    buffer.flip();
+                    fill();
+                    if(buffer.remaining()>=HEADER_SIZE && buffer.getInt()==MAGIC && buffer.get()==VERSION) {
+                        millis = 0;
+                        deltaMillis = 0;
+                        for(int i=0;i<counters.length;i++) {
+                            counters[i] = 0;
+                        }
+                        return true;
+                    }
+                    log.warn("Skipping segment with an unknown header: {}",file);
+                } catch (IOException e) {
+                    log.warn("Unable to read segment: {}",file,e);
+                }
+                closeSegment();
+            }
+            return false;
+        }
+
+        /**
+         * Returns the next sample of the segment, or null at the end of the segment
+         */
+        private ProcessIO decode() {
+            try {
+                if(buffer.remaining()<MAX_RECORD_SIZE) fill();
+                if(!buffer.hasRemaining()) return null;
+
+                int start = buffer.position();
+                try {
+                    deltaMillis += getVarLong(buffer);
+                    for(int i=0;i<counters.length;i++) {
+                        counters[i] += getVarLong(buffer);
+                    }
+                } catch (BufferUnderflowException e) {
+                    buffer.position(start);
+                    log.warn("Segment ends part way through a sample");
+                    return null;
+                }
+                millis += deltaMillis;
+            } catch (IOException e) {
+                log.warn("Unable to read segment",e);
+                return null;
+            }
+
+            return new ProcessIO(previous.getCurrentSampleMs(),previous.getCurrentSampleReadBytes(),
+                                 previous.getCurrentSampleWriteBytes(),
+                                 millis,counters[0],counters[1],
+                                 previous.getCurrentSampleReadChars(),previous.getCurrentSampleWriteChars(),
+                                 previous.getCurrentSampleReadSyscalls(),previous.getCurrentSampleWriteSyscalls(),
+                                 previous.getCurrentSampleCancelledWriteBytes(),
+                                 counters[2],counters[3],counters[4],counters[5],counters[6]);
+        }
+
+        private void fill() throws IOException {
+            if(endOfSegment) return;
+            buffer.compact();
+            while(buffer.hasRemaining()) {
+                if(segment.read(buffer)<0) {
+                    endOfSegment = true;
+                    break;
+                }
+            }
+            buffer.flip();
+        }
+
+        private void closeSegment() {
+            if(segment==null) return;
+            try {
+                segment.close();
+            } catch (IOException e) {
+                log.warn("Unable to close segment",e);
+            } finally {
+                segment = null;
+            }
+        }
+    }
+}
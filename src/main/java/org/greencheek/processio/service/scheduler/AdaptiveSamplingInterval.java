@@ -0,0 +1,232 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.io.ProcessIOReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * <p>
+ * Decides the interval until the next sample, between a minimum and maximum interval, from the io of each sample;
+ * so that an idle jvm is sampled infrequently, and a busy jvm frequently enough to see short bursts of io.
+ * </p>
+ * <p>
+ * After each sample the combined read and write KB per second since the previous sample is calculated, along with
+ * a moving average and standard deviation of the rate.  Then:
+ * <ul>
+ *     <li>If the rate is at or above the busy threshold, or is rising (above the idle threshold and the average) and
+ *         volatile (the standard deviation is greater than the volatility factor times the average, or times the idle
+ *         threshold if that is greater), the interval is halved (to no less than the minimum)</li>
+ *     <li>If the rate is at or below the idle threshold for a number of consecutive samples, the interval is doubled
+ *         (to no more than the maximum)</li>
+ *     <li>Otherwise the interval is kept</li>
+ * </ul>
+ * The gap between the idle and busy thresholds, and the number of idle samples needed before backing off, provide
+ * the hysteresis that stops the interval flapping between two values.
+ * </p>
+ * <p>
+ * The current interval, and the reason for the last change, are available via
+ * {@link org.greencheek.processio.domain.jmx.AdaptiveSamplingHolder}.  {@link #nextInterval(CurrentProcessIO)} is
+ * called by the single scheduler thread; the getters may be called by any thread.
+ * </p>
+ */
+public class AdaptiveSamplingInterval {
+
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveSamplingInterval.class);
+
+    public static final double DEFAULT_IDLE_KB_PER_SECOND = 64.0;
+    public static final double DEFAULT_BUSY_KB_PER_SECOND = 1024.0;
+    public static final double DEFAULT_VOLATILITY_FACTOR = 0.5;
+    public static final int DEFAULT_IDLE_SAMPLES_BEFORE_BACK_OFF = 3;
+
+    // The weight given to each sample in the moving average and variance of the rate
+    private static final double ALPHA = 0.3;
+
+    private final long minIntervalMillis;
+    private final long maxIntervalMillis;
+    private final double idleKbPerSecond;
+    private final double busyKbPerSecond;
+    private final double volatilityFactor;
+    private final int idleSamplesBeforeBackOff;
+
+    private volatile long intervalMillis;
+    private volatile String lastChangeReason = "initial interval";
+    private volatile long lastChangeMillis;
+    private volatile long intervalChanges;
+    private volatile double lastKbPerSecond;
+
+    private long previousMillis = Long.MIN_VALUE;
+    private long previousBytes;
+    private double averageKbPerSecond;
+    private double varianceKbPerSecond;
+    private boolean seeded;
+    private int idleSamples;
+
+    /**
+     * Creates an adaptive interval with the default thresholds, that starts at the maximum interval
+     */
+    public AdaptiveSamplingInterval(long minIntervalMillis, long maxIntervalMillis) {
+        this(minIntervalMillis,maxIntervalMillis,DEFAULT_IDLE_KB_PER_SECOND,DEFAULT_BUSY_KB_PER_SECOND,
+             DEFAULT_VOLATILITY_FACTOR,DEFAULT_IDLE_SAMPLES_BEFORE_BACK_OFF);
+    }
+
+    /**
+     * @param minIntervalMillis The shortest interval between samples
+     * @param maxIntervalMillis The longest interval between samples, which is also the initial interval
+     * @param idleKbPerSecond The rate at or below which the process is idle
+     * @param busyKbPerSecond The rate at or above which the process is busy, must be greater than the idle rate
+     * @param volatilityFactor The rate is volatile when its standard deviation is greater than this times its average
+     * @param idleSamplesBeforeBackOff The number of consecutive idle samples before the interval is increased
+     */
+    public AdaptiveSamplingInterval(long minIntervalMillis, long maxIntervalMillis,
+                                    double idleKbPerSecond, double busyKbPerSecond,
+                                    double volatilityFactor, int idleSamplesBeforeBackOff) {
+        if(minIntervalMillis<=0 || maxIntervalMillis<minIntervalMillis) {
+            throw new IllegalArgumentException("invalid interval range: " + minIntervalMillis + " to " + maxIntervalMillis);
+        }
+        if(busyKbPerSecond<=idleKbPerSecond) {
+            throw new IllegalArgumentException("busy rate must be greater than the idle rate: " + busyKbPerSecond);
+        }
+        this.minIntervalMillis = minIntervalMillis;
+        this.maxIntervalMillis = maxIntervalMillis;
+        this.idleKbPerSecond = idleKbPerSecond;
+        this.busyKbPerSecond = busyKbPerSecond;
+        this.volatilityFactor = volatilityFactor;
+        this.idleSamplesBeforeBackOff = Math.max(1,idleSamplesBeforeBackOff);
+        this.intervalMillis = maxIntervalMillis;
+        this.lastChangeMillis = System.currentTimeMillis();
+    }
+
+    /**
+     * Returns the interval to wait before the next sample, given the io of the current sample.
+     *
+     * @param io The io read on this sample, or {@link ProcessIOReader#NON_READABLE_PROCESS_IO}, in which
+     *           case the interval is unchanged.
+     * @return The interval in millis
+     */
+    public long nextInterval(CurrentProcessIO io) {
+        if(io==null || io==ProcessIOReader.NON_READABLE_PROCESS_IO) return intervalMillis;
+
+        long millis = io.getCurrentSampleTimeInMillis();
+        long bytes = io.getCurrentReadBytes() + io.getCurrentWriteBytes();
+        boolean first = previousMillis==Long.MIN_VALUE;
+        long elapsed = millis - previousMillis;
+        long difference = bytes - previousBytes;
+        previousMillis = millis;
+        previousBytes = bytes;
+        if(first || elapsed<=0 || difference<0) return intervalMillis;
+
+        double kbPerSecond = (difference / 1024.0) / (elapsed / 1000.0);
+        lastKbPerSecond = kbPerSecond;
+
+        if(seeded) {
+            double deviation = kbPerSecond - averageKbPerSecond;
+            averageKbPerSecond += ALPHA * deviation;
+            varianceKbPerSecond = (1 - ALPHA) * (varianceKbPerSecond + ALPHA * deviation * deviation);
+        } else {
+            averageKbPerSecond = kbPerSecond;
+            seeded = true;
+        }
+        double standardDeviation = Math.sqrt(varianceKbPerSecond);
+
+        // The reason is only formatted when the interval actually changes, not on every busy or idle sample
+        if(kbPerSecond>=busyKbPerSecond) {
+            idleSamples = 0;
+            long interval = clamp(intervalMillis/2);
+            if(interval!=intervalMillis) {
+                change(interval,String.format("rate %.1f KB/s is at or above the busy threshold %.1f KB/s",
+                                              kbPerSecond,busyKbPerSecond));
+            }
+        } else if(kbPerSecond>idleKbPerSecond && kbPerSecond>averageKbPerSecond && standardDeviation>volatilityFactor*Math.max(averageKbPerSecond,idleKbPerSecond)) {
+            idleSamples = 0;
+            long interval = clamp(intervalMillis/2);
+            if(interval!=intervalMillis) {
+                change(interval,String.format("rate %.1f KB/s is volatile, standard deviation %.1f KB/s is above %.1f times the average %.1f KB/s",
+                                              kbPerSecond,standardDeviation,volatilityFactor,averageKbPerSecond));
+            }
+        } else if(kbPerSecond<=idleKbPerSecond) {
+            if(++idleSamples>=idleSamplesBeforeBackOff) {
+                idleSamples = 0;
+                long interval = clamp(intervalMillis*2);
+                if(interval!=intervalMillis) {
+                    change(interval,String.format("rate %.1f KB/s has been at or below the idle threshold %.1f KB/s for %d samples",
+                                                  kbPerSecond,idleKbPerSecond,idleSamplesBeforeBackOff));
+                }
+            }
+        } else {
+            idleSamples = 0;
+        }
+        return intervalMillis;
+    }
+
+    private long clamp(long newIntervalMillis) {
+        return Math.max(minIntervalMillis,Math.min(maxIntervalMillis,newIntervalMillis));
+    }
+
+    private void change(long interval, String reason) {
+        String change = reason + ": interval changed from " + intervalMillis + "ms to " + interval + "ms";
+        log.debug(change);
+        intervalMillis = interval;
+        lastChangeReason = change;
+        lastChangeMillis = System.currentTimeMillis();
+        intervalChanges++;
+    }
+
+    /**
+     * Returns the interval, in millis, until the next sample
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    public long getMinIntervalMillis() {
+        return minIntervalMillis;
+    }
+
+    public long getMaxIntervalMillis() {
+        return maxIntervalMillis;
+    }
+
+    /**
+     * Returns why the interval was last changed
+     */
+    public String getLastChangeReason() {
+        return lastChangeReason;
+    }
+
+    /**
+     * Returns the time, in millis, the interval was last changed
+     */
+    public long getLastChangeMillis() {
+        return lastChangeMillis;
+    }
+
+    /**
+     * Returns the number of times the interval has been changed
+     */
+    public long getIntervalChanges() {
+        return intervalChanges;
+    }
+
+    /**
+     * Returns the combined read and write KB per second between the last two samples
+     */
+    public double getLastKbPerSecond() {
+        return lastKbPerSecond;
+    }
+}
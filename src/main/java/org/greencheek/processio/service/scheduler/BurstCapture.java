@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+import org.greencheek.processio.domain.BurstCaptureOperations;
+import org.greencheek.processio.service.io.FileChannelProcIOProcessIOReader;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+
+/**
+ * <p>
+ * Captures the /proc/PID/io counters at a high frequency (i.e. every 10ms) for a short time (i.e. 30 seconds), so that
+ * the io of the jvm can be seen at a fine resolution during an incident, without sampling at that frequency all the
+ * time.  A capture is started with {@link #start(long, long)} (i.e. from the
+ * {@link org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean#startBurstCapture(long, long)} operation), which
+ * has the {@link BurstProcessIOScheduler} run the capture for the duration, alongside the normal sampling; which
+ * carries on updating the holder, its history, smoothed rates and thresholds while the burst runs.
+ * </p>
+ * <p>
+ * The samples are recorded into a single long array, allocated when the capture is created, of
+ * {@value #COLUMNS} longs per sample: the time in millis followed by the counters in the order written by
+ * {@link FileChannelProcIOProcessIOReader#readCounters(long[], int)}.  The counters are read into the array straight
+ * from the bytes of the file, so no objects are created while capturing.  When the array is full the burst is ended
+ * early.  Each capture overwrites the last.
+ * </p>
+ * <p>
+ * A capture always reads the jvm's own /proc/PID/io, whatever reader the normal sampling uses.  So when the io of the
+ * jvm's child processes is added to the holder's (the agent's children option), the capture does not include it, as
+ * walking the process tree every 10ms would cost far more than the capture itself.
+ * </p>
+ * <p>
+ * The samples of the last capture are returned by {@link #getCapture()}, as a copy of the used part of the array, or
+ * written as comma separated lines to a file by {@link #writeTo(File)}.
+ * </p>
+ */
+public class BurstCapture implements BurstCaptureOperations {
+
+    private static final Logger log = LoggerFactory.getLogger(BurstCapture.class);
+
+    /**
+     * The default number of samples that can be captured: 30 seconds at 10ms
+     */
+    public static final int DEFAULT_CAPACITY = 3000;
+
+    /**
+     * The number of longs recorded per sample
+     */
+    public static final int COLUMNS = 1 + FileChannelProcIOProcessIOReader.COUNTERS;
+
+    private static final String HEADER = "millis,read_bytes,write_bytes,rchar,wchar,syscr,syscw,cancelled_write_bytes";
+
+    private final FileChannelProcIOProcessIOReader reader;
+    private final long[] samples;
+    private final int capacity;
+    private volatile BurstProcessIOScheduler scheduler;
+    private int count;
+    private volatile boolean running;
+
+    /**
+     * @param reader The reader of the /proc/PID/io counters
+     * @param capacity The most samples a capture can hold
+     */
+    public BurstCapture(FileChannelProcIOProcessIOReader reader, int capacity) {
+        if(capacity<=0) throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        this.reader = reader;
+        this.capacity = capacity;
+        this.samples = new long[capacity*COLUMNS];
+    }
+
+    /**
+     * Sets the scheduler that is switched into burst mode when a capture is started
+     */
+    public void setScheduler(BurstProcessIOScheduler scheduler) {
+        this.scheduler = scheduler;
+    }
+
+    /**
+     * Starts a capture, replacing the samples of the previous one.
+     *
+     * @param intervalMillis The interval between the samples of the capture
+     * @param durationMillis How long to capture for
+     * @return false if the capture could not be started: a capture is already running, the interval or duration are
+     *         not positive, or there is no running scheduler
+     */
+    @Override
+    public boolean start(long intervalMillis, long durationMillis) {
+        BurstProcessIOScheduler currentScheduler = scheduler;
+        if(intervalMillis<=0 || durationMillis<=0) {
+            log.warn("Unable to start burst capture with interval {}ms and duration {}ms",intervalMillis,durationMillis);
+            return false;
+        }
+        if(currentScheduler==null) {
+            log.warn("Unable to start burst capture, there is no scheduler");
+            return false;
+        }
+
+        synchronized (this) {
+            if(running) return false;
+            count = 0;
+            running = true;
+        }
+        if(!currentScheduler.startBurst(this,intervalMillis,durationMillis)) {
+            running = false;
+            return false;
+        }
+        log.info("Started burst capture every {}ms for {}ms",intervalMillis,durationMillis);
+        return true;
+    }
+
+    /**
+     * Records a sample, called by the scheduler on each tick of the burst.
+     *
+     * @param sampleTimeInMillis The time of the sample
+     * @return false if the capture is full, and the burst should be ended
+     */
+    synchronized boolean capture(long sampleTimeInMillis) {
+        if(count>=capacity) return false;
+        int offset = count*COLUMNS;
+        if(reader.readCounters(samples,offset+1)) {
+            samples[offset] = sampleTimeInMillis;
+            count++;
+        }
+        return count<capacity;
+    }
+
+    /**
+     * Called by the scheduler when the burst has ended
+     */
+    synchronized void finish() {
+        running = false;
+        log.info("Finished burst capture of {} samples",count);
+    }
+
+    /**
+     * Returns true while a capture is running
+     */
+    @Override
+    public boolean isRunning() {
+        return running;
+    }
+
+    /**
+     * Returns the number of samples captured by the current, or last, capture
+     */
+    public synchronized int getSampleCount() {
+        return count;
+    }
+
+    /**
+     * Returns the most samples a capture can hold
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Returns the samples of the current, or last, capture: {@value #COLUMNS} longs per sample, being the time in
+     * millis followed by the read_bytes, write_bytes, rchar, wchar, syscr, syscw and cancelled_write_bytes counters.
+     */
+    @Override
+    public synchronized long[] getCapture() {
+        long[] capture = new long[count*COLUMNS];
+        System.arraycopy(samples,0,capture,0,capture.length);
+        return capture;
+    }
+
+    /**
+     * Writes the samples of the current, or last, capture to the given file, as a header line followed by a comma
+     * separated line per sample.
+     *
+     * @return false if the file could not be written
+     */
+    @Override
+    public boolean writeTo(File file) {
+        long[] capture = getCapture();
+        Writer writer = null;
+        try {
+            writer = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file),"US-ASCII"));
+            writer.write(HEADER);
+            writer.write('\n');
+            for(int offset=0;offset<capture.length;offset+=COLUMNS) {
+                for(int c=0;c<COLUMNS;c++) {
+                    if(c>0) writer.write(',');
+                    writer.write(Long.toString(capture[offset+c]));
+                }
+                writer.write('\n');
+            }
+            return true;
+        } catch (IOException e) {
+            log.error("Unable to write burst capture to: {}",file.getAbsolutePath(),e);
+            return false;
+        } finally {
+            if(writer!=null) {
+                try {
+                    writer.close();
+                } catch (IOException e) {
+                    log.debug("Unable to close burst capture file: {}",file.getAbsolutePath(),e);
+                }
+            }
+        }
+    }
+}
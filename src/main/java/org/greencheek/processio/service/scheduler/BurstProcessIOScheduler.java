@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+/**
+ * <p>
+ * A {@link ProcessIOScheduler} that can also run a {@link BurstCapture} at a high frequency for a short time.  Kept
+ * apart from {@link ProcessIOScheduler} so that existing implementations of that interface are not broken by it.
+ * </p>
+ */
+public interface BurstProcessIOScheduler extends ProcessIOScheduler {
+
+    /**
+     * Records a sample into the given capture every interval for the given duration
+     *
+     * @param capture The capture to record the samples into
+     * @param intervalMillis The interval between the samples of the capture
+     * @param durationMillis How long to capture for
+     * @return false if the burst could not be started, i.e. a burst is already running
+     */
+    boolean startBurst(BurstCapture capture, long intervalMillis, long durationMillis);
+}
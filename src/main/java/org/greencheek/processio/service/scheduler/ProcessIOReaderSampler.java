@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.io.ProcessIOReader;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+
+/**
+ * <p>
+ * Samples a second {@link ProcessIOReader} (i.e. the io of the jvm's cgroup) on each tick of the scheduler,
+ * persisting the io read to its own {@link ProcessIOUsagePersistence}; as the scheduler does for the process's io.
+ * The io is only persisted if it is not the {@link ProcessIOReader#NON_READABLE_PROCESS_IO} instance.
+ * </p>
+ */
+public class ProcessIOReaderSampler implements ScheduledSampler {
+
+    private final ProcessIOReader reader;
+    private final ProcessIOUsagePersistence persistence;
+
+    public ProcessIOReaderSampler(ProcessIOReader reader, ProcessIOUsagePersistence persistence) {
+        this.reader = reader;
+        this.persistence = persistence;
+    }
+
+    @Override
+    public void sample(long sampleTimeInMillis) {
+        CurrentProcessIO io = reader.getCurrentProcessIO();
+        if(io!=ProcessIOReader.NON_READABLE_PROCESS_IO) {
+            persistence.persist(io);
+        }
+    }
+}
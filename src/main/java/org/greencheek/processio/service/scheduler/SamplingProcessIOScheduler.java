@@ -0,0 +1,32 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+/**
+ * <p>
+ * A {@link ProcessIOScheduler} that also runs {@link ScheduledSampler}s on each of its ticks, after the process io
+ * has been read.  Kept apart from {@link ProcessIOScheduler} so that existing implementations of that interface are
+ * not broken by it.
+ * </p>
+ */
+public interface SamplingProcessIOScheduler extends ProcessIOScheduler {
+
+    /**
+     * Adds a sampler that is to be run on each tick of the scheduler, after the process io has been read
+     * @param sampler The sampler to run
+     */
+    void addSampler(ScheduledSampler sampler);
+}
@@ -21,6 +21,7 @@ import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.util.List;
 import java.util.concurrent.*;
 
 /**
@@ -30,15 +31,28 @@ import java.util.concurrent.*;
  *     <li>calls {@link org.greencheek.processio.service.io.ProcessIOReader#getCurrentProcessIO()}</li>
  *     <li>asks for the resulting {@link CurrentProcessIO} to be persisted by the implementation of {@link ProcessIOUsagePersistence}</li>
  *     <li>The {@link CurrentProcessIO} is only requested to be persisted if is not the {@link ProcessIOReader#NON_READABLE_PROCESS_IO} instance</li>
+ *     <li>runs any {@link ScheduledSampler}s that have been added via {@link #addSampler(ScheduledSampler)}</li>
  * </ul>
  * </p>
  * <p>
+ * When created with an {@link AdaptiveSamplingInterval} the task is not run at a fixed rate.  Instead, after each
+ * run, the task is scheduled to run again after the interval returned by
+ * {@link AdaptiveSamplingInterval#nextInterval(CurrentProcessIO)} for the io just read.
+ * </p>
+ * <p>
+ * A {@link BurstCapture} is run via {@link #startBurst(BurstCapture, long, long)}, as a second task at the burst's
+ * interval until its duration has passed (or it is full).  The normal task keeps running alongside it, so the holder,
+ * its history, smoothed rates and thresholds (and the samplers) are still updated during the incident the burst is
+ * capturing.  As the executor is single threaded, the burst never runs at the same time as a sample; a burst tick
+ * that falls due during a sample runs after it.
+ * </p>
+ * <p>
  * User: dominictootell
  * Date: 22/04/2012
  * Time: 18:38
  * </p>
  */
-public class ScheduledExecutorServiceProcessIOScheduler implements ProcessIOScheduler {
+public class ScheduledExecutorServiceProcessIOScheduler implements SamplingProcessIOScheduler, BurstProcessIOScheduler {
 
 
     private static final Logger log = LoggerFactory.getLogger(ScheduledExecutorServiceProcessIOScheduler.class);
@@ -47,7 +61,12 @@ public class ScheduledExecutorServiceProcessIOScheduler implements ProcessIOSche
     private final ProcessIOReader reader;
     private final ProcessIOUsagePersistence persistence;
     private final long frequencyInMillis;
+    private final AdaptiveSamplingInterval adaptiveInterval;
+    private final List<ScheduledSampler> samplers = new CopyOnWriteArrayList<ScheduledSampler>();
     private volatile ScheduledFuture<?> submittedTask;
+    private volatile ScheduledFuture<?> burstTask;
+    private BurstCapture burstCapture;
+    private long runningFrequencyInMillis = -1;
     private volatile boolean stopped = false;
 
     public ScheduledExecutorServiceProcessIOScheduler(ProcessIOReader ioReader, ProcessIOUsagePersistence persistence) {
@@ -59,6 +78,19 @@ public class ScheduledExecutorServiceProcessIOScheduler implements ProcessIOSche
         this.reader = ioReader;
         this.persistence = persistence;
         this.frequencyInMillis = frequencyInMillis;
+        this.adaptiveInterval = null;
+    }
+
+    /**
+     * Creates a scheduler that samples at the interval chosen by the given {@link AdaptiveSamplingInterval}, rather
+     * than at a fixed frequency.
+     */
+    public ScheduledExecutorServiceProcessIOScheduler(ProcessIOReader ioReader, ProcessIOUsagePersistence persistence,
+                                                      AdaptiveSamplingInterval adaptiveInterval) {
+        this.reader = ioReader;
+        this.persistence = persistence;
+        this.frequencyInMillis = adaptiveInterval.getIntervalMillis();
+        this.adaptiveInterval = adaptiveInterval;
     }
 
 
@@ -74,6 +106,12 @@ public class ScheduledExecutorServiceProcessIOScheduler implements ProcessIOSche
                 submittedTask.cancel(true);
             }
             submittedTask = null;
+            if(burstTask!=null) {
+                burstTask.cancel(true);
+                burstCapture.finish();
+            }
+            burstTask = null;
+            burstCapture = null;
 
             scheduler.shutdownNow();
         } finally {
@@ -85,23 +123,104 @@ public class ScheduledExecutorServiceProcessIOScheduler implements ProcessIOSche
      * Starts the process of periodically obtaining the io usage of the current jvm processing, and
      * asking for that to be persisted.
      *
-     * @param frequencyInMillis The frequency in millis to run the process of obtaining process io info
+     * @param frequencyInMillis The frequency in millis to run the process of obtaining process io info.  Ignored
+     *                          when the interval is adaptive.
      */
     public synchronized void start(long frequencyInMillis) {
         if(!stopped) {
+            runningFrequencyInMillis = frequencyInMillis;
+            run();
+        }
+    }
+
+    private synchronized void run() {
+        if(adaptiveInterval==null) {
             submittedTask =  scheduler.scheduleAtFixedRate(new Runnable() {
                 @Override
                 public void run() {
+                    sample();
+                }
+            },0,runningFrequencyInMillis, TimeUnit.MILLISECONDS);
+        } else {
+            schedule(0);
+        }
+    }
+
+    /**
+     * Records a sample into the given capture every interval, for the given duration, alongside the sampling of the
+     * process io.
+     *
+     * @param capture The capture to record the samples into
+     * @param intervalMillis The interval between the samples of the capture
+     * @param durationMillis How long to capture for
+     * @return false if the scheduler has been stopped, or a burst is already running
+     */
+    @Override
+    public synchronized boolean startBurst(final BurstCapture capture, long intervalMillis, long durationMillis) {
+        if(stopped || burstTask!=null) return false;
+
+        final long endNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(durationMillis);
+        try {
+            burstTask = scheduler.scheduleAtFixedRate(new Runnable() {
+                @Override
+                public void run() {
+                    boolean hasRoom = false;
+                    try {
+                        hasRoom = capture.capture(System.currentTimeMillis());
+                    } catch (Exception e) {
+                        log.error("Exception occurred whilst capturing process io",e);
+                    }
+                    if(!hasRoom || System.nanoTime()-endNanos>=0) endBurst();
+                }
+            },0,intervalMillis,TimeUnit.MILLISECONDS);
+            burstCapture = capture;
+            return true;
+        } catch (RejectedExecutionException e) {
+            log.debug("Scheduler has been shutdown, not starting burst");
+            return false;
+        }
+    }
+
+    private synchronized void endBurst() {
+        if(burstTask==null) return;
+        burstTask.cancel(false);
+        burstTask = null;
+        burstCapture.finish();
+        burstCapture = null;
+    }
+
+    private CurrentProcessIO sample() {
+        CurrentProcessIO io = ProcessIOReader.NON_READABLE_PROCESS_IO;
+        try {
+            log.info("Obtaining process io");
+            io = reader.getCurrentProcessIO();
+            if(io != ProcessIOReader.NON_READABLE_PROCESS_IO) persistence.persist(io);
+            else log.warn("Unable to read process io");
+        } catch (Exception e) {
+            log.error("Exception occurred whilst reading current process io",e);
+        }
+        runSamplers();
+        return io;
+    }
+
+    private synchronized void schedule(long delayInMillis) {
+        if(stopped) return;
+        try {
+            submittedTask = scheduler.schedule(new Runnable() {
+                @Override
+                public void run() {
+                    CurrentProcessIO io = sample();
+                    long interval = adaptiveInterval.getIntervalMillis();
                     try {
-                        log.info("Obtaining process io");
-                        CurrentProcessIO io = reader.getCurrentProcessIO();
-                        if(io != ProcessIOReader.NON_READABLE_PROCESS_IO) persistence.persist(io);
-                        else log.warn("Unable to read process io");
+                        interval = adaptiveInterval.nextInterval(io);
                     } catch (Exception e) {
-                        log.error("Exception occurred whilst reading current process io",e);
+                        log.error("Exception occurred whilst calculating the next sample interval",e);
                     }
+                    schedule(interval);
                 }
-            },0,frequencyInMillis, TimeUnit.MILLISECONDS);
+            },delayInMillis,TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            log.debug("Scheduler has been shutdown, not scheduling next sample");
         }
     }
 
@@ -110,6 +229,29 @@ public class ScheduledExecutorServiceProcessIOScheduler implements ProcessIOSche
         start(this.frequencyInMillis);
     }
 
+    /**
+     * Adds a sampler that is to be run on each tick of the scheduler, after the process io has been read
+     *
+     * @param sampler The sampler to run
+     */
+    @Override
+    public void addSampler(ScheduledSampler sampler) {
+        samplers.add(sampler);
+    }
+
+    private void runSamplers() {
+        if(samplers.isEmpty()) return;
+
+        long now = System.currentTimeMillis();
+        for(ScheduledSampler sampler : samplers) {
+            try {
+                sampler.sample(now);
+            } catch (Exception e) {
+                log.error("Exception occurred whilst running sampler: {}",sampler,e);
+            }
+        }
+    }
+
     /**
      * Makes sure that the thread in the Scheduled Executor don't stop the JVM from exiting
      */
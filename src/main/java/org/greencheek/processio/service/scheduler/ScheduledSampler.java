@@ -0,0 +1,37 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+/**
+ * <p>
+ * Something, other than the {@link org.greencheek.processio.service.io.ProcessIOReader}, that is to be sampled
+ * on the same tick of the {@link SamplingProcessIOScheduler} as the process's io.  For example the io of the individual
+ * threads of the process.
+ * </p>
+ * <p>
+ * Samplers are run on the scheduler's thread, after the process io has been read and persisted.  A sampler
+ * should therefore be quick, and not block.
+ * </p>
+ */
+public interface ScheduledSampler {
+
+    /**
+     * Take a sample.
+     *
+     * @param sampleTimeInMillis The time, in millis, of the scheduler tick on which the sample is being taken
+     */
+    void sample(long sampleTimeInMillis);
+}
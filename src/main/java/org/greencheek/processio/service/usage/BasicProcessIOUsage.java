@@ -31,6 +31,9 @@ import org.greencheek.processio.domain.ProcessIO;
  */
 public class BasicProcessIOUsage implements ProcessIOUsage {
 
+    private static final long[] NO_TIME_CONSTANTS = new long[0];
+    private static final double[] NO_RATES = new double[0];
+
     private final DifferenceInKBPerSecondCalculator differenceCalcuator;
     private final AccumulatedAverageKbPerSecondCalculator accummulationCalculator;
 
@@ -84,6 +87,119 @@ public class BasicProcessIOUsage implements ProcessIOUsage {
         return (getKbPerSecondForReadIO(since, io) / 1024);
     }
 
+    @Override
+    public double getSampleTimeKbPerSecondReadChars(ProcessIO io) {
+        return getKbPerSecond(io.getPreviousSampleMs(),io.getCurrentSampleMs(),
+                              io.getPreviousSampleReadChars(),io.getCurrentSampleReadChars());
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondWriteChars(ProcessIO io) {
+        return getKbPerSecond(io.getPreviousSampleMs(),io.getCurrentSampleMs(),
+                              io.getPreviousSampleWriteChars(),io.getCurrentSampleWriteChars());
+    }
+
+    @Override
+    public double getSampleTimeReadSyscallsPerSecond(ProcessIO io) {
+        return getCountPerSecond(io.getPreviousSampleMs(),io.getCurrentSampleMs(),
+                                 io.getPreviousSampleReadSyscalls(),io.getCurrentSampleReadSyscalls());
+    }
+
+    @Override
+    public double getSampleTimeWriteSyscallsPerSecond(ProcessIO io) {
+        return getCountPerSecond(io.getPreviousSampleMs(),io.getCurrentSampleMs(),
+                                 io.getPreviousSampleWriteSyscalls(),io.getCurrentSampleWriteSyscalls());
+    }
+
+    @Override
+    public double getSampleTimeKbPerSecondCancelledWriteIO(ProcessIO io) {
+        return getKbPerSecond(io.getPreviousSampleMs(),io.getCurrentSampleMs(),
+                              io.getPreviousSampleCancelledWriteBytes(),io.getCurrentSampleCancelledWriteBytes());
+    }
+
+    @Override
+    public double getSampleTimeBytesPerReadSyscall(ProcessIO io) {
+        return getBytesPerSyscall(io.getCurrentSampleReadChars() - io.getPreviousSampleReadChars(),
+                                  io.getCurrentSampleReadSyscalls() - io.getPreviousSampleReadSyscalls());
+    }
+
+    @Override
+    public double getSampleTimeBytesPerWriteSyscall(ProcessIO io) {
+        return getBytesPerSyscall(io.getCurrentSampleWriteChars() - io.getPreviousSampleWriteChars(),
+                                  io.getCurrentSampleWriteSyscalls() - io.getPreviousSampleWriteSyscalls());
+    }
+
+    @Override
+    public double getAccumulatedKbPerSecondReadChars(long since, ProcessIO io) {
+        return getTotalKbPerSecond(since,io.getCurrentSampleMs(),io.getCurrentSampleReadChars());
+    }
+
+    @Override
+    public double getAccumulatedKbPerSecondWriteChars(long since, ProcessIO io) {
+        return getTotalKbPerSecond(since,io.getCurrentSampleMs(),io.getCurrentSampleWriteChars());
+    }
+
+    @Override
+    public double getAccumulatedReadSyscallsPerSecond(long since, ProcessIO io) {
+        return getCountPerSecond(since,io.getCurrentSampleMs(),0,io.getCurrentSampleReadSyscalls());
+    }
+
+    @Override
+    public double getAccumulatedWriteSyscallsPerSecond(long since, ProcessIO io) {
+        return getCountPerSecond(since,io.getCurrentSampleMs(),0,io.getCurrentSampleWriteSyscalls());
+    }
+
+    @Override
+    public double getAccumulatedKbPerSecondCancelledWriteIO(long since, ProcessIO io) {
+        return getTotalKbPerSecond(since,io.getCurrentSampleMs(),io.getCurrentSampleCancelledWriteBytes());
+    }
+
+    @Override
+    public double getAccumulatedBytesPerReadSyscall(ProcessIO io) {
+        return getBytesPerSyscall(io.getCurrentSampleReadChars(),io.getCurrentSampleReadSyscalls());
+    }
+
+    @Override
+    public double getAccumulatedBytesPerWriteSyscall(ProcessIO io) {
+        return getBytesPerSyscall(io.getCurrentSampleWriteChars(),io.getCurrentSampleWriteSyscalls());
+    }
+
+    /**
+     * Passes the previous and current read and write samples of the ProcessIO to
+     * {@link #update(long, long, long, long, long, long)}
+     */
+    @Override
+    public void update(ProcessIO io) {
+        update(io.getPreviousSampleMs(),io.getPreviousSampleReadBytes(),io.getPreviousSampleWriteBytes(),
+               io.getCurrentSampleMs(),io.getCurrentSampleReadBytes(),io.getCurrentSampleWriteBytes());
+    }
+
+    /**
+     * Does nothing, the rates are calculated from the ProcessIO alone
+     */
+    @Override
+    public void update(long previousSampleMs, long previousReadBytes, long previousWriteBytes,
+                       long currentSampleMs, long currentReadBytes, long currentWriteBytes) {
+    }
+
+    /**
+     * The rates are not smoothed, so an empty array is returned
+     */
+    @Override
+    public long[] getSmoothingTimeConstantsInMillis() {
+        return NO_TIME_CONSTANTS;
+    }
+
+    @Override
+    public double[] getSmoothedKbPerSecondReadIO() {
+        return NO_RATES;
+    }
+
+    @Override
+    public double[] getSmoothedKbPerSecondWriteIO() {
+        return NO_RATES;
+    }
+
     /**
      * Simple internal method for accessing the given ProcessIO object to obtain the
      * current sample millis, and the write io for the associated millis.
@@ -166,4 +282,29 @@ public class BasicProcessIOUsage implements ProcessIOUsage {
 
 
     }
+
+    /**
+     * Returns the number of events (i.e. syscalls) per second that occurred between the two time stamps.  As with
+     * {@link #getKbPerSecond(long, long, long, long)} the counters can only increase, so a decrease returns 0.
+     *
+     * @param prevMillis  The previous time stamp at which the counter was read
+     * @param currMillis  The current time stamp at which the counter was read
+     * @param prevCount   The value of the counter previously.
+     * @param currCount   The value of the counter now.
+     * @return the count per second
+     */
+    private double getCountPerSecond(long prevMillis, long currMillis, long prevCount, long currCount) {
+        if(currCount <= prevCount || currMillis <= prevMillis) return 0.0;
+
+        return (currCount - prevCount) / ((currMillis - prevMillis) / 1000.0);
+    }
+
+    /**
+     * Returns the average number of bytes per syscall, or 0 if no syscalls were made
+     */
+    private double getBytesPerSyscall(long bytes, long syscalls) {
+        if(syscalls <= 0 || bytes <= 0) return 0.0;
+
+        return ((double)bytes) / syscalls;
+    }
 }
@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.usage;
+
+/**
+ * <p>
+ * As {@link BasicProcessIOUsage}, but also keeps exponentially weighted moving averages of the read and write
+ * KB per second, in the same manner as the kernel's load average; for a number of time constants (by default 1, 5
+ * and 15 minutes).  The averages give a stable signal that can be polled cheaply, rather than a client having
+ * to fetch and smooth the rate of each sample.
+ * </p>
+ * <p>
+ * The averages are updated on each call to {@link #update(long, long, long, long, long, long)}, with the rate
+ * between the previous and current samples.  As the time between samples can vary (i.e. a delayed scheduler tick)
+ * the weight given to each rate is calculated from the time it covers: for a time constant T and a sample covering t
+ * millis, the average is decayed by e<sup>-t/T</sup>, and the rate is given the weight 1 - e<sup>-t/T</sup>.  The
+ * first rate seen is used as the initial value of each average.
+ * </p>
+ * <p>
+ * An instance holds the state of a single process, and so must not be shared between holders.
+ * </p>
+ */
+public class ExponentiallyWeightedProcessIOUsage extends BasicProcessIOUsage {
+
+    /**
+     * 1, 5 and 15 minutes
+     */
+    public static final long[] DEFAULT_TIME_CONSTANTS_IN_MILLIS = new long[] { 60000, 300000, 900000 };
+
+    private final long[] timeConstantsInMillis;
+    private final double[] readKbPerSecond;
+    private final double[] writeKbPerSecond;
+    private final DifferenceInKBPerSecondCalculator calculator;
+
+    private long lastSampleMillis = Long.MIN_VALUE;
+    private boolean initialised;
+
+    public ExponentiallyWeightedProcessIOUsage() {
+        this(DEFAULT_TIME_CONSTANTS_IN_MILLIS);
+    }
+
+    /**
+     * @param timeConstantsInMillis The time constants, in millis, of the averages to keep
+     */
+    public ExponentiallyWeightedProcessIOUsage(long[] timeConstantsInMillis) {
+        this(timeConstantsInMillis,new PrimitiveBasedDifferenceInKBPerSecondCalculator(),
+             new PrimitiveBasedAccumulatedAverageKBPerSecondCalculator());
+    }
+
+    public ExponentiallyWeightedProcessIOUsage(long[] timeConstantsInMillis,
+                                               DifferenceInKBPerSecondCalculator differenceInKBPerSecondCalculator,
+                                               AccumulatedAverageKbPerSecondCalculator accumulatedAverageKBPerSecondCalculator) {
+        super(differenceInKBPerSecondCalculator,accumulatedAverageKBPerSecondCalculator);
+        for(long timeConstant : timeConstantsInMillis) {
+            if(timeConstant<=0) throw new IllegalArgumentException("time constant must be positive: " + timeConstant);
+        }
+        this.timeConstantsInMillis = timeConstantsInMillis.clone();
+        this.readKbPerSecond = new double[timeConstantsInMillis.length];
+        this.writeKbPerSecond = new double[timeConstantsInMillis.length];
+        this.calculator = differenceInKBPerSecondCalculator;
+    }
+
+    /**
+     * Decays each average by the time between the previous and current samples, and adds the read and write rates
+     * between them.  A sample that has already been seen, has no previous sample, or whose counters have gone
+     * backwards is ignored.
+     */
+    @Override
+    public synchronized void update(long previousMillis, long previousRead, long previousWrite,
+                                    long currentMillis, long currentRead, long currentWrite) {
+        if(currentMillis<=lastSampleMillis || previousMillis<=0 || currentMillis<=previousMillis) return;
+        lastSampleMillis = currentMillis;
+
+        if(currentRead<previousRead || currentWrite<previousWrite) return;
+
+        double readRate = calculator.getDifferenceInKbPerSecond(previousMillis,previousRead,currentMillis,currentRead);
+        double writeRate = calculator.getDifferenceInKbPerSecond(previousMillis,previousWrite,currentMillis,currentWrite);
+
+        long elapsed = currentMillis - previousMillis;
+        for(int i=0;i<timeConstantsInMillis.length;i++) {
+            if(!initialised) {
+                readKbPerSecond[i] = readRate;
+                writeKbPerSecond[i] = writeRate;
+            } else {
+                double decay = Math.exp(-((double)elapsed) / timeConstantsInMillis[i]);
+                readKbPerSecond[i] = readKbPerSecond[i] * decay + readRate * (1.0 - decay);
+                writeKbPerSecond[i] = writeKbPerSecond[i] * decay + writeRate * (1.0 - decay);
+            }
+        }
+        initialised = true;
+    }
+
+    @Override
+    public long[] getSmoothingTimeConstantsInMillis() {
+        return timeConstantsInMillis.clone();
+    }
+
+    @Override
+    public synchronized double[] getSmoothedKbPerSecondReadIO() {
+        return readKbPerSecond.clone();
+    }
+
+    @Override
+    public synchronized double[] getSmoothedKbPerSecondWriteIO() {
+        return writeKbPerSecond.clone();
+    }
+}
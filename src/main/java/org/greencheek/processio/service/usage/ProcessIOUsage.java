@@ -106,5 +106,178 @@ public interface ProcessIOUsage {
      */
     double getAccumulatedMbPerSecondReadIO(long since, ProcessIO io);
 
+    /**
+     * Returns the amount of logical read io (rchar), in KB per second, between the two periods recorded in the
+     * {@link ProcessIO} object.  Unlike the read_bytes counter this includes reads that were served from the page cache.
+     *
+     * @param io The io that has been recorded.
+     * @return The kb (kilobytes) per second that has occurred between the two periods
+     */
+    double getSampleTimeKbPerSecondReadChars(ProcessIO io);
+
+    /**
+     * Returns the amount of logical write io (wchar), in KB per second, between the two periods recorded in the
+     * {@link ProcessIO} object.
+     *
+     * @param io The io that has been recorded.
+     * @return The kb (kilobytes) per second that has occurred between the two periods
+     */
+    double getSampleTimeKbPerSecondWriteChars(ProcessIO io);
+
+    /**
+     * Returns the number of read syscalls (syscr) per second between the two periods recorded in the
+     * {@link ProcessIO} object.
+     *
+     * @param io The io that has been recorded.
+     * @return The read syscalls per second that have occurred between the two periods
+     */
+    double getSampleTimeReadSyscallsPerSecond(ProcessIO io);
+
+    /**
+     * Returns the number of write syscalls (syscw) per second between the two periods recorded in the
+     * {@link ProcessIO} object.
+     *
+     * @param io The io that has been recorded.
+     * @return The write syscalls per second that have occurred between the two periods
+     */
+    double getSampleTimeWriteSyscallsPerSecond(ProcessIO io);
+
+    /**
+     * Returns the amount of cancelled write io (cancelled_write_bytes), in KB per second, between the two periods
+     * recorded in the {@link ProcessIO} object.
+     *
+     * @param io The io that has been recorded.
+     * @return The kb (kilobytes) per second that has occurred between the two periods
+     */
+    double getSampleTimeKbPerSecondCancelledWriteIO(ProcessIO io);
+
+    /**
+     * Returns the average number of bytes (rchar) read per read syscall (syscr) between the two periods
+     * recorded in the {@link ProcessIO} object.  A low value indicates many small reads.
+     *
+     * @param io The io that has been recorded.
+     * @return The average bytes per read syscall, or 0 if no read syscalls occurred
+     */
+    double getSampleTimeBytesPerReadSyscall(ProcessIO io);
+
+    /**
+     * Returns the average number of bytes (wchar) written per write syscall (syscw) between the two periods
+     * recorded in the {@link ProcessIO} object.  A low value indicates many small writes.
+     *
+     * @param io The io that has been recorded.
+     * @return The average bytes per write syscall, or 0 if no write syscalls occurred
+     */
+    double getSampleTimeBytesPerWriteSyscall(ProcessIO io);
+
+    /**
+     * Returns the average amount of logical read io (rchar) that has been processed since the given timestamp,
+     * in KB per second.
+     *
+     * @param since The time since IO usage was being recorded
+     * @param io The io that has been recorded.
+     * @return The kb (kilobytes) per second
+     */
+    double getAccumulatedKbPerSecondReadChars(long since, ProcessIO io);
+
+    /**
+     * Returns the average amount of logical write io (wchar) that has been processed since the given timestamp,
+     * in KB per second.
+     *
+     * @param since The time since IO usage was being recorded
+     * @param io The io that has been recorded.
+     * @return The kb (kilobytes) per second
+     */
+    double getAccumulatedKbPerSecondWriteChars(long since, ProcessIO io);
+
+    /**
+     * Returns the average number of read syscalls (syscr) per second since the given timestamp.
+     *
+     * @param since The time since IO usage was being recorded
+     * @param io The io that has been recorded.
+     * @return The read syscalls per second
+     */
+    double getAccumulatedReadSyscallsPerSecond(long since, ProcessIO io);
+
+    /**
+     * Returns the average number of write syscalls (syscw) per second since the given timestamp.
+     *
+     * @param since The time since IO usage was being recorded
+     * @param io The io that has been recorded.
+     * @return The write syscalls per second
+     */
+    double getAccumulatedWriteSyscallsPerSecond(long since, ProcessIO io);
+
+    /**
+     * Returns the average amount of cancelled write io (cancelled_write_bytes) since the given timestamp,
+     * in KB per second.
+     *
+     * @param since The time since IO usage was being recorded
+     * @param io The io that has been recorded.
+     * @return The kb (kilobytes) per second
+     */
+    double getAccumulatedKbPerSecondCancelledWriteIO(long since, ProcessIO io);
+
+    /**
+     * Returns the average number of bytes (rchar) read per read syscall (syscr), over the lifetime of the process
+     *
+     * @param io The io that has been recorded.
+     * @return The average bytes per read syscall, or 0 if no read syscalls have occurred
+     */
+    double getAccumulatedBytesPerReadSyscall(ProcessIO io);
 
+    /**
+     * Returns the average number of bytes (wchar) written per write syscall (syscw), over the lifetime of the process
+     *
+     * @param io The io that has been recorded.
+     * @return The average bytes per write syscall, or 0 if no write syscalls have occurred
+     */
+    double getAccumulatedBytesPerWriteSyscall(ProcessIO io);
+
+    /**
+     * Called each time a new sample of the process's io has been recorded, with the ProcessIO holding the new sample
+     * and the one before it.  Implementations that keep state between samples (such as moving averages) update
+     * it here; others do nothing.
+     *
+     * @param io The io that has been recorded.
+     */
+    void update(ProcessIO io);
+
+    /**
+     * As {@link #update(ProcessIO)}, but given the previous and current samples as primitives, so that a holder of
+     * the samples does not need to create a ProcessIO for each sample.
+     *
+     * @param previousSampleMs The time in millis of the previous sample
+     * @param previousReadBytes The read bytes at the previous sample
+     * @param previousWriteBytes The write bytes at the previous sample
+     * @param currentSampleMs The time in millis of the current sample
+     * @param currentReadBytes The read bytes at the current sample
+     * @param currentWriteBytes The write bytes at the current sample
+     */
+    void update(long previousSampleMs, long previousReadBytes, long previousWriteBytes,
+                long currentSampleMs, long currentReadBytes, long currentWriteBytes);
+
+    /**
+     * Returns the time constants, in millis, of the smoothed (moving average) read and write rates; or an empty
+     * array if the implementation does not smooth the rates
+     *
+     * @return The time constants in millis, in the order of the values returned by
+     *         {@link #getSmoothedKbPerSecondReadIO()} and {@link #getSmoothedKbPerSecondWriteIO()}
+     */
+    long[] getSmoothingTimeConstantsInMillis();
+
+    /**
+     * Returns the smoothed read rate, in KB per second, for each of the time constants returned by
+     * {@link #getSmoothingTimeConstantsInMillis()}
+     *
+     * @return The kb (kilobytes) per second for each time constant
+     */
+    double[] getSmoothedKbPerSecondReadIO();
+
+    /**
+     * Returns the smoothed write rate, in KB per second, for each of the time constants returned by
+     * {@link #getSmoothingTimeConstantsInMillis()}
+     *
+     * @return The kb (kilobytes) per second for each time constant
+     */
+    double[] getSmoothedKbPerSecondWriteIO();
 }
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the windowed rates calculated from the history of samples
+ */
+public class TestProcessIOHistory {
+
+    private static final double DELTA = 1e-15;
+
+    @Test
+    public void testRatesAreCalculatedOverEachWindow() {
+        ProcessIOHistory history = new ProcessIOHistory(new long[] { 60000, 300000, 900000 },1000);
+
+        // 1KB per second read for 15 minutes, then 10KB per second for the last minute
+        for(int second=0;second<=960;second++) {
+            long kb = second<=900 ? second : 900 + (second-900)*10;
+            history.add(second*1000,kb*1024,0);
+        }
+
+        assertEquals(10.0,history.getKbPerSecondReadIO(0),DELTA);
+        assertEquals((240.0+600.0)/300.0,history.getKbPerSecondReadIO(1),DELTA);
+        assertEquals((840.0+600.0)/900.0,history.getKbPerSecondReadIO(2),DELTA);
+        assertEquals(0.0,history.getKbPerSecondWriteIO(2),DELTA);
+        assertEquals(900000,history.getCoveredMillis(2));
+    }
+
+    @Test
+    public void testWindowLongerThanHistoryUsesOldestSample() {
+        ProcessIOHistory history = new ProcessIOHistory(new long[] { 60000, 900000 },10000);
+        assertEquals(92,history.getCapacity());
+
+        history.add(0,0,0);
+        assertEquals(0.0,history.getKbPerSecondWriteIO(1),DELTA);
+
+        history.add(10000,0,10240);
+        history.add(20000,0,20480);
+
+        assertEquals(1.0,history.getKbPerSecondWriteIO(0),DELTA);
+        assertEquals(1.0,history.getKbPerSecondWriteIO(1),DELTA);
+        assertEquals(20000,history.getCoveredMillis(1));
+    }
+
+    @Test
+    public void testWrappedHistoryStillCalculatesRates() {
+        ProcessIOHistory history = new ProcessIOHistory(new long[] { 5000 },4,new PrimitiveBasedDifferenceInKBPerSecondCalculator());
+
+        for(int second=0;second<100;second++) {
+            history.add(second*1000,second*2048L,second*1024L);
+        }
+
+        assertEquals(4,history.size());
+        // the history only holds the last 4 samples, which cover 3 seconds
+        assertEquals(3000,history.getCoveredMillis(0));
+        assertEquals(2.0,history.getKbPerSecondReadIO(0),DELTA);
+        assertEquals(1.0,history.getKbPerSecondWriteIO(0),DELTA);
+    }
+
+    @Test
+    public void testOutOfOrderAndNonReadableSamplesAreIgnored() {
+        ProcessIOHistory history = new ProcessIOHistory(new long[] { 60000 },1000);
+        history.add(1000,0,0);
+        history.add(2000,1024,1024);
+        history.add(1500,999999,999999);
+        history.add(new CurrentProcessIO(-1,Long.MIN_VALUE,Long.MIN_VALUE));
+
+        assertEquals(2,history.size());
+        assertEquals(1.0,history.getKbPerSecondReadIO(0),DELTA);
+    }
+}
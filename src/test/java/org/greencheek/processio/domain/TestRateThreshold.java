@@ -0,0 +1,98 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the hysteresis, minimum duration and rate limit of the crossing of a rate threshold
+ */
+public class TestRateThreshold {
+
+    private static RateThreshold threshold(double value) {
+        RateThreshold threshold = new RateThreshold();
+        threshold.setThreshold(value);
+        threshold.setMinimumIntervalMillis(0);
+        return threshold;
+    }
+
+    @Test
+    public void testDisabledUntilSet() {
+        RateThreshold threshold = new RateThreshold();
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(1000,1e9));
+        assertFalse(threshold.isExceeded());
+    }
+
+    @Test
+    public void testHysteresisStopsFlapping() {
+        RateThreshold threshold = threshold(100);
+
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(1000,100));
+        assertEquals(RateThreshold.Crossing.EXCEEDED,threshold.update(2000,101));
+        assertTrue(threshold.isExceeded());
+        // within 10% of the threshold is not cleared
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(3000,95));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(4000,120));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(5000,91));
+        assertEquals(RateThreshold.Crossing.CLEARED,threshold.update(6000,89));
+        assertFalse(threshold.isExceeded());
+    }
+
+    @Test
+    public void testMinimumDurationIgnoresShortSpikes() {
+        RateThreshold threshold = threshold(100);
+        threshold.setMinimumDurationMillis(3000);
+
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(1000,500));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(2000,500));
+        // a sample below restarts the duration
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(3000,50));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(4000,500));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(6000,500));
+        assertEquals(RateThreshold.Crossing.EXCEEDED,threshold.update(7000,500));
+    }
+
+    @Test
+    public void testRateLimitHoldsTheCrossingUntilTheIntervalHasPassed() {
+        RateThreshold threshold = threshold(100);
+        threshold.setMinimumIntervalMillis(10000);
+
+        assertEquals(RateThreshold.Crossing.EXCEEDED,threshold.update(1000,500));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(2000,0));
+        assertTrue(threshold.isExceeded());
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(5000,0));
+        assertEquals(RateThreshold.Crossing.CLEARED,threshold.update(11000,0));
+        // a crossing that does not last until the interval has passed is not reported
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(12000,500));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(20000,0));
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(22000,0));
+        assertFalse(threshold.isExceeded());
+    }
+
+    @Test
+    public void testDisablingClearsTheThreshold() {
+        RateThreshold threshold = threshold(100);
+        assertEquals(RateThreshold.Crossing.EXCEEDED,threshold.update(1000,500));
+
+        threshold.setThreshold(0);
+        assertEquals(RateThreshold.Crossing.NONE,threshold.update(2000,500));
+        assertFalse(threshold.isExceeded());
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import org.junit.Test;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sequence locked previous and current samples
+ */
+public class TestSequencedProcessIO {
+
+    @Test
+    public void testUpdateMovesCurrentToPrevious() {
+        SequencedProcessIO sample = new SequencedProcessIO();
+        assertEquals(0,sample.getSequence());
+
+        assertTrue(sample.update(new CurrentProcessIO(1000,10,20,30,40,50,60,70)));
+        assertTrue(sample.update(new CurrentProcessIO(2000,11,21,31,41,51,61,71)));
+
+        ProcessIO io = sample.get();
+        assertEquals(2,sample.getSequence());
+        assertEquals(1000,io.getPreviousSampleMs());
+        assertEquals(10,io.getPreviousSampleReadBytes());
+        assertEquals(20,io.getPreviousSampleWriteBytes());
+        assertEquals(30,io.getPreviousSampleReadChars());
+        assertEquals(70,io.getPreviousSampleCancelledWriteBytes());
+        assertEquals(2000,io.getCurrentSampleMs());
+        assertEquals(11,io.getCurrentSampleReadBytes());
+        assertEquals(21,io.getCurrentSampleWriteBytes());
+        assertEquals(61,io.getCurrentSampleWriteSyscalls());
+        assertEquals(71,io.getCurrentSampleCancelledWriteBytes());
+        assertEquals(2000,sample.getCurrentSampleMs());
+        assertEquals(11,sample.getCurrentSampleReadBytes());
+        assertEquals(21,sample.getCurrentSampleWriteBytes());
+    }
+
+    @Test
+    public void testUnreadableIOIsIgnored() {
+        SequencedProcessIO sample = new SequencedProcessIO();
+        sample.update(new CurrentProcessIO(1000,10,20));
+
+        assertFalse(sample.update(new CurrentProcessIO(2000,Long.MIN_VALUE,Long.MIN_VALUE)));
+        assertEquals(1,sample.getSequence());
+        assertEquals(1000,sample.get().getCurrentSampleMs());
+    }
+
+    @Test
+    public void testReadersNeverSeeAMixOfTwoSamples() throws InterruptedException {
+        final SequencedProcessIO sample = new SequencedProcessIO();
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread[] readers = new Thread[2];
+        for(int i=0;i<readers.length;i++) {
+            readers[i] = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    while(running.get()) {
+                        ProcessIO io = sample.get();
+                        long n = io.getCurrentSampleMs();
+                        if(n==0) continue;
+                        if(io.getCurrentSampleReadBytes()!=n || io.getCurrentSampleCancelledWriteBytes()!=n
+                           || io.getPreviousSampleMs()!=n-1 || io.getPreviousSampleCancelledWriteBytes()!=n-1) {
+                            failure.compareAndSet(null,"torn sample at " + n);
+                        }
+                    }
+                }
+            });
+            readers[i].start();
+        }
+
+        for(long n=1;n<=2000000;n++) {
+            sample.update(new CurrentProcessIO(n,n,n,n,n,n,n,n));
+        }
+        running.set(false);
+        for(Thread reader : readers) {
+            reader.join();
+        }
+
+        assertNull(failure.get());
+    }
+}
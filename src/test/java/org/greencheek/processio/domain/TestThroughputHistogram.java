@@ -0,0 +1,89 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.domain;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the percentiles returned by the log bucketed throughput histogram
+ */
+public class TestThroughputHistogram {
+
+    @Test
+    public void testBucketsCoverEveryValueWithBoundedError() {
+        long previousHighest = -1;
+        for(int bucket=0;bucket<=ThroughputHistogram.bucketFor(ThroughputHistogram.HIGHEST_TRACKABLE_VALUE);bucket++) {
+            long highest = ThroughputHistogram.highestValueIn(bucket);
+            long lowest = previousHighest + 1;
+            assertEquals(bucket,ThroughputHistogram.bucketFor(lowest));
+            assertEquals(bucket,ThroughputHistogram.bucketFor(highest));
+            assertTrue((highest - lowest) <= lowest / ThroughputHistogram.SUB_BUCKETS);
+            previousHighest = highest;
+        }
+    }
+
+    @Test
+    public void testPercentilesShowBursts() {
+        ThroughputHistogram histogram = new ThroughputHistogram();
+        // 990 intervals at 1MB per second, and 10 at 400MB per second
+        for(int i=0;i<990;i++) {
+            histogram.record(1024*1024);
+        }
+        for(int i=0;i<10;i++) {
+            histogram.record(400L*1024*1024);
+        }
+
+        assertEquals(1000,histogram.getTotalCount());
+        assertWithinBucket(1024*1024,histogram.getValueAtPercentile(50.0));
+        assertWithinBucket(1024*1024,histogram.getValueAtPercentile(99.0));
+        assertEquals(400L*1024*1024,histogram.getValueAtPercentile(99.9));
+        assertEquals(400L*1024*1024,histogram.getMax());
+    }
+
+    @Test
+    public void testPercentileIsWithinTheBucketError() {
+        ThroughputHistogram histogram = new ThroughputHistogram();
+        for(long value=1;value<=100000;value++) {
+            histogram.record(value*1000);
+        }
+
+        assertWithinBucket(90000000L,histogram.getValueAtPercentile(90.0));
+        assertEquals(100000000L,histogram.getValueAtPercentile(100.0));
+    }
+
+    @Test
+    public void testResetClearsTheValues() {
+        ThroughputHistogram histogram = new ThroughputHistogram();
+        histogram.record(100);
+        histogram.record(-1);
+        histogram.record(Long.MAX_VALUE);
+        assertEquals(2,histogram.getTotalCount());
+        assertEquals(Long.MAX_VALUE,histogram.getMax());
+
+        histogram.reset();
+        assertEquals(0,histogram.getTotalCount());
+        assertEquals(0,histogram.getValueAtPercentile(99.0));
+        assertEquals(0,histogram.getMax());
+    }
+
+    private static void assertWithinBucket(long expected, long actual) {
+        assertTrue(actual + " is less than " + expected,actual >= expected);
+        assertTrue(actual + " is not within the bucket of " + expected,actual <= expected + expected/ThroughputHistogram.SUB_BUCKETS);
+    }
+}
@@ -17,11 +17,30 @@ package org.greencheek.processio.domain.jmx;
 
 import org.greencheek.processio.domain.CurrentProcessIO;
 import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.domain.ProcessIOHistory;
+import org.greencheek.processio.domain.ThroughputHistogram;
+import org.greencheek.processio.domain.ThroughputPercentiles;
 import org.greencheek.processio.service.usage.BasicProcessIOUsage;
 import org.junit.Before;
 import org.junit.Test;
 
+import javax.management.Attribute;
+import javax.management.MBeanServer;
+import javax.management.MBeanServerFactory;
+import javax.management.Notification;
+import javax.management.NotificationListener;
+import javax.management.ObjectName;
+import javax.management.openmbean.CompositeData;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
 
 /**
  * User: dominictootell
@@ -64,6 +83,20 @@ public class TestProcessIOUsageHolder {
 
     }
 
+    @Test
+    public void testSampleSequenceCountsRecordedSamples() {
+        ProcessIOUsageHolder holder = (ProcessIOUsageHolder)usageMXBean;
+        assertEquals(0,usageMXBean.getSampleSequence());
+
+        holder.setProcessIO(new CurrentProcessIO(1000,0,0));
+        holder.setProcessIO(new CurrentProcessIO(2000,Long.MIN_VALUE,Long.MIN_VALUE));
+        holder.setProcessIO(new CurrentProcessIO(3000,1024,2048));
+
+        assertEquals(2,usageMXBean.getSampleSequence());
+        assertEquals(1000,usageMXBean.getProcessIO().getPreviousSampleMs());
+        assertEquals(3000,usageMXBean.getProcessIO().getCurrentSampleMs());
+    }
+
 
     @Test
     public void testProcessIOUsageIsUpdateableAndReturnsCorrectUsage() {
@@ -112,4 +145,118 @@ public class TestProcessIOUsageHolder {
         assertEquals(1.0,usageMXBean.getSampleTimeMbPerSecondWriteIO(),DELTA);
 
     }
+
+    @Test
+    public void testWindowedRatesAreReturnedForEachWindow() {
+        ProcessIOUsageHolder holder = new ProcessIOUsageHolder(0,new BasicProcessIOUsage(),
+                new ProcessIOHistory(new long[] { 60000, 120000 },60000));
+
+        holder.setProcessIO(new CurrentProcessIO(0,0,0));
+        holder.setProcessIO(new CurrentProcessIO(60000,60*1024,0));
+        holder.setProcessIO(new CurrentProcessIO(120000,180*1024,60*1024));
+
+        assertEquals(2,holder.getHistoryWindowsInMillis().length);
+        assertEquals(120000,holder.getHistoryWindowsInMillis()[1]);
+
+        assertEquals(2.0,holder.getWindowedKbPerSecondReadIO()[0],DELTA);
+        assertEquals(1.5,holder.getWindowedKbPerSecondReadIO()[1],DELTA);
+        assertEquals(1.0,holder.getWindowedKbPerSecondWriteIO()[0],DELTA);
+        assertEquals(0.5,holder.getWindowedKbPerSecondWriteIO()[1],DELTA);
+    }
+
+    @Test
+    public void testThroughputPercentilesAreRecordedForEachInterval() {
+        ProcessIOUsageHolder holder = new ProcessIOUsageHolder(0,new BasicProcessIOUsage());
+
+        holder.setProcessIO(new CurrentProcessIO(1000,0,0));
+        long read = 0;
+        for(int second=2;second<=101;second++) {
+            // one interval of 64KB per second, the others at 1KB per second
+            read += second==50 ? 64*1024 : 1024;
+            holder.setProcessIO(new CurrentProcessIO(second*1000,read,0));
+        }
+
+        ThroughputPercentiles percentiles = holder.getReadThroughputPercentiles();
+        assertEquals(100,percentiles.getSampleCount());
+        // percentiles are reported to within the size of a histogram bucket
+        assertEquals(1.0,percentiles.getP50KbPerSecond(),1.0/ThroughputHistogram.SUB_BUCKETS);
+        assertEquals(1.0,percentiles.getP99KbPerSecond(),1.0/ThroughputHistogram.SUB_BUCKETS);
+        assertEquals(64.0,percentiles.getP999KbPerSecond(),DELTA);
+        assertEquals(64.0,percentiles.getMaxKbPerSecond(),DELTA);
+        assertEquals(0.0,holder.getWriteThroughputPercentiles().getMaxKbPerSecond(),DELTA);
+
+        holder.resetThroughputPercentiles();
+        assertEquals(0,holder.getReadThroughputPercentiles().getSampleCount());
+    }
+
+    @Test
+    public void testThresholdNotificationsAreSentToSubscribers() throws Exception {
+        ProcessIOUsageHolder holder = new ProcessIOUsageHolder(0,new BasicProcessIOUsage());
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName("test:type=processiousage");
+        server.registerMBean(holder,name);
+
+        final List<Notification> notifications = new CopyOnWriteArrayList<Notification>();
+        server.addNotificationListener(name,new NotificationListener() {
+            @Override
+            public void handleNotification(Notification notification, Object handback) {
+                notifications.add(notification);
+            }
+        },null,null);
+
+        // set at runtime as jmx attributes
+        server.setAttribute(name,new Attribute("WriteThresholdKbPerSecond",1024.0));
+        server.setAttribute(name,new Attribute("ThresholdNotificationIntervalMillis",0L));
+
+        holder.setProcessIO(new CurrentProcessIO(1000,0,0));
+        holder.setProcessIO(new CurrentProcessIO(2000,0,512*1024));
+        assertTrue(notifications.isEmpty());
+
+        holder.setProcessIO(new CurrentProcessIO(3000,4096*1024,2560*1024));
+        assertEquals(1,notifications.size());
+        assertEquals(ProcessIOUsageHolder.WRITE_THRESHOLD_EXCEEDED,notifications.get(0).getType());
+        assertEquals(name,notifications.get(0).getSource());
+        assertEquals(2048.0,(Double)notifications.get(0).getUserData(),DELTA);
+        assertTrue((Boolean)server.getAttribute(name,"WriteThresholdExceeded"));
+        assertFalse(holder.isReadThresholdExceeded());
+
+        holder.setProcessIO(new CurrentProcessIO(4000,4096*1024,2560*1024));
+        assertEquals(2,notifications.size());
+        assertEquals(ProcessIOUsageHolder.WRITE_THRESHOLD_CLEARED,notifications.get(1).getType());
+        assertTrue(notifications.get(1).getSequenceNumber()>notifications.get(0).getSequenceNumber());
+    }
+
+    @Test
+    public void testSnapshotIsOfOneSampleAndCachedUntilTheNext() throws Exception {
+        ProcessIOUsageHolder holder = new ProcessIOUsageHolder(0,new BasicProcessIOUsage());
+        MBeanServer server = MBeanServerFactory.newMBeanServer();
+        ObjectName name = new ObjectName("test:type=processiousage");
+        server.registerMBean(holder,name);
+
+        holder.setProcessIO(new CurrentProcessIO(1000,0,0,0,0,0,0,0));
+        holder.setProcessIO(new CurrentProcessIO(2000,2048,1024,4096,8192,10,20,512));
+
+        CompositeData snapshot = (CompositeData)server.getAttribute(name,"Snapshot");
+        assertEquals(holder.getSampleSequence(),snapshot.get("sampleSequence"));
+        assertEquals(2000L,snapshot.get("currentSampleMs"));
+        assertEquals(1000L,snapshot.get("previousSampleMs"));
+        assertEquals(2048L,snapshot.get("currentSampleReadBytes"));
+        assertEquals(512L,snapshot.get("currentSampleCancelledWriteBytes"));
+        assertEquals(holder.getSampleTimeKbPerSecondReadIO(),(Double)snapshot.get("sampleTimeKbPerSecondReadIO"),DELTA);
+        assertEquals(holder.getAccumulatedMbPerSecondWriteIO(),(Double)snapshot.get("accumulatedMbPerSecondWriteIO"),DELTA);
+        assertEquals(holder.getSampleTimeBytesPerWriteSyscall(),(Double)snapshot.get("sampleTimeBytesPerWriteSyscall"),DELTA);
+
+        assertSame(holder.getSnapshot(),holder.getSnapshot());
+        assertSame(snapshot,server.getAttribute(name,"Snapshot"));
+
+        holder.setProcessIO(new CurrentProcessIO(3000,4096,1024));
+        CompositeData next = (CompositeData)server.getAttribute(name,"Snapshot");
+        assertNotSame(snapshot,next);
+        assertEquals(3000L,next.get("currentSampleMs"));
+        assertEquals(2.0,(Double)next.get("sampleTimeKbPerSecondReadIO"),DELTA);
+        assertEquals(2.0,ProcessIOSnapshot.from(next).getSampleTimeKbPerSecondReadIO(),DELTA);
+        assertArrayEquals(holder.getSmoothingTimeConstantsInMillis(),(long[])next.get("smoothingTimeConstantsInMillis"));
+        assertTrue(Arrays.equals(holder.getSmoothedKbPerSecondReadIO(),ProcessIOSnapshot.from(next).getSmoothedKbPerSecondReadIO()));
+        assertTrue(Arrays.equals(holder.getSmoothedKbPerSecondWriteIO(),holder.getSnapshot().getSmoothedKbPerSecondWriteIO()));
+    }
 }
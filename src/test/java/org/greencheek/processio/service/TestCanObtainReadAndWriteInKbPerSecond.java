@@ -36,6 +36,7 @@ public class TestCanObtainReadAndWriteInKbPerSecond {
     private ProcessIO halfMbObject;
     private ProcessIO oneKbObject;
     private ProcessIO oneGbReadAndHalfGbWriteObject;
+    private ProcessIO syscallObject;
     private ProcessIOUsage processIOUsage;
 
     @Before
@@ -45,6 +46,11 @@ public class TestCanObtainReadAndWriteInKbPerSecond {
         oneKbObject  = new ProcessIO(0,0,0,1000,1024,1024);
         oneGbReadAndHalfGbWriteObject  = new ProcessIO(0,0,0,10000,(1024l*1024l*1024l*10l),(1024l*1024l*1024l*5l));
 
+        // 2 seconds, 4mb of rchar over 1024 read syscalls, 1mb of wchar over 1024*1024 write syscalls
+        syscallObject = new ProcessIO(1000,0,0,3000,0,0,
+                                      0,0,0,0,0,
+                                      4*1024*1024,1024*1024,1024,1024*1024,2048);
+
         processIOUsage = new BasicProcessIOUsage();
     }
 
@@ -94,4 +100,34 @@ public class TestCanObtainReadAndWriteInKbPerSecond {
         assertEquals(1048576.0,value,DELTA);
     }
 
+    @Test
+    public void testLogicalIOIsReturnedByCalculator() {
+        assertEquals(2048.0,processIOUsage.getSampleTimeKbPerSecondReadChars(syscallObject),DELTA);
+        assertEquals(512.0,processIOUsage.getSampleTimeKbPerSecondWriteChars(syscallObject),DELTA);
+        assertEquals(1.0,processIOUsage.getSampleTimeKbPerSecondCancelledWriteIO(syscallObject),DELTA);
+
+        assertEquals(4096.0/3,processIOUsage.getAccumulatedKbPerSecondReadChars(0,syscallObject),DELTA);
+        assertEquals(1024.0/3,processIOUsage.getAccumulatedKbPerSecondWriteChars(0,syscallObject),DELTA);
+        assertEquals(2.0/3,processIOUsage.getAccumulatedKbPerSecondCancelledWriteIO(0,syscallObject),DELTA);
+    }
+
+    @Test
+    public void testSyscallsPerSecondIsReturnedByCalculator() {
+        assertEquals(512.0,processIOUsage.getSampleTimeReadSyscallsPerSecond(syscallObject),DELTA);
+        assertEquals(512.0*1024,processIOUsage.getSampleTimeWriteSyscallsPerSecond(syscallObject),DELTA);
+
+        assertEquals(1024.0/3,processIOUsage.getAccumulatedReadSyscallsPerSecond(0,syscallObject),DELTA);
+        assertEquals(1024.0*1024/3,processIOUsage.getAccumulatedWriteSyscallsPerSecond(0,syscallObject),DELTA);
+    }
+
+    @Test
+    public void testBytesPerSyscallIsReturnedByCalculator() {
+        assertEquals(4096.0,processIOUsage.getSampleTimeBytesPerReadSyscall(syscallObject),DELTA);
+        assertEquals(1.0,processIOUsage.getSampleTimeBytesPerWriteSyscall(syscallObject),DELTA);
+        assertEquals(4096.0,processIOUsage.getAccumulatedBytesPerReadSyscall(syscallObject),DELTA);
+        assertEquals(1.0,processIOUsage.getAccumulatedBytesPerWriteSyscall(syscallObject),DELTA);
+
+        assertEquals(0.0,processIOUsage.getSampleTimeBytesPerReadSyscall(oneMbObject),DELTA);
+    }
+
 }
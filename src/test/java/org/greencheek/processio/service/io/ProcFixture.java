@@ -0,0 +1,66 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+/**
+ * Creates, writes and removes the fixture /proc directories and files that the readers' tests sample from
+ */
+final class ProcFixture {
+
+    private ProcFixture() {
+    }
+
+    /**
+     * Creates an empty temporary directory, removed with {@link #delete(File)}
+     */
+    static File createDirectory(String suffix) throws IOException {
+        File directory = File.createTempFile("processio",suffix);
+        directory.delete();
+        directory.mkdirs();
+        return directory;
+    }
+
+    /**
+     * Writes the content to the file in place (so a file kept open by a reader sees the new content), creating the
+     * file's directory if needed
+     */
+    static void write(File file, String content) throws IOException {
+        file.getParentFile().mkdirs();
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Deletes the file, or the directory and everything in it
+     */
+    static void delete(File file) {
+        File[] children = file.listFiles();
+        if(children!=null) {
+            for(File child : children) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
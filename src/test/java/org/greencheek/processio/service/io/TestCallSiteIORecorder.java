@@ -0,0 +1,128 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CallSiteIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the counting of the bytes of io calls against their call sites
+ */
+public class TestCallSiteIORecorder {
+
+    private static final double DELTA = 1e-9;
+
+    @Before
+    public void setUp() {
+        CallSiteIORecorder.reset();
+        CallSiteIORecorder.enable(1,CallSiteIORecorder.DEFAULT_MAX_CALL_SITES);
+    }
+
+    @After
+    public void tearDown() {
+        CallSiteIORecorder.disable();
+        CallSiteIORecorder.reset();
+    }
+
+    @Test
+    public void testBytesOfEachCallAreCountedAgainstTheCaller() {
+        assertEquals(4096,CallSiteIORecorder.read(4096));
+        assertEquals(8192L,CallSiteIORecorder.write(8192L));
+        assertEquals(65,CallSiteIORecorder.readByte(65));
+        // the end of the stream, and empty reads and writes, are not io
+        assertEquals(-1,CallSiteIORecorder.read(-1));
+        assertEquals(-1,CallSiteIORecorder.readByte(-1));
+        assertEquals(0,CallSiteIORecorder.write(0));
+
+        Map<String,long[]> sites = CallSiteIORecorder.getCallSites();
+        assertEquals(1,sites.size());
+        long[] site = sites.get(getClass().getName() + ".testBytesOfEachCallAreCountedAgainstTheCaller");
+        assertEquals(4096+8192+1,site[0]);
+        assertEquals(3,site[1]);
+    }
+
+    @Test
+    public void testNothingIsCountedWhenDisabled() {
+        CallSiteIORecorder.disable();
+        assertEquals(4096,CallSiteIORecorder.read(4096));
+        assertEquals(0,CallSiteIORecorder.getCallSiteCount());
+    }
+
+    @Test
+    public void testCallSitesBeyondTheMaximumAreCountedAsOther() {
+        CallSiteIORecorder.enable(1,1);
+        CallSiteIORecorder.write(100);
+        writeFromAnotherCallSite(200);
+        writeFromAnotherCallSite(300);
+
+        Map<String,long[]> sites = CallSiteIORecorder.getCallSites();
+        assertEquals(2,sites.size());
+        assertEquals(500,sites.get(CallSiteIORecorder.OTHER_CALL_SITES)[0]);
+
+        CallSiteIORecorder.reset();
+        assertEquals(0,CallSiteIORecorder.getCallSiteCount());
+    }
+
+    @Test
+    public void testSampledCallsAreMultipliedByTheSamplingRate() {
+        CallSiteIORecorder.enable(4,CallSiteIORecorder.DEFAULT_MAX_CALL_SITES);
+        assertEquals(4,CallSiteIORecorder.getSampleEveryCalls());
+        for(int i=0;i<1000;i++) {
+            CallSiteIORecorder.read(10);
+        }
+        long[] site = CallSiteIORecorder.getCallSites().values().iterator().next();
+        assertEquals(site[1]*40,site[0]);
+    }
+
+    @Test
+    public void testCallSiteIsTheFirstFrameOutsideTheJdkAndTheRecorder() {
+        StackTraceElement[] stack = new StackTraceElement[] {
+                new StackTraceElement(CallSiteIORecorder.class.getName(),"write","CallSiteIORecorder.java",100),
+                new StackTraceElement("sun.nio.ch.FileChannelImpl","write","FileChannelImpl.java",200),
+                new StackTraceElement("java.nio.channels.Channels","writeFully","Channels.java",70),
+                new StackTraceElement("com.example.store.SegmentWriter","flush","SegmentWriter.java",42)
+        };
+        assertEquals("com.example.store.SegmentWriter.flush",CallSiteIORecorder.callSite(stack));
+        assertEquals(CallSiteIORecorder.UNKNOWN_CALL_SITE,CallSiteIORecorder.callSite(new StackTraceElement[] { stack[0], stack[1] }));
+    }
+
+    @Test
+    public void testTopCallSitesAreOrderedByBytes() {
+        CallSiteIORecorder.write(100);
+        writeFromAnotherCallSite(300);
+
+        CallSiteIO[] sites = CallSiteIOInstrumentation.topCallSites(CallSiteIORecorder.getCallSites(),1000,10);
+        assertEquals(2,sites.length);
+        assertEquals(getClass().getName() + ".writeFromAnotherCallSite",sites[0].getCallSite());
+        assertEquals(300,sites[0].getBytes());
+        assertEquals(75.0,sites[0].getPercentOfAttributedBytes(),DELTA);
+        assertEquals(1000,sites[0].getSinceMillis());
+        assertEquals(100,sites[1].getBytes());
+
+        assertEquals(1,CallSiteIOInstrumentation.topCallSites(CallSiteIORecorder.getCallSites(),1000,1).length);
+        assertEquals(0,CallSiteIOInstrumentation.topCallSites(CallSiteIORecorder.getCallSites(),1000,0).length);
+    }
+
+    private void writeFromAnotherCallSite(int bytes) {
+        CallSiteIORecorder.write(bytes);
+    }
+}
@@ -0,0 +1,179 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.lang.reflect.InvocationTargetException;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the rewriting of io methods, using a stand in for the io classes of the jdk
+ */
+public class TestCallSiteIOTransformer {
+
+    private static final String IO_CLASS = "org/greencheek/processio/service/io/TestCallSiteIOTransformer$FakeIO";
+    private static final String CALL_SITE = FakeIO.class.getName();
+
+    private Object io;
+    private Class<?> ioClass;
+
+    /**
+     * Stands in for an io class of the jdk, reading and writing nothing
+     */
+    public static class FakeIO {
+        public int read() {
+            return 'a';
+        }
+
+        public int readAtEnd() {
+            return -1;
+        }
+
+        public int read(byte[] b, int off, int len) {
+            if(len==0) return 0;
+            return len - 1;
+        }
+
+        public long read(byte[][] buffers, int offset, int length) {
+            return 1L << 33;
+        }
+
+        public void write(int b) {
+        }
+
+        public void write(byte[] b) {
+        }
+
+        public void write(byte[] b, int off, int len) {
+            if(len>10) return;
+        }
+
+        public int write(byte[] b, long position) {
+            return b.length;
+        }
+    }
+
+    private static final class DefiningClassLoader extends ClassLoader {
+        private DefiningClassLoader() {
+            super(TestCallSiteIOTransformer.class.getClassLoader());
+        }
+
+        private Class<?> define(String name, byte[] classfile) {
+            return defineClass(name,classfile,0,classfile.length);
+        }
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        CallSiteIORecorder.reset();
+        CallSiteIORecorder.enable(1,CallSiteIORecorder.DEFAULT_MAX_CALL_SITES);
+
+        CallSiteIOTransformer transformer = new CallSiteIOTransformer(Arrays.asList(
+                new CallSiteIOTransformer.Target(IO_CLASS,"read","()I",CallSiteIOTransformer.Probe.READ_BYTE_RETURNED),
+                new CallSiteIOTransformer.Target(IO_CLASS,"readAtEnd","()I",CallSiteIOTransformer.Probe.READ_BYTE_RETURNED),
+                new CallSiteIOTransformer.Target(IO_CLASS,"read","([BII)I",CallSiteIOTransformer.Probe.READ_RETURNED),
+                new CallSiteIOTransformer.Target(IO_CLASS,"read","([[BII)J",CallSiteIOTransformer.Probe.READ_RETURNED),
+                new CallSiteIOTransformer.Target(IO_CLASS,"write","(I)V",CallSiteIOTransformer.Probe.WRITE_BYTE),
+                new CallSiteIOTransformer.Target(IO_CLASS,"write","([B)V",CallSiteIOTransformer.Probe.WRITE_ARRAY_LENGTH),
+                new CallSiteIOTransformer.Target(IO_CLASS,"write","([BII)V",CallSiteIOTransformer.Probe.WRITE_LENGTH_PARAMETER),
+                new CallSiteIOTransformer.Target(IO_CLASS,"write","([BJ)I",CallSiteIOTransformer.Probe.WRITE_RETURNED)
+        ));
+        assertTrue(transformer.isTarget(CALL_SITE));
+        assertNull(transformer.transform(null,"java/io/FileDescriptor",null,null,new byte[0]));
+
+        byte[] classfile = transformer.transform(null,IO_CLASS,null,null,classfile(IO_CLASS));
+        ioClass = new DefiningClassLoader().define(CALL_SITE,classfile);
+        io = ioClass.newInstance();
+    }
+
+    @After
+    public void tearDown() {
+        CallSiteIORecorder.disable();
+        CallSiteIORecorder.reset();
+    }
+
+    @Test
+    public void testReturnedBytesAreRecordedAndReturnedUnchanged() throws Exception {
+        assertEquals(99,invoke("read",new Class<?>[] {byte[].class,int.class,int.class},new byte[100],0,100));
+        assertEquals(0,invoke("read",new Class<?>[] {byte[].class,int.class,int.class},new byte[100],0,0));
+        assertEquals(1L << 33,invoke("read",new Class<?>[] {byte[][].class,int.class,int.class},new byte[0][],0,0));
+        assertEquals(3,invoke("write",new Class<?>[] {byte[].class,long.class},new byte[3],0L));
+        assertEquals(99 + (1L << 33) + 3,callSiteBytes("read") + callSiteBytes("write"));
+        assertEquals(2,callSiteCalls("read"));
+    }
+
+    @Test
+    public void testSingleByteReadsCountOneByteUntilTheEnd() throws Exception {
+        assertEquals((int)'a',invoke("read",new Class<?>[0]));
+        assertEquals(-1,invoke("readAtEnd",new Class<?>[0]));
+        assertEquals(1,callSiteBytes("read"));
+        assertEquals(0,callSiteCalls("readAtEnd"));
+    }
+
+    @Test
+    public void testVoidWritesCountTheBytesGivenToThemOnEachReturn() throws Exception {
+        invoke("write",new Class<?>[] {int.class},7);
+        invoke("write",new Class<?>[] {byte[].class},new byte[10]);
+        invoke("write",new Class<?>[] {byte[].class,int.class,int.class},new byte[100],10,5);
+        invoke("write",new Class<?>[] {byte[].class,int.class,int.class},new byte[100],10,50);
+        assertEquals(1+10+5+50,callSiteBytes("write"));
+        assertEquals(4,callSiteCalls("write"));
+    }
+
+    private Object invoke(String method, Class<?>[] parameterTypes, Object... args) throws Exception {
+        try {
+            return ioClass.getMethod(method,parameterTypes).invoke(io,args);
+        } catch(InvocationTargetException e) {
+            throw (Exception)e.getCause();
+        }
+    }
+
+    // the stand in is not in the jdk, so is itself the call site
+    private long callSiteBytes(String method) {
+        long[] site = CallSiteIORecorder.getCallSites().get(CALL_SITE + "." + method);
+        return site==null ? 0 : site[0];
+    }
+
+    private long callSiteCalls(String method) {
+        long[] site = CallSiteIORecorder.getCallSites().get(CALL_SITE + "." + method);
+        return site==null ? 0 : site[1];
+    }
+
+    private static byte[] classfile(String className) throws IOException {
+        InputStream in = TestCallSiteIOTransformer.class.getClassLoader().getResourceAsStream(className + ".class");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try {
+            byte[] buffer = new byte[4096];
+            int read;
+            while((read = in.read(buffer))!=-1) {
+                out.write(buffer,0,read);
+            }
+        } finally {
+            in.close();
+        }
+        return out.toByteArray();
+    }
+}
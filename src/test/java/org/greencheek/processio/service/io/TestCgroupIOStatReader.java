@@ -0,0 +1,170 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CgroupDeviceIO;
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the reading of a cgroup's block io from fixture cgroup v2 io.stat and io.max files
+ */
+public class TestCgroupIOStatReader {
+
+    private static final double DELTA = 1e-9;
+
+    private File cgroupMount;
+    private File cgroupDirectory;
+
+    @Before
+    public void setUp() throws IOException {
+        cgroupMount = createDirectory("cgroup");
+        cgroupDirectory = new File(cgroupMount,"system.slice/app.service");
+        cgroupDirectory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        delete(cgroupMount);
+    }
+
+    @Test
+    public void testCgroupDirectoryIsFoundFromTheV2Hierarchy() throws IOException {
+        File procCgroup = new File(cgroupMount,"cgroup");
+        write(procCgroup,"0::/system.slice/app.service\n");
+        assertEquals(cgroupDirectory.getAbsolutePath(),
+                     CgroupIOStatReader.findCgroupDirectory(procCgroup,cgroupMount).getAbsolutePath());
+
+        write(procCgroup,"12:memory:/system.slice/app.service\n11:blkio:/system.slice/app.service\n");
+        assertNull(CgroupIOStatReader.findCgroupDirectory(procCgroup,cgroupMount));
+
+        write(procCgroup,"0::/missing.slice\n");
+        assertNull(CgroupIOStatReader.findCgroupDirectory(procCgroup,cgroupMount));
+
+        assertNull(CgroupIOStatReader.findCgroupDirectory(new File(cgroupMount,"nofile"),cgroupMount));
+    }
+
+    @Test
+    public void testIoIsSummedOverDevicesAndRatesCalculatedBetweenSamples() throws IOException {
+        write(new File(cgroupDirectory,CgroupIOStatReader.IO_STAT),
+              "8:0 rbytes=1024 wbytes=2048 rios=1 wios=2 dbytes=0 dios=0\n" +
+              "259:0 rbytes=0 wbytes=0 rios=0 wios=0 dbytes=0 dios=0\n");
+        CgroupIOStatReader reader = new CgroupIOStatReader(cgroupDirectory);
+        try {
+            CurrentProcessIO io = reader.read(1000);
+            assertEquals(1000,io.getCurrentSampleTimeInMillis());
+            assertEquals(1024,io.getCurrentReadBytes());
+            assertEquals(2048,io.getCurrentWriteBytes());
+            assertEquals(1,io.getCurrentReadSyscalls());
+            assertEquals(2,io.getCurrentWriteSyscalls());
+            assertEquals(0.0,reader.getDevices()[0].getSampleTimeKbPerSecondReadIO(),DELTA);
+
+            write(new File(cgroupDirectory,CgroupIOStatReader.IO_STAT),
+                  "8:0 rbytes=3072 wbytes=6144 rios=11 wios=22 dbytes=512 dios=1\n" +
+                  "259:0 rbytes=1048576 wbytes=0 rios=100 wios=0 dbytes=0 dios=0\n");
+            io = reader.read(3000);
+            assertEquals(3072+1048576,io.getCurrentReadBytes());
+            assertEquals(6144,io.getCurrentWriteBytes());
+
+            CgroupDeviceIO[] devices = reader.getDevices();
+            assertEquals(2,devices.length);
+            assertEquals("8:0",devices[0].getDevice());
+            assertEquals(1.0,devices[0].getSampleTimeKbPerSecondReadIO(),DELTA);
+            assertEquals(2.0,devices[0].getSampleTimeKbPerSecondWriteIO(),DELTA);
+            assertEquals(5.0,devices[0].getSampleTimeReadIosPerSecond(),DELTA);
+            assertEquals(10.0,devices[0].getSampleTimeWriteIosPerSecond(),DELTA);
+            assertEquals(512,devices[0].getDiscardBytes());
+            assertEquals("259:0",devices[1].getDevice());
+            assertEquals(512.0,devices[1].getSampleTimeKbPerSecondReadIO(),DELTA);
+            assertEquals(0.0,reader.getHighestLimitUtilisation(),DELTA);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testLimitsAreReadAndUtilisationCalculated() throws IOException {
+        write(new File(cgroupDirectory,CgroupIOStatReader.IO_STAT),
+              "8:16 rbytes=0 wbytes=0 rios=0 wios=0 dbytes=0 dios=0\n");
+        write(new File(cgroupDirectory,CgroupIOStatReader.IO_MAX),
+              "8:16 rbps=max wbps=1048576 riops=max wiops=100\n");
+        CgroupIOStatReader reader = new CgroupIOStatReader(cgroupDirectory);
+        try {
+            reader.read(1000);
+            write(new File(cgroupDirectory,CgroupIOStatReader.IO_STAT),
+                  "8:16 rbytes=4096 wbytes=524288 rios=1 wios=90 dbytes=0 dios=0\n");
+            reader.read(2000);
+
+            CgroupDeviceIO device = reader.getDevices()[0];
+            assertEquals(CgroupDeviceIO.NO_LIMIT,device.getReadBytesPerSecondLimit());
+            assertEquals(1048576,device.getWriteBytesPerSecondLimit());
+            assertEquals(CgroupDeviceIO.NO_LIMIT,device.getReadIosPerSecondLimit());
+            assertEquals(100,device.getWriteIosPerSecondLimit());
+            assertEquals(0.9,device.getLimitUtilisation(),DELTA);
+            assertEquals(0.9,reader.getHighestLimitUtilisation(),DELTA);
+
+            // the limit is removed
+            write(new File(cgroupDirectory,CgroupIOStatReader.IO_MAX),"");
+            reader.read(3000);
+            assertEquals(CgroupDeviceIO.NO_LIMIT,reader.getDevices()[0].getWriteIosPerSecondLimit());
+            assertEquals(0.0,reader.getHighestLimitUtilisation(),DELTA);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testRemovedDevicesAreNoLongerReturned() throws IOException {
+        write(new File(cgroupDirectory,CgroupIOStatReader.IO_STAT),
+              "8:0 rbytes=1 wbytes=1 rios=1 wios=1 dbytes=0 dios=0\n" +
+              "8:16 rbytes=2 wbytes=2 rios=2 wios=2 dbytes=0 dios=0\n");
+        CgroupIOStatReader reader = new CgroupIOStatReader(cgroupDirectory);
+        try {
+            reader.read(1000);
+            assertEquals(2,reader.getDevices().length);
+
+            write(new File(cgroupDirectory,CgroupIOStatReader.IO_STAT),
+                  "8:16 rbytes=2 wbytes=2 rios=2 wios=2 dbytes=0 dios=0\n");
+            CurrentProcessIO io = reader.read(2000);
+            assertEquals(2,io.getCurrentReadBytes());
+            assertEquals(1,reader.getDevices().length);
+            assertEquals("8:16",reader.getDevices()[0].getDevice());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testMissingCgroupIsNotReadable() {
+        assertSame(ProcessIOReader.NON_READABLE_PROCESS_IO,new CgroupIOStatReader(null).getCurrentProcessIO());
+        CgroupIOStatReader reader = new CgroupIOStatReader(new File(cgroupMount,"missing"));
+        assertSame(ProcessIOReader.NON_READABLE_PROCESS_IO,reader.getCurrentProcessIO());
+        assertEquals(0,reader.getDevices().length);
+        reader.close();
+    }
+}
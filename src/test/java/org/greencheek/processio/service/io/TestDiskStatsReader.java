@@ -0,0 +1,121 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.DiskDeviceStats;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.greencheek.processio.service.usage.BasicProcessIOUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sampling of how busy each device is from a fixture /proc/diskstats file
+ */
+public class TestDiskStatsReader {
+
+    private static final double DELTA = 1e-9;
+
+    private File directory;
+    private File diskstats;
+    private ProcessIOUsageHolder processIO;
+    private DiskStatsReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = createDirectory("diskstats");
+        diskstats = new File(directory,"diskstats");
+        processIO = new ProcessIOUsageHolder(0,new BasicProcessIOUsage());
+        reader = new DiskStatsReader(diskstats,processIO);
+    }
+
+    @After
+    public void tearDown() {
+        reader.close();
+        delete(directory);
+    }
+
+    @Test
+    public void testDeviceStatsAreCalculatedBetweenSamples() throws IOException {
+        write(diskstats,"   7       0 loop0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
+              "   8       0 sda 1000 10 8000 500 2000 20 16000 1500 0 1000 2000 0 0 0 0 0 0\n");
+        processIO.setProcessIO(new CurrentProcessIO(1000,0,0));
+        reader.sample(1000);
+
+        DiskDeviceStats[] devices = reader.getDevices();
+        assertEquals(1,devices.length);
+        assertEquals("sda",devices[0].getName());
+        assertEquals(0.0,devices[0].getUtilisationPercent(),DELTA);
+
+        // 1MB read and 2MB written in 400 ios over a second, of which the process did 1.5MB
+        write(diskstats,"   7       0 loop0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0 0\n" +
+              "   8       0 sda 1100 10 10048 700 2300 20 20096 2100 3 1500 3500 0 0 0 0 0 0\n");
+        processIO.setProcessIO(new CurrentProcessIO(2000,1024*1024,512*1024));
+        reader.sample(2000);
+
+        DiskDeviceStats sda = reader.getDevices()[0];
+        assertEquals("8:0",sda.getDevice());
+        assertEquals(1100,sda.getReadsCompleted());
+        assertEquals(2300,sda.getWritesCompleted());
+        assertEquals(10048L*512,sda.getReadBytes());
+        assertEquals(20096L*512,sda.getWriteBytes());
+        assertEquals(3,sda.getIosInProgress());
+        assertEquals(50.0,sda.getUtilisationPercent(),DELTA);
+        assertEquals(1.5,sda.getAverageQueueDepth(),DELTA);
+        assertEquals(2.0,sda.getAverageAwaitMillis(),DELTA);
+        assertEquals(100.0,sda.getReadIosPerSecond(),DELTA);
+        assertEquals(300.0,sda.getWriteIosPerSecond(),DELTA);
+        assertEquals(1024.0,sda.getSampleTimeKbPerSecondReadIO(),DELTA);
+        assertEquals(2048.0,sda.getSampleTimeKbPerSecondWriteIO(),DELTA);
+        assertEquals(0.5,sda.getProcessShare(),DELTA);
+        assertEquals(50.0,reader.getHighestUtilisationPercent(),DELTA);
+    }
+
+    @Test
+    public void testProcessShareIsCappedAndRemovedDevicesAreDropped() throws IOException {
+        write(diskstats,"   8       0 sda 1 0 8 0 1 0 8 0 0 0 0\n" +
+              "   8       1 sda1 1 0 8 0 1 0 8 0 0 0 0\n");
+        processIO.setProcessIO(new CurrentProcessIO(1000,0,0));
+        reader.sample(1000);
+        assertEquals(2,reader.getDevices().length);
+
+        write(diskstats,"   8       0 sda 2 0 16 0 1 0 8 0 0 0 0\n");
+        processIO.setProcessIO(new CurrentProcessIO(2000,1024*1024,0));
+        reader.sample(2000);
+
+        DiskDeviceStats[] devices = reader.getDevices();
+        assertEquals(1,devices.length);
+        assertEquals("sda",devices[0].getName());
+        assertEquals(1.0,devices[0].getProcessShare(),DELTA);
+    }
+
+    @Test
+    public void testMissingFileHasNoDevices() {
+        diskstats.delete();
+        reader.sample(1000);
+        assertEquals(0,reader.getDevices().length);
+        assertEquals(0.0,reader.getHighestUtilisationPercent(),DELTA);
+    }
+}
@@ -0,0 +1,138 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the reading of the /proc/PID/io format through a reused file channel and buffer
+ */
+public class TestFileChannelProcIOProcessIOReader {
+
+    private FileChannelProcIOProcessIOReader ioReader;
+    private FileChannelProcIOProcessIOReader nonExistingIOReader;
+    private File tempIOFile;
+
+    @Before
+    public void setUp() throws IOException {
+        URL ioLocation = ClassLoader.getSystemResource("testIO.txt");
+        File fileIOLocation = new File(ioLocation.getFile());
+        ioReader = new FileChannelProcIOProcessIOReader(fileIOLocation);
+
+        File nonExistentIOFileIOLocation = new File("testIO.txt.does.not.exist");
+        nonExistingIOReader = new FileChannelProcIOProcessIOReader(nonExistentIOFileIOLocation);
+
+        tempIOFile = File.createTempFile("processio",".io");
+    }
+
+    @After
+    public void tearDown() {
+        ioReader.close();
+        nonExistingIOReader.close();
+        tempIOFile.delete();
+    }
+
+    @Test
+    public void testProcessIOIsReturnedFromIOReader() {
+
+        CurrentProcessIO currentIO = ioReader.getCurrentProcessIO();
+
+        assertEquals(18790563840l,currentIO.getCurrentReadBytes());
+        assertEquals(2250752000l,currentIO.getCurrentWriteBytes());
+        assertEquals(49820184l,currentIO.getCurrentReadChars());
+        assertEquals(79916l,currentIO.getCurrentWriteChars());
+        assertEquals(142929l,currentIO.getCurrentReadSyscalls());
+        assertEquals(265l,currentIO.getCurrentWriteSyscalls());
+        assertEquals(16384l,currentIO.getCurrentCancelledWriteBytes());
+
+        // read again through the same open channel
+        currentIO = ioReader.getCurrentProcessIO();
+
+        assertEquals(18790563840l,currentIO.getCurrentReadBytes());
+        assertEquals(2250752000l,currentIO.getCurrentWriteBytes());
+    }
+
+    @Test
+    public void testProcessIOIsReturnedFromIOReaderWhenFileDoesNotExist() {
+
+        CurrentProcessIO currentIO = nonExistingIOReader.getCurrentProcessIO();
+
+        assertSame(ProcessIOReader.NON_READABLE_PROCESS_IO,currentIO);
+    }
+
+    @Test
+    public void testUpdatedValuesAreReadFromTheOpenChannel() throws IOException {
+        writeIOFile(tempIOFile,100,200);
+        FileChannelProcIOProcessIOReader reader = new FileChannelProcIOProcessIOReader(tempIOFile);
+
+        try {
+            assertEquals(100,reader.getCurrentProcessIO().getCurrentReadBytes());
+
+            writeIOFile(tempIOFile,123456789012l,5);
+            CurrentProcessIO currentIO = reader.getCurrentProcessIO();
+            assertEquals(123456789012l,currentIO.getCurrentReadBytes());
+            assertEquals(5,currentIO.getCurrentWriteBytes());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testReaderReopensFileWhenHandleIsStale() throws IOException {
+        writeIOFile(tempIOFile,100,200);
+        FileChannelProcIOProcessIOReader reader = new FileChannelProcIOProcessIOReader(tempIOFile);
+
+        try {
+            assertEquals(200,reader.getCurrentProcessIO().getCurrentWriteBytes());
+
+            // an empty read is treated as a stale handle, as if the process had gone
+            new FileOutputStream(tempIOFile).close();
+            assertSame(ProcessIOReader.NON_READABLE_PROCESS_IO,reader.getCurrentProcessIO());
+
+            writeIOFile(tempIOFile,300,400);
+            assertEquals(400,reader.getCurrentProcessIO().getCurrentWriteBytes());
+        } finally {
+            reader.close();
+        }
+    }
+
+    private static void writeIOFile(File file, long readBytes, long writeBytes) throws IOException {
+        String content = "rchar: 1\n" +
+                         "wchar: 2\n" +
+                         "syscr: 3\n" +
+                         "syscw: 4\n" +
+                         "read_bytes: " + readBytes + "\n" +
+                         "write_bytes: " + writeBytes + "\n" +
+                         "cancelled_write_bytes: 16384\n";
+        FileOutputStream out = new FileOutputStream(file);
+        try {
+            out.write(content.getBytes("UTF-8"));
+        } finally {
+            out.close();
+        }
+    }
+}
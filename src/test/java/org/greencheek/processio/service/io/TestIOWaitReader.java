@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.greencheek.processio.service.usage.BasicProcessIOUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the sampling of the io wait from fixture /proc/PID/stat and kernel.task_delayacct files
+ */
+public class TestIOWaitReader {
+
+    private static final double DELTA = 1e-9;
+
+    private File processDirectory;
+    private File sysctl;
+    private ProcessIOUsageHolder processIO;
+
+    @Before
+    public void setUp() throws IOException {
+        processDirectory = createDirectory("pid");
+        sysctl = new File(processDirectory,"task_delayacct");
+        processIO = new ProcessIOUsageHolder(0,new BasicProcessIOUsage());
+    }
+
+    @After
+    public void tearDown() {
+        delete(processDirectory);
+    }
+
+    @Test
+    public void testIOWaitIsCalculatedNextToTheRates() throws IOException {
+        write(sysctl,"1\n");
+        writeStat(100);
+        IOWaitReader reader = new IOWaitReader(processDirectory,sysctl,processIO);
+        try {
+            assertTrue(reader.isDelayAccountingEnabled());
+            processIO.setProcessIO(new CurrentProcessIO(1000,0,0));
+            reader.sample(1000);
+            assertEquals(100,reader.getIOWaitTicks());
+            assertEquals(0.0,reader.getSampleTimeIOWaitMillisPerSecond(),DELTA);
+
+            // 1.5 seconds of io wait over half a second: three threads stalled
+            writeStat(250);
+            processIO.setProcessIO(new CurrentProcessIO(1500,512,1024));
+            reader.sample(1500);
+            assertEquals(250,reader.getIOWaitTicks());
+            assertEquals(3000.0,reader.getSampleTimeIOWaitMillisPerSecond(),DELTA);
+            assertEquals(1.0,reader.getSampleTimeKbPerSecondReadIO(),DELTA);
+            assertEquals(2.0,reader.getSampleTimeKbPerSecondWriteIO(),DELTA);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testDisabledDelayAccountingIsDetected() throws IOException {
+        write(sysctl,"0\n");
+        writeStat(0);
+        IOWaitReader reader = new IOWaitReader(processDirectory,sysctl,null);
+        try {
+            assertFalse(reader.isDelayAccountingEnabled());
+            reader.sample(1000);
+            writeStat(10);
+            reader.sample(2000);
+            assertEquals(0.0,reader.getSampleTimeIOWaitMillisPerSecond(),DELTA);
+
+            // enabled at runtime
+            write(sysctl,"1\n");
+            writeStat(20);
+            reader.sample(3000);
+            assertTrue(reader.isDelayAccountingEnabled());
+            assertEquals(100.0,reader.getSampleTimeIOWaitMillisPerSecond(),DELTA);
+        } finally {
+            reader.close();
+        }
+
+        // kernels before 5.14 have no sysctl, and count the ticks by default
+        IOWaitReader noSysctl = new IOWaitReader(processDirectory,new File(processDirectory,"missing"),null);
+        assertTrue(noSysctl.isDelayAccountingEnabled());
+        noSysctl.close();
+    }
+
+    @Test
+    public void testMillisPerSecond() {
+        assertEquals(0.0,IOWaitReader.millisPerSecond(-1,0,1000,10),DELTA);
+        assertEquals(100.0,IOWaitReader.millisPerSecond(0,0,1000,10),DELTA);
+        assertEquals(0.0,IOWaitReader.millisPerSecond(1000,10,2000,5),DELTA);
+        assertEquals(0.0,IOWaitReader.millisPerSecond(1000,0,1000,5),DELTA);
+    }
+
+    private void writeStat(long blkioTicks) throws IOException {
+        StringBuilder stat = new StringBuilder("1234 (java) S");
+        for(int field=4;field<=41;field++) {
+            stat.append(' ').append(field);
+        }
+        stat.append(' ').append(blkioTicks).append(" 0 0 0\n");
+        write(new File(processDirectory,"stat"),stat.toString());
+    }
+}
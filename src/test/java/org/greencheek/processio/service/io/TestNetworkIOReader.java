@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.NetworkInterfaceIO;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sampling of the network interface rates and tcp retransmits from fixture net/dev and net/snmp files
+ */
+public class TestNetworkIOReader {
+
+    private static final double DELTA = 1e-9;
+
+    private static final String DEV_HEADER =
+            "Inter-|   Receive                                                |  Transmit\n" +
+            " face |bytes    packets errs drop fifo frame compressed multicast|bytes    packets errs drop fifo colls carrier compressed\n";
+
+    private static final String SNMP_HEADER =
+            "Ip: Forwarding DefaultTTL InReceives\n" +
+            "Ip: 1 64 1000\n";
+
+    private File netDirectory;
+    private NetworkIOReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        netDirectory = createDirectory("net");
+        reader = new NetworkIOReader(netDirectory,new PrimitiveBasedDifferenceInKBPerSecondCalculator());
+    }
+
+    @After
+    public void tearDown() {
+        reader.close();
+        delete(netDirectory);
+    }
+
+    @Test
+    public void testInterfaceRatesAreCalculatedBetweenSamples() throws IOException {
+        write(new File(netDirectory,"dev"),DEV_HEADER +
+              "    lo:    1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0\n" +
+              "  eth0: 2048000    2000    0    5    0     0          0         0  1024000    1000    0    1    0     0       0          0\n");
+        reader.sample(1000);
+
+        NetworkInterfaceIO[] interfaces = reader.getInterfaces();
+        assertEquals(2,interfaces.length);
+        assertEquals("lo",interfaces[0].getName());
+        assertEquals("eth0",interfaces[1].getName());
+        assertEquals(0.0,interfaces[1].getSampleTimeKbPerSecondReceived(),DELTA);
+
+        // 2048KB received and 1024KB transmitted by eth0 over two seconds
+        write(new File(netDirectory,"dev"),DEV_HEADER +
+              "    lo:  103400     110    0    0    0     0          0         0   103400     110    0    0    0     0       0          0\n" +
+              "  eth0: 4145152    4000    0   25    0     0          0         0  2072576    1600    0    1    0     0       0          0\n");
+        reader.sample(3000);
+
+        NetworkInterfaceIO eth0 = reader.getInterfaces()[1];
+        assertEquals(4145152,eth0.getReceivedBytes());
+        assertEquals(2072576,eth0.getTransmittedBytes());
+        assertEquals(4000,eth0.getReceivedPackets());
+        assertEquals(1600,eth0.getTransmittedPackets());
+        assertEquals(25,eth0.getReceivedDrops());
+        assertEquals(1,eth0.getTransmittedDrops());
+        assertEquals(1024.0,eth0.getSampleTimeKbPerSecondReceived(),DELTA);
+        assertEquals(512.0,eth0.getSampleTimeKbPerSecondTransmitted(),DELTA);
+        assertEquals(1000.0,eth0.getSampleTimeReceivedPacketsPerSecond(),DELTA);
+        assertEquals(300.0,eth0.getSampleTimeTransmittedPacketsPerSecond(),DELTA);
+        assertEquals(10.0,eth0.getSampleTimeReceivedDropsPerSecond(),DELTA);
+        assertEquals(0.0,eth0.getSampleTimeTransmittedDropsPerSecond(),DELTA);
+
+        assertEquals(50.0,reader.getInterfaces()[0].getSampleTimeKbPerSecondReceived(),DELTA);
+        // the loopback is excluded from the totals
+        assertEquals(1024.0,reader.getTotalKbPerSecondReceived(),DELTA);
+        assertEquals(512.0,reader.getTotalKbPerSecondTransmitted(),DELTA);
+    }
+
+    @Test
+    public void testChangedAndRemovedInterfacesAreStartedAgain() throws IOException {
+        write(new File(netDirectory,"dev"),DEV_HEADER +
+              "    lo:    1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0\n" +
+              "  eth0:    2048       2    0    0    0     0          0         0     1024       1    0    0    0     0       0          0\n" +
+              "  eth1:    4096       4    0    0    0     0          0         0     4096       4    0    0    0     0       0          0\n");
+        reader.sample(1000);
+
+        // eth0 has gone, so eth1 is now on eth0's line
+        write(new File(netDirectory,"dev"),DEV_HEADER +
+              "    lo:    1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0\n" +
+              "  eth1:    8192       8    0    0    0     0          0         0     8192       8    0    0    0     0       0          0\n");
+        reader.sample(2000);
+
+        NetworkInterfaceIO[] interfaces = reader.getInterfaces();
+        assertEquals(2,interfaces.length);
+        assertEquals("eth1",interfaces[1].getName());
+        assertEquals(8192,interfaces[1].getReceivedBytes());
+        assertEquals(0.0,interfaces[1].getSampleTimeKbPerSecondReceived(),DELTA);
+
+        write(new File(netDirectory,"dev"),DEV_HEADER +
+              "    lo:    1000      10    0    0    0     0          0         0     1000      10    0    0    0     0       0          0\n" +
+              "  eth1:   10240      10    0    0    0     0          0         0     8192       8    0    0    0     0       0          0\n");
+        reader.sample(3000);
+        assertEquals(2.0,reader.getInterfaces()[1].getSampleTimeKbPerSecondReceived(),DELTA);
+    }
+
+    @Test
+    public void testTcpRetransmitsAreCalculatedBetweenSamples() throws IOException {
+        write(new File(netDirectory,"dev"),DEV_HEADER);
+        write(new File(netDirectory,"snmp"),SNMP_HEADER +
+              "Tcp: RtoAlgorithm RtoMin RtoMax MaxConn ActiveOpens PassiveOpens AttemptFails EstabResets CurrEstab InSegs OutSegs RetransSegs InErrs OutRsts InCsumErrors\n" +
+              "Tcp: 1 200 120000 -1 10 20 0 0 5 5000 10000 100 0 3 0\n");
+        reader.sample(1000);
+        assertEquals(100,reader.getTcpRetransmittedSegments());
+        assertEquals(0.0,reader.getTcpRetransmittedSegmentsPerSecond(),DELTA);
+
+        // 50 of the 1000 segments sent over two seconds were retransmitted
+        write(new File(netDirectory,"snmp"),SNMP_HEADER +
+              "Tcp: RtoAlgorithm RtoMin RtoMax MaxConn ActiveOpens PassiveOpens AttemptFails EstabResets CurrEstab InSegs OutSegs RetransSegs InErrs OutRsts InCsumErrors\n" +
+              "Tcp: 1 200 120000 -1 10 20 0 0 5 6000 11000 150 0 3 0\n");
+        reader.sample(3000);
+
+        assertEquals(150,reader.getTcpRetransmittedSegments());
+        assertEquals(25.0,reader.getTcpRetransmittedSegmentsPerSecond(),DELTA);
+        assertEquals(5.0,reader.getTcpRetransmitPercent(),DELTA);
+        assertEquals(0,reader.getInterfaces().length);
+    }
+}
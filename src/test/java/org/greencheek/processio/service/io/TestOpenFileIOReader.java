@@ -0,0 +1,142 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.FileIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sampling of the throughput of open files from fixture /proc/PID/fd and fdinfo directories
+ */
+public class TestOpenFileIOReader {
+
+    private static final double DELTA = 1e-9;
+
+    private File processDirectory;
+    private OpenFileIOReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        processDirectory = createDirectory("pid");
+        new File(processDirectory,"fd").mkdirs();
+        new File(processDirectory,"fdinfo").mkdirs();
+        reader = new OpenFileIOReader(processDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        delete(processDirectory);
+    }
+
+    @Test
+    public void testFileThroughputIsCalculatedFromPositions() throws IOException {
+        openFile(0,"/dev/null",0,"0100000",1);
+        openFile(5,"/data/segment-0001",0,"02",100);
+        openFile(6,"/data/wal.log",4096,"0102001",200);
+        openFile(7,"socket:[12345]",0,"02",300);
+        reader.sample(1000);
+        assertEquals(4,reader.getTrackedFileDescriptorCount());
+        assertEquals(0,reader.getTopFiles(10).length);
+
+        openFile(5,"/data/segment-0001",1024*1024,"02",100);
+        openFile(6,"/data/wal.log",4096+2*1024*1024,"0102001",200);
+        openFile(7,"socket:[12345]",8192,"02",300);
+        reader.sample(3000);
+
+        FileIO[] top = reader.getTopFiles(10);
+        assertEquals(2,top.length);
+        assertEquals(6,top[0].getFileDescriptor());
+        assertEquals("/data/wal.log",top[0].getPath());
+        assertEquals(200,top[0].getInode());
+        assertEquals("w",top[0].getAccessMode());
+        assertEquals(1024.0,top[0].getSampleTimeKbPerSecond(),DELTA);
+        assertEquals(2*1024*1024,top[0].getBytesMoved());
+        assertEquals(5,top[1].getFileDescriptor());
+        assertEquals("rw",top[1].getAccessMode());
+        assertEquals(512.0,top[1].getSampleTimeKbPerSecond(),DELTA);
+
+        assertEquals(1,reader.getTopFiles(1).length);
+    }
+
+    @Test
+    public void testReusedAndClosedDescriptorsAreDetected() throws IOException {
+        openFile(5,"/data/segment-0001",4096,"0",100);
+        openFile(6,"/data/old.log",8192,"01",200);
+        reader.sample(1000);
+
+        // fd 5 is reused for another file, with a greater position; fd 6 is closed
+        closeFile(6);
+        openFile(5,"/data/segment-0002",1024*1024,"0",101);
+        reader.sample(2000);
+        assertEquals(1,reader.getTrackedFileDescriptorCount());
+        assertEquals(0,reader.getTopFiles(10).length);
+
+        openFile(5,"/data/segment-0002",2*1024*1024,"0",101);
+        reader.sample(3000);
+        FileIO[] top = reader.getTopFiles(10);
+        assertEquals(1,top.length);
+        assertEquals("/data/segment-0002",top[0].getPath());
+        assertEquals("r",top[0].getAccessMode());
+        assertEquals(1024.0,top[0].getSampleTimeKbPerSecond(),DELTA);
+    }
+
+    @Test
+    public void testReuseIsDetectedByPathWithoutInodes() throws IOException {
+        openFile(5,"/data/a",8192,"0",0);
+        reader.sample(1000);
+        openFile(5,"/data/b",1024,"0",0);
+        reader.sample(2000);
+        openFile(5,"/data/b",2048,"0",0);
+        reader.sample(3000);
+
+        FileIO[] top = reader.getTopFiles(10);
+        assertEquals(1,top.length);
+        assertEquals("/data/b",top[0].getPath());
+        assertEquals(1024,top[0].getBytesMoved());
+
+        // a seek backwards within the same file is not io
+        openFile(5,"/data/b",0,"0",0);
+        reader.sample(4000);
+        assertEquals(0,reader.getTopFiles(10).length);
+    }
+
+    private void openFile(int fd, String target, long position, String flags, long inode) throws IOException {
+        File link = new File(new File(processDirectory,"fd"),Integer.toString(fd));
+        link.delete();
+        Files.createSymbolicLink(link.toPath(),new File(target).toPath());
+        write(new File(new File(processDirectory,"fdinfo"),Integer.toString(fd)),
+              "pos:\t" + position + "\n" +
+              "flags:\t" + flags + "\n" +
+              "mnt_id:\t25\n" +
+              (inode==0 ? "" : "ino:\t" + inode + "\n"));
+    }
+
+    private void closeFile(int fd) {
+        new File(new File(processDirectory,"fd"),Integer.toString(fd)).delete();
+        new File(new File(processDirectory,"fdinfo"),Integer.toString(fd)).delete();
+    }
+}
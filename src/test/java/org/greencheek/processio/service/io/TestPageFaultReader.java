@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.greencheek.processio.service.usage.BasicProcessIOUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sampling of page faults from fixture /proc/PID/stat and smaps_rollup files
+ */
+public class TestPageFaultReader {
+
+    private static final double DELTA = 1e-9;
+
+    private File processDirectory;
+    private ProcessIOUsageHolder processIO;
+
+    @Before
+    public void setUp() throws IOException {
+        processDirectory = createDirectory("pid");
+        processIO = new ProcessIOUsageHolder(0,new BasicProcessIOUsage());
+    }
+
+    @After
+    public void tearDown() {
+        delete(processDirectory);
+    }
+
+    @Test
+    public void testFaultsPerSecondAreCalculatedNextToTheReadRate() throws IOException {
+        PageFaultReader reader = new PageFaultReader(processDirectory,processIO,false);
+        try {
+            writeStat(1000,10);
+            processIO.setProcessIO(new CurrentProcessIO(1000,0,0));
+            reader.sample(1000);
+            assertEquals(1000,reader.getMinorFaults());
+            assertEquals(10,reader.getMajorFaults());
+            assertEquals(0.0,reader.getSampleTimeMajorFaultsPerSecond(),DELTA);
+
+            writeStat(5000,410);
+            processIO.setProcessIO(new CurrentProcessIO(3000,2048,0));
+            reader.sample(3000);
+            assertEquals(2000.0,reader.getSampleTimeMinorFaultsPerSecond(),DELTA);
+            assertEquals(200.0,reader.getSampleTimeMajorFaultsPerSecond(),DELTA);
+            assertEquals(1.0,reader.getSampleTimeKbPerSecondReadIO(),DELTA);
+            assertEquals(0,reader.getResidentKb());
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testResidentMemoryIsReadFromSmapsRollup() throws IOException {
+        writeStat(1,1);
+        write(new File(processDirectory,"smaps_rollup"),
+              "55d0c9a4b000-7ffd4b1f9000 ---p 00000000 00:00 0                          [rollup]\n" +
+              "Rss:              524288 kB\n" +
+              "Pss:              500000 kB\n" +
+              "Pss_Anon:         100000 kB\n" +
+              "Anonymous:        131072 kB\n" +
+              "Swap:                  0 kB\n");
+        PageFaultReader reader = new PageFaultReader(processDirectory,null,true);
+        try {
+            reader.sample(1000);
+            assertEquals(524288,reader.getResidentKb());
+            assertEquals(393216,reader.getFileBackedResidentKb());
+            assertEquals(0.0,reader.getSampleTimeKbPerSecondReadIO(),DELTA);
+        } finally {
+            reader.close();
+        }
+    }
+
+    @Test
+    public void testUnreadableStatIsIgnored() throws IOException {
+        PageFaultReader reader = new PageFaultReader(processDirectory,processIO,true);
+        reader.sample(1000);
+        assertEquals(0,reader.getMajorFaults());
+
+        write(new File(processDirectory,"stat"),"1234 (java\n");
+        reader.sample(2000);
+        assertEquals(0,reader.getMajorFaults());
+        reader.close();
+    }
+
+    private void writeStat(long minorFaults, long majorFaults) throws IOException {
+        // a command name with spaces and a ')', which is why fields are counted from the last ')'
+        write(new File(processDirectory,"stat"),
+              "1234 (java (x) y) S 1 1234 1234 0 -1 4194560 " + minorFaults + " 0 " + majorFaults +
+              " 0 150 20 0 0 20 0 30 0 5000 123456789 4096 18446744073709551615\n");
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.ThreadIO;
+import org.greencheek.processio.service.usage.PrimitiveBasedDifferenceInKBPerSecondCalculator;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.CountDownLatch;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the sampling of per thread io from a fixture /proc/PID/task directory
+ */
+public class TestProcTaskThreadIOReader {
+
+    private static final double DELTA = 1e-15;
+
+    private File taskDirectory;
+    private ProcTaskThreadIOReader reader;
+
+    @Before
+    public void setUp() throws IOException {
+        taskDirectory = createDirectory("task");
+        reader = new ProcTaskThreadIOReader(taskDirectory);
+    }
+
+    @After
+    public void tearDown() {
+        delete(taskDirectory);
+    }
+
+    @Test
+    public void testThreadRatesAreCalculatedBetweenSamples() throws IOException {
+        writeThread(100,"compaction",0,0);
+        writeThread(101,"gc-log",0,0);
+        writeThread(102,"idle",0,0);
+
+        reader.sample(1000);
+        assertEquals(3,reader.getTrackedThreadCount());
+        assertEquals(0,reader.getTopThreads(10).length);
+
+        writeThread(100,"compaction",1024*1024,2*1024*1024);
+        writeThread(101,"gc-log",0,1024);
+
+        reader.sample(2000);
+
+        ThreadIO[] top = reader.getTopThreads(10);
+        assertEquals(2,top.length);
+        assertEquals(100,top[0].getNativeThreadId());
+        assertEquals("compaction",top[0].getThreadName());
+        assertEquals(1024.0,top[0].getSampleTimeKbPerSecondReadIO(),DELTA);
+        assertEquals(2048.0,top[0].getSampleTimeKbPerSecondWriteIO(),DELTA);
+        assertEquals(2*1024*1024,top[0].getWriteBytes());
+        assertEquals(ThreadIO.UNKNOWN_JAVA_THREAD_ID,top[0].getJavaThreadId());
+
+        assertEquals(101,top[1].getNativeThreadId());
+        assertEquals(1.0,top[1].getSampleTimeKbPerSecondWriteIO(),DELTA);
+
+        top = reader.getTopThreads(1);
+        assertEquals(1,top.length);
+        assertEquals(100,top[0].getNativeThreadId());
+    }
+
+    @Test
+    public void testExitedThreadsAreRemovedAndNewThreadsAdded() throws IOException {
+        for(int tid=1;tid<=1000;tid++) {
+            writeThread(tid,"worker",0,0);
+        }
+        reader.sample(1000);
+        assertEquals(1000,reader.getTrackedThreadCount());
+
+        for(int tid=1;tid<=1000;tid+=2) {
+            delete(new File(taskDirectory,Integer.toString(tid)));
+        }
+        writeThread(5000,"new-thread",0,4096);
+        writeThread(2,"worker",2048,0);
+
+        reader.sample(2000);
+        assertEquals(501,reader.getTrackedThreadCount());
+
+        ThreadIO[] top = reader.getTopThreads(5);
+        assertEquals(2,top.length);
+        assertEquals(5000,top[0].getNativeThreadId());
+        assertEquals(4.0,top[0].getSampleTimeKbPerSecondWriteIO(),DELTA);
+        assertEquals(2,top[1].getNativeThreadId());
+        assertEquals(2.0,top[1].getSampleTimeKbPerSecondReadIO(),DELTA);
+    }
+
+    @Test
+    public void testThreadsBeyondTheMaxOpenFilesAreReadByReopening() throws IOException {
+        ProcTaskThreadIOReader limitedReader = new ProcTaskThreadIOReader(taskDirectory,
+                new PrimitiveBasedDifferenceInKBPerSecondCalculator(),false,2);
+        for(int tid=1;tid<=4;tid++) {
+            writeThread(tid,"worker",0,0);
+        }
+        limitedReader.sample(1000);
+        assertEquals(4,limitedReader.getTrackedThreadCount());
+        assertEquals(2,limitedReader.getOpenFileCount());
+
+        for(int tid=1;tid<=4;tid++) {
+            writeThread(tid,"worker",tid*1024,0);
+        }
+        limitedReader.sample(2000);
+
+        ThreadIO[] top = limitedReader.getTopThreads(10);
+        assertEquals(4,top.length);
+        for(int i=0;i<4;i++) {
+            assertEquals(4-i,top[i].getNativeThreadId());
+            assertEquals(4.0-i,top[i].getSampleTimeKbPerSecondReadIO(),DELTA);
+        }
+
+        // the files of exited threads are closed, and reused for the remaining threads
+        delete(new File(taskDirectory,"1"));
+        delete(new File(taskDirectory,"2"));
+        delete(new File(taskDirectory,"3"));
+        limitedReader.sample(3000);
+        assertEquals(1,limitedReader.getTrackedThreadCount());
+        limitedReader.sample(4000);
+        assertEquals(1,limitedReader.getOpenFileCount());
+    }
+
+    @Test
+    public void testNativeThreadIsMappedToJavaThread() throws Exception {
+        final CountDownLatch finished = new CountDownLatch(1);
+        Thread thread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    finished.await();
+                } catch (InterruptedException e) {
+                }
+            }
+        },"processio-mapping-test-thread");
+        thread.start();
+
+        try {
+            writeThread(200,"processio-mappi",0,0);
+            reader.sample(1000);
+            writeThread(200,"processio-mappi",1024,0);
+            reader.sample(2000);
+
+            ThreadIO[] top = reader.getTopThreads(10);
+            assertEquals(1,top.length);
+            assertEquals(thread.getId(),top[0].getJavaThreadId());
+            assertEquals("processio-mapping-test-thread",top[0].getThreadName());
+        } finally {
+            finished.countDown();
+            thread.join();
+        }
+    }
+
+    @Test
+    public void testThreadIOWaitIsReadFromStat() throws IOException {
+        ProcTaskThreadIOReader ioWaitReader = new ProcTaskThreadIOReader(taskDirectory,
+                new PrimitiveBasedDifferenceInKBPerSecondCalculator(),true);
+        writeThread(300,"fsync-thread",0,0);
+        writeStat(300,10);
+        writeThread(301,"reader",0,0);
+        writeStat(301,0);
+        ioWaitReader.sample(1000);
+
+        // 50 ticks (500ms) waiting over 2 seconds, without the io having completed
+        writeStat(300,60);
+        writeThread(301,"reader",1024,0);
+        ioWaitReader.sample(3000);
+        // the io and stat file of each thread are kept open
+        assertEquals(4,ioWaitReader.getOpenFileCount());
+
+        ThreadIO[] top = ioWaitReader.getTopThreads(10);
+        assertEquals(2,top.length);
+        assertEquals(301,top[0].getNativeThreadId());
+        assertEquals(0.0,top[0].getSampleTimeIOWaitMillisPerSecond(),DELTA);
+        assertEquals(300,top[1].getNativeThreadId());
+        assertEquals(250.0,top[1].getSampleTimeIOWaitMillisPerSecond(),DELTA);
+        assertEquals(0.0,top[1].getSampleTimeKbPerSecondWriteIO(),DELTA);
+    }
+
+    private void writeStat(int tid, long blkioTicks) throws IOException {
+        StringBuilder stat = new StringBuilder(tid + " (java) S");
+        // fields 4 to 41, then delayacct_blkio_ticks
+        for(int field=4;field<=41;field++) {
+            stat.append(" 0");
+        }
+        stat.append(' ').append(blkioTicks).append(" 0 0\n");
+        write(new File(new File(taskDirectory,Integer.toString(tid)),"stat"),stat.toString());
+    }
+
+    private void writeThread(int tid, String name, long readBytes, long writeBytes) throws IOException {
+        File threadDirectory = new File(taskDirectory,Integer.toString(tid));
+        threadDirectory.mkdirs();
+        write(new File(threadDirectory,"comm"),name + "\n");
+        write(new File(threadDirectory,"io"),"rchar: 0\n" +
+                                             "wchar: 0\n" +
+                                             "syscr: 0\n" +
+                                             "syscw: 0\n" +
+                                             "read_bytes: " + readBytes + "\n" +
+                                             "write_bytes: " + writeBytes + "\n" +
+                                             "cancelled_write_bytes: 0\n");
+    }
+}
@@ -53,6 +53,18 @@ public class TestProcessIOReader{
         assertEquals(2250752000l,currentIO.getCurrentWriteBytes());
     }
 
+    @Test
+    public void testAllProcessIOCountersAreReturnedFromIOReader() {
+
+        CurrentProcessIO currentIO = ioReader.getCurrentProcessIO();
+
+        assertEquals(49820184l,currentIO.getCurrentReadChars());
+        assertEquals(79916l,currentIO.getCurrentWriteChars());
+        assertEquals(142929l,currentIO.getCurrentReadSyscalls());
+        assertEquals(265l,currentIO.getCurrentWriteSyscalls());
+        assertEquals(16384l,currentIO.getCurrentCancelledWriteBytes());
+    }
+
     @Test
     public void testProcessIOIsReturnedFromIOReaderWhenFileDoesNotExist() {
 
@@ -0,0 +1,194 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+/**
+ * Tests the reading of the io of a process tree from a fixture /proc directory
+ */
+public class TestProcessTreeProcIOProcessIOReader {
+
+    private static final int JVM_PID = 100;
+
+    private File procRoot;
+    private ProcessTreeProcIOProcessIOReader reader;
+    private CurrentProcessIO persisted;
+
+    @Before
+    public void setUp() throws IOException {
+        procRoot = createDirectory("proc");
+
+        ProcessIOUsagePersistence persistence = new ProcessIOUsagePersistence() {
+            @Override
+            public void init() {
+            }
+
+            @Override
+            public void destroy() {
+            }
+
+            @Override
+            public void persist(CurrentProcessIO io) {
+                persisted = io;
+            }
+        };
+
+        writeIO(JVM_PID,1000,2000);
+        reader = new ProcessTreeProcIOProcessIOReader(
+                new FileChannelProcIOProcessIOReader(new File(procRoot,JVM_PID + "/io")),
+                procRoot,JVM_PID,persistence);
+    }
+
+    @After
+    public void tearDown() {
+        delete(procRoot);
+    }
+
+    @Test
+    public void testDescendantIOIsAddedToTheProcessIO() throws IOException {
+        writeChildren(JVM_PID,JVM_PID,"200");
+        writeChildren(JVM_PID,JVM_PID+1,"201");
+        writeProcess(200,"gzip",5000,10,20);
+        writeChildren(200,200,"300");
+        writeProcess(201,"rsync",5001,30,40);
+        writeProcess(300,"ffmpeg (worker) x",5002,100,200);
+
+        CurrentProcessIO io = reader.getCurrentProcessIO();
+        assertEquals(1140,io.getCurrentReadBytes());
+        assertEquals(2260,io.getCurrentWriteBytes());
+        assertEquals(4,io.getCurrentReadSyscalls());
+
+        assertEquals(3,reader.getDescendantCount());
+        assertSame(persisted,reader.getDescendantProcessIO());
+        assertEquals(140,persisted.getCurrentReadBytes());
+        assertEquals(260,persisted.getCurrentWriteBytes());
+        assertEquals(io.getCurrentSampleTimeInMillis(),persisted.getCurrentSampleTimeInMillis());
+    }
+
+    @Test
+    public void testExitedChildIsAccountedFor() throws IOException {
+        writeChildren(JVM_PID,JVM_PID,"200 201");
+        writeProcess(200,"gzip",5000,10,20);
+        writeChildren(200,200,"300");
+        writeProcess(300,"sort",5002,100,200);
+        writeProcess(201,"rsync",5001,30,40);
+
+        reader.getCurrentProcessIO();
+
+        // 300 exits and is reaped by 200, 201 exits and is reaped by the jvm
+        writeChildren(JVM_PID,JVM_PID,"200");
+        writeChildren(200,200,"");
+        delete(new File(procRoot,"300"));
+        writeProcess(200,"gzip",5000,110,220);
+        delete(new File(procRoot,"201"));
+        writeIO(JVM_PID,1030,2040);
+
+        CurrentProcessIO io = reader.getCurrentProcessIO();
+        assertEquals(1140,io.getCurrentReadBytes());
+        assertEquals(2260,io.getCurrentWriteBytes());
+        assertEquals(1,reader.getDescendantCount());
+
+        assertEquals(140,persisted.getCurrentReadBytes());
+        assertEquals(260,persisted.getCurrentWriteBytes());
+    }
+
+    @Test
+    public void testChildLeavingTheTreeIsAccountedFor() throws IOException {
+        writeChildren(JVM_PID,JVM_PID,"200");
+        writeProcess(200,"sh",5000,10,20);
+        writeChildren(200,200,"300");
+        writeProcess(300,"daemon",5002,100,200);
+
+        reader.getCurrentProcessIO();
+
+        // 200 exits, 300 is re-parented to init and continues running
+        delete(new File(procRoot,"200"));
+        writeChildren(JVM_PID,JVM_PID,"");
+        writeIO(JVM_PID,1010,2020);
+        writeProcess(300,"daemon",5002,500,500);
+
+        CurrentProcessIO io = reader.getCurrentProcessIO();
+        assertEquals(1110,io.getCurrentReadBytes());
+        assertEquals(2220,io.getCurrentWriteBytes());
+        assertEquals(0,reader.getDescendantCount());
+        assertEquals(110,persisted.getCurrentReadBytes());
+        assertEquals(220,persisted.getCurrentWriteBytes());
+    }
+
+    @Test
+    public void testReusedPidIsDetected() throws IOException {
+        writeChildren(JVM_PID,JVM_PID,"200");
+        writeProcess(200,"gzip",5000,10,20);
+
+        reader.getCurrentProcessIO();
+
+        // 200 exits and is reaped, and a new child is given the same pid
+        writeIO(JVM_PID,1010,2020);
+        writeProcess(200,"gzip",6000,1,2);
+
+        CurrentProcessIO io = reader.getCurrentProcessIO();
+        assertEquals(1011,io.getCurrentReadBytes());
+        assertEquals(2022,io.getCurrentWriteBytes());
+        assertEquals(1,reader.getDescendantCount());
+        assertEquals(11,persisted.getCurrentReadBytes());
+        assertEquals(22,persisted.getCurrentWriteBytes());
+    }
+
+    @Test
+    public void testNonReadableProcessIsReturned() {
+        delete(new File(procRoot,Integer.toString(JVM_PID)));
+        assertSame(ProcessIOReader.NON_READABLE_PROCESS_IO,reader.getCurrentProcessIO());
+    }
+
+    private void writeProcess(int pid, String name, long startTime, long readBytes, long writeBytes) throws IOException {
+        new File(procRoot,Integer.toString(pid)).mkdirs();
+        write(new File(procRoot,pid + "/stat"),pid + " (" + name + ") S 1 " + pid + " " + pid +
+                                               " 0 -1 4194304 0 0 0 0 0 0 0 0 20 0 1 0 " + startTime +
+                                               " 1000 100 18446744073709551615 0 0 0 0 0 0 0 0 0 0 0 0 17 0 0 0 0 0 0\n");
+        writeIO(pid,readBytes,writeBytes);
+    }
+
+    private void writeIO(int pid, long readBytes, long writeBytes) throws IOException {
+        new File(procRoot,Integer.toString(pid)).mkdirs();
+        write(new File(procRoot,pid + "/io"),"rchar: 0\n" +
+                                             "wchar: 0\n" +
+                                             "syscr: 1\n" +
+                                             "syscw: 0\n" +
+                                             "read_bytes: " + readBytes + "\n" +
+                                             "write_bytes: " + writeBytes + "\n" +
+                                             "cancelled_write_bytes: 0\n");
+    }
+
+    private void writeChildren(int pid, int tid, String children) throws IOException {
+        File threadDirectory = new File(procRoot,pid + "/task/" + tid);
+        threadDirectory.mkdirs();
+        write(new File(threadDirectory,"children"),children.length()==0 ? "" : children + " ");
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.io;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import static org.greencheek.processio.service.io.ProcFixture.createDirectory;
+import static org.greencheek.processio.service.io.ProcFixture.delete;
+import static org.greencheek.processio.service.io.ProcFixture.write;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Tests the reading of files, opened per read or kept open, into the reused buffers
+ */
+public class TestReusableProcFileBuffer {
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = createDirectory("buffer");
+        file = new File(directory,"buffer");
+    }
+
+    @After
+    public void tearDown() {
+        delete(directory);
+    }
+
+    @Test
+    public void testFileLargerThanTheBufferIsReadWhole() throws IOException {
+        String content = content(1500);
+        write(file,content);
+
+        ReusableProcFileBuffer buffer = new ReusableProcFileBuffer(16);
+        assertEquals(content,asString(buffer.read(file)));
+
+        FileChannel channel = buffer.open(file);
+        assertNotNull(channel);
+        assertEquals(content,asString(buffer.read(channel)));
+        buffer.close(channel);
+    }
+
+    @Test
+    public void testKeptOpenChannelIsReadFromTheStart() throws IOException {
+        write(file,"read_bytes: 1\n");
+        ReusableProcFileBuffer buffer = new ReusableProcFileBuffer();
+        FileChannel channel = buffer.open(file);
+
+        assertEquals("read_bytes: 1",asString(buffer.read(channel)));
+        write(file,"read_bytes: 22\n");
+        assertEquals("read_bytes: 22",asString(buffer.read(channel)));
+
+        buffer.close(channel);
+        assertNull(buffer.read(channel));
+    }
+
+    @Test
+    public void testChannelsAreNotOpenedBeyondTheMaximum() throws IOException {
+        write(file,"read_bytes: 1\n");
+        ReusableProcFileBuffer buffer = new ReusableProcFileBuffer(512,1);
+        FileChannel first = buffer.open(file);
+        assertNotNull(first);
+        assertNull(buffer.open(file));
+        assertEquals(1,buffer.getOpenChannels());
+
+        buffer.close(first);
+        assertEquals(0,buffer.getOpenChannels());
+        FileChannel second = buffer.open(file);
+        assertNotNull(second);
+        buffer.close(second);
+    }
+
+    private static String content(int length) {
+        StringBuilder content = new StringBuilder(length);
+        for(int i=0;i<length;i++) {
+            content.append((char)('a' + i % 26));
+        }
+        return content.toString();
+    }
+
+    private static String asString(ByteBuffer buffer) {
+        return ProcFileParser.toAsciiString(buffer,buffer.position(),buffer.limit());
+    }
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.junit.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests that samples are handed to each sink on its own thread, and that a slow sink does not block the others
+ */
+public class TestAsyncFanOutProcessIOUsagePersistence {
+
+    /**
+     * Records the samples persisted, blocking on the first sample until released
+     */
+    private static class RecordingPersistence implements ProcessIOUsagePersistence {
+        private final List<CurrentProcessIO> persisted = new CopyOnWriteArrayList<CurrentProcessIO>();
+        private final CountDownLatch release;
+        private final CountDownLatch blocked = new CountDownLatch(1);
+        private volatile boolean initialised;
+        private volatile boolean destroyed;
+
+        RecordingPersistence(boolean slow) {
+            release = new CountDownLatch(slow ? 1 : 0);
+        }
+
+        @Override
+        public void init() {
+            initialised = true;
+        }
+
+        @Override
+        public void destroy() {
+            destroyed = true;
+        }
+
+        @Override
+        public void persist(CurrentProcessIO io) {
+            blocked.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            persisted.add(io);
+        }
+
+        void waitFor(int samples) throws InterruptedException {
+            long until = System.currentTimeMillis() + 5000;
+            while(persisted.size()<samples && System.currentTimeMillis()<until) {
+                Thread.sleep(5);
+            }
+            assertEquals(samples,persisted.size());
+        }
+    }
+
+    private static CurrentProcessIO sample(long millis) {
+        return new CurrentProcessIO(millis,millis,millis);
+    }
+
+    @Test
+    public void testSlowSinkDropsOldestWithoutBlockingTheOthers() throws InterruptedException {
+        RecordingPersistence fast = new RecordingPersistence(false);
+        RecordingPersistence slow = new RecordingPersistence(true);
+        AsyncFanOutProcessIOUsagePersistence persistence = new AsyncFanOutProcessIOUsagePersistence(
+                OverflowPolicy.DROP_OLDEST,4,fast,slow);
+        persistence.init();
+        assertTrue(fast.initialised && slow.initialised);
+
+        // the slow sink takes the first sample, then blocks
+        persistence.persist(sample(1));
+        assertTrue(slow.blocked.await(5,TimeUnit.SECONDS));
+
+        // the fast sink keeps up with every sample
+        for(int i=2;i<=10;i++) {
+            persistence.persist(sample(i));
+            fast.waitFor(i);
+        }
+        assertArrayEquals(new long[] { 0, 5 },persistence.getDroppedSamples());
+        assertArrayEquals(new long[] { 0, 4 },persistence.getQueuedSamples());
+
+        slow.release.countDown();
+        slow.waitFor(5);
+        assertEquals(1,slow.persisted.get(0).getCurrentSampleTimeInMillis());
+        assertEquals(7,slow.persisted.get(1).getCurrentSampleTimeInMillis());
+        assertEquals(10,slow.persisted.get(4).getCurrentSampleTimeInMillis());
+        assertArrayEquals(new long[] { 10, 5 },persistence.getPersistedSamples());
+        assertTrue(persistence.getMaxLagMillis()[1]>=0);
+        assertArrayEquals(new String[] { "RecordingPersistence", "RecordingPersistence" },persistence.getSinkNames());
+
+        persistence.destroy();
+        assertTrue(fast.destroyed && slow.destroyed);
+    }
+
+    @Test
+    public void testCoalescedSinkIsGivenTheLatestSample() throws InterruptedException {
+        RecordingPersistence slow = new RecordingPersistence(true);
+        AsyncFanOutProcessIOUsagePersistence persistence = new AsyncFanOutProcessIOUsagePersistence(
+                OverflowPolicy.COALESCE_LATEST,4,slow);
+        persistence.init();
+
+        persistence.persist(sample(1));
+        assertTrue(slow.blocked.await(5,TimeUnit.SECONDS));
+        for(int i=2;i<=10;i++) {
+            persistence.persist(sample(i));
+        }
+        assertArrayEquals(new long[] { 8 },persistence.getDroppedSamples());
+        assertArrayEquals(new String[] { "COALESCE_LATEST" },persistence.getSinkOverflowPolicies());
+
+        slow.release.countDown();
+        slow.waitFor(2);
+        assertEquals(10,slow.persisted.get(1).getCurrentSampleTimeInMillis());
+        persistence.destroy();
+    }
+
+    @Test
+    public void testQueuedSamplesArePersistedOnDestroy() throws InterruptedException {
+        RecordingPersistence sink = new RecordingPersistence(false);
+        ProcessIOUsagePersistence failing = new ProcessIOUsagePersistence() {
+            public void init() {}
+            public void destroy() {}
+            public void persist(CurrentProcessIO io) {
+                throw new IllegalStateException("failed");
+            }
+        };
+        AsyncFanOutProcessIOUsagePersistence persistence = new AsyncFanOutProcessIOUsagePersistence(
+                OverflowPolicy.DROP_OLDEST,16,sink,failing);
+        persistence.init();
+        for(int i=1;i<=10;i++) {
+            persistence.persist(sample(i));
+        }
+        persistence.destroy();
+
+        assertEquals(10,sink.persisted.size());
+        assertArrayEquals(new long[] { 0, 10 },persistence.getFailedSamples());
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.junit.Test;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the overflow policies of the single producer, single consumer sample queue
+ */
+public class TestBoundedSampleQueue {
+
+    private static CurrentProcessIO sample(long millis) {
+        return new CurrentProcessIO(millis,0,0);
+    }
+
+    @Test
+    public void testDropOldestKeepsTheNewestSamplesInOrder() {
+        BoundedSampleQueue queue = new BoundedSampleQueue(3,OverflowPolicy.DROP_OLDEST);
+        assertEquals(4,queue.capacity());
+
+        for(int i=1;i<=4;i++) {
+            assertTrue(queue.offer(sample(i)));
+        }
+        assertFalse(queue.offer(sample(5)));
+        assertFalse(queue.offer(sample(6)));
+
+        assertEquals(2,queue.getDropped());
+        assertEquals(4,queue.size());
+        for(int i=3;i<=6;i++) {
+            assertEquals(i,queue.poll().getCurrentSampleTimeInMillis());
+        }
+        assertNull(queue.poll());
+        assertEquals(0,queue.size());
+    }
+
+    @Test
+    public void testCoalesceLatestHoldsOnlyTheLatestSample() {
+        BoundedSampleQueue queue = new BoundedSampleQueue(16,OverflowPolicy.COALESCE_LATEST);
+        assertEquals(1,queue.capacity());
+
+        CurrentProcessIO latest = sample(3);
+        assertTrue(queue.offer(sample(1)));
+        assertFalse(queue.offer(sample(2)));
+        assertFalse(queue.offer(latest));
+
+        assertEquals(2,queue.getDropped());
+        assertSame(latest,queue.poll());
+        assertNull(queue.poll());
+        assertTrue(queue.offer(sample(4)));
+    }
+
+    @Test
+    public void testEverySampleIsTakenOrDroppedOnceWhilstConcurrentlyConsumed() throws InterruptedException {
+        final BoundedSampleQueue queue = new BoundedSampleQueue(8,OverflowPolicy.DROP_OLDEST);
+        final int samples = 200000;
+        final AtomicLong taken = new AtomicLong();
+        final AtomicLong outOfOrder = new AtomicLong();
+        final CountDownLatch done = new CountDownLatch(1);
+
+        Thread consumer = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                long previous = 0;
+                while(true) {
+                    CurrentProcessIO io = queue.poll();
+                    if(io==null) {
+                        if(done.getCount()==0 && queue.size()==0) return;
+                        continue;
+                    }
+                    // samples are taken in order, and never twice
+                    if(io.getCurrentSampleTimeInMillis()<=previous) outOfOrder.incrementAndGet();
+                    previous = io.getCurrentSampleTimeInMillis();
+                    taken.incrementAndGet();
+                }
+            }
+        });
+        consumer.start();
+        for(int i=1;i<=samples;i++) {
+            queue.offer(sample(i));
+        }
+        done.countDown();
+        consumer.join(10000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(0,outOfOrder.get());
+        assertEquals(samples,taken.get() + queue.getDropped());
+    }
+}
@@ -17,6 +17,7 @@ package org.greencheek.processio.service.persistence;
 
 import org.greencheek.processio.domain.CurrentProcessIO;
 import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOSnapshot;
 import org.greencheek.processio.domain.jmx.ProcessIOUsageMXBean;
 import org.greencheek.processio.service.usage.BasicProcessIOUsage;
 import org.greencheek.processio.service.persistence.jmx.ProcessIOUsagePersistenceViaJmx;
@@ -82,4 +83,30 @@ public class TestJMXPersistenceOfProcessIOUsageMXBean {
         assertEquals(1024.0*1024.0,val,DELTA);
 
     }
+
+    @Test
+    public void testAllProcessIOCountersAreAvailableFromJmx() {
+        persistenceService.persist(new CurrentProcessIO(0,0,0,0,0,0,0,0));
+        persistenceService.persist(new CurrentProcessIO(2000,1024*1024,1024*1024,4*1024*1024,2*1024*1024,1024,2048,1024));
+
+        ObjectName name = ((ProcessIOUsagePersistenceViaJmx)persistenceService).getBeanObjectName();
+        ProcessIOUsageMXBean proxy = JMX.newMXBeanProxy(mbeanServer, name, ProcessIOUsageMXBean.class, false);
+
+        ProcessIO io = proxy.getProcessIO();
+        assertEquals(4*1024*1024,io.getCurrentSampleReadChars());
+        assertEquals(2*1024*1024,io.getCurrentSampleWriteChars());
+        assertEquals(1024,io.getCurrentSampleReadSyscalls());
+        assertEquals(2048,io.getCurrentSampleWriteSyscalls());
+        assertEquals(1024,io.getCurrentSampleCancelledWriteBytes());
+
+        assertEquals(2048.0,proxy.getSampleTimeKbPerSecondReadChars(),DELTA);
+        assertEquals(1024.0,proxy.getSampleTimeWriteSyscallsPerSecond(),DELTA);
+        assertEquals(1024.0,proxy.getSampleTimeBytesPerWriteSyscall(),DELTA);
+
+        ProcessIOSnapshot snapshot = proxy.getSnapshot();
+        assertEquals(proxy.getSampleSequence(),snapshot.getSampleSequence());
+        assertEquals(4*1024*1024,snapshot.getCurrentSampleReadChars());
+        assertEquals(2048.0,snapshot.getSampleTimeKbPerSecondReadChars(),DELTA);
+        assertEquals(512.0,snapshot.getSampleTimeKbPerSecondReadIO(),DELTA);
+    }
 }
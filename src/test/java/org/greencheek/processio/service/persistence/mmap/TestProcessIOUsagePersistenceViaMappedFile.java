@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.mmap;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.service.usage.ExponentiallyWeightedProcessIOUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the writing and reading of the memory mapped process io file
+ */
+public class TestProcessIOUsagePersistenceViaMappedFile {
+
+    private static final double DELTA = 1e-9;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("processio",".dir");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if(files!=null) {
+            for(File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testSampleAndRatesAreReadBack() {
+        ProcessIOUsagePersistenceViaMappedFile persistence = new ProcessIOUsagePersistenceViaMappedFile(directory,1234,
+                new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 }),0);
+        assertTrue(persistence.isMapped());
+
+        MappedProcessIOReader reader = new MappedProcessIOReader(persistence.getFile());
+        assertNull(reader.read());
+
+        persistence.persist(new CurrentProcessIO(1000,1024,2048,10,20,30,40,50));
+        persistence.persist(new CurrentProcessIO(2000,Long.MIN_VALUE,Long.MIN_VALUE));
+        persistence.persist(new CurrentProcessIO(3000,3072,2048,11,21,31,41,51));
+
+        MappedProcessIOSample sample = reader.read();
+        assertNotNull(sample);
+        assertEquals(1234,sample.getPid());
+        assertEquals(0,sample.getStartMillis());
+        assertEquals(2,sample.getSampleCount());
+        assertEquals(3000,sample.getSampleMillis());
+        assertEquals(1000,sample.getPreviousSampleMillis());
+        assertEquals(3072,sample.getReadBytes());
+        assertEquals(2048,sample.getWriteBytes());
+        assertEquals(11,sample.getReadChars());
+        assertEquals(21,sample.getWriteChars());
+        assertEquals(31,sample.getReadSyscalls());
+        assertEquals(41,sample.getWriteSyscalls());
+        assertEquals(51,sample.getCancelledWriteBytes());
+        assertEquals(1.0,sample.getSampleTimeKbPerSecondReadIO(),DELTA);
+        assertEquals(0.0,sample.getSampleTimeKbPerSecondWriteIO(),DELTA);
+        assertEquals(1.0,sample.getAccumulatedKbPerSecondReadIO(),DELTA);
+        assertEquals(2.0/3.0,sample.getAccumulatedKbPerSecondWriteIO(),DELTA);
+        assertEquals(1,sample.getSmoothingTimeConstantsInMillis().length);
+        assertEquals(60000,sample.getSmoothingTimeConstantsInMillis()[0]);
+        assertEquals(1.0,sample.getSmoothedKbPerSecondReadIO()[0],DELTA);
+        assertEquals(0.0,sample.getSmoothedKbPerSecondWriteIO()[0],DELTA);
+
+        persistence.destroy();
+        assertFalse(persistence.getFile().exists());
+    }
+
+    @Test
+    public void testScanReadsEveryFileInTheDirectory() throws IOException {
+        ProcessIOUsagePersistenceViaMappedFile first = new ProcessIOUsagePersistenceViaMappedFile(directory,1,new ExponentiallyWeightedProcessIOUsage());
+        ProcessIOUsagePersistenceViaMappedFile second = new ProcessIOUsagePersistenceViaMappedFile(directory,2,new ExponentiallyWeightedProcessIOUsage());
+        first.persist(new CurrentProcessIO(1000,1,1));
+        second.persist(new CurrentProcessIO(1000,2,2));
+        new File(directory,"other.txt").createNewFile();
+
+        List<MappedProcessIOSample> samples = MappedProcessIOReader.scan(directory);
+        assertEquals(2,samples.size());
+        assertEquals(samples.get(0).getPid(),samples.get(0).getReadBytes());
+        assertEquals(samples.get(1).getPid(),samples.get(1).getReadBytes());
+    }
+
+    @Test
+    public void testReaderNeverSeesAMixOfTwoSamples() throws InterruptedException {
+        final ProcessIOUsagePersistenceViaMappedFile persistence = new ProcessIOUsagePersistenceViaMappedFile(directory,1,
+                new ExponentiallyWeightedProcessIOUsage());
+        final MappedProcessIOReader reader = new MappedProcessIOReader(persistence.getFile());
+        final AtomicBoolean running = new AtomicBoolean(true);
+        final AtomicReference<String> failure = new AtomicReference<String>();
+
+        Thread readerThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                while(running.get()) {
+                    MappedProcessIOSample sample = reader.read();
+                    if(sample==null) continue;
+                    long n = sample.getSampleMillis();
+                    if(sample.getReadBytes()!=n || sample.getCancelledWriteBytes()!=n || sample.getSampleCount()!=n) {
+                        failure.compareAndSet(null,"torn sample at " + n);
+                    }
+                }
+            }
+        });
+        readerThread.start();
+
+        for(long n=1;n<=500000;n++) {
+            persistence.persist(new CurrentProcessIO(n,n,n,n,n,n,n,n));
+        }
+        running.set(false);
+        readerThread.join();
+
+        assertNull(failure.get());
+    }
+}
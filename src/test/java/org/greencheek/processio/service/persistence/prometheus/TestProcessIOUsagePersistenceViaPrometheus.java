@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.prometheus;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.greencheek.processio.service.usage.ExponentiallyWeightedProcessIOUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetSocketAddress;
+import java.net.URL;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the serving of the holder's counters and rates in the prometheus text format
+ */
+public class TestProcessIOUsagePersistenceViaPrometheus {
+
+    private ProcessIOUsageHolder holder;
+    private ProcessIOUsagePersistenceViaPrometheus persistence;
+
+    @Before
+    public void setUp() {
+        holder = new ProcessIOUsageHolder(0,new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 }));
+        persistence = new ProcessIOUsagePersistenceViaPrometheus(holder,new InetSocketAddress("127.0.0.1",0));
+        persistence.init();
+    }
+
+    @After
+    public void tearDown() {
+        persistence.destroy();
+    }
+
+    private HttpURLConnection connect() throws IOException {
+        InetSocketAddress address = persistence.getAddress();
+        assertNotNull(address);
+        URL url = new URL("http://127.0.0.1:" + address.getPort() + ProcessIOUsagePersistenceViaPrometheus.METRICS_PATH);
+        return (HttpURLConnection)url.openConnection();
+    }
+
+    private String scrape() throws IOException {
+        HttpURLConnection connection = connect();
+        assertEquals(200,connection.getResponseCode());
+        assertEquals(PrometheusTextRenderer.CONTENT_TYPE,connection.getContentType());
+        InputStream in = connection.getInputStream();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buffer = new byte[4096];
+        int read;
+        while((read = in.read(buffer))!=-1) {
+            out.write(buffer,0,read);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    @Test
+    public void testBodyIsRenderedOnEachSample() throws IOException {
+        holder.setProcessIO(new CurrentProcessIO(1000,0,0,0,0,0,0,0));
+        holder.setProcessIO(new CurrentProcessIO(2000,2048,1024,4096,8192,10,20,512));
+
+        String before = scrape();
+        assertTrue(before.contains("processio_samples_total 0\n"));
+
+        persistence.persist(new CurrentProcessIO(2000,2048,1024));
+        String body = scrape();
+
+        assertTrue(body.contains("# TYPE processio_read_bytes_total counter\n"));
+        assertTrue(body.contains("processio_read_bytes_total 2048\n"));
+        assertTrue(body.contains("processio_write_bytes_total 1024\n"));
+        assertTrue(body.contains("processio_read_chars_total 4096\n"));
+        assertTrue(body.contains("processio_write_syscalls_total 20\n"));
+        assertTrue(body.contains("processio_cancelled_write_bytes_total 512\n"));
+        assertTrue(body.contains("processio_samples_total 2\n"));
+        assertTrue(body.contains("processio_last_sample_timestamp_seconds 2.0\n"));
+        assertTrue(body.contains("processio_sample_read_kilobytes_per_second 2.0\n"));
+        assertTrue(body.contains("processio_sample_write_kilobytes_per_second 1.0\n"));
+        assertTrue(body.contains("processio_windowed_read_kilobytes_per_second{window=\"60s\"} "));
+        assertTrue(body.contains("processio_smoothed_read_kilobytes_per_second{window=\"60s\"} 2.0\n"));
+        assertTrue(body.contains("processio_read_throughput_kilobytes_per_second{quantile=\"0.99\"} 2.0\n"));
+        assertFalse(body.contains("NaN"));
+    }
+
+    @Test
+    public void testOnlyGetIsServed() throws IOException {
+        HttpURLConnection connection = connect();
+        connection.setRequestMethod("POST");
+        assertEquals(405,connection.getResponseCode());
+    }
+}
@@ -0,0 +1,158 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.statsd;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.greencheek.processio.service.usage.ExponentiallyWeightedProcessIOUsage;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.net.DatagramPacket;
+import java.net.DatagramSocket;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the pushing of the holder's counters and rates to a local udp socket
+ */
+public class TestProcessIOUsagePersistenceViaStatsD {
+
+    private ProcessIOUsageHolder holder;
+    private DatagramSocket collector;
+
+    @Before
+    public void setUp() throws IOException {
+        holder = new ProcessIOUsageHolder(0,new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 }));
+        collector = new DatagramSocket(0,InetAddress.getByName("127.0.0.1"));
+        collector.setSoTimeout(5000);
+    }
+
+    @After
+    public void tearDown() {
+        collector.close();
+    }
+
+    private InetSocketAddress collectorAddress() {
+        return new InetSocketAddress("127.0.0.1",collector.getLocalPort());
+    }
+
+    private List<String> receive(long packets) throws IOException {
+        List<String> lines = new ArrayList<String>();
+        byte[] buffer = new byte[65536];
+        for(int i=0;i<packets;i++) {
+            DatagramPacket packet = new DatagramPacket(buffer,buffer.length);
+            collector.receive(packet);
+            lines.addAll(Arrays.asList(new String(packet.getData(),0,packet.getLength(),"UTF-8").split("\n")));
+        }
+        return lines;
+    }
+
+    private void sample(ProcessIOUsagePersistenceViaStatsD persistence, CurrentProcessIO io) {
+        holder.setProcessIO(io);
+        persistence.persist(io);
+    }
+
+    @Test
+    public void testCounterIncreasesAndRatesAreSent() throws IOException {
+        ProcessIOUsagePersistenceViaStatsD persistence = new ProcessIOUsagePersistenceViaStatsD(holder,collectorAddress());
+        persistence.init();
+        try {
+            // the first sample has no previous sample to send the increase from
+            sample(persistence,new CurrentProcessIO(1000,1024,0,0,0,0,0,0));
+            assertEquals(0,persistence.getPacketsSent());
+
+            sample(persistence,new CurrentProcessIO(2000,3072,1024,4096,8192,10,20,512));
+            // a repeated persist of the same sample is not sent again
+            persistence.persist(new CurrentProcessIO(2000,3072,1024));
+            assertEquals(1,persistence.getPacketsSent());
+
+            List<String> lines = receive(persistence.getPacketsSent());
+            assertTrue(lines.contains("processio.read_bytes:2048|c"));
+            assertTrue(lines.contains("processio.write_bytes:1024|c"));
+            assertTrue(lines.contains("processio.read_chars:4096|c"));
+            assertTrue(lines.contains("processio.write_syscalls:20|c"));
+            assertTrue(lines.contains("processio.cancelled_write_bytes:512|c"));
+            assertTrue(lines.contains("processio.sample_read_kb_per_second:2.0|g"));
+            assertTrue(lines.contains("processio.sample_write_kb_per_second:1.0|g"));
+            assertTrue(lines.contains("processio.smoothed_read_kb_per_second_60s:2.0|g"));
+            assertEquals(0,persistence.getPacketsDropped());
+        } finally {
+            persistence.destroy();
+        }
+    }
+
+    @Test
+    public void testMetricsAreBatchedWithinThePacketSizeWithTags() throws IOException {
+        int maxPacketSize = 120;
+        ProcessIOUsagePersistenceViaStatsD persistence = new ProcessIOUsagePersistenceViaStatsD(holder,collectorAddress(),
+                "app.io","env:test",maxPacketSize);
+        persistence.init();
+        try {
+            sample(persistence,new CurrentProcessIO(1000,0,0));
+            sample(persistence,new CurrentProcessIO(2000,1024,1024));
+            assertTrue(persistence.getPacketsSent()>1);
+
+            byte[] buffer = new byte[65536];
+            int metrics = 0;
+            for(int i=0;i<persistence.getPacketsSent();i++) {
+                DatagramPacket packet = new DatagramPacket(buffer,buffer.length);
+                collector.receive(packet);
+                assertTrue(packet.getLength()<=maxPacketSize);
+                String datagram = new String(packet.getData(),0,packet.getLength(),"UTF-8");
+                assertFalse(datagram.endsWith("\n"));
+                for(String line : datagram.split("\n")) {
+                    assertTrue(line,line.startsWith("app.io."));
+                    assertTrue(line,line.endsWith("|#env:test"));
+                    metrics++;
+                }
+            }
+            // 7 counters, 4 rates and 2 smoothed rates
+            assertEquals(13,metrics);
+        } finally {
+            persistence.destroy();
+        }
+    }
+
+    @Test
+    public void testMissingCollectorDoesNotBlockOrThrow() throws IOException {
+        DatagramSocket closed = new DatagramSocket(0,InetAddress.getByName("127.0.0.1"));
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1",closed.getLocalPort());
+        closed.close();
+
+        ProcessIOUsagePersistenceViaStatsD persistence = new ProcessIOUsagePersistenceViaStatsD(holder,address);
+        persistence.init();
+        try {
+            for(int i=1;i<=10;i++) {
+                sample(persistence,new CurrentProcessIO(i*1000,i*1024,i*1024));
+            }
+            assertEquals(9,persistence.getPacketsSent() + persistence.getPacketsDropped());
+        } finally {
+            persistence.destroy();
+        }
+        // persisting after destroy is ignored
+        sample(persistence,new CurrentProcessIO(20000,0,0));
+    }
+}
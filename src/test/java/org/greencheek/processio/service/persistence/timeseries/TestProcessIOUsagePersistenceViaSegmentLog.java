@@ -0,0 +1,169 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.persistence.timeseries;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.ProcessIO;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the writing, rotation and reading of the binary segment log
+ */
+public class TestProcessIOUsagePersistenceViaSegmentLog {
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = File.createTempFile("processio",".dir");
+        directory.delete();
+        directory.mkdirs();
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if(files!=null) {
+            for(File file : files) file.delete();
+        }
+        directory.delete();
+    }
+
+    private static List<ProcessIO> readAll(SegmentLogReader reader) {
+        List<ProcessIO> samples = new ArrayList<ProcessIO>();
+        for(ProcessIO io : reader) {
+            samples.add(io);
+        }
+        return samples;
+    }
+
+    @Test
+    public void testSamplesAreReadBackWithThePreviousSample() {
+        ProcessIOUsagePersistenceViaSegmentLog persistence = new ProcessIOUsagePersistenceViaSegmentLog(directory);
+        persistence.persist(new CurrentProcessIO(1000000,1024,2048,10,20,30,40,50));
+        persistence.persist(new CurrentProcessIO(1001000,Long.MIN_VALUE,Long.MIN_VALUE));
+        persistence.persist(new CurrentProcessIO(1002000,4096,2048,15,25,35,45,50));
+        persistence.persist(new CurrentProcessIO(1003000,5000,1000,16,26,36,46,0));
+        persistence.destroy();
+
+        List<ProcessIO> samples = readAll(new SegmentLogReader(directory));
+        assertEquals(3,samples.size());
+
+        ProcessIO first = samples.get(0);
+        assertEquals(0,first.getPreviousSampleMs());
+        assertEquals(1000000,first.getCurrentSampleMs());
+        assertEquals(1024,first.getCurrentSampleReadBytes());
+        assertEquals(50,first.getCurrentSampleCancelledWriteBytes());
+
+        ProcessIO second = samples.get(1);
+        assertEquals(1000000,second.getPreviousSampleMs());
+        assertEquals(1024,second.getPreviousSampleReadBytes());
+        assertEquals(1002000,second.getCurrentSampleMs());
+        assertEquals(4096,second.getCurrentSampleReadBytes());
+        assertEquals(2048,second.getCurrentSampleWriteBytes());
+        assertEquals(15,second.getCurrentSampleReadChars());
+        assertEquals(25,second.getCurrentSampleWriteChars());
+        assertEquals(35,second.getCurrentSampleReadSyscalls());
+        assertEquals(45,second.getCurrentSampleWriteSyscalls());
+
+        // counters that go backwards are held exactly
+        ProcessIO third = samples.get(2);
+        assertEquals(1003000,third.getCurrentSampleMs());
+        assertEquals(1000,third.getCurrentSampleWriteBytes());
+        assertEquals(0,third.getCurrentSampleCancelledWriteBytes());
+    }
+
+    @Test
+    public void testRegularSamplesAreEncodedCompactly() {
+        ProcessIOUsagePersistenceViaSegmentLog persistence = new ProcessIOUsagePersistenceViaSegmentLog(directory);
+        for(int i=0;i<1000;i++) {
+            persistence.persist(new CurrentProcessIO(1000000 + i*1000L,i*100L,i*100L,i*100L,i*100L,i,i,0));
+        }
+        persistence.destroy();
+
+        File[] segments = SegmentLogFormat.segments(directory);
+        assertEquals(1,segments.length);
+        // a byte for the time, two for each of the four byte counters, and one for each of the others
+        assertTrue(segments[0].length() <= 1000 * 12 + SegmentLogFormat.HEADER_SIZE + SegmentLogFormat.MAX_RECORD_SIZE);
+        assertEquals(1000,readAll(new SegmentLogReader(directory)).size());
+    }
+
+    @Test
+    public void testSegmentsAreRotatedByTimeAndOldSegmentsDeleted() {
+        ProcessIOUsagePersistenceViaSegmentLog persistence = new ProcessIOUsagePersistenceViaSegmentLog(directory,1024*1024,10000,3);
+        for(int i=0;i<50;i++) {
+            persistence.persist(new CurrentProcessIO(1000000 + i*1000L,i*1024L,i*512L));
+        }
+        persistence.destroy();
+
+        File[] segments = SegmentLogFormat.segments(directory);
+        assertEquals(3,segments.length);
+        assertEquals(SegmentLogFormat.segmentName(1020000),segments[0].getName());
+
+        List<ProcessIO> samples = readAll(new SegmentLogReader(directory));
+        assertEquals(30,samples.size());
+        for(int i=0;i<samples.size();i++) {
+            assertEquals(1020000 + i*1000L,samples.get(i).getCurrentSampleMs());
+            assertEquals((20+i)*1024L,samples.get(i).getCurrentSampleReadBytes());
+            assertEquals((20+i)*512L,samples.get(i).getCurrentSampleWriteBytes());
+        }
+        assertEquals(1030000,samples.get(11).getPreviousSampleMs());
+    }
+
+    @Test
+    public void testSegmentsAreRotatedBySize() {
+        ProcessIOUsagePersistenceViaSegmentLog persistence = new ProcessIOUsagePersistenceViaSegmentLog(directory,200,Long.MAX_VALUE,100);
+        for(int i=0;i<100;i++) {
+            persistence.persist(new CurrentProcessIO(1000000 + i*1000L,i*1024L,i*512L));
+        }
+        persistence.destroy();
+
+        File[] segments = SegmentLogFormat.segments(directory);
+        assertTrue(segments.length>1);
+        for(File segment : segments) {
+            assertTrue(segment.length()<=200);
+        }
+        assertEquals(100,readAll(new SegmentLogReader(directory)).size());
+    }
+
+    @Test
+    public void testTruncatedRecordEndsTheSegment() throws IOException {
+        ProcessIOUsagePersistenceViaSegmentLog persistence = new ProcessIOUsagePersistenceViaSegmentLog(directory);
+        persistence.persist(new CurrentProcessIO(1000000,1L<<40,1L<<40));
+        persistence.persist(new CurrentProcessIO(1001000,2L<<40,2L<<40));
+        persistence.destroy();
+
+        File segment = SegmentLogFormat.segments(directory)[0];
+        RandomAccessFile file = new RandomAccessFile(segment,"rw");
+        file.setLength(file.length()-3);
+        file.close();
+
+        List<ProcessIO> samples = readAll(new SegmentLogReader(directory));
+        assertEquals(1,samples.size());
+        assertEquals(1L<<40,samples.get(0).getCurrentSampleReadBytes());
+    }
+}
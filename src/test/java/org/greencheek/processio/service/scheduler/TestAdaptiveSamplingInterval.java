@@ -0,0 +1,149 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.AdaptiveSamplingHolder;
+import org.greencheek.processio.service.io.FileSystemProcIOProcessIOReader;
+import org.greencheek.processio.service.io.ProcessIOReader;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.jmock.Expectations;
+import org.jmock.Mockery;
+import org.junit.Test;
+
+import java.io.File;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the interval chosen by the adaptive sampling of the scheduler
+ */
+public class TestAdaptiveSamplingInterval {
+
+    private static final long MIN = 100;
+    private static final long MAX = 1600;
+
+    private long millis;
+    private long bytes;
+
+    private AdaptiveSamplingInterval newInterval() {
+        millis = 0;
+        bytes = 0;
+        AdaptiveSamplingInterval interval = new AdaptiveSamplingInterval(MIN,MAX,64.0,1024.0,0.5,3);
+        interval.nextInterval(new CurrentProcessIO(millis,bytes,0));
+        return interval;
+    }
+
+    /**
+     * Samples the given KB per second for one second
+     */
+    private long sample(AdaptiveSamplingInterval interval, long kbPerSecond) {
+        millis += 1000;
+        bytes += kbPerSecond*1024;
+        return interval.nextInterval(new CurrentProcessIO(millis,bytes,0));
+    }
+
+    @Test
+    public void testBusyProcessTightensToTheMinimum() {
+        AdaptiveSamplingInterval interval = newInterval();
+        assertEquals(MAX,interval.getIntervalMillis());
+
+        assertEquals(800,sample(interval,2048));
+        assertEquals(400,sample(interval,2048));
+        assertEquals(200,sample(interval,2048));
+        assertEquals(100,sample(interval,2048));
+        assertEquals(100,sample(interval,2048));
+        assertEquals(4,interval.getIntervalChanges());
+        assertTrue(interval.getLastChangeReason().contains("busy threshold"));
+    }
+
+    @Test
+    public void testIdleProcessBacksOffOnlyAfterConsecutiveIdleSamples() {
+        AdaptiveSamplingInterval interval = newInterval();
+        sample(interval,2048);
+        sample(interval,2048);
+        assertEquals(400,interval.getIntervalMillis());
+
+        // just above the idle threshold the interval is held, and the idle count is reset
+        assertEquals(400,sample(interval,50));
+        assertEquals(400,sample(interval,50));
+        assertEquals(400,sample(interval,70));
+        assertEquals(400,sample(interval,50));
+        assertEquals(400,sample(interval,50));
+        assertEquals(800,sample(interval,50));
+        assertTrue(interval.getLastChangeReason().contains("idle threshold"));
+
+        for(int i=0;i<9;i++) sample(interval,0);
+        assertEquals(MAX,interval.getIntervalMillis());
+        assertEquals(4,interval.getIntervalChanges());
+    }
+
+    @Test
+    public void testVolatileRateTightensTheInterval() {
+        AdaptiveSamplingInterval interval = newInterval();
+        for(int i=0;i<5;i++) {
+            assertEquals(MAX,sample(interval,500));
+        }
+
+        sample(interval,100);
+        sample(interval,900);
+        assertTrue(interval.getIntervalMillis()<MAX);
+        assertTrue(interval.getLastChangeReason().contains("volatile"));
+    }
+
+    @Test
+    public void testUnreadableAndBackwardsSamplesDoNotChangeTheInterval() {
+        AdaptiveSamplingInterval interval = newInterval();
+        assertEquals(MAX,interval.nextInterval(ProcessIOReader.NON_READABLE_PROCESS_IO));
+        assertEquals(MAX,interval.nextInterval(new CurrentProcessIO(500,-1,0)));
+        assertEquals(0,interval.getIntervalChanges());
+    }
+
+    @Test
+    public void testHolderReturnsTheInterval() {
+        AdaptiveSamplingInterval interval = newInterval();
+        sample(interval,2048);
+
+        AdaptiveSamplingHolder holder = new AdaptiveSamplingHolder(interval);
+        assertEquals(800,holder.getCurrentIntervalMillis());
+        assertEquals(MIN,holder.getMinIntervalMillis());
+        assertEquals(MAX,holder.getMaxIntervalMillis());
+        assertEquals(1,holder.getIntervalChangeCount());
+        assertEquals(2048.0,holder.getLastKbPerSecond(),1e-9);
+    }
+
+    @Test
+    public void testSchedulerSamplesAtTheAdaptiveInterval() throws InterruptedException {
+        Mockery context = new Mockery();
+        final ProcessIOUsagePersistence persistence = context.mock(ProcessIOUsagePersistence.class);
+        context.checking(new Expectations() {{
+            atLeast(5).of(persistence).persist(with(aNonNull(CurrentProcessIO.class)));
+        }});
+
+        File fileIOLocation = new File(ClassLoader.getSystemResource("testIO.txt").getFile());
+        ProcessIOScheduler scheduler = new ScheduledExecutorServiceProcessIOScheduler(
+                new FileSystemProcIOProcessIOReader(fileIOLocation),persistence,new AdaptiveSamplingInterval(50,100));
+        try {
+            scheduler.start();
+            Thread.sleep(1000);
+        } finally {
+            scheduler.stop();
+        }
+
+        context.assertIsSatisfied();
+    }
+}
@@ -0,0 +1,197 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.scheduler;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.greencheek.processio.service.io.FileChannelProcIOProcessIOReader;
+import org.greencheek.processio.service.io.FileSystemProcIOProcessIOReader;
+import org.greencheek.processio.service.persistence.ProcessIOUsagePersistence;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * Tests the high frequency capture of the io counters, alongside the normal sampling
+ */
+public class TestBurstCapture {
+
+    private File ioFile;
+    private FileChannelProcIOProcessIOReader reader;
+    private ScheduledExecutorServiceProcessIOScheduler scheduler;
+    private final AtomicInteger persisted = new AtomicInteger();
+
+    @Before
+    public void setUp() {
+        ioFile = new File(ClassLoader.getSystemResource("testIO.txt").getFile());
+        reader = new FileChannelProcIOProcessIOReader(ioFile);
+        scheduler = new ScheduledExecutorServiceProcessIOScheduler(new FileSystemProcIOProcessIOReader(ioFile),
+                new ProcessIOUsagePersistence() {
+                    public void init() {}
+                    public void destroy() {}
+                    public void persist(CurrentProcessIO io) {
+                        persisted.incrementAndGet();
+                    }
+                },60000);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.stop();
+        reader.close();
+    }
+
+    @Test
+    public void testCaptureEndsWhenFull() throws InterruptedException {
+        BurstCapture capture = new BurstCapture(reader,10);
+        capture.setScheduler(scheduler);
+        scheduler.start();
+        waitFor(persisted,1);
+
+        assertTrue(capture.start(5,60000));
+        assertFalse(capture.start(5,60000));
+        waitUntilFinished(capture);
+
+        assertEquals(10,capture.getSampleCount());
+        long[] samples = capture.getCapture();
+        assertEquals(10*BurstCapture.COLUMNS,samples.length);
+        for(int offset=0;offset<samples.length;offset+=BurstCapture.COLUMNS) {
+            assertTrue(samples[offset]>0);
+            assertEquals(18790563840L,samples[offset+1]);
+            assertEquals(2250752000L,samples[offset+2]);
+            assertEquals(49820184L,samples[offset+3]);
+            assertEquals(79916L,samples[offset+4]);
+            assertEquals(142929L,samples[offset+5]);
+            assertEquals(265L,samples[offset+6]);
+            assertEquals(16384L,samples[offset+7]);
+        }
+    }
+
+    @Test
+    public void testNormalSamplingContinuesDuringTheCapture() throws InterruptedException {
+        final AtomicInteger sampled = new AtomicInteger();
+        ScheduledExecutorServiceProcessIOScheduler frequentScheduler = new ScheduledExecutorServiceProcessIOScheduler(
+                new FileSystemProcIOProcessIOReader(ioFile),
+                new ProcessIOUsagePersistence() {
+                    public void init() {}
+                    public void destroy() {}
+                    public void persist(CurrentProcessIO io) {
+                        sampled.incrementAndGet();
+                    }
+                },20);
+        try {
+            BurstCapture capture = new BurstCapture(reader,BurstCapture.DEFAULT_CAPACITY);
+            capture.setScheduler(frequentScheduler);
+            frequentScheduler.start();
+            waitFor(sampled,1);
+
+            assertTrue(capture.start(5,60000));
+            int sampledAtStart = sampled.get();
+            waitFor(sampled,sampledAtStart+3);
+            assertTrue(capture.isRunning());
+            assertTrue(capture.getSampleCount()>0);
+        } finally {
+            frequentScheduler.stop();
+        }
+    }
+
+    @Test
+    public void testCaptureEndsAfterItsDuration() throws InterruptedException {
+        BurstCapture capture = new BurstCapture(reader,BurstCapture.DEFAULT_CAPACITY);
+        capture.setScheduler(scheduler);
+        scheduler.start();
+
+        assertTrue(capture.start(10,100));
+        waitUntilFinished(capture);
+
+        assertTrue(capture.getSampleCount()>0);
+        assertTrue(capture.getSampleCount()<BurstCapture.DEFAULT_CAPACITY);
+        assertEquals(capture.getSampleCount()*BurstCapture.COLUMNS,capture.getCapture().length);
+    }
+
+    @Test
+    public void testHolderDelegatesToTheCapture() throws InterruptedException, IOException {
+        ProcessIOUsageHolder holder = new ProcessIOUsageHolder();
+        assertFalse(holder.startBurstCapture(10,1000));
+        assertEquals(0,holder.getBurstCapture().length);
+
+        BurstCapture capture = new BurstCapture(reader,3);
+        holder.setBurstCapture(capture);
+        // no scheduler, or an invalid interval
+        assertFalse(holder.startBurstCapture(10,1000));
+        capture.setScheduler(scheduler);
+        assertFalse(holder.startBurstCapture(0,1000));
+
+        assertTrue(holder.startBurstCapture(1,1000));
+        waitUntilFinished(capture);
+        assertFalse(holder.isBurstCaptureRunning());
+        assertEquals(3*BurstCapture.COLUMNS,holder.getBurstCapture().length);
+
+        File directory = File.createTempFile("processio","burst");
+        directory.delete();
+        directory.mkdir();
+        File file = new File(directory,"capture.csv");
+        try {
+            // nothing is written until a directory is set, and only within it
+            assertFalse(holder.writeBurstCapture("capture.csv"));
+            assertFalse(holder.setBurstCaptureDirectory(new File(directory,"missing")));
+            assertTrue(holder.setBurstCaptureDirectory(directory));
+            assertFalse(holder.writeBurstCapture("../capture.csv"));
+            assertFalse(holder.writeBurstCapture(file.getAbsolutePath() + "/.."));
+            assertFalse(holder.writeBurstCapture(""));
+            assertFalse(new File(directory.getParentFile(),"capture.csv").exists());
+
+            assertTrue(holder.writeBurstCapture("capture.csv"));
+            BufferedReader lines = new BufferedReader(new FileReader(file));
+            try {
+                assertEquals("millis,read_bytes,write_bytes,rchar,wchar,syscr,syscw,cancelled_write_bytes",lines.readLine());
+                for(int i=0;i<3;i++) {
+                    assertTrue(lines.readLine().endsWith(",18790563840,2250752000,49820184,79916,142929,265,16384"));
+                }
+                assertEquals(null,lines.readLine());
+            } finally {
+                lines.close();
+            }
+        } finally {
+            file.delete();
+            directory.delete();
+        }
+    }
+
+    private static void waitUntilFinished(BurstCapture capture) throws InterruptedException {
+        for(int i=0;i<500 && capture.isRunning();i++) {
+            Thread.sleep(10);
+        }
+        assertFalse(capture.isRunning());
+    }
+
+    private static void waitFor(AtomicInteger count, int atLeast) throws InterruptedException {
+        for(int i=0;i<500 && count.get()<atLeast;i++) {
+            Thread.sleep(10);
+        }
+        assertTrue(count.get()>=atLeast);
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012 dominictootell
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.greencheek.processio.service.usage;
+
+import org.greencheek.processio.domain.CurrentProcessIO;
+import org.greencheek.processio.domain.ProcessIO;
+import org.greencheek.processio.domain.jmx.ProcessIOUsageHolder;
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * Tests the exponentially weighted moving averages of the read and write rates
+ */
+public class TestExponentiallyWeightedProcessIOUsage {
+
+    private static final double DELTA = 1e-9;
+
+    @Test
+    public void testFirstRateInitialisesTheAverages() {
+        ExponentiallyWeightedProcessIOUsage usage = new ExponentiallyWeightedProcessIOUsage();
+        assertEquals(0.0,usage.getSmoothedKbPerSecondReadIO()[0],DELTA);
+
+        usage.update(new ProcessIO(1000,0,0,2000,1024,2048));
+
+        assertEquals(3,usage.getSmoothedKbPerSecondReadIO().length);
+        for(int i=0;i<3;i++) {
+            assertEquals(1.0,usage.getSmoothedKbPerSecondReadIO()[i],DELTA);
+            assertEquals(2.0,usage.getSmoothedKbPerSecondWriteIO()[i],DELTA);
+        }
+    }
+
+    @Test
+    public void testAveragesDecayTowardsNewRate() {
+        ExponentiallyWeightedProcessIOUsage usage = new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 });
+
+        usage.update(new ProcessIO(1000,0,0,61000,0,0));
+        // 10KB per second for one time constant
+        usage.update(new ProcessIO(61000,0,0,121000,600*1024,0));
+
+        assertEquals(10.0*(1.0-Math.exp(-1.0)),usage.getSmoothedKbPerSecondReadIO()[0],DELTA);
+        assertEquals(0.0,usage.getSmoothedKbPerSecondWriteIO()[0],DELTA);
+    }
+
+    @Test
+    public void testIrregularSampleIntervalsAreWeightedByTheirLength() {
+        ExponentiallyWeightedProcessIOUsage regular = new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 });
+        ExponentiallyWeightedProcessIOUsage irregular = new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 });
+
+        regular.update(new ProcessIO(1,0,0,10000,0,0));
+        irregular.update(new ProcessIO(1,0,0,10000,0,0));
+
+        // the same 5KB per second, sampled every 10 seconds or once after 30 seconds
+        regular.update(new ProcessIO(10000,0,0,20000,50*1024,0));
+        regular.update(new ProcessIO(20000,50*1024,0,30000,100*1024,0));
+        regular.update(new ProcessIO(30000,100*1024,0,40000,150*1024,0));
+        irregular.update(new ProcessIO(10000,0,0,40000,150*1024,0));
+
+        assertEquals(regular.getSmoothedKbPerSecondReadIO()[0],irregular.getSmoothedKbPerSecondReadIO()[0],DELTA);
+        assertEquals(5.0*(1.0-Math.exp(-0.5)),irregular.getSmoothedKbPerSecondReadIO()[0],DELTA);
+    }
+
+    @Test
+    public void testRepeatedAndInitialProcessIOAreIgnored() {
+        ExponentiallyWeightedProcessIOUsage usage = new ExponentiallyWeightedProcessIOUsage(new long[] { 60000 });
+
+        usage.update(new ProcessIO());
+        ProcessIO io = new ProcessIO(1000,0,0,2000,1024,0);
+        usage.update(io);
+        usage.update(new ProcessIO(2000,1024,0,3000,0,0));
+        usage.update(io);
+
+        assertEquals(1.0,usage.getSmoothedKbPerSecondReadIO()[0],DELTA);
+    }
+
+    @Test
+    public void testHolderReturnsSmoothedRates() {
+        ProcessIOUsageHolder holder = new ProcessIOUsageHolder(0,new ExponentiallyWeightedProcessIOUsage(new long[] { 60000, 300000 }));
+
+        holder.setProcessIO(new CurrentProcessIO(1000,0,0));
+        holder.setProcessIO(new CurrentProcessIO(2000,2048,1024));
+
+        assertEquals(300000,holder.getSmoothingTimeConstantsInMillis()[1]);
+        assertEquals(2.0,holder.getSmoothedKbPerSecondReadIO()[1],DELTA);
+        assertEquals(1.0,holder.getSmoothedKbPerSecondWriteIO()[0],DELTA);
+
+        assertEquals(0,new ProcessIOUsageHolder(0,new BasicProcessIOUsage()).getSmoothedKbPerSecondReadIO().length);
+    }
+}